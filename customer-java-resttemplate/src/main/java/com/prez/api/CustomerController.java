@@ -1,8 +1,14 @@
 package com.prez.api;
 
 import static java.util.stream.Collectors.toList;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
 import brave.SpanCustomizer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.prez.api.dto.CreateCustomerPreferencesRequest;
 import com.prez.api.dto.CustomerPreferencesProfileResponse;
 import com.prez.api.dto.CustomerResponse;
@@ -11,6 +17,8 @@ import com.prez.model.CustomerPreferences;
 import com.prez.service.CustomerService;
 import java.security.Principal;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.LocaleUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +32,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/customers")
@@ -35,9 +44,13 @@ public class CustomerController {
 
   private final SpanCustomizer spanCustomizer;
 
-  public CustomerController(CustomerService customerService, SpanCustomizer spanCustomizer) {
+  private final ObjectWriter preferencesWriter;
+
+  public CustomerController(CustomerService customerService, SpanCustomizer spanCustomizer,
+                            ObjectMapper objectMapper) {
     this.customerService = customerService;
     this.spanCustomizer = spanCustomizer;
+    this.preferencesWriter = objectMapper.writerFor(CustomerPreferencesProfileResponse.class);
   }
 
   @GetMapping(produces = "application/json")
@@ -73,4 +86,32 @@ public class CustomerController {
         .collect(toList());
   }
 
+  @GetMapping(produces = APPLICATION_NDJSON_VALUE, path = "/preferences")
+  public ResponseEntity<StreamingResponseBody> streamCustomerPreferences(Principal principal) {
+    spanCustomizer.tag("service", "GET /customers/preferences");
+    LOGGER.info("streamCustomerPreferences for user: {}", principal.getName());
+    return ResponseEntity.ok()
+        .contentType(APPLICATION_NDJSON)
+        .body(JsonStreamingResponseBody.ndjson(preferencesOf(principal), preferencesWriter));
+  }
+
+  @GetMapping(produces = TEXT_EVENT_STREAM_VALUE, path = "/preferences")
+  public ResponseEntity<StreamingResponseBody> streamCustomerPreferencesEvents(Principal principal) {
+    spanCustomizer.tag("service", "GET /customers/preferences");
+    LOGGER.info("streamCustomerPreferencesEvents for user: {}", principal.getName());
+    return ResponseEntity.ok()
+        .contentType(TEXT_EVENT_STREAM)
+        .body(JsonStreamingResponseBody.serverSentEvents(preferencesOf(principal), preferencesWriter));
+  }
+
+  /**
+   * Checked before the response is committed, so that a customer without preferences still gets a 404, the cursor is
+   * opened only once the response is written
+   */
+  private Supplier<Stream<CustomerPreferencesProfileResponse>> preferencesOf(Principal principal) {
+    final Supplier<Stream<CustomerPreferences>> preferences =
+        customerService.streamCustomerPreferences(principal.getName());
+    return () -> preferences.get().map(CustomerPreferencesProfileResponse::of);
+  }
+
 }
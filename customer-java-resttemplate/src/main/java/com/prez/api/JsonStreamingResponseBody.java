@@ -0,0 +1,63 @@
+package com.prez.api;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Writes each element of a stream as soon as it is read, either as a line of JSON (application/x-ndjson) or as a
+ * server-sent event (text/event-stream), and flushes it: the client gets the first element without waiting for the
+ * others, and nothing but the current element is held in memory. The next element is read only once the current one
+ * is written, so a slow client slows down the reading instead of piling up the elements.
+ * The stream, and the cursor behind it, is opened only once the response is written and closed once written, or when
+ * the client goes away: a response never written holds no cursor.
+ */
+final class JsonStreamingResponseBody<T> implements StreamingResponseBody {
+
+  private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] EVENT_DATA = "data:".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] EVENT_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+  private final Supplier<Stream<T>> elements;
+  private final ObjectWriter writer;
+  private final boolean serverSentEvents;
+
+  private JsonStreamingResponseBody(Supplier<Stream<T>> elements, ObjectWriter writer, boolean serverSentEvents) {
+    this.elements = elements;
+    this.writer = writer;
+    this.serverSentEvents = serverSentEvents;
+  }
+
+  static <T> JsonStreamingResponseBody<T> ndjson(Supplier<Stream<T>> elements, ObjectWriter writer) {
+    return new JsonStreamingResponseBody<>(elements, writer, false);
+  }
+
+  static <T> JsonStreamingResponseBody<T> serverSentEvents(Supplier<Stream<T>> elements, ObjectWriter writer) {
+    return new JsonStreamingResponseBody<>(elements, writer, true);
+  }
+
+  @Override
+  public void writeTo(OutputStream outputStream) throws IOException {
+    try (Stream<T> toWrite = elements.get()) {
+      final Iterator<T> iterator = toWrite.iterator();
+      while (iterator.hasNext()) {
+        // not writer.writeValue(outputStream, ...) which would close the response
+        final byte[] json = writer.writeValueAsBytes(iterator.next());
+        if (serverSentEvents) {
+          outputStream.write(EVENT_DATA);
+          outputStream.write(json);
+          outputStream.write(EVENT_END);
+        } else {
+          outputStream.write(json);
+          outputStream.write(NEW_LINE);
+        }
+        outputStream.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package com.prez.cache;
+
+import com.prez.model.Customer;
+import com.prez.model.LoyaltyProgram;
+import com.prez.model.LoyaltyStatus;
+import com.prez.model.PassType;
+import com.prez.model.RailPass;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * Compact binary {@link RedisSerializer} for {@link Customer}: no field names, dates as epoch days and enums by name,
+ * which makes the values smaller and cheaper to decode than JSON.
+ * <p>
+ * Every value starts with a format version byte, so that a newer version of the format can still read the entries
+ * written by the previous ones. Entries written as JSON ( before this serializer was used ) are read with the given
+ * JSON serializer.
+ */
+public class CustomerBinaryRedisSerializer implements RedisSerializer<Customer> {
+
+  static final byte VERSION_1 = 1;
+  private static final byte JSON_OBJECT_START = '{';
+  private static final byte[] EMPTY_ARRAY = new byte[0];
+
+  private final RedisSerializer<Customer> jsonSerializer;
+
+  public CustomerBinaryRedisSerializer(RedisSerializer<Customer> jsonSerializer) {
+    this.jsonSerializer = jsonSerializer;
+  }
+
+  @Override
+  public byte[] serialize(Customer customer) throws SerializationException {
+    if (customer == null) {
+      return EMPTY_ARRAY;
+    }
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(VERSION_1);
+      writeCustomer(customer, out);
+    } catch (IOException e) {
+      throw new SerializationException("Could not write customer " + customer.getCustomerId(), e);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public Customer deserialize(byte[] bytes) throws SerializationException {
+    if (bytes == null || bytes.length == 0) {
+      return null;
+    }
+    try {
+      switch (bytes[0]) {
+        case VERSION_1:
+          return readCustomer(new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)));
+        case JSON_OBJECT_START:
+          return jsonSerializer.deserialize(bytes);
+        default:
+          throw new SerializationException("Unknown customer format version " + bytes[0]);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      throw new SerializationException("Could not read customer", e);
+    }
+  }
+
+  private static void writeCustomer(Customer customer, DataOutput out) throws IOException {
+    out.writeUTF(customer.getCustomerId());
+    writeNullable(customer.getLastName(), out);
+    writeNullable(customer.getFirstName(), out);
+    writeNullable(customer.getBirthDate(), out);
+    writeNullable(customer.getPhoneNumber(), out);
+    writeNullable(customer.getEmail(), out);
+    final LoyaltyProgram loyaltyProgram = customer.getLoyaltyProgram();
+    out.writeBoolean(loyaltyProgram != null);
+    if (loyaltyProgram != null) {
+      writeNullable(loyaltyProgram.getNumber(), out);
+      writeNullable(loyaltyProgram.getStatus() == null ? null : loyaltyProgram.getStatus().name(), out);
+      writeNullable(loyaltyProgram.getStatusRefLabel(), out);
+      writeNullable(loyaltyProgram.getValidityStartDate(), out);
+      writeNullable(loyaltyProgram.getValidityEndDate(), out);
+    }
+    final List<RailPass> railPasses = customer.getRailPasses();
+    out.writeInt(railPasses == null ? -1 : railPasses.size());
+    if (railPasses != null) {
+      for (RailPass railPass : railPasses) {
+        writeNullable(railPass.getNumber(), out);
+        writeNullable(railPass.getType() == null ? null : railPass.getType().name(), out);
+        writeNullable(railPass.getTypeRefLabel(), out);
+        writeNullable(railPass.getValidityStartDate(), out);
+        writeNullable(railPass.getValidityEndDate(), out);
+      }
+    }
+  }
+
+  private static Customer readCustomer(DataInput in) throws IOException {
+    final Customer.CustomerBuilder customer = Customer.builder()
+        .customerId(in.readUTF())
+        .lastName(readNullableString(in))
+        .firstName(readNullableString(in))
+        .birthDate(readNullableDate(in))
+        .phoneNumber(readNullableString(in))
+        .email(readNullableString(in));
+    if (in.readBoolean()) {
+      final LoyaltyProgram.LoyaltyProgramBuilder loyaltyProgram = LoyaltyProgram.builder()
+          .number(readNullableString(in));
+      final String status = readNullableString(in);
+      customer.loyaltyProgram(loyaltyProgram
+          .status(status == null ? null : LoyaltyStatus.valueOf(status))
+          .statusRefLabel(readNullableString(in))
+          .validityStartDate(readNullableDate(in))
+          .validityEndDate(readNullableDate(in))
+          .build());
+    }
+    final int railPassCount = in.readInt();
+    if (railPassCount >= 0) {
+      final List<RailPass> railPasses = new ArrayList<>(railPassCount);
+      for (int i = 0; i < railPassCount; i++) {
+        final RailPass.RailPassBuilder railPass = RailPass.builder()
+            .number(readNullableString(in));
+        final String type = readNullableString(in);
+        railPasses.add(railPass
+            .type(type == null ? null : PassType.valueOf(type))
+            .typeRefLabel(readNullableString(in))
+            .validityStartDate(readNullableDate(in))
+            .validityEndDate(readNullableDate(in))
+            .build());
+      }
+      customer.railPasses(railPasses);
+    }
+    return customer.build();
+  }
+
+  private static void writeNullable(String value, DataOutput out) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static void writeNullable(LocalDate value, DataOutput out) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value.toEpochDay());
+    }
+  }
+
+  private static String readNullableString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static LocalDate readNullableDate(DataInput in) throws IOException {
+    return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+  }
+}
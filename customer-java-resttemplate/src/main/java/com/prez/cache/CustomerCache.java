@@ -0,0 +1,123 @@
+package com.prez.cache;
+
+import com.prez.model.Customer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Component;
+
+/**
+ * One key per customer holding the serialized customer: a hit is a single GET ( plus a pipelined TTL when there is a
+ * soft time-to-live ) and a save a single SET EX. The Redis repository it replaces stored a hash per customer and
+ * maintained the "customer" keyspace set and a phantom key on every save.
+ * <p>
+ * Keys are prefixed with "Customer:", not "customer:" as the Redis repository did, so that an instance reading the
+ * old hashes and one reading the new values do not step on each other while both versions are deployed.
+ * See {@link LegacyCustomerKeysCleaner} to get rid of the old keys.
+ */
+@Component
+public class CustomerCache implements CustomerCacheRepository {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CustomerCache.class);
+  static final String CUSTOMER_KEY_SPACE = Customer.class.getSimpleName() + ":";
+
+  private final Duration timeToLive;
+  // an entry whose remaining time-to-live is below this threshold (in seconds) is older than the soft time-to-live
+  private final long staleBelowSeconds;
+  private final RedisOperations<String, Customer> redisTemplate;
+  private final ValueOperations<String, Customer> valueOps;
+
+  public CustomerCache(@Value("${spring.redis.time-to-live.customer}") Long ttlSeconds,
+                       @Value("${spring.redis.time-to-live.customer-soft:${spring.redis.time-to-live.customer}}")
+                           Long softTtlSeconds,
+                       RedisOperations<String, Customer> customerInfoRedisTemplate) {
+    this.timeToLive = Duration.ofSeconds(ttlSeconds);
+    this.staleBelowSeconds = Math.max(ttlSeconds - softTtlSeconds, 0);
+    this.redisTemplate = customerInfoRedisTemplate;
+    this.valueOps = customerInfoRedisTemplate.opsForValue();
+  }
+
+  @Override
+  public Customer save(Customer entity) {
+    LOGGER.debug("Saving in cache customer='{}'", entity);
+    valueOps.set(CUSTOMER_KEY_SPACE + entity.getCustomerId(), entity, timeToLive);
+    return entity;
+  }
+
+  @Override
+  public void saveAll(Collection<Customer> entities) {
+    LOGGER.debug("Saving in cache {} customers", entities.size());
+    // SET EX pipelined: a single round trip
+    redisTemplate.executePipelined(new SessionCallback<Object>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+        final ValueOperations<String, Customer> customerValueOps =
+            ((RedisOperations<String, Customer>) operations).opsForValue();
+        entities.forEach(entity ->
+            customerValueOps.set(CUSTOMER_KEY_SPACE + entity.getCustomerId(), entity, timeToLive));
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public Optional<Customer> findById(String id) {
+    LOGGER.debug("Looking for customer in cache for id='{}'", id);
+    try {
+      return Optional.ofNullable(valueOps.get(CUSTOMER_KEY_SPACE + id));
+    } catch (SerializationException e) {
+      return unreadable(id, e);
+    }
+  }
+
+  @Override
+  public Optional<CustomerCacheEntry> findEntryById(String id) {
+    if (staleBelowSeconds == 0) {
+      // soft time-to-live not shorter than the hard one: entries never get stale, no need to ask for their TTL
+      return findById(id).map(customer -> new CustomerCacheEntry(customer, false));
+    }
+    LOGGER.debug("Looking for customer and its time-to-live in cache for id='{}'", id);
+    final String key = CUSTOMER_KEY_SPACE + id;
+    final List<Object> replies;
+    try {
+      // GET and TTL pipelined: a single round trip
+      replies = redisTemplate.executePipelined(new SessionCallback<Object>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+          final RedisOperations<String, Customer> customerOperations = (RedisOperations<String, Customer>) operations;
+          customerOperations.opsForValue().get(key);
+          customerOperations.getExpire(key);
+          return null;
+        }
+      });
+    } catch (SerializationException e) {
+      return unreadable(id, e);
+    }
+    final Customer customer = (Customer) replies.get(0);
+    if (customer == null) {
+      return Optional.empty();
+    }
+    final Long remainingSeconds = (Long) replies.get(1);
+    return Optional.of(new CustomerCacheEntry(customer,
+        remainingSeconds == null || remainingSeconds < staleBelowSeconds));
+  }
+
+  /**
+   * An entry written in a format this version cannot read is just treated as missing, it will be overwritten.
+   */
+  private static <T> Optional<T> unreadable(String id, SerializationException e) {
+    LOGGER.warn("Unreadable customer in cache for id='{}', ignoring it", id, e);
+    return Optional.empty();
+  }
+}
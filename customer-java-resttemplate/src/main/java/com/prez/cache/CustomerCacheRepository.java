@@ -1,10 +1,46 @@
 package com.prez.cache;
 
 import com.prez.model.Customer;
-import org.springframework.data.repository.CrudRepository;
+import java.util.Collection;
+import java.util.Optional;
 
-public interface CustomerCacheRepository extends CrudRepository<Customer, String> {
+/**
+ * Customers stored as a single serialized value per key, written with one SET EX and read with one GET,
+ * as in the reactive variants.
+ */
+public interface CustomerCacheRepository {
+  /**
+   * Saves a given entity, with the customer time-to-live.
+   *
+   * @param entity must not be null.
+   * @return the saved entity.
+   * @throws IllegalArgumentException in case the given `entity` is null.
+   */
+  Customer save(Customer entity);
 
+  /**
+   * Saves the given entities, with the customer time-to-live, in a single round trip.
+   *
+   * @param entities must not be null.
+   */
+  void saveAll(Collection<Customer> entities);
 
-}
+  /**
+   * Retrieves an entity by its id.
+   *
+   * @param id must not be null.
+   * @return the entity with the given id or Optional.empty() if none found.
+   * @throws IllegalArgumentException in case the given `id` is null.
+   */
+  Optional<Customer> findById(String id);
+
+  /**
+   * Retrieves an entity by its id, telling whether it is past its soft time-to-live.
+   *
+   * @param id must not be null.
+   * @return the entry with the given id or Optional.empty() if none found.
+   * @throws IllegalArgumentException in case the given `id` is null.
+   */
+  Optional<CustomerCacheEntry> findEntryById(String id);
 
+}
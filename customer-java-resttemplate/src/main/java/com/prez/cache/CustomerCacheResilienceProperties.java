@@ -0,0 +1,32 @@
+package com.prez.cache;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Latency budget and circuit breaker of the Redis calls, see ResilientCustomerCache.
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "customer.cache.resilience")
+public class CustomerCacheResilienceProperties {
+
+  // past this delay a read is a miss, a write is given up
+  private Duration readBudget = Duration.ofMillis(50);
+  private Duration writeBudget = Duration.ofMillis(200);
+  private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+  @Setter
+  @Getter
+  public static class CircuitBreaker {
+
+    // percentage of calls past their budget or failed, among the last sliding-window-size ones, opening the circuit
+    private float failureRateThreshold = 50;
+    private int slidingWindowSize = 20;
+    private int minimumNumberOfCalls = 10;
+    private Duration waitDurationInOpenState = Duration.ofSeconds(5);
+    private int permittedNumberOfCallsInHalfOpenState = 3;
+  }
+}
@@ -0,0 +1,64 @@
+package com.prez.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.prez.model.Customer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caffeine cache in front of Redis, its time-to-live capped by the Redis one, and a stale copy, see {@link #getStale}.
+ * Stats under the "customer.local" and "customer.stale" cache names.
+ */
+@Component
+public class CustomerLocalCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CustomerLocalCache.class);
+  static final String CACHE_NAME = "customer.local";
+  static final String STALE_CACHE_NAME = "customer.stale";
+
+  private final Cache<String, Customer> cache;
+  private final Cache<String, Customer> staleCache;
+
+  public CustomerLocalCache(@Value("${customer.cache.local.maximum-size:10000}") Long maximumSize,
+                            @Value("${customer.cache.local.time-to-live:30}") Long ttlSeconds,
+                            @Value("${spring.redis.time-to-live.customer}") Long redisTtlSeconds,
+                            @Value("${customer.cache.local.stale-time-to-live:3600}") Long staleTtlSeconds,
+                            MeterRegistry meterRegistry) {
+    final Duration timeToLive = Duration.ofSeconds(Math.min(ttlSeconds, redisTtlSeconds));
+    LOGGER.debug("Local customer cache with maximumSize={} and timeToLive={}", maximumSize, timeToLive);
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    this.staleCache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(Duration.ofSeconds(staleTtlSeconds))
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, staleCache, STALE_CACHE_NAME);
+  }
+
+  public Customer getIfPresent(String id) {
+    return cache.getIfPresent(id);
+  }
+
+  /**
+   * @return the customer last put, even past the time-to-live: to be served only when it cannot be fetched again
+   */
+  public Customer getStale(String id) {
+    return staleCache.getIfPresent(id);
+  }
+
+  public void put(Customer customer) {
+    cache.put(customer.getCustomerId(), customer);
+    staleCache.put(customer.getCustomerId(), customer);
+  }
+}
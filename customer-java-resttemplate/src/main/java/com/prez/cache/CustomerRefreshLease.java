@@ -0,0 +1,171 @@
+package com.prez.cache;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.prez.lib.limit.LatencyBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+/**
+ * Lease, in Redis, on the customer web service call for a customer: when several instances miss the same customer at
+ * once, only the one holding the lease calls the customer web service, the others wait a little for it to save the
+ * customer in Redis, see {@link #awaitRefreshed}.
+ * <p>
+ * The lease is a "CustomerRefreshLease:&lt;id&gt;" key set with SET NX PX to a token of its owner, and released by a
+ * script deleting it only while it still holds this token: an owner releasing its lease after it expired does not
+ * release the lease of another one.
+ * Disabled, or should Redis fail or be slow ( the calls go through the Redis latency budget, see LatencyBudget ), every
+ * lease is acquired: each instance calls the customer web service as without lease.
+ * Acquisitions are counted in Micrometer under "refresh.lease.acquisitions", the waits are timed under
+ * "refresh.lease.wait".
+ */
+public class CustomerRefreshLease {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CustomerRefreshLease.class);
+  static final String LEASE_KEY_SPACE = "CustomerRefreshLease:";
+  private static final String NAME = "customer";
+  private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+  private final boolean enabled;
+  private final Duration leaseTime;
+  private final Duration maxWait;
+  private final Duration pollInterval;
+  private final StringRedisTemplate redisTemplate;
+  private final LatencyBudget.Operation acquires;
+  private final LatencyBudget.Operation releases;
+  private final LatencyBudget.Operation gets;
+  private final MeterRegistry meterRegistry;
+  private final Counter acquired;
+  private final Counter contended;
+  private final Counter unavailable;
+
+  public CustomerRefreshLease(CustomerRefreshLeaseProperties properties, StringRedisTemplate redisTemplate,
+                              LatencyBudget redisLatencyBudget, MeterRegistry meterRegistry) {
+    this.enabled = properties.isEnabled();
+    this.leaseTime = properties.getLeaseTime();
+    this.maxWait = properties.getMaxWait();
+    this.pollInterval = properties.getPollInterval();
+    this.redisTemplate = redisTemplate;
+    this.acquires = redisLatencyBudget.operation("customer.lease.acquire");
+    this.releases = redisLatencyBudget.operation("customer.lease.release");
+    this.gets = redisLatencyBudget.operation("customer.lease.get");
+    this.meterRegistry = meterRegistry;
+    this.acquired = acquisitions("acquired", meterRegistry);
+    this.contended = acquisitions("contended", meterRegistry);
+    this.unavailable = acquisitions("unavailable", meterRegistry);
+  }
+
+  private static Counter acquisitions(String result, MeterRegistry meterRegistry) {
+    return Counter.builder("refresh.lease.acquisitions").tag("name", NAME).tag("result", result)
+        .description("Refresh lease acquisitions: acquired, held by another caller or Redis unavailable")
+        .register(meterRegistry);
+  }
+
+  /**
+   * @return the lease, not acquired when another caller, on this instance or another one, holds it
+   */
+  public Lease tryAcquire(String customerId) {
+    if (!enabled) {
+      return Lease.UNGUARDED;
+    }
+    final String key = LEASE_KEY_SPACE + customerId;
+    final String token = UUID.randomUUID().toString();
+    // SET NX PX, on the request path as the reads
+    final Boolean set = acquires.read(
+        () -> Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, token, leaseTime)), null);
+    if (set == null) {
+      unavailable.increment();
+      return Lease.UNGUARDED;
+    }
+    if (!set) {
+      LOGGER.debug("Refresh lease of customer {} held by another caller", customerId);
+      contended.increment();
+      return Lease.CONTENDED;
+    }
+    acquired.increment();
+    return new Lease(true, () -> releases.write(() -> redisTemplate.execute(RELEASE, List.of(key), token)));
+  }
+
+  /**
+   * Waits, max-wait at most, for the caller holding the lease to save the customer in Redis, reading it with the given
+   * read every poll-interval.
+   *
+   * @return the customer, empty when the lease is released or expired without the customer being saved, or when
+   * max-wait is over
+   */
+  public <T> Optional<T> awaitRefreshed(String customerId, Supplier<Optional<T>> read) {
+    final String key = LEASE_KEY_SPACE + customerId;
+    final long start = System.nanoTime();
+    String result = "timeout";
+    try {
+      while (System.nanoTime() - start < maxWait.toNanos()) {
+        Thread.sleep(pollInterval.toMillis());
+        final Optional<T> refreshed = read.get();
+        if (refreshed.isPresent()) {
+          result = "refreshed";
+          return refreshed;
+        }
+        if (!isHeld(key)) {
+          result = "released";
+          return Optional.empty();
+        }
+      }
+      LOGGER.debug("Customer {} not refreshed by the holder of its lease within {}ms", customerId, maxWait.toMillis());
+      return Optional.empty();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result = "interrupted";
+      return Optional.empty();
+    } finally {
+      Timer.builder("refresh.lease.wait").tag("name", NAME).tag("result", result)
+          .description("Waits for the customer refreshed by the holder of its lease")
+          .register(meterRegistry)
+          .record(System.nanoTime() - start, NANOSECONDS);
+    }
+  }
+
+  private boolean isHeld(String key) {
+    return gets.read(() -> Boolean.TRUE.equals(redisTemplate.hasKey(key)), false);
+  }
+
+  public static class Lease {
+
+    // lease disabled or Redis unavailable: nothing to release
+    static final Lease UNGUARDED = new Lease(true, () -> { });
+    static final Lease CONTENDED = new Lease(false, () -> { });
+
+    private final boolean acquired;
+    private final Runnable release;
+
+    Lease(boolean acquired, Runnable release) {
+      this.acquired = acquired;
+      this.release = release;
+    }
+
+    /**
+     * @return false when another caller holds the lease
+     */
+    public boolean isAcquired() {
+      return acquired;
+    }
+
+    /**
+     * Releases the lease before it expires, so that the callers waiting for the customer stop waiting.
+     */
+    public void release() {
+      release.run();
+    }
+  }
+}
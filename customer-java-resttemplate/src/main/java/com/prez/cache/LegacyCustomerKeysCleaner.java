@@ -0,0 +1,83 @@
+package com.prez.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.prez.model.Customer;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes, at startup, the keys written by the Redis repository {@link CustomerCache} replaced: the "customer:&lt;id&gt;"
+ * hashes with their phantom copies, and the "customer" set of every id ever saved, which never expires.
+ * <p>
+ * Migration path: deploy the new version, the old entries are just not read anymore ( a customer missing under the
+ * new key costs one call to the customer web service ) and the hashes expire by themselves. Once no instance of the
+ * old version is left, start one instance with customer.cache.legacy-keys-cleanup.enabled=true to free the memory
+ * right away, the index set included. Keys are scanned and unlinked in batches, Redis is never blocked.
+ */
+@Component
+@ConditionalOnProperty(name = "customer.cache.legacy-keys-cleanup.enabled", havingValue = "true")
+public class LegacyCustomerKeysCleaner implements ApplicationRunner {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LegacyCustomerKeysCleaner.class);
+  static final String LEGACY_KEY_SPACE = "customer";
+
+  private final int batchSize;
+  private final RedisOperations<String, Customer> redisTemplate;
+
+  public LegacyCustomerKeysCleaner(@Value("${customer.cache.legacy-keys-cleanup.batch-size:500}") int batchSize,
+                                   RedisOperations<String, Customer> customerInfoRedisTemplate) {
+    this.batchSize = batchSize;
+    this.redisTemplate = customerInfoRedisTemplate;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    LOGGER.info("Removing the legacy customer keys from Redis");
+    final long removed = clean();
+    LOGGER.info("Removed {} legacy customer keys from Redis", removed);
+  }
+
+  /**
+   * @return the number of keys removed
+   */
+  long clean() {
+    final Long removed = redisTemplate.execute((RedisCallback<Long>) connection -> {
+      long count = 0;
+      final List<byte[]> batch = new ArrayList<>(batchSize);
+      final ScanOptions legacyKeys = ScanOptions.scanOptions().match(LEGACY_KEY_SPACE + ":*").count(batchSize).build();
+      try (Cursor<byte[]> keys = connection.scan(legacyKeys)) {
+        while (keys.hasNext()) {
+          batch.add(keys.next());
+          if (batch.size() == batchSize) {
+            count += unlink(connection, batch);
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        count += unlink(connection, batch);
+      }
+      batch.add(LEGACY_KEY_SPACE.getBytes(UTF_8));
+      return count + unlink(connection, batch);
+    });
+    return removed == null ? 0 : removed;
+  }
+
+  private static long unlink(RedisConnection connection, List<byte[]> keys) {
+    final Long unlinked = connection.unlink(keys.toArray(new byte[0][]));
+    keys.clear();
+    return unlinked == null ? 0 : unlinked;
+  }
+}
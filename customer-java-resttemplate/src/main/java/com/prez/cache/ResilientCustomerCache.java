@@ -0,0 +1,45 @@
+package com.prez.cache;
+
+import com.prez.lib.limit.LatencyBudget;
+import com.prez.model.Customer;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Decorates the customer cache with the Redis latency budget, see LatencyBudget: a read past its budget, failed or
+ * refused by the Redis circuit breaker is a miss, so that the customer web service is called instead of failing the
+ * request, and such a write is given up, the customer being saved again on the next miss.
+ */
+public class ResilientCustomerCache implements CustomerCacheRepository {
+
+  private final CustomerCacheRepository delegate;
+  private final LatencyBudget.Operation gets;
+  private final LatencyBudget.Operation puts;
+
+  public ResilientCustomerCache(CustomerCacheRepository delegate, LatencyBudget budget) {
+    this.delegate = delegate;
+    this.gets = budget.operation("customer.get");
+    this.puts = budget.operation("customer.put");
+  }
+
+  @Override
+  public Customer save(Customer entity) {
+    puts.write(() -> delegate.save(entity));
+    return entity;
+  }
+
+  @Override
+  public void saveAll(Collection<Customer> entities) {
+    puts.write(() -> delegate.saveAll(entities));
+  }
+
+  @Override
+  public Optional<Customer> findById(String id) {
+    return gets.read(() -> delegate.findById(id), Optional.empty());
+  }
+
+  @Override
+  public Optional<CustomerCacheEntry> findEntryById(String id) {
+    return gets.read(() -> delegate.findEntryById(id), Optional.empty());
+  }
+}
@@ -0,0 +1,137 @@
+package com.prez.config;
+
+import com.prez.cache.CustomerCache;
+import com.prez.cache.CustomerCacheRepository;
+import com.prez.cache.CustomerCacheResilienceProperties;
+import com.prez.cache.CustomerRefreshLease;
+import com.prez.cache.CustomerRefreshLeaseProperties;
+import com.prez.cache.ResilientCustomerCache;
+import com.prez.lib.limit.LatencyBudget;
+import com.prez.lib.writebehind.WriteBehindQueue;
+import com.prez.model.Customer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.sleuth.instrument.async.TraceableExecutorService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * The customer cache calls go through a latency budget and a circuit breaker, see ResilientCustomerCache, shared with
+ * CustomerNotFoundCache and CustomerRefreshLease: a slow or down Redis turns into misses instead of failed requests.
+ * The circuit breaker is exported as resilience4j.* metrics, its state transitions are counted too, the calls as
+ * budget.calls metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({CustomerCacheResilienceProperties.class, CustomerRefreshLeaseProperties.class})
+public class CacheConfig {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheConfig.class);
+  private static final String REDIS = "redis";
+
+  /*
+   * As many threads as Tomcat workers, each one waiting for one Redis call at a time: a call refused once every thread
+   * is busy, with calls given up still waiting for Lettuce to time out, is a cache miss or a dropped write.
+   * Virtual threads, unbounded as the requests, when customer.virtual-threads.enabled, see VirtualThreadsConfig.
+   * Not a bean, an Executor bean would replace the auto-configured applicationTaskExecutor of StaleCustomerRefresher.
+   */
+  private final ExecutorService redisExecutor;
+
+  public CacheConfig(BeanFactory beanFactory, @Value("${server.tomcat.threads.max:200}") int maxRequestThreads,
+                     @Value("${customer.virtual-threads.enabled:false}") boolean virtualThreads) {
+    final ExecutorService executor;
+    if (virtualThreads) {
+      executor = VirtualThreadsConfig.newVirtualThreadPerTaskExecutor();
+    } else {
+      final AtomicInteger threads = new AtomicInteger();
+      executor = new ThreadPoolExecutor(0, maxRequestThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+          runnable -> {
+            final Thread thread = new Thread(runnable, "redis-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+    // so that the calls keep the trace of the request
+    this.redisExecutor = new TraceableExecutorService(beanFactory, executor);
+  }
+
+  @PreDestroy
+  public void shutdownRedisExecutor() {
+    redisExecutor.shutdown();
+  }
+
+  @Bean
+  public CircuitBreaker redisCircuitBreaker(CustomerCacheResilienceProperties properties, MeterRegistry meterRegistry) {
+    final CustomerCacheResilienceProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+    final CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+        .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+        .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+        .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+        .waitDurationInOpenState(circuitBreaker.getWaitDurationInOpenState())
+        .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState())
+        .build());
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+    final CircuitBreaker redisCircuitBreaker = registry.circuitBreaker(REDIS);
+    redisCircuitBreaker.getEventPublisher().onStateTransition(event -> {
+      LOGGER.warn("Redis circuit breaker {}", event.getStateTransition());
+      Counter.builder("redis.circuitbreaker.transitions")
+          .description("Number of state transitions of the Redis circuit breaker")
+          .tag("from", event.getStateTransition().getFromState().name())
+          .tag("to", event.getStateTransition().getToState().name())
+          .register(meterRegistry)
+          .increment();
+    });
+    return redisCircuitBreaker;
+  }
+
+  @Bean
+  public LatencyBudget redisLatencyBudget(CustomerCacheResilienceProperties properties,
+                                          @Qualifier("redisCircuitBreaker") CircuitBreaker redisCircuitBreaker,
+                                          MeterRegistry meterRegistry) {
+    return new LatencyBudget(REDIS, properties.getReadBudget(), properties.getWriteBudget(), redisCircuitBreaker,
+        redisExecutor, meterRegistry);
+  }
+
+  @Bean
+  @Primary
+  public CustomerCacheRepository resilientCustomerCache(CustomerCache customerCache, LatencyBudget redisLatencyBudget) {
+    return new ResilientCustomerCache(customerCache, redisLatencyBudget);
+  }
+
+  @Bean
+  public CustomerRefreshLease customerRefreshLease(CustomerRefreshLeaseProperties properties,
+                                                   StringRedisTemplate redisTemplate, LatencyBudget redisLatencyBudget,
+                                                   MeterRegistry meterRegistry) {
+    return new CustomerRefreshLease(properties, redisTemplate, redisLatencyBudget, meterRegistry);
+  }
+
+  // drained on the application task executor, as StaleCustomerRefresher
+  @Bean
+  public WriteBehindQueue<String, Customer> customerCacheWriteBehind(
+      CustomerCacheRepository customerCache,
+      @Value("${customer.cache.write-behind.capacity:10000}") int capacity,
+      @Value("${customer.cache.write-behind.batch-size:100}") int batchSize,
+      @Qualifier("applicationTaskExecutor") TaskExecutor executor,
+      MeterRegistry meterRegistry) {
+    return new WriteBehindQueue<>("customer", capacity, batchSize, Customer::getCustomerId, customerCache::saveAll,
+        executor, meterRegistry);
+  }
+}
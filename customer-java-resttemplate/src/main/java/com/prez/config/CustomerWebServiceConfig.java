@@ -5,12 +5,19 @@ import com.prez.interceptors.JsonHeadersInterceptor;
 import com.prez.lib.tracing.ResponseMarkerFilter;
 import com.prez.lib.tracing.SpanCustomizationWebClientFilter;
 import com.prez.ws.CustomerWSClient;
+import com.prez.ws.CustomerWSHttpProperties;
 import com.prez.ws.CustomerWSProperties;
 import com.prez.ws.handler.CustomerErrorHandler;
 import com.prez.ws.handler.PlainTextErrorHandler;
 import com.prez.ws.handler.SpanCustomizationWebClientErrorHandler;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.metrics.AutoTimer;
@@ -19,7 +26,9 @@ import org.springframework.boot.actuate.metrics.web.client.RestTemplateExchangeT
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestOperations;
 import org.springframework.web.client.RestTemplate;
@@ -28,8 +37,10 @@ import org.springframework.web.util.DefaultUriBuilderFactory;
 import java.util.ArrayList;
 import java.util.List;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 @Configuration
-@EnableConfigurationProperties(CustomerWSProperties.class)
+@EnableConfigurationProperties({CustomerWSProperties.class, CustomerWSHttpProperties.class})
 public class CustomerWebServiceConfig {
 
     private final SpanCustomizer spanCustomizer;
@@ -54,22 +65,52 @@ public class CustomerWebServiceConfig {
         return new CustomerWSClient(customerSourceProperties, customerRestTemplate);
     }
 
+    /**
+     * Shared by both rest templates, which call the same host: a single pool, bounded, with timeouts and idle
+     * connections evicted in background, instead of a new HttpURLConnection (and often a new TCP handshake) per call.
+     */
+    @Bean(name = "customerWSHttpClient", destroyMethod = "close")
+    public CloseableHttpClient customerWSHttpClient(CustomerWSHttpProperties http) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(http.getMaxLifeTime().toMillis(), MILLISECONDS);
+        connectionManager.setMaxTotal(http.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(http.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity((int) http.getValidateAfterInactivity().toMillis());
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "customer-ws").bindTo(meterRegistry);
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) http.getConnectTimeout().toMillis())
+                        .setSocketTimeout((int) http.getReadTimeout().toMillis())
+                        .setConnectionRequestTimeout((int) http.getAcquireTimeout().toMillis())
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(http.getMaxIdleTime().toMillis(), MILLISECONDS)
+                .build();
+    }
+
     @Bean(name = "customerRestTemplate")
-    public RestOperations customerRestTemplate(CustomerWSProperties webServiceProperties) {
-        return createRestTemplate("CustomerWS", webServiceProperties, new CustomerErrorHandler());
+    public RestOperations customerRestTemplate(CustomerWSProperties webServiceProperties,
+                                               @Qualifier("customerWSHttpClient") HttpClient customerWSHttpClient) {
+        return createRestTemplate("CustomerWS", webServiceProperties,
+                new HttpComponentsClientHttpRequestFactory(customerWSHttpClient), new CustomerErrorHandler());
     }
 
     @Bean(name = "customerPreferencesRestTemplate")
-    public RestOperations customerPreferencesRestTemplate(CustomerWSProperties webServiceProperties) {
+    public RestOperations customerPreferencesRestTemplate(CustomerWSProperties webServiceProperties,
+                                                          @Qualifier("customerWSHttpClient") HttpClient customerWSHttpClient) {
         String name = "customerPreferencesWS";
-        return createRestTemplate(name, webServiceProperties, defaultErrorHandler(name));
+        return createRestTemplate(name, webServiceProperties,
+                new HttpComponentsClientHttpRequestFactory(customerWSHttpClient), defaultErrorHandler(name));
     }
 
     private RestTemplate createRestTemplate(String name,
                                             CustomerWSProperties customerWSProperties,
+                                            ClientHttpRequestFactory requestFactory,
                                             ResponseErrorHandler errorHandler) {
 
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
         restTemplate.setUriTemplateHandler(new DefaultUriBuilderFactory(customerWSProperties.getUrl()));
         restTemplate.setInterceptors(defaultInterceptors(name));
         restTemplate.setErrorHandler(new SpanCustomizationWebClientErrorHandler(name, errorHandler, spanCustomizer));
@@ -1,8 +1,11 @@
 package com.prez.config;
 
 import com.prez.lib.health.AcceptableMeanIndicator;
+import com.prez.lib.health.CircuitBreakerHealthIndicator;
 import com.prez.lib.health.ExternalServiceHealthIndicator;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.micrometer.core.instrument.DistributionSummary;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.context.annotation.Bean;
@@ -23,5 +26,18 @@ public class HealthCheckConfig {
     return new ExternalServiceHealthIndicator("customer source", url);
   }
 
+  @Bean
+  HealthIndicator customerSourceCircuitBreakerHealthIndicator(
+      @Qualifier("customerWSCircuitBreaker") CircuitBreaker customerWSCircuitBreaker) {
+    return new CircuitBreakerHealthIndicator(customerWSCircuitBreaker);
+  }
+
+  // Redis, stopped being called while its circuit breaker is open
+  @Bean
+  HealthIndicator redisCircuitBreakerHealthIndicator(
+      @Qualifier("redisCircuitBreaker") CircuitBreaker redisCircuitBreaker) {
+    return new CircuitBreakerHealthIndicator(redisCircuitBreaker);
+  }
+
   // Mongo & Redis have out-of-the-box indicators available
 }
\ No newline at end of file
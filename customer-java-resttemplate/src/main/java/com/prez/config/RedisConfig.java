@@ -1,41 +1,45 @@
 package com.prez.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prez.cache.CustomerBinaryRedisSerializer;
 import com.prez.model.Customer;
-import java.util.Collections;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.convert.KeyspaceConfiguration;
-import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
-@EnableRedisRepositories(basePackages = "com.prez.cache", keyspaceConfiguration = RedisConfig.CustomerKeyspaceConfiguration.class)
 public class RedisConfig {
 
-  //ok this value *HAS TO STAY HERE* because of the way the KeyspaceConfiguration is instantiated, sorry guys and gals
-  @Value("${spring.redis.time-to-live.customer}")
-  private long timeToLiveForCustomer;
-
   @Bean
-  public RedisTemplate<String, Customer> redisTemplate(LettuceConnectionFactory lettuceConnectionFactory) {
+  public RedisTemplate<String, Customer> customerInfoRedisTemplate(ObjectMapper objectMapper,
+                                                                   LettuceConnectionFactory factory,
+                                                                   @Value("${spring.redis.serializer.customer:binary}")
+                                                                       String customerSerializer) {
+    Jackson2JsonRedisSerializer<Customer> jsonSerializer = new Jackson2JsonRedisSerializer<>(Customer.class);
+    jsonSerializer.setObjectMapper(objectMapper);
+
     RedisTemplate<String, Customer> template = new RedisTemplate<>();
-    template.setConnectionFactory(lettuceConnectionFactory);
+    template.setConnectionFactory(factory);
+    template.setKeySerializer(new StringRedisSerializer());
+    template.setValueSerializer(customerValueSerializer(customerSerializer, jsonSerializer));
     return template;
   }
 
-  public class CustomerKeyspaceConfiguration extends KeyspaceConfiguration {
-
-    @Override
-    protected Iterable<KeyspaceSettings> initialConfiguration() {
-      return Collections.singleton(getCustomerKeyspaceSettings());
-    }
-
-    private KeyspaceSettings getCustomerKeyspaceSettings() {
-      KeyspaceSettings keyspaceSettings = new KeyspaceSettings(Customer.class, "customer");
-      keyspaceSettings.setTimeToLive(timeToLiveForCustomer);
-      return keyspaceSettings;
+  private static RedisSerializer<Customer> customerValueSerializer(String customerSerializer,
+                                                                   RedisSerializer<Customer> jsonSerializer) {
+    switch (customerSerializer) {
+      case "binary":
+        return new CustomerBinaryRedisSerializer(jsonSerializer);
+      case "json":
+        return jsonSerializer;
+      default:
+        throw new IllegalArgumentException("Unknown customer serializer '" + customerSerializer
+            + "', expecting binary or json");
     }
   }
 }
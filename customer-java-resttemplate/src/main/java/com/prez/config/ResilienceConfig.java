@@ -0,0 +1,114 @@
+package com.prez.config;
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter;
+import com.prez.ws.CustomerClient;
+import com.prez.ws.CustomerWSClient;
+import com.prez.ws.CustomerWSLimitProperties;
+import com.prez.ws.CustomerWSResilienceProperties;
+import com.prez.ws.ResilientCustomerClient;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.sleuth.instrument.async.TraceableExecutorService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * The customer web service calls go through a circuit breaker, an adaptive concurrency limit and a deadline, see
+ * ResilientCustomerClient. The circuit breaker is exported as resilience4j.* metrics, its state transitions are counted
+ * too, the limit as concurrency.limit.* metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({CustomerWSResilienceProperties.class, CustomerWSLimitProperties.class})
+public class ResilienceConfig {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResilienceConfig.class);
+  private static final String CUSTOMER_WS = "customerWS";
+
+  /*
+   * Unbounded, but every task is counted by the limit: no more threads than customer.ws.limit.max-limit.
+   * Virtual threads when customer.virtual-threads.enabled, see VirtualThreadsConfig.
+   * Not a bean, an Executor bean would replace the auto-configured applicationTaskExecutor of StaleCustomerRefresher.
+   */
+  private final ExecutorService customerWSExecutor;
+
+  public ResilienceConfig(BeanFactory beanFactory,
+                          @Value("${customer.virtual-threads.enabled:false}") boolean virtualThreads) {
+    final ExecutorService executor;
+    if (virtualThreads) {
+      executor = VirtualThreadsConfig.newVirtualThreadPerTaskExecutor();
+    } else {
+      final AtomicInteger threads = new AtomicInteger();
+      executor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "customer-ws-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    // so that the calls keep the trace of the request
+    this.customerWSExecutor = new TraceableExecutorService(beanFactory, executor);
+  }
+
+  @PreDestroy
+  public void shutdownCustomerWSExecutor() {
+    customerWSExecutor.shutdown();
+  }
+
+  @Bean
+  public CircuitBreaker customerWSCircuitBreaker(CustomerWSResilienceProperties properties,
+                                                 MeterRegistry meterRegistry) {
+    final CustomerWSResilienceProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+    final CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+        .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+        .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+        .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+        .waitDurationInOpenState(circuitBreaker.getWaitDurationInOpenState())
+        .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState())
+        // same failures as the ResponseMarkerFilter ones: a 4xx answer means the web service is up
+        .recordException(ResilientCustomerClient::isFailure)
+        .build());
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+    final CircuitBreaker customerWSCircuitBreaker = registry.circuitBreaker(CUSTOMER_WS);
+    customerWSCircuitBreaker.getEventPublisher().onStateTransition(event -> {
+      LOGGER.warn("Customer web service circuit breaker {}", event.getStateTransition());
+      Counter.builder("customer.webservice.circuitbreaker.transitions")
+          .description("Number of state transitions of the customer web service circuit breaker")
+          .tag("from", event.getStateTransition().getFromState().name())
+          .tag("to", event.getStateTransition().getToState().name())
+          .register(meterRegistry)
+          .increment();
+    });
+    return customerWSCircuitBreaker;
+  }
+
+  @Bean
+  public AdaptiveConcurrencyLimiter customerWSLimiter(CustomerWSLimitProperties limit, MeterRegistry meterRegistry) {
+    return new AdaptiveConcurrencyLimiter("customer-ws", limit.getInitialLimit(), limit.getMinLimit(),
+        limit.getMaxLimit(), limit.getBackoffRatio(), limit.getLatencyTolerance(), meterRegistry);
+  }
+
+  @Bean
+  @Primary
+  public CustomerClient resilientCustomerClient(
+      CustomerWSClient customerWSClient,
+      @Qualifier("customerWSCircuitBreaker") CircuitBreaker customerWSCircuitBreaker,
+      AdaptiveConcurrencyLimiter customerWSLimiter,
+      CustomerWSResilienceProperties properties, MeterRegistry meterRegistry) {
+    return new ResilientCustomerClient(customerWSClient, customerWSCircuitBreaker, customerWSLimiter,
+        customerWSExecutor, properties, meterRegistry);
+  }
+}
@@ -0,0 +1,48 @@
+package com.prez.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/**
+ * Opt-in (customer.virtual-threads.enabled): each request is handled on a new virtual thread instead of a Tomcat
+ * worker, so are the background refreshes of the stale customers, the Redis calls of the latency budget (CacheConfig)
+ * and the customer web service calls of the deadline (ResilienceConfig). The blocking calls to Redis, to the customer
+ * web service and to Mongo then park the virtual thread instead of holding a platform thread.
+ * <p>
+ * Needs a Java 21+ runtime. The application still targets Java 11, hence the executor looked up reflectively.
+ * Run with -Djdk.tracePinnedThreads=short to get the code pinning a virtual thread to its carrier printed.
+ */
+@Configuration
+@ConditionalOnProperty(name = "customer.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+  @Bean
+  public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+    // server.tomcat.threads.* no longer apply, server.tomcat.max-connections still bounds the requests in progress
+    return protocolHandler -> protocolHandler.setExecutor(newVirtualThreadPerTaskExecutor());
+  }
+
+  // replaces the auto-configured pool, used by StaleCustomerRefresher
+  @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+  public TaskExecutor applicationTaskExecutor() {
+    return new TaskExecutorAdapter(newVirtualThreadPerTaskExecutor());
+  }
+
+  static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("customer.virtual-threads.enabled needs a Java 21+ runtime, not "
+          + System.getProperty("java.version"), e);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to create the virtual threads executor", e);
+    }
+  }
+}
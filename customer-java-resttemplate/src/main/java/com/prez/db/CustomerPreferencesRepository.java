@@ -2,8 +2,14 @@ package com.prez.db;
 
 import com.prez.model.CustomerPreferences;
 import java.util.List;
+import java.util.stream.Stream;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 public interface CustomerPreferencesRepository extends MongoRepository<CustomerPreferences, String> {
   List<CustomerPreferences> findByCustomerId(String customerId);
+
+  boolean existsByCustomerId(String customerId);
+
+  // backed by a cursor, the preferences are read from Mongo batch after batch as the stream is consumed
+  Stream<CustomerPreferences> streamByCustomerId(String customerId);
 }
@@ -0,0 +1,42 @@
+package com.prez.lib.health;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Down while the circuit breaker is open (or forced open), unknown while it is half open and tries a few calls.
+ */
+public class CircuitBreakerHealthIndicator implements HealthIndicator {
+
+  private final CircuitBreaker circuitBreaker;
+
+  public CircuitBreakerHealthIndicator(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  @Override
+  public Health health() {
+    final Health.Builder healthStatus = new Health.Builder();
+    switch (circuitBreaker.getState()) {
+      case OPEN:
+      case FORCED_OPEN:
+        healthStatus.down();
+        break;
+      case HALF_OPEN:
+        healthStatus.unknown();
+        break;
+      default:
+        healthStatus.up();
+    }
+    final CircuitBreaker.Metrics metrics = circuitBreaker.getMetrics();
+    return healthStatus
+        .withDetail("name", circuitBreaker.getName())
+        .withDetail("state", circuitBreaker.getState())
+        .withDetail("failureRate", metrics.getFailureRate())
+        .withDetail("failedCalls", metrics.getNumberOfFailedCalls())
+        .withDetail("bufferedCalls", metrics.getNumberOfBufferedCalls())
+        .withDetail("notPermittedCalls", metrics.getNumberOfNotPermittedCalls())
+        .build();
+  }
+}
@@ -0,0 +1,143 @@
+package com.prez.lib.limit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calls a datastore within a latency budget, one for the reads and one for the writes, behind a circuit breaker.
+ * A call past its budget, failed or refused by the circuit breaker just returns the given fallback: a slow datastore
+ * costs its callers the budget at most, a down one nothing at all once the circuit is open.
+ * <p>
+ * The calls past the budget and the failed ones are failures for the circuit breaker, which opens after repeated ones
+ * and lets a few calls through again once its wait duration in open state is over. A call given up keeps its executor
+ * thread until the client times out by itself. A call refused by the executor ( every thread busy ) returns the
+ * fallback right away, without being counted by the circuit breaker: a saturated executor is not a datastore failure.
+ * Outcomes are counted in Micrometer under "budget.calls" with the given name, the operation and the result, see
+ * {@link #operation}.
+ */
+public class LatencyBudget {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LatencyBudget.class);
+
+  private final String name;
+  private final Duration readBudget;
+  private final Duration writeBudget;
+  private final CircuitBreaker circuitBreaker;
+  private final Executor executor;
+  private final MeterRegistry meterRegistry;
+
+  public LatencyBudget(String name, Duration readBudget, Duration writeBudget, CircuitBreaker circuitBreaker,
+                       Executor executor, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.readBudget = readBudget;
+    this.writeBudget = writeBudget;
+    this.circuitBreaker = circuitBreaker;
+    this.executor = executor;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * @param operation tags the calls of the operation, its counters are registered once here: to be kept by the caller
+   */
+  public Operation operation(String operation) {
+    return new Operation(operation);
+  }
+
+  public final class Operation {
+
+    private final String operation;
+    private final Counter success;
+    private final Counter timeout;
+    private final Counter error;
+    private final Counter circuitOpen;
+    private final Counter interrupted;
+    private final Counter rejected;
+
+    private Operation(String operation) {
+      this.operation = operation;
+      this.success = count("success");
+      this.timeout = count("timeout");
+      this.error = count("error");
+      this.circuitOpen = count("circuit-open");
+      this.interrupted = count("interrupted");
+      this.rejected = count("rejected");
+    }
+
+    private Counter count(String result) {
+      return Counter.builder("budget.calls")
+          .description("Calls within a latency budget, by result")
+          .tag("name", name)
+          .tag("operation", operation)
+          .tag("result", result)
+          .register(meterRegistry);
+    }
+
+    /**
+     * @return what the read returned, the fallback when it could not be done within the read budget
+     */
+    public <T> T read(Supplier<T> read, T fallback) {
+      return call(readBudget, read, fallback);
+    }
+
+    /**
+     * @return false when the write could not be done within the write budget
+     */
+    public boolean write(Runnable write) {
+      return call(writeBudget, () -> {
+        write.run();
+        return true;
+      }, false);
+    }
+
+    private <T> T call(Duration budget, Supplier<T> call, T fallback) {
+      if (!circuitBreaker.tryAcquirePermission()) {
+        circuitOpen.increment();
+        return fallback;
+      }
+      final long start = System.nanoTime();
+      final CompletableFuture<T> future;
+      try {
+        future = CompletableFuture.supplyAsync(call, executor);
+      } catch (RejectedExecutionException e) {
+        // made by the caller, the call would wait for the client timeout while the datastore stalls
+        circuitBreaker.releasePermission();
+        LOGGER.debug("{} executor saturated, {} given up", name, operation);
+        rejected.increment();
+        return fallback;
+      }
+      try {
+        final T result = future.get(budget.toNanos(), NANOSECONDS);
+        circuitBreaker.onSuccess(System.nanoTime() - start, NANOSECONDS);
+        success.increment();
+        return result;
+      } catch (TimeoutException e) {
+        circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, e);
+        LOGGER.debug("{} {} over its {}ms budget", name, operation, budget.toMillis());
+        timeout.increment();
+        return fallback;
+      } catch (ExecutionException e) {
+        circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, e.getCause());
+        LOGGER.warn("{} {} failed", name, operation, e.getCause());
+        error.increment();
+        return fallback;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        circuitBreaker.releasePermission();
+        interrupted.increment();
+        return fallback;
+      }
+    }
+  }
+}
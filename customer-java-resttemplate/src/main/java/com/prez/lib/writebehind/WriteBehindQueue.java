@@ -0,0 +1,146 @@
+package com.prez.lib.writebehind;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue of the values to write later, batchSize at most at once, by a single drain run on the given executor.
+ * Past capacity keys, the values of new keys are dropped. Meters under "write-behind" with the given name.
+ */
+public class WriteBehindQueue<K, V> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+  private enum Outcome { QUEUED, COALESCED, DROPPED }
+
+  private final String name;
+  private final int capacity;
+  private final int batchSize;
+  private final Function<V, K> keyOf;
+  private final Consumer<List<V>> writer;
+  private final Executor executor;
+  private final ConcurrentMap<K, V> queued = new ConcurrentHashMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final Counter queuedCounter;
+  private final Counter coalescedCounter;
+  private final Counter droppedCounter;
+  private final Counter writtenCounter;
+  private final Counter failedCounter;
+
+  public WriteBehindQueue(String name, int capacity, int batchSize, Function<V, K> keyOf, Consumer<List<V>> writer,
+                          Executor executor, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.keyOf = keyOf;
+    this.writer = writer;
+    this.executor = executor;
+    this.queuedCounter = counter("queued", meterRegistry);
+    this.coalescedCounter = counter("coalesced", meterRegistry);
+    this.droppedCounter = counter("dropped", meterRegistry);
+    this.writtenCounter = counter("written", meterRegistry);
+    this.failedCounter = counter("failed", meterRegistry);
+    Gauge.builder("write-behind.size", size, AtomicInteger::get).tag("name", name)
+        .description("Values waiting to be written").register(meterRegistry);
+  }
+
+  private Counter counter(String result, MeterRegistry meterRegistry) {
+    return Counter.builder("write-behind.offers").tag("name", name).tag("result", result).register(meterRegistry);
+  }
+
+  /**
+   * @return false if the value is dropped, the queue being full
+   */
+  public boolean offer(V value) {
+    final K key = keyOf.apply(value);
+    final Outcome[] outcome = new Outcome[1];
+    queued.compute(key, (k, previous) -> {
+      if (previous != null) {
+        outcome[0] = Outcome.COALESCED;
+        return value;
+      }
+      if (size.incrementAndGet() > capacity) {
+        size.decrementAndGet();
+        outcome[0] = Outcome.DROPPED;
+        return null;
+      }
+      outcome[0] = Outcome.QUEUED;
+      return value;
+    });
+    switch (outcome[0]) {
+      case COALESCED:
+        coalescedCounter.increment();
+        return true;
+      case DROPPED:
+        LOGGER.debug("Write-behind {} full, dropping key='{}'", name, key);
+        droppedCounter.increment();
+        return false;
+      default:
+        queuedCounter.increment();
+        startDraining();
+        return true;
+    }
+  }
+
+  private void startDraining() {
+    if (!draining.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(this::drain);
+    } catch (RejectedExecutionException e) {
+      // the queued values wait for the next offer
+      draining.set(false);
+      LOGGER.warn("Write-behind {} could not start draining, executor busy", name);
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      final List<V> batch = takeBatch();
+      if (batch.isEmpty()) {
+        draining.set(false);
+        // a value queued after takeBatch and before draining was released would otherwise wait for the next offer
+        if (queued.isEmpty() || !draining.compareAndSet(false, true)) {
+          return;
+        }
+        continue;
+      }
+      try {
+        writer.accept(batch);
+        writtenCounter.increment(batch.size());
+      } catch (RuntimeException e) {
+        LOGGER.warn("Write-behind {} could not write {} values", name, batch.size(), e);
+        failedCounter.increment(batch.size());
+      }
+    }
+  }
+
+  private List<V> takeBatch() {
+    final List<V> batch = new ArrayList<>(Math.min(batchSize, size.get()));
+    final Iterator<K> keys = queued.keySet().iterator();
+    while (batch.size() < batchSize && keys.hasNext()) {
+      final V value = queued.remove(keys.next());
+      if (value != null) {
+        size.decrementAndGet();
+        batch.add(value);
+      }
+    }
+    return batch;
+  }
+}
@@ -12,11 +12,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.NonFinal;
-import org.springframework.data.annotation.Id;
-import org.springframework.data.redis.core.RedisHash;
-import org.springframework.data.redis.core.TimeToLive;
 
-@RedisHash(value = "customer")
 @Data
 @Builder
 @NoArgsConstructor(force = true, access = PRIVATE)
@@ -24,7 +20,6 @@ import org.springframework.data.redis.core.TimeToLive;
 public class Customer implements Serializable {
   @NotBlank
   @NonFinal
-  @Id
   private String customerId;
   private String lastName;
   private String firstName;
@@ -33,6 +28,4 @@ public class Customer implements Serializable {
   private String email;
   private LoyaltyProgram loyaltyProgram;
   private List<RailPass> railPasses = new ArrayList<>();
-  @TimeToLive
-  private Long timeToLive;
 }
@@ -1,15 +1,23 @@
 package com.prez.service;
 
 import com.prez.cache.CustomerCacheRepository;
+import com.prez.cache.CustomerLocalCache;
+import com.prez.cache.CustomerNotFoundCache;
+import com.prez.cache.CustomerRefreshLease;
 import com.prez.db.CustomerPreferencesRepository;
 import com.prez.exception.NotFoundException;
+import com.prez.lib.writebehind.WriteBehindQueue;
 import com.prez.model.Customer;
 import com.prez.model.CustomerPreferences;
 import com.prez.model.SeatPreference;
-import com.prez.ws.CustomerWSClient;
+import com.prez.ws.CustomerClient;
+import com.prez.ws.WebServiceUnavailableException;
+import com.prez.ws.model.GetCustomerWSResponse;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -19,30 +27,128 @@ public class CustomerService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CustomerService.class);
 
-  private final CustomerWSClient customerWebService;
+  private final CustomerClient customerWebService;
   private final CustomerCacheRepository cache;
+  private final CustomerLocalCache localCache;
+  private final CustomerNotFoundCache notFoundCache;
   private final CustomerWSResponseToCustomerMapper mapper;
   private final CustomerPreferencesRepository database;
+  private final StaleCustomerRefresher refresher;
+  private final WriteBehindQueue<String, Customer> cacheWriteBehind;
+  private final CustomerRefreshLease refreshLease;
 
-  public CustomerService(CustomerWSClient customerWebService, CustomerCacheRepository customerCache,
-                         CustomerWSResponseToCustomerMapper mapper, CustomerPreferencesRepository database) {
+  public CustomerService(CustomerClient customerWebService, CustomerCacheRepository customerCache,
+                         CustomerLocalCache localCache, CustomerNotFoundCache notFoundCache,
+                         CustomerWSResponseToCustomerMapper mapper, CustomerPreferencesRepository database,
+                         StaleCustomerRefresher refresher, WriteBehindQueue<String, Customer> cacheWriteBehind,
+                         CustomerRefreshLease refreshLease) {
     this.customerWebService = customerWebService;
     this.cache = customerCache;
+    this.localCache = localCache;
+    this.notFoundCache = notFoundCache;
     this.mapper = mapper;
     this.database = database;
+    this.refresher = refresher;
+    this.cacheWriteBehind = cacheWriteBehind;
+    this.refreshLease = refreshLease;
   }
 
-  /*Historiquement, il y avait un circuit breaker*/
   public Customer getCustomerInfo(String customerId) {
     LOGGER.debug("Getting customer with customerId = {}", customerId);
-    return cache
-        .findById(customerId)
-        .orElseGet(() ->
-            customerWebService.getCustomer(customerId)
-                .map(mapper::toCustomer)
-                .map(cache::save)
-                .orElseThrow(() -> new NotFoundException(customerId, "customer"))
-        );
+    return Optional.ofNullable(localCache.getIfPresent(customerId))
+        .or(() -> findInCache(customerId))
+        .orElseGet(() -> refreshCustomer(customerId));
+  }
+
+  /**
+   * A stale customer ( past the soft time-to-live ) is served right away and refreshed in background,
+   * so that only a customer past the hard time-to-live has to wait for the customer web service.
+   */
+  private Optional<Customer> findInCache(String customerId) {
+    return cache.findEntryById(customerId)
+        .map(entry -> {
+          if (entry.isStale()) {
+            refresher.refresh(customerId, () -> refreshStaleCustomer(customerId));
+          }
+          return putInLocalCache(entry.getCustomer());
+        });
+  }
+
+  /**
+   * Behind the refresh lease, only one instance at a time calls the customer web service for a customer missing from
+   * Redis: the others wait a little for it to save the customer, and call the customer web service themselves only if
+   * it did not.
+   */
+  private Customer refreshCustomer(String customerId) {
+    final CustomerRefreshLease.Lease lease = refreshLease.tryAcquire(customerId);
+    if (!lease.isAcquired()) {
+      final Optional<Customer> refreshed = refreshLease.awaitRefreshed(customerId, () -> cache.findById(customerId));
+      if (refreshed.isPresent()) {
+        return putInLocalCache(refreshed.get());
+      }
+    }
+    return callCustomerWebService(customerId, lease);
+  }
+
+  /**
+   * A stale customer another instance is refreshing is not refreshed again, the stale one is served meanwhile.
+   */
+  private void refreshStaleCustomer(String customerId) {
+    final CustomerRefreshLease.Lease lease = refreshLease.tryAcquire(customerId);
+    if (!lease.isAcquired()) {
+      LOGGER.debug("Customer {} already being refreshed by another instance", customerId);
+      return;
+    }
+    callCustomerWebService(customerId, lease);
+  }
+
+  /**
+   * The lease is kept until it expires once the customer is fetched, so that it is saved behind the response meanwhile,
+   * and released otherwise.
+   */
+  private Customer callCustomerWebService(String customerId, CustomerRefreshLease.Lease lease) {
+    try {
+      return callCustomerWebService(customerId);
+    } catch (RuntimeException e) {
+      lease.release();
+      throw e;
+    }
+  }
+
+  /**
+   * A customer the customer web service did not find lately is not asked for again, one it does not find is
+   * remembered as such.
+   * When the customer web service is not called ( circuit open or too many calls in progress ), the stale copy of the
+   * customer kept in the local cache is served, past the time-to-live, else Redis is read again: another instance may
+   * have cached the customer meanwhile.
+   * The customer is saved in cache behind the response, so that a miss costs a single web service call and no Redis
+   * write.
+   */
+  private Customer callCustomerWebService(String customerId) {
+    if (notFoundCache.isNotFound(customerId)) {
+      throw new NotFoundException(customerId, "customer");
+    }
+    final Optional<GetCustomerWSResponse> wsResponse;
+    try {
+      wsResponse = customerWebService.getCustomer(customerId);
+    } catch (WebServiceUnavailableException e) {
+      LOGGER.warn("Customer web service unavailable for customerId = {}: {}", customerId, e.getMessage());
+      return Optional.ofNullable(localCache.getStale(customerId))
+          .or(() -> cache.findById(customerId).map(this::putInLocalCache))
+          .orElseThrow(() -> e);
+    }
+    if (wsResponse.isEmpty()) {
+      notFoundCache.putNotFound(customerId);
+      throw new NotFoundException(customerId, "customer");
+    }
+    final Customer customer = putInLocalCache(mapper.toCustomer(wsResponse.get()));
+    cacheWriteBehind.offer(customer);
+    return customer;
+  }
+
+  private Customer putInLocalCache(Customer customer) {
+    localCache.put(customer);
+    return customer;
   }
 
   public CustomerPreferences createCustomerPreferences(String customerId, SeatPreference seatPreference,
@@ -69,4 +175,17 @@ public class CustomerService {
     }
     return preferences;
   }
+
+  /**
+   * @return the preferences, read from a Mongo cursor opened by each get of the supplier, as the stream is consumed:
+   * the caller has to close the stream
+   * @throws NotFoundException when the customer has no preferences
+   */
+  public Supplier<Stream<CustomerPreferences>> streamCustomerPreferences(String customerId) {
+    LOGGER.debug("streamCustomerPreferences for customer: \"{}\"", customerId);
+    if (!database.existsByCustomerId(customerId)) {
+      throw new NotFoundException(customerId, "customer");
+    }
+    return () -> database.streamByCustomerId(customerId);
+  }
 }
@@ -1,6 +1,6 @@
 package com.prez.service;
 
-import static java.util.stream.Collectors.toCollection;
+import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import com.prez.model.Customer;
@@ -10,13 +10,19 @@ import com.prez.model.PassType;
 import com.prez.model.RailPass;
 import com.prez.ws.model.GetCustomerWSResponse;
 import com.prez.ws.model.Misc;
+import com.prez.ws.model.NestedValue;
 import com.prez.ws.model.PersonalDetails;
 import com.prez.ws.model.PersonalInformation;
 import com.prez.ws.model.Record;
+import java.text.ParsePosition;
 import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
+import java.time.Month;
+import java.time.Year;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.EnumUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +50,10 @@ public class CustomerWSResponseToCustomerMapper {
 
   private final static String ACTIVE_FIELD_VALUE = "000";
 
+  // lookup tables instead of the exceptions of valueOf
+  private final static Map<String, LoyaltyStatus> LOYALTY_STATUSES = EnumUtils.getEnumMap(LoyaltyStatus.class);
+  private final static Map<String, PassType> PASS_TYPES = EnumUtils.getEnumMap(PassType.class);
+
   private final static Logger logger = LoggerFactory.getLogger(CustomerWSResponseToCustomerMapper.class);
 
   public Customer toCustomer(GetCustomerWSResponse getCustomerWSResponse) {
@@ -67,68 +77,127 @@ public class CustomerWSResponseToCustomerMapper {
 
     final List<Misc> allmisc = getCustomerWSResponse.getMisc();
     if (allmisc != null) {
-
-      // map loyalty programs
-      final List<LoyaltyProgram> loyaltyPrograms = allmisc.stream()
-          .filter(misc -> misc.getType() != null && LOYALTY_PROGRAM_TYPE.equals(misc.getType().getValue()))
-          .map(Misc::getRecords)
-          .flatMap(List::stream)
-          .filter(record -> record.getType() != null && LOYALTY_PROGRAM_TYPE.equals(record.getType().getValue()) &&
-              record.getMap() != null)
-          .map(Record::getMap)
-          // we check that we have the required fields
-          .filter(allFields -> isNotBlank(allFields.get(LOYALTY_NUMBER_FIELD_NAME))
-              && ACTIVE_FIELD_VALUE.equals(allFields.get(LOYALTY_DISABLE_STATUS_FIELD_NAME))
-              && EnumUtils.isValidEnum(LoyaltyStatus.class, allFields.get(LOYALTY_STATUS_FIELD_NAME)))
-          .map(allFields -> LoyaltyProgram.builder()
-              .number(allFields.get(LOYALTY_NUMBER_FIELD_NAME))
-              .status(LoyaltyStatus.valueOf(allFields.get(LOYALTY_STATUS_FIELD_NAME)))
-              .statusRefLabel(allFields.get(LOYALTY_LABEL_FIELD_NAME))
-              .validityStartDate(parseDateOrNull(allFields.get(LOYALTY_VALIDITY_START_FIELD_NAME)))
-              .validityEndDate(parseDateOrNull(allFields.get(LOYALTY_VALIDITY_END_FIELD_NAME)))
-              .build())
-          .collect(toCollection(ArrayList::new));
-      if (loyaltyPrograms.size() == 1) {
-        builder.loyaltyProgram(loyaltyPrograms.get(0));
-      } else if (loyaltyPrograms.size() > 1) { // we log something because it's weird seriously
+      // one pass over the misc, each record is mapped according to the type of its misc
+      LoyaltyProgram loyaltyProgram = null;
+      int loyaltyProgramCount = 0;
+      final List<RailPass> railPasses = new ArrayList<>();
+      for (Misc misc : allmisc) {
+        final String miscType = typeOf(misc.getType());
+        if (LOYALTY_PROGRAM_TYPE.equals(miscType)) {
+          for (Record record : misc.getRecords()) {
+            if (isLoyaltyProgram(record)) {
+              if (loyaltyProgram == null) {
+                loyaltyProgram = toLoyaltyProgram(record.getMap());
+              }
+              loyaltyProgramCount++;
+            }
+          }
+        } else if (RAIL_PASS_TYPE.equals(miscType)) {
+          for (Record record : misc.getRecords()) {
+            if (isRailPass(record)) {
+              railPasses.add(toRailPass(record.getMap()));
+            }
+          }
+        }
+      }
+      if (loyaltyProgramCount > 1) { // we log something because it's weird seriously
         logger.warn("Ok there is something weird with customer id='{}', they has {} loyalty programs",
-            getCustomerWSResponse.getId(), loyaltyPrograms.size());
-        builder.loyaltyProgram(loyaltyPrograms.get(0)); // and we take the first because why not?
+            getCustomerWSResponse.getId(), loyaltyProgramCount);
       }
-
-      // map passes
-      final List<RailPass> railPasses = allmisc.stream()
-          .filter(misc -> misc.getType() != null && RAIL_PASS_TYPE.equals(misc.getType().getValue()))
-          .map(Misc::getRecords)
-          .flatMap(List::stream)
-          .filter(record -> record.getType() != null && RAIL_PASS_TYPE.equals(record.getType().getValue()) &&
-              record.getMap() != null)
-          .map(Record::getMap)
-          .filter(allFields -> isNotBlank(allFields.get(PASS_NUMBER_FIELD_NAME))
-              && ACTIVE_FIELD_VALUE.equals(allFields.get(PASS_ACTIVE_STATUS_FIELD_NAME))
-              && EnumUtils.isValidEnum(PassType.class, allFields.get(PASS_PRODUCT_CODE_FIELD_NAME)))
-          .map(allFields -> RailPass.builder()
-              .number(allFields.get(PASS_NUMBER_FIELD_NAME))
-              .type(PassType.valueOf(allFields.get(PASS_PRODUCT_CODE_FIELD_NAME)))
-              .typeRefLabel(allFields.get(PASS_PRODUCT_LABEL_FIELD_NAME))
-              .validityStartDate(parseDateOrNull(allFields.get(PASS_VALIDITY_START_FIELD_NAME)))
-              .validityEndDate(parseDateOrNull(allFields.get(PASS_VALIDITY_END_FIELD_NAME)))
-              .build())
-          .collect(toCollection(ArrayList::new));
+      builder.loyaltyProgram(loyaltyProgram); // and we take the first because why not?
       builder.railPasses(railPasses);
     }
 
     return builder.build();
   }
 
+  // we check that we have the required fields
+  private boolean isLoyaltyProgram(Record record) {
+    final Map<String, String> allFields = record.getMap();
+    return LOYALTY_PROGRAM_TYPE.equals(typeOf(record.getType())) && allFields != null
+        && isNotBlank(allFields.get(LOYALTY_NUMBER_FIELD_NAME))
+        && ACTIVE_FIELD_VALUE.equals(allFields.get(LOYALTY_DISABLE_STATUS_FIELD_NAME))
+        && LOYALTY_STATUSES.containsKey(allFields.get(LOYALTY_STATUS_FIELD_NAME));
+  }
+
+  private LoyaltyProgram toLoyaltyProgram(Map<String, String> allFields) {
+    return LoyaltyProgram.builder()
+        .number(allFields.get(LOYALTY_NUMBER_FIELD_NAME))
+        .status(LOYALTY_STATUSES.get(allFields.get(LOYALTY_STATUS_FIELD_NAME)))
+        .statusRefLabel(allFields.get(LOYALTY_LABEL_FIELD_NAME))
+        .validityStartDate(parseDateOrNull(allFields.get(LOYALTY_VALIDITY_START_FIELD_NAME)))
+        .validityEndDate(parseDateOrNull(allFields.get(LOYALTY_VALIDITY_END_FIELD_NAME)))
+        .build();
+  }
+
+  private boolean isRailPass(Record record) {
+    final Map<String, String> allFields = record.getMap();
+    return RAIL_PASS_TYPE.equals(typeOf(record.getType())) && allFields != null
+        && isNotBlank(allFields.get(PASS_NUMBER_FIELD_NAME))
+        && ACTIVE_FIELD_VALUE.equals(allFields.get(PASS_ACTIVE_STATUS_FIELD_NAME))
+        && PASS_TYPES.containsKey(allFields.get(PASS_PRODUCT_CODE_FIELD_NAME));
+  }
+
+  private RailPass toRailPass(Map<String, String> allFields) {
+    return RailPass.builder()
+        .number(allFields.get(PASS_NUMBER_FIELD_NAME))
+        .type(PASS_TYPES.get(allFields.get(PASS_PRODUCT_CODE_FIELD_NAME)))
+        .typeRefLabel(allFields.get(PASS_PRODUCT_LABEL_FIELD_NAME))
+        .validityStartDate(parseDateOrNull(allFields.get(PASS_VALIDITY_START_FIELD_NAME)))
+        .validityEndDate(parseDateOrNull(allFields.get(PASS_VALIDITY_END_FIELD_NAME)))
+        .build();
+  }
+
+  private static String typeOf(NestedValue type) {
+    return type == null ? null : type.getValue();
+  }
 
-  private LocalDate parseDateOrNull(String maybeDate) {
-    if (maybeDate != null) {
-      try {
-        return LocalDate.parse(maybeDate);
-      } catch (DateTimeParseException e) {
+  /**
+   * LocalDate.parse, without the cost of an exception when it is not a date: the yyyy-MM-dd dates are read directly,
+   * the other forms ISO_LOCAL_DATE accepts (years of more than 4 digits) are left to the formatter.
+   */
+  static LocalDate parseDateOrNull(String maybeDate) {
+    if (maybeDate == null) {
+      return null;
+    }
+    if (maybeDate.length() == 10 && maybeDate.charAt(4) == '-' && maybeDate.charAt(7) == '-') {
+      final int year = digits(maybeDate, 0, 4);
+      final int month = digits(maybeDate, 5, 7);
+      final int day = digits(maybeDate, 8, 10);
+      return year < 0 || month < 0 || day < 0 ? null : dateOrNull(year, month, day);
+    }
+    final ParsePosition position = new ParsePosition(0);
+    final TemporalAccessor parsed = ISO_LOCAL_DATE.parseUnresolved(maybeDate, position);
+    if (parsed == null || position.getErrorIndex() >= 0 || position.getIndex() != maybeDate.length()) {
+      return null;
+    }
+    final long year = parsed.getLong(ChronoField.YEAR);
+    if (!ChronoField.YEAR.range().isValidValue(year)) {
+      return null;
+    }
+    return dateOrNull((int) year, (int) parsed.getLong(ChronoField.MONTH_OF_YEAR),
+        (int) parsed.getLong(ChronoField.DAY_OF_MONTH));
+  }
+
+  /**
+   * @return the number written with the ASCII digits between from and to, -1 if there are other characters
+   */
+  private static int digits(String text, int from, int to) {
+    int number = 0;
+    for (int i = from; i < to; i++) {
+      final char digit = text.charAt(i);
+      if (digit < '0' || digit > '9') {
+        return -1;
       }
+      number = number * 10 + digit - '0';
+    }
+    return number;
+  }
+
+  private static LocalDate dateOrNull(int year, int month, int day) {
+    if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) {
+      return null;
     }
-    return null;
+    return LocalDate.of(year, month, day);
   }
 }
@@ -0,0 +1,49 @@
+package com.prez.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Refreshes in background, on the application task executor, the customers read from Redis older than the soft
+ * time-to-live. A customer already being refreshed is not refreshed twice.
+ */
+@Component
+public class StaleCustomerRefresher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StaleCustomerRefresher.class);
+
+  private final TaskExecutor executor;
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+  public StaleCustomerRefresher(@Qualifier("applicationTaskExecutor") TaskExecutor executor) {
+    this.executor = executor;
+  }
+
+  public void refresh(String customerId, Runnable refresh) {
+    if (!refreshing.add(customerId)) {
+      LOGGER.debug("Customer {} is already being refreshed", customerId);
+      return;
+    }
+    LOGGER.debug("Customer {} is stale in cache, refreshing it in background", customerId);
+    try {
+      executor.execute(() -> {
+        try {
+          refresh.run();
+        } catch (RuntimeException e) {
+          LOGGER.warn("Could not refresh customer {} in cache", customerId, e);
+        } finally {
+          refreshing.remove(customerId);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(customerId);
+      LOGGER.warn("Could not refresh customer {} in cache, too many refreshes going on", customerId);
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.prez.ws;
+
+import com.prez.ws.model.GetCustomerWSResponse;
+import java.util.Optional;
+
+public interface CustomerClient {
+
+  /**
+   * @return the customer, empty when the customer web service does not know it
+   * @throws WebServiceException when the customer web service could not answer
+   */
+  Optional<GetCustomerWSResponse> getCustomer(String customerId);
+}
@@ -1,22 +1,28 @@
 package com.prez.ws;
 
+import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.web.util.UriComponentsBuilder.fromHttpUrl;
 
+import com.prez.ws.model.CustomerWSResponseReader;
 import com.prez.ws.model.GetCustomerWSResponse;
+import java.io.IOException;
 import java.net.URI;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.sleuth.annotation.NewSpan;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.RestOperations;
 
-public class CustomerWSClient {
+public class CustomerWSClient implements CustomerClient {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CustomerWSClient.class);
 
   private final RestOperations customerWebClient;
   private final CustomerWSProperties configuration;
+  private final CustomerWSResponseReader responseReader = new CustomerWSResponseReader();
 
 
   public CustomerWSClient(CustomerWSProperties configuration, RestOperations customerWebClient) {
@@ -24,6 +30,7 @@ public class CustomerWSClient {
     this.customerWebClient = customerWebClient;
   }
 
+  @Override
   @NewSpan("getCustomers")
   public Optional<GetCustomerWSResponse> getCustomer(final String customerId) {
     LOGGER.debug("Calling webservice GET {}/{}", configuration.getUrl(), customerId);
@@ -32,7 +39,7 @@ public class CustomerWSClient {
         .toUri();
     try {
       ResponseEntity<GetCustomerWSResponse> response = customerWebClient
-          .getForEntity(query, GetCustomerWSResponse.class);
+          .execute(query, HttpMethod.GET, null, this::readResponse);
       LOGGER.debug("Web service GET {}/{} reply is : {}", configuration.getUrl(), customerId, response.getStatusCode());
 
       // on pourrait mettre un interceptor et ça serait mieux mais pour comparer c'est plus simple :P
@@ -55,5 +62,11 @@ public class CustomerWSClient {
     }
   }
 
+  /**
+   * The body is read straight from the stream, see CustomerWSResponseReader.
+   */
+  private ResponseEntity<GetCustomerWSResponse> readResponse(ClientHttpResponse response) throws IOException {
+    final GetCustomerWSResponse body = response.getStatusCode() == OK ? responseReader.read(response.getBody()) : null;
+    return new ResponseEntity<>(body, response.getHeaders(), response.getStatusCode());
+  }
 }
-
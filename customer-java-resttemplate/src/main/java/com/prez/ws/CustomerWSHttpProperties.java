@@ -0,0 +1,31 @@
+package com.prez.ws;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Connection pool and timeouts of the client shared by the rest templates calling the customer web service.
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "customer.ws.http")
+public class CustomerWSHttpProperties {
+
+  // connections opened at most, all routes included
+  private int maxConnections = 50;
+  // connections opened at most to a single host
+  private int maxConnectionsPerRoute = 50;
+  private Duration connectTimeout = Duration.ofSeconds(1);
+  // time without any byte read from the socket while waiting for the response
+  private Duration readTimeout = Duration.ofSeconds(2);
+  // time waiting for a connection from the pool, once every connection is in use
+  private Duration acquireTimeout = Duration.ofMillis(500);
+  // idle connections are closed past this delay, before the server or a load balancer does it on our back
+  private Duration maxIdleTime = Duration.ofSeconds(20);
+  private Duration maxLifeTime = Duration.ofMinutes(5);
+  // a connection idle for longer than this is checked before being reused
+  private Duration validateAfterInactivity = Duration.ofSeconds(2);
+
+}
@@ -0,0 +1,24 @@
+package com.prez.ws;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Adaptive limit of the calls in progress to the customer web service, see AdaptiveConcurrencyLimiter.
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "customer.ws.limit")
+public class CustomerWSLimitProperties {
+
+  private int initialLimit = 20;
+  private int minLimit = 2;
+  // no use going past the connections of the pool
+  private int maxLimit = 50;
+  // the limit is multiplied by this ratio on a failed or slow call
+  private double backoffRatio = 0.9;
+  // a call slower than this many times the usual latency shrinks the limit
+  private double latencyTolerance = 2.0;
+
+}
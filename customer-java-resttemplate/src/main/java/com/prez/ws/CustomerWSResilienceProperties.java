@@ -0,0 +1,43 @@
+package com.prez.ws;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Circuit breaker, deadline and hedging of the customer web service calls, see ResilientCustomerClient.
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "customer.ws.resilience")
+public class CustomerWSResilienceProperties {
+
+  private CircuitBreaker circuitBreaker = new CircuitBreaker();
+  // the caller gives up past this delay, the call itself goes on until the http client times out
+  private Duration deadline = Duration.ofMillis(1500);
+  private Hedging hedging = new Hedging();
+
+  @Setter
+  @Getter
+  public static class CircuitBreaker {
+
+    // percentage of failed calls, among the last sliding-window-size ones, opening the circuit
+    private float failureRateThreshold = 50;
+    private int slidingWindowSize = 20;
+    private int minimumNumberOfCalls = 10;
+    private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+    private int permittedNumberOfCallsInHalfOpenState = 3;
+  }
+
+  @Setter
+  @Getter
+  public static class Hedging {
+
+    private boolean enabled = false;
+    // a second call is sent when the first one lasts longer than this percentile of the latencies
+    private double percentile = 0.95;
+    // never sooner than this delay
+    private Duration minDelay = Duration.ofMillis(50);
+  }
+}
@@ -0,0 +1,216 @@
+package com.prez.ws;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter;
+import com.prez.ws.model.GetCustomerWSResponse;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorates the customer web service client with:
+ * <ul>
+ * <li>a circuit breaker, which counts as failures the same calls as ResponseMarkerFilter: 5xx responses and errors,
+ * plus the calls past the deadline,</li>
+ * <li>an adaptive limit of the calls in progress, shrinking when the calls fail or slow down,</li>
+ * <li>a deadline, past which the caller gives up instead of waiting for the http client timeouts,</li>
+ * <li>optionally a hedged call, sent when the first one lasts longer than a percentile of the latencies: the first
+ * response wins.</li>
+ * </ul>
+ * A call refused by the circuit breaker or the limit is not sent at all, it fails right away with a
+ * {@link WebServiceUnavailableException}. The calls run on the given executor, each one counted by the limit until it
+ * is really over, so that the executor never runs more than the limit allows.
+ */
+public class ResilientCustomerClient implements CustomerClient {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResilientCustomerClient.class);
+  private static final String WEB_SERVICE_NAME = "GET CustomerWS";
+
+  private final CustomerClient delegate;
+  private final CircuitBreaker circuitBreaker;
+  private final AdaptiveConcurrencyLimiter limiter;
+  private final Executor executor;
+  private final Duration deadline;
+  private final CustomerWSResilienceProperties.Hedging hedging;
+  private final Timer latencies;
+  private final Counter hedgedCalls;
+
+  public ResilientCustomerClient(CustomerClient delegate, CircuitBreaker circuitBreaker,
+                                 AdaptiveConcurrencyLimiter limiter, Executor executor,
+                                 CustomerWSResilienceProperties properties, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.circuitBreaker = circuitBreaker;
+    this.limiter = limiter;
+    this.executor = executor;
+    this.deadline = properties.getDeadline();
+    this.hedging = properties.getHedging();
+    this.latencies = Timer.builder("customer.webservice.latency")
+        .description("Latency of the successful customer web service calls")
+        .publishPercentiles(hedging.getPercentile())
+        .distributionStatisticExpiry(Duration.ofMinutes(1))
+        .register(meterRegistry);
+    this.hedgedCalls = Counter.builder("customer.webservice.hedged")
+        .description("Number of customer web service calls sent again because the first one was too slow")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Optional<GetCustomerWSResponse> getCustomer(String customerId) {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      throw new WebServiceUnavailableException("CUSTOMER_WS_CIRCUIT_OPEN", WEB_SERVICE_NAME,
+          "Circuit breaker " + circuitBreaker.getState() + ", customer web service not called for customerId="
+              + customerId);
+    }
+    final CompletableFuture<Optional<GetCustomerWSResponse>> call = send(customerId);
+    if (call == null) {
+      circuitBreaker.releasePermission();
+      throw new WebServiceUnavailableException("CUSTOMER_WS_LIMIT_REACHED", WEB_SERVICE_NAME,
+          limiter.getLimit() + " calls in progress, customer web service not called for customerId=" + customerId);
+    }
+    final long start = System.nanoTime();
+    try {
+      final Optional<GetCustomerWSResponse> response = (hedging.isEnabled() ? hedge(customerId, call) : call)
+          .get(deadline.toNanos(), NANOSECONDS);
+      circuitBreaker.onSuccess(System.nanoTime() - start, NANOSECONDS);
+      return response;
+    } catch (TimeoutException e) {
+      final WebServiceException error = new WebServiceException("CUSTOMER_WS_GET_CUSTOMER_ERROR", WEB_SERVICE_NAME,
+          GATEWAY_TIMEOUT, "No response within " + deadline.toMillis() + "ms for customerId=" + customerId);
+      circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, error);
+      throw error;
+    } catch (ExecutionException e) {
+      circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, e.getCause());
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new WebServiceException("CUSTOMER_WS_GET_CUSTOMER_ERROR", WEB_SERVICE_NAME, INTERNAL_SERVER_ERROR,
+          "Call failed for customerId=" + customerId + ": " + e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      circuitBreaker.releasePermission();
+      throw new WebServiceException("CUSTOMER_WS_GET_CUSTOMER_ERROR", WEB_SERVICE_NAME, INTERNAL_SERVER_ERROR,
+          "Interrupted while waiting for customerId=" + customerId);
+    }
+  }
+
+  /**
+   * @return the call in progress, null when the limit is reached
+   */
+  private CompletableFuture<Optional<GetCustomerWSResponse>> send(String customerId) {
+    if (!limiter.tryAcquire()) {
+      return null;
+    }
+    try {
+      return CompletableFuture.supplyAsync(() -> timed(customerId), executor);
+    } catch (RejectedExecutionException e) {
+      limiter.onIgnored();
+      return null;
+    }
+  }
+
+  private Optional<GetCustomerWSResponse> timed(String customerId) {
+    final long start = System.nanoTime();
+    try {
+      final Optional<GetCustomerWSResponse> response = delegate.getCustomer(customerId);
+      latencies.record(System.nanoTime() - start, NANOSECONDS);
+      limiter.onSuccess(start);
+      return response;
+    } catch (RuntimeException e) {
+      if (isFailure(e)) {
+        limiter.onDropped(start);
+      } else {
+        limiter.onSuccess(start);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Same failures as ResponseMarkerFilter: a 4xx response means the web service is up.
+   */
+  public static boolean isFailure(Throwable e) {
+    return !(e instanceof WebServiceException) || ((WebServiceException) e).getHttpStatusCode().is5xxServerError();
+  }
+
+  /**
+   * The first successful response wins, the result fails only when every call sent failed. The hedged call is only
+   * sent while the first one is in progress: a first call failing before the hedge delay fails right away.
+   */
+  private CompletableFuture<Optional<GetCustomerWSResponse>> hedge(
+      String customerId, CompletableFuture<Optional<GetCustomerWSResponse>> call) {
+    final long delayMillis = hedgeDelayMillis();
+    if (delayMillis < 0) {
+      return call;
+    }
+    final FirstResponse first = new FirstResponse();
+    call.whenComplete(first::complete);
+    CompletableFuture.delayedExecutor(delayMillis, MILLISECONDS, executor).execute(() -> {
+      if (first.result.isDone()) {
+        return;
+      }
+      first.inProgress.incrementAndGet();
+      final CompletableFuture<Optional<GetCustomerWSResponse>> hedged = send(customerId);
+      if (hedged == null) {
+        // no room left for a second call, the first one decides
+        first.complete(null, null);
+        return;
+      }
+      LOGGER.debug("No response after {}ms for customerId={}, calling the customer web service again",
+          delayMillis, customerId);
+      hedgedCalls.increment();
+      hedged.whenComplete(first::complete);
+    });
+    return first.result;
+  }
+
+  /**
+   * @return -1 as long as no latency is known
+   */
+  private long hedgeDelayMillis() {
+    for (ValueAtPercentile percentile : latencies.takeSnapshot().percentileValues()) {
+      if (percentile.percentile() == hedging.getPercentile() && percentile.value() > 0) {
+        return Math.max((long) percentile.value(MILLISECONDS), hedging.getMinDelay().toMillis());
+      }
+    }
+    return -1;
+  }
+
+  private static final class FirstResponse {
+
+    private final CompletableFuture<Optional<GetCustomerWSResponse>> result = new CompletableFuture<>();
+    private final AtomicInteger inProgress = new AtomicInteger(1);
+    private volatile Throwable lastError;
+
+    /**
+     * Called once per call sent, or without response nor error for a call which could not be sent.
+     */
+    private void complete(Optional<GetCustomerWSResponse> response, Throwable error) {
+      if (response != null) {
+        result.complete(response);
+        return;
+      }
+      if (error != null) {
+        lastError = error;
+      }
+      if (inProgress.decrementAndGet() == 0 && lastError != null) {
+        result.completeExceptionally(lastError);
+      }
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.prez.ws;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * The web service has not been called at all: its circuit breaker is open or too many calls are in progress.
+ */
+public class WebServiceUnavailableException extends WebServiceException {
+
+  public WebServiceUnavailableException(String errorName, String webServiceName, String error) {
+    super(errorName, webServiceName, SERVICE_UNAVAILABLE, error);
+  }
+}
@@ -0,0 +1,59 @@
+package com.prez.ws.model;
+
+import static com.fasterxml.jackson.core.JsonToken.VALUE_NULL;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Reads the whole customer web service response from the token stream, without an intermediate tree. The fields of
+ * the records are read by {@link ListOfObjectsToMapDeserializer}.
+ */
+public class CustomerWSResponseReader {
+
+  private final ObjectMapper objectMapper;
+  private final ObjectReader responseReader;
+
+  /**
+   * Reads with the same ObjectMapper as the default codecs of WebClient and RestTemplate.
+   */
+  public CustomerWSResponseReader() {
+    this(Jackson2ObjectMapperBuilder.json().build());
+  }
+
+  public CustomerWSResponseReader(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    this.responseReader = objectMapper.readerFor(GetCustomerWSResponse.class);
+  }
+
+  /**
+   * @return the response, null if the body is empty or null
+   */
+  public GetCustomerWSResponse read(InputStream body) throws IOException {
+    try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+      return read(parser);
+    }
+  }
+
+  /**
+   * @return the response, null if the body is empty or null
+   */
+  public GetCustomerWSResponse read(byte[] body) throws IOException {
+    try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+      return read(parser);
+    }
+  }
+
+  private GetCustomerWSResponse read(JsonParser parser) throws IOException {
+    final JsonToken token = parser.nextToken();
+    if (token == null || token == VALUE_NULL) {
+      return null;
+    }
+    return responseReader.readValue(parser);
+  }
+}
@@ -1,41 +1,152 @@
 package com.prez.ws.model;
 
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_STRING;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.ObjectCodec;
-import com.fasterxml.jackson.core.TreeNode;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Reads a list of {"key": ..., "value": ...} objects into a map, as the text of the keys and values (JsonNode.asText()).
+ * Entries with an empty key or value, or which are not objects, are ignored, and anything but a list gives an empty
+ * map.
+ * <p>
+ * The tokens are read as they come, the entries are buffered so that the map is created with the right size and the
+ * keys read by CustomerWSResponseToCustomerMapper are not allocated again for each record.
+ */
 public class ListOfObjectsToMapDeserializer extends JsonDeserializer<Map<String, String>> {
 
+  // the fields read by CustomerWSResponseToCustomerMapper
+  private static final String[] KNOWN_KEYS = {
+      "loyalty_number", "loyalty_status", "loyalty_status_label", "validity_start", "validity_end", "disable_status",
+      "pass_number", "new_product_code", "pass_label", "pass_validity_start", "pass_validity_end", "pass_is_active"
+  };
+  private static final String[][] KNOWN_KEYS_BY_LENGTH = knownKeysByLength();
+
+  // keys and values of the entries being read, in turn
+  private static final ThreadLocal<String[]> ENTRIES = ThreadLocal.withInitial(() -> new String[64]);
+
   @Override
   public Map<String, String> deserialize(JsonParser parser, DeserializationContext ctxt)
       throws IOException {
-    Map<String, String> ret = new HashMap<>();
-
-    ObjectCodec codec = parser.getCodec();
-    TreeNode node = codec.readTree(parser);
-
-    if (node.isArray()) {
-      for (JsonNode n : (ArrayNode) node) {
-        JsonNode key = n.get("key");
-        JsonNode value = n.get("value");
-        if (key != null && value != null) {
-          String keyAsText = key.asText();
-          String valueAsText = value.asText();
-          if (isNotEmpty(keyAsText) && isNotEmpty(valueAsText)) {
-            ret.put(keyAsText, valueAsText);
+    return readMap(parser);
+  }
+
+  /**
+   * Reads the list the parser is on, up to its end.
+   */
+  private static Map<String, String> readMap(JsonParser parser) throws IOException {
+    if (parser.currentToken() != START_ARRAY) {
+      parser.skipChildren();
+      return new HashMap<>();
+    }
+    String[] entries = ENTRIES.get();
+    int size = 0;
+    while (parser.nextToken() != END_ARRAY) {
+      if (parser.currentToken() != START_OBJECT) {
+        parser.skipChildren();
+        continue;
+      }
+      String key = null;
+      String value = null;
+      while (parser.nextToken() == FIELD_NAME) {
+        final String fieldName = parser.getCurrentName();
+        parser.nextToken();
+        if ("key".equals(fieldName)) {
+          key = readKey(parser);
+        } else if ("value".equals(fieldName)) {
+          value = asText(parser);
+        } else {
+          parser.skipChildren();
+        }
+      }
+      if (isNotEmpty(key) && isNotEmpty(value)) {
+        if (size == entries.length) {
+          entries = Arrays.copyOf(entries, size * 2);
+          ENTRIES.set(entries);
+        }
+        entries[size++] = key;
+        entries[size++] = value;
+      }
+    }
+
+    final Map<String, String> map = new HashMap<>((int) (size / 2 / 0.75f) + 1);
+    for (int i = 0; i < size; i += 2) {
+      map.put(entries[i], entries[i + 1]);
+    }
+    Arrays.fill(entries, 0, size, null);
+    return map;
+  }
+
+  /**
+   * @return the known key matching the text, without allocating it, or the text
+   */
+  private static String readKey(JsonParser parser) throws IOException {
+    if (parser.currentToken() == VALUE_STRING) {
+      final int length = parser.getTextLength();
+      if (length < KNOWN_KEYS_BY_LENGTH.length) {
+        final char[] text = parser.getTextCharacters();
+        final int offset = parser.getTextOffset();
+        for (String knownKey : KNOWN_KEYS_BY_LENGTH[length]) {
+          if (matches(knownKey, text, offset)) {
+            return knownKey;
           }
         }
       }
     }
-    return ret;
+    return asText(parser);
+  }
+
+  private static boolean matches(String knownKey, char[] text, int offset) {
+    for (int i = 0; i < knownKey.length(); i++) {
+      if (knownKey.charAt(i) != text[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The text of the value as JsonNode.asText() gives it.
+   */
+  private static String asText(JsonParser parser) throws IOException {
+    switch (parser.currentToken()) {
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+        return parser.getNumberValue().toString();
+      case VALUE_NUMBER_FLOAT:
+        return String.valueOf(parser.getDoubleValue());
+      case VALUE_TRUE:
+        return "true";
+      case VALUE_FALSE:
+        return "false";
+      case VALUE_NULL:
+        return "null";
+      default:
+        parser.skipChildren();
+        return "";
+    }
+  }
+
+  private static String[][] knownKeysByLength() {
+    final int maxLength = Arrays.stream(KNOWN_KEYS).mapToInt(String::length).max().orElse(0);
+    final String[][] knownKeysByLength = new String[maxLength + 1][];
+    for (int length = 0; length <= maxLength; length++) {
+      final int keyLength = length;
+      knownKeysByLength[length] = Arrays.stream(KNOWN_KEYS)
+          .filter(knownKey -> knownKey.length() == keyLength)
+          .toArray(String[]::new);
+    }
+    return knownKeysByLength;
   }
-}
\ No newline at end of file
+}
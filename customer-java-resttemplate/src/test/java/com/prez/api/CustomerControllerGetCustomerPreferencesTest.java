@@ -7,8 +7,12 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.prez.exception.NotFoundException;
@@ -16,6 +20,8 @@ import com.prez.model.CustomerPreferences;
 import com.prez.model.SeatPreference;
 import com.prez.service.CustomerService;
 import com.prez.utils.FakeTokenGenerator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +30,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @AutoConfigureMockMvc
 @SpringBootTest
@@ -116,4 +123,91 @@ class CustomerControllerGetCustomerPreferencesTest {
             + "\"profileName\":\"rigolo\"}]"));
     verify(customerService).getCustomerPreferences("trotro");
   }
+
+  @Test
+  @DisplayName("GET customers preferences should stream the preferences as json lines when ndjson accepted")
+  void getCustomerPreferences_shouldStreamJsonLines_whenNdjsonAccepted() throws Exception {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read");
+    final AtomicBoolean closed = new AtomicBoolean();
+    when(customerService.streamCustomerPreferences("trotro"))
+        .thenReturn(() -> Stream.of(
+            CustomerPreferences.builder()
+                .customerId("trotro")
+                .profileName("rigolo")
+                .seatPreference(SeatPreference.NO_PREFERENCE)
+                .classPreference(2)
+                .build(),
+            CustomerPreferences.builder()
+                .customerId("trotro")
+                .profileName("serieux")
+                .seatPreference(SeatPreference.NEAR_WINDOW)
+                .classPreference(1)
+                .build())
+            .onClose(() -> closed.set(true)));
+
+    // When
+    final MvcResult streaming = mockMvc.perform(get(CUSTOMERS_PREFERENCES_ENDPOINT_TO_TEST)
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_NDJSON))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    // Then
+    final String body = mockMvc.perform(asyncDispatch(streaming))
+        .andExpect(status().is(200))
+        .andExpect(content().contentTypeCompatibleWith(APPLICATION_NDJSON))
+        .andReturn().getResponse().getContentAsString();
+    assertThat(body.split("\n"))
+        .hasSize(2)
+        .allSatisfy(line -> assertThat(line).startsWith("{\"customerId\":\"trotro\""));
+    assertThat(closed).isTrue();
+    verify(customerService, never()).getCustomerPreferences(anyString());
+  }
+
+  @Test
+  @DisplayName("GET customers preferences should stream the preferences as events when event stream accepted")
+  void getCustomerPreferences_shouldStreamEvents_whenEventStreamAccepted() throws Exception {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read");
+    when(customerService.streamCustomerPreferences("trotro"))
+        .thenReturn(() -> Stream.of(CustomerPreferences.builder()
+            .customerId("trotro")
+            .profileName("rigolo")
+            .seatPreference(SeatPreference.NO_PREFERENCE)
+            .classPreference(2)
+            .build()));
+
+    // When
+    final MvcResult streaming = mockMvc.perform(get(CUSTOMERS_PREFERENCES_ENDPOINT_TO_TEST)
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(TEXT_EVENT_STREAM))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    // Then
+    mockMvc.perform(asyncDispatch(streaming))
+        .andExpect(status().is(200))
+        .andExpect(content().contentTypeCompatibleWith(TEXT_EVENT_STREAM))
+        .andExpect(content().string("data:{\"customerId\":\"trotro\","
+            + "\"seatPreference\":\"NO_PREFERENCE\","
+            + "\"classPreference\":2,"
+            + "\"profileName\":\"rigolo\"}\n\n"));
+  }
+
+  @Test
+  @DisplayName("GET customers preferences should return not found when no preferences to stream")
+  void getCustomerPreferences_shouldReturnNotFound_whenNoPreferencesToStream() throws Exception {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read");
+    when(customerService.streamCustomerPreferences("trotro"))
+        .thenThrow(new NotFoundException("trotro", "customer"));
+
+    // When && Then
+    mockMvc.perform(get(CUSTOMERS_PREFERENCES_ENDPOINT_TO_TEST)
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_NDJSON))
+        .andExpect(status().is(404))
+        .andExpect(content().json("{\"code\":\"NOT_FOUND\",\"message\":\"No result for the given customer id=trotro\"}"));
+  }
 }
@@ -0,0 +1,212 @@
+package com.prez.benchmark;
+
+import static com.prez.model.LoyaltyStatus.FFD700;
+import static com.prez.model.PassType.FAMILY;
+
+import com.prez.cache.CustomerCache;
+import com.prez.config.RedisConfig;
+import com.prez.model.Customer;
+import com.prez.model.LoyaltyProgram;
+import com.prez.model.RailPass;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisKeyValueAdapter;
+import org.springframework.data.redis.core.RedisKeyValueTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.KeyspaceConfiguration;
+import org.springframework.data.redis.core.convert.MappingConfiguration;
+import org.springframework.data.redis.core.index.IndexConfiguration;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Cache hit and cache miss ( lookup then save ) against a running Redis, for the former Redis repository storage
+ * ( keyspace: one hash per customer, the "customer" set and the TTL maintained on every save ) and for the
+ * {@link CustomerCache} one ( value: one SET EX, and one GET pipelined with a TTL ).
+ * Sampled, so that the percentiles of the latency are reported, and the Redis commands run per operation, read from
+ * INFO commandstats, are printed after each iteration. The former repository also read the remaining time-to-live of
+ * every hit for Customer.timeToLive, that is one more command per hit not counted here.
+ * <p>
+ * Redis is expected on localhost:6380 ( the docker-compose one ), or on -Dredis.hostname and -Dredis.port, eg:
+ * mvn verify -P benchmark -DskipTests -Djmh.args="CustomerCacheBenchmark"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerCacheBenchmark {
+
+  private static final long TTL_SECONDS = 300L;
+  private static final long SOFT_TTL_SECONDS = 240L;
+  private static final String HIT_ID = "benchmark-hit";
+
+  @Param({"keyspace", "value"})
+  private String storage;
+
+  private LettuceConnectionFactory connectionFactory;
+  private RedisKeyValueTemplate keyspaceTemplate;
+  private CustomerCache valueCache;
+  private long missCount;
+  private long operations;
+  private long commandsBefore;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+        System.getProperty("redis.hostname", "localhost"), Integer.getInteger("redis.port", 6380)));
+    connectionFactory.afterPropertiesSet();
+
+    if ("keyspace".equals(storage)) {
+      keyspaceTemplate = keyspaceTemplate(connectionFactory);
+      keyspaceTemplate.update(HIT_ID, customer(HIT_ID));
+    } else {
+      final RedisTemplate<String, Customer> customerInfoRedisTemplate = new RedisConfig()
+          .customerInfoRedisTemplate(Jackson2ObjectMapperBuilder.json().build(), connectionFactory, "binary");
+      customerInfoRedisTemplate.afterPropertiesSet();
+      valueCache = new CustomerCache(TTL_SECONDS, SOFT_TTL_SECONDS, customerInfoRedisTemplate);
+      valueCache.save(customer(HIT_ID));
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void countCommands() {
+    operations = 0;
+    commandsBefore = commandCalls();
+  }
+
+  @TearDown(Level.Iteration)
+  public void printCommandsPerOperation(BenchmarkParams params) {
+    final long commands = commandCalls() - commandsBefore;
+    System.out.printf("%n%s storage=%s: %.2f Redis commands per operation%n",
+        params.getBenchmark(), storage, operations == 0 ? 0.0 : (double) commands / operations);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    connectionFactory.destroy();
+  }
+
+  @Benchmark
+  public Object hit() {
+    operations++;
+    if (keyspaceTemplate != null) {
+      return keyspaceTemplate.findById(HIT_ID, Customer.class);
+    }
+    return valueCache.findEntryById(HIT_ID);
+  }
+
+  /**
+   * A lookup of a customer never seen, then its save: what a first call for a customer costs besides the web service
+   */
+  @Benchmark
+  public Object miss() {
+    operations++;
+    final String id = "benchmark-miss-" + missCount++;
+    final Customer customer = customer(id);
+    if (keyspaceTemplate != null) {
+      if (keyspaceTemplate.findById(id, Customer.class).isEmpty()) {
+        keyspaceTemplate.update(id, customer);
+      }
+      return customer;
+    }
+    if (valueCache.findEntryById(id).isEmpty()) {
+      valueCache.save(customer);
+    }
+    return customer;
+  }
+
+  /**
+   * What @EnableRedisRepositories used to set up for the customers
+   */
+  private static RedisKeyValueTemplate keyspaceTemplate(LettuceConnectionFactory connectionFactory) {
+    final KeyspaceConfiguration keyspaceConfiguration = new KeyspaceConfiguration() {
+      @Override
+      protected Iterable<KeyspaceSettings> initialConfiguration() {
+        final KeyspaceSettings customers = new KeyspaceSettings(Customer.class, "customer");
+        customers.setTimeToLive(TTL_SECONDS);
+        return Collections.singleton(customers);
+      }
+    };
+    final RedisMappingContext mappingContext =
+        new RedisMappingContext(new MappingConfiguration(new IndexConfiguration(), keyspaceConfiguration));
+    final RedisTemplate<byte[], byte[]> redisTemplate = new RedisTemplate<>();
+    redisTemplate.setConnectionFactory(connectionFactory);
+    redisTemplate.afterPropertiesSet();
+    final RedisKeyValueAdapter adapter = new RedisKeyValueAdapter(redisTemplate, mappingContext);
+    adapter.afterPropertiesSet();
+    return new RedisKeyValueTemplate(adapter, mappingContext);
+  }
+
+  /**
+   * Sum of the calls of every command but INFO since the start of Redis
+   */
+  private long commandCalls() {
+    try (RedisConnection connection = connectionFactory.getConnection()) {
+      final Properties commandStats = connection.info("commandstats");
+      long calls = 0;
+      for (Map.Entry<Object, Object> commandStat : commandStats.entrySet()) {
+        if (!String.valueOf(commandStat.getKey()).endsWith("cmdstat_info")) {
+          // calls=12,usec=34,usec_per_call=2.83,...
+          final String stat = String.valueOf(commandStat.getValue());
+          calls += Long.parseLong(stat.substring(stat.indexOf('=') + 1, stat.indexOf(',')));
+        }
+      }
+      return calls;
+    }
+  }
+
+  private static Customer customer(String id) {
+    return Customer.builder()
+        .customerId(id)
+        .firstName("Elliot")
+        .lastName("Alderson")
+        .phoneNumber("0012125550179")
+        .email("elliotalderson@protonmail.com")
+        .birthDate(LocalDate.of(1986, 9, 17))
+        .loyaltyProgram(LoyaltyProgram.builder()
+            .number("ER28-0652")
+            .statusRefLabel("PLATINIUM")
+            .status(FFD700)
+            .validityStartDate(LocalDate.of(2019, 11, 10))
+            .validityEndDate(LocalDate.of(2020, 11, 9))
+            .build())
+        .railPasses(Arrays.asList(RailPass.builder()
+                .number("07239107/23/91")
+                .typeRefLabel("FAMILY PASS")
+                .type(FAMILY)
+                .validityStartDate(LocalDate.of(2019, 12, 23))
+                .validityEndDate(LocalDate.of(2021, 12, 23))
+                .build(),
+            RailPass.builder()
+                .number("29090113600311527")
+                .typeRefLabel("FAMILY PASS")
+                .type(FAMILY)
+                .validityStartDate(LocalDate.of(2018, 12, 23))
+                .validityEndDate(LocalDate.of(2019, 12, 23))
+                .build()))
+        .build();
+  }
+}
@@ -0,0 +1,129 @@
+package com.prez.cache;
+
+import static com.prez.model.LoyaltyStatus.FFD700;
+import static com.prez.model.PassType.PRO_FIRST;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.prez.model.Customer;
+import com.prez.model.LoyaltyProgram;
+import com.prez.model.RailPass;
+import java.time.LocalDate;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class CustomerBinaryRedisSerializerTest {
+
+  private final Jackson2JsonRedisSerializer<Customer> jsonSerializer = jsonSerializer();
+  private final CustomerBinaryRedisSerializer toTest = new CustomerBinaryRedisSerializer(jsonSerializer);
+
+  @Test
+  @DisplayName("serialize then deserialize should give back a complete customer")
+  void shouldReadWrittenCustomer_whenCustomerComplete() {
+    // Given
+    final Customer customer = jimPhelps();
+
+    // Test
+    final byte[] serialized = toTest.serialize(customer);
+    final Customer deserialized = toTest.deserialize(serialized);
+
+    // Assert
+    assertThat(serialized[0]).isEqualTo(CustomerBinaryRedisSerializer.VERSION_1);
+    assertThat(deserialized).usingRecursiveComparison().isEqualTo(customer);
+  }
+
+  @Test
+  @DisplayName("serialize then deserialize should give back a customer with missing fields")
+  void shouldReadWrittenCustomer_whenCustomerHasNullFields() {
+    // Given
+    final Customer customer = Customer.builder().customerId("123456789").build();
+
+    // Test
+    final Customer deserialized = toTest.deserialize(toTest.serialize(customer));
+
+    // Assert
+    assertThat(deserialized).usingRecursiveComparison().isEqualTo(customer);
+  }
+
+  @Test
+  @DisplayName("serialize should be more compact than json")
+  void shouldBeSmallerThanJson() {
+    // Given
+    final Customer customer = jimPhelps();
+
+    // Test
+    final byte[] binary = toTest.serialize(customer);
+    final byte[] json = jsonSerializer.serialize(customer);
+
+    // Assert
+    assertThat(binary.length).isLessThan(json.length);
+  }
+
+  @Test
+  @DisplayName("deserialize should read customers previously written in json")
+  void shouldReadJsonCustomer_whenWrittenBeforeBinaryFormat() {
+    // Given
+    final Customer customer = jimPhelps();
+    final byte[] json = jsonSerializer.serialize(customer);
+
+    // Test
+    final Customer deserialized = toTest.deserialize(json);
+
+    // Assert
+    assertThat(deserialized).usingRecursiveComparison().isEqualTo(customer);
+  }
+
+  @Test
+  @DisplayName("deserialize should throw SerializationException when format version is unknown")
+  void shouldThrowSerializationException_whenVersionUnknown() {
+    // Given
+    final byte[] unknown = "\u007Fwhatever".getBytes(UTF_8);
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.deserialize(unknown));
+
+    // Assert
+    assertThat(thrown).isInstanceOf(SerializationException.class);
+  }
+
+  private static Customer jimPhelps() {
+    return Customer.builder()
+        .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+        .email("mission.impossible@connect.fr")
+        .firstName("Jim")
+        .lastName("Phelps")
+        .birthDate(LocalDate.of(1952, 2, 29))
+        .phoneNumber(null)
+        .loyaltyProgram(LoyaltyProgram.builder()
+            .number("008")
+            .status(FFD700)
+            .statusRefLabel("GOLD IT IS")
+            .validityStartDate(LocalDate.of(2020, 1, 1))
+            .validityEndDate(LocalDate.MAX)
+            .build())
+        .railPasses(singletonList(
+            RailPass.builder()
+                .number("JIMID")
+                .type(PRO_FIRST)
+                .typeRefLabel("I AM A PRO")
+                .validityStartDate(LocalDate.of(2019, 12, 25))
+                .validityEndDate(LocalDate.of(2045, 12, 23))
+                .build()
+        ))
+        .build();
+  }
+
+  private static Jackson2JsonRedisSerializer<Customer> jsonSerializer() {
+    final Jackson2JsonRedisSerializer<Customer> serializer = new Jackson2JsonRedisSerializer<>(Customer.class);
+    serializer.setObjectMapper(Jackson2ObjectMapperBuilder.json()
+        .serializationInclusion(JsonInclude.Include.NON_EMPTY)
+        .build());
+    return serializer;
+  }
+}
@@ -10,36 +10,37 @@ import com.prez.config.RedisConfig;
 import com.prez.model.Customer;
 import com.prez.model.LoyaltyProgram;
 import com.prez.model.RailPass;
+import java.time.Duration;
 import java.time.LocalDate;
-import org.junit.jupiter.api.AfterEach;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.data.redis.DataRedisTest;
-import org.springframework.context.ApplicationContextInitializer;
-import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.data.keyvalue.core.KeyValueAdapter;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.support.TestPropertySourceUtils;
 
 @ActiveProfiles({"test"})
 @Tag("docker")
 @DataRedisTest
-@ContextConfiguration(initializers = CustomerCacheRepositoryTest.Initializer.class, classes = RedisConfig.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ContextConfiguration(classes = RedisConfig.class)
 class CustomerCacheRepositoryTest extends UsingRedis {
 
   @Autowired
-  private KeyValueAdapter redisKeyspace;
+  private RedisTemplate<String, Customer> customerInfoRedisTemplate;
 
-  @Autowired
   private CustomerCacheRepository toTest;
 
-
-  @AfterEach
-  void afterEach() {
-    redisKeyspace.deleteAllOf("customer");
+  @BeforeEach
+  void beforeEach() {
+    toTest = new CustomerCache(4L, 2L, customerInfoRedisTemplate);
+    customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("Customer:*"));
   }
 
   @Test
@@ -73,15 +74,15 @@ class CustomerCacheRepositoryTest extends UsingRedis {
 
     // Test
     final Customer saved = toTest.save(customerInfo);
+    final Long ttl = customerInfoRedisTemplate.getExpire("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7");
     final Customer savedCustomer =
-        (Customer) redisKeyspace.get("35adcf57-2cf7-4945-a980-e9753eb146f7", "customer");
+        customerInfoRedisTemplate.opsForValue().get("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7");
 
     // Assert
     assertThat(saved).isNotNull();
-    final Long ttl = savedCustomer.getTimeToLive();
     assertThat(ttl).isGreaterThanOrEqualTo(3L);
     assertThat(ttl).isLessThanOrEqualTo(4L);
-    assertThat(savedCustomer).usingRecursiveComparison().ignoringFields("timeToLive").isEqualTo(customerInfo);
+    assertThat(savedCustomer).usingRecursiveComparison().isEqualTo(customerInfo);
 
   }
 
@@ -89,7 +90,7 @@ class CustomerCacheRepositoryTest extends UsingRedis {
   @DisplayName("save should update a customer entry with ttl")
   void save_should_update_a_customer_entry_with_ttl() {
     //given
-    redisKeyspace.put("35adcf57-2cf7-4945-a980-e9753eb146f7", Customer.builder()
+    customerInfoRedisTemplate.opsForValue().set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", Customer.builder()
         .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
         .email("mission.impossible@connect.fr")
         .firstName("Jim")
@@ -111,8 +112,7 @@ class CustomerCacheRepositoryTest extends UsingRedis {
                 .validityStartDate(LocalDate.of(2019, 12, 25))
                 .validityEndDate(LocalDate.of(2045, 12, 23))
                 .build()
-        )).build(),
-        "customer"
+        )).build()
     );
     final Customer customerInfoUpdate = Customer.builder()
         .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
@@ -142,15 +142,44 @@ class CustomerCacheRepositoryTest extends UsingRedis {
 
     // Test
     final Customer saved = toTest.save(customerInfoUpdate);
+    final Long ttl = customerInfoRedisTemplate.getExpire("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7");
     final Customer expectedCustomer =
-        (Customer) redisKeyspace.get("35adcf57-2cf7-4945-a980-e9753eb146f7", "customer");
+        customerInfoRedisTemplate.opsForValue().get("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7");
 
     // Assert
     assertThat(saved).isNotNull();
-    final Long ttl = expectedCustomer.getTimeToLive();
     assertThat(ttl).isGreaterThanOrEqualTo(3L);
     assertThat(ttl).isLessThanOrEqualTo(4L);
-    assertThat(expectedCustomer).usingRecursiveComparison().ignoringFields("timeToLive").isEqualTo(customerInfoUpdate);
+    assertThat(expectedCustomer).usingRecursiveComparison().isEqualTo(customerInfoUpdate);
+  }
+
+  @Test
+  @DisplayName("saveAll should create the customer entries with ttl")
+  void saveAll_should_create_the_customer_entries_with_ttl() {
+    //given
+    final Customer jim = Customer.builder()
+        .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+        .email("mission.impossible@connect.fr")
+        .firstName("Jim")
+        .lastName("Phelps")
+        .build();
+    final Customer ethan = Customer.builder()
+        .customerId("8a1f3c02-7d4e-4b7a-9f61-2c5e0b9d4e11")
+        .email("ethan.hunt@connect.fr")
+        .firstName("Ethan")
+        .lastName("Hunt")
+        .build();
+
+    // Test
+    toTest.saveAll(List.of(jim, ethan));
+    final Long ttl = customerInfoRedisTemplate.getExpire("Customer:8a1f3c02-7d4e-4b7a-9f61-2c5e0b9d4e11");
+    final List<Customer> savedCustomers = customerInfoRedisTemplate.opsForValue().multiGet(
+        List.of("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", "Customer:8a1f3c02-7d4e-4b7a-9f61-2c5e0b9d4e11"));
+
+    // Assert
+    assertThat(ttl).isGreaterThanOrEqualTo(3L);
+    assertThat(ttl).isLessThanOrEqualTo(4L);
+    assertThat(savedCustomers).usingRecursiveFieldByFieldElementComparator().containsExactly(jim, ethan);
   }
 
   @Test
@@ -181,13 +210,13 @@ class CustomerCacheRepositoryTest extends UsingRedis {
                 .build()
         ))
         .build();
-    redisKeyspace.put("35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo, "customer");
+    customerInfoRedisTemplate.opsForValue().set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo);
 
     // Test
     final Customer savedCustomer = toTest.findById("35adcf57-2cf7-4945-a980-e9753eb146f7").orElse(null);
 
     // Assert
-    assertThat(savedCustomer).usingRecursiveComparison().ignoringFields("timeToLive").isEqualTo(customerInfo);
+    assertThat(savedCustomer).usingRecursiveComparison().isEqualTo(customerInfo);
   }
 
   @Test
@@ -202,11 +231,57 @@ class CustomerCacheRepositoryTest extends UsingRedis {
     assertThat(savedCustomer).isNull();
   }
 
-  static class Initializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
-    @Override
-    public void initialize(ConfigurableApplicationContext applicationContext) {
-      TestPropertySourceUtils.addInlinedPropertiesToEnvironment(applicationContext, 
-          "spring.redis.time-to-live.customer=4");
-    }
+  @Test
+  @DisplayName("findEntryById should find a fresh customer entry when it is younger than the soft time-to-live")
+  void findEntryById_should_find_a_fresh_entry_when_younger_than_soft_ttl() {
+    //given
+    final Customer customerInfo = Customer.builder()
+        .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+        .email("mission.impossible@connect.fr")
+        .firstName("Jim")
+        .lastName("Phelps")
+        .build();
+    customerInfoRedisTemplate.opsForValue()
+        .set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo, Duration.ofSeconds(4));
+
+    // Test
+    final CustomerCacheEntry entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").orElse(null);
+
+    // Assert
+    assertThat(entry).isNotNull();
+    assertThat(entry.isStale()).isFalse();
+    assertThat(entry.getCustomer()).usingRecursiveComparison().isEqualTo(customerInfo);
+  }
+
+  @Test
+  @DisplayName("findEntryById should find a stale customer entry when it is older than the soft time-to-live")
+  void findEntryById_should_find_a_stale_entry_when_older_than_soft_ttl() {
+    //given an entry with less than (hard - soft) time-to-live left
+    final Customer customerInfo = Customer.builder()
+        .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+        .email("mission.impossible@connect.fr")
+        .firstName("Jim")
+        .lastName("Phelps")
+        .build();
+    customerInfoRedisTemplate.opsForValue()
+        .set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo, Duration.ofSeconds(1));
+
+    // Test
+    final CustomerCacheEntry entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").orElse(null);
+
+    // Assert
+    assertThat(entry).isNotNull();
+    assertThat(entry.isStale()).isTrue();
+    assertThat(entry.getCustomer()).usingRecursiveComparison().isEqualTo(customerInfo);
+  }
+
+  @Test
+  @DisplayName("findEntryById should return empty if there is no entry with the provided id")
+  void findEntryById_should_return_empty_when_no_entry_found_corresponding_to_provided_id() {
+    // Test
+    final CustomerCacheEntry entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").orElse(null);
+
+    // Assert
+    assertThat(entry).isNull();
   }
 }
@@ -0,0 +1,89 @@
+package com.prez.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.prez.model.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+class CustomerLocalCacheTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final Customer customer = Customer.builder()
+      .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+      .firstName("Jim")
+      .lastName("Phelps")
+      .build();
+
+  @Test
+  @DisplayName("getIfPresent should return a put customer and record hits and misses")
+  void getIfPresent_should_return_put_customer_and_record_hits_and_misses() {
+    // Given
+    final CustomerLocalCache toTest = new CustomerLocalCache(10L, 30L, 300L, 3600L, meterRegistry);
+    toTest.put(customer);
+
+    // Test
+    final Customer found = toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7");
+    final Customer notFound = toTest.getIfPresent("unknown");
+
+    // Assert
+    assertThat(found).isEqualTo(customer);
+    assertThat(notFound).isNull();
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.local").tag("result", "hit")
+        .functionCounter().count()).isEqualTo(1.0);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.local").tag("result", "miss")
+        .functionCounter().count()).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("time to live should be capped by the Redis one")
+  void time_to_live_should_be_capped_by_redis_time_to_live() {
+    // Given a Redis time to live of 0 second
+    final CustomerLocalCache toTest = new CustomerLocalCache(10L, 30L, 0L, 3600L, meterRegistry);
+    toTest.put(customer);
+
+    // Test
+    final Customer found = toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7");
+
+    // Assert
+    assertThat(found).isNull();
+  }
+
+  @Test
+  @DisplayName("getStale should return a customer past the time to live")
+  void getStale_should_return_customer_past_time_to_live() {
+    // Given a customer expired right away
+    final CustomerLocalCache toTest = new CustomerLocalCache(10L, 30L, 0L, 3600L, meterRegistry);
+    toTest.put(customer);
+
+    // Test
+    final Customer stale = toTest.getStale("35adcf57-2cf7-4945-a980-e9753eb146f7");
+
+    // Assert
+    assertThat(toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7")).isNull();
+    assertThat(stale).isEqualTo(customer);
+  }
+
+  @Test
+  @DisplayName("getStale should forget a customer after customer.cache.local.stale-time-to-live")
+  void getStale_should_forget_customer_after_stale_time_to_live_property() {
+    new ApplicationContextRunner()
+        .withBean(SimpleMeterRegistry.class)
+        .withUserConfiguration(CustomerLocalCache.class)
+        .withPropertyValues("spring.redis.time-to-live.customer=300", "customer.cache.local.stale-time-to-live=0")
+        .run(context -> {
+          // Given
+          final CustomerLocalCache toTest = context.getBean(CustomerLocalCache.class);
+
+          // Test
+          toTest.put(customer);
+
+          // Assert
+          assertThat(toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7")).isEqualTo(customer);
+          assertThat(toTest.getStale("35adcf57-2cf7-4945-a980-e9753eb146f7")).isNull();
+        });
+  }
+}
@@ -0,0 +1,113 @@
+package com.prez.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.prez.lib.limit.LatencyBudget;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerNotFoundCacheTest {
+
+  @Mock
+  private StringRedisTemplate redisTemplate;
+
+  @Mock
+  private ValueOperations<String, String> valueOperations;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private CustomerNotFoundCache toTest;
+
+  @BeforeEach
+  void setup() {
+    // calls run by the caller, without circuit breaker
+    final LatencyBudget budget = new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1),
+        CircuitBreaker.ofDefaults("redis"), Runnable::run, meterRegistry);
+    toTest = new CustomerNotFoundCache(30L, redisTemplate, budget, meterRegistry);
+  }
+
+  @Test
+  @DisplayName("isNotFound should tell whether the customer is known as not found and record hits and misses")
+  void isNotFound_should_tell_known_not_found_customers_and_record_hits_and_misses() {
+    // Given
+    when(redisTemplate.hasKey("CustomerNotFound:unknown")).thenReturn(true);
+    when(redisTemplate.hasKey("CustomerNotFound:123456789")).thenReturn(false);
+
+    // Test
+    final boolean unknown = toTest.isNotFound("unknown");
+    final boolean known = toTest.isNotFound("123456789");
+
+    // Assert
+    assertThat(unknown).isTrue();
+    assertThat(known).isFalse();
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.not-found").tag("result", "hit")
+        .counter().count()).isEqualTo(1.0);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.not-found").tag("result", "miss")
+        .counter().count()).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("isNotFound should not know the customer as not found when Redis fails")
+  void isNotFound_should_return_false_when_redis_fails() {
+    // Given
+    when(redisTemplate.hasKey("CustomerNotFound:unknown"))
+        .thenThrow(new RedisConnectionFailureException("Redis down"));
+
+    // Test
+    final boolean notFound = toTest.isNotFound("unknown");
+
+    // Assert
+    assertThat(notFound).isFalse();
+  }
+
+  @Test
+  @DisplayName("putNotFound should save the customer as not found with its own time-to-live")
+  void putNotFound_should_save_not_found_customer_with_ttl() {
+    // Given
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+    // Test
+    toTest.putNotFound("unknown");
+
+    // Assert
+    verify(valueOperations).set("CustomerNotFound:unknown", "1", Duration.ofSeconds(30));
+    assertThat(meterRegistry.get("cache.puts").tag("cache", "customer.not-found").counter().count())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("putNotFound should keep the customer as not found for spring.redis.time-to-live.customer-not-found")
+  void putNotFound_should_use_the_time_to_live_of_the_configuration() {
+    new ApplicationContextRunner()
+        .withBean(StringRedisTemplate.class, () -> redisTemplate)
+        .withBean(LatencyBudget.class, () -> new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1),
+            CircuitBreaker.ofDefaults("redis"), Runnable::run, meterRegistry))
+        .withBean(SimpleMeterRegistry.class)
+        .withUserConfiguration(CustomerNotFoundCache.class)
+        .withPropertyValues("spring.redis.time-to-live.customer-not-found=5")
+        .run(context -> {
+          // Given
+          when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+          // Test
+          context.getBean(CustomerNotFoundCache.class).putNotFound("unknown");
+
+          // Assert
+          verify(valueOperations).set("CustomerNotFound:unknown", "1", Duration.ofSeconds(5));
+        });
+  }
+}
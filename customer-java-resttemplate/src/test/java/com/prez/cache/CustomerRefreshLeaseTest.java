@@ -0,0 +1,147 @@
+package com.prez.cache;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.prez.UsingRedis;
+import com.prez.config.RedisConfig;
+import com.prez.lib.limit.LatencyBudget;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.data.redis.DataRedisTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+@ActiveProfiles({"test"})
+@Tag("docker")
+@DataRedisTest
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ContextConfiguration(classes = RedisConfig.class)
+class CustomerRefreshLeaseTest extends UsingRedis {
+
+  @Autowired
+  private StringRedisTemplate redisTemplate;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private CustomerRefreshLease toTest;
+
+  @BeforeEach
+  void beforeEach() {
+    meterRegistry = new SimpleMeterRegistry();
+    toTest = lease(true);
+    redisTemplate.delete(redisTemplate.keys("CustomerRefreshLease:*"));
+    redisTemplate.delete("refreshed:123");
+  }
+
+  private CustomerRefreshLease lease(boolean enabled) {
+    final CustomerRefreshLeaseProperties properties = new CustomerRefreshLeaseProperties();
+    properties.setEnabled(enabled);
+    properties.setLeaseTime(Duration.ofSeconds(2));
+    properties.setMaxWait(Duration.ofMillis(500));
+    properties.setPollInterval(Duration.ofMillis(20));
+    // calls run by the caller, without circuit breaker
+    final LatencyBudget budget = new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1),
+        CircuitBreaker.ofDefaults("redis"), Runnable::run, meterRegistry);
+    return new CustomerRefreshLease(properties, redisTemplate, budget, meterRegistry);
+  }
+
+  private double acquisitions(String result) {
+    return meterRegistry.get("refresh.lease.acquisitions").tag("name", "customer").tag("result", result).counter()
+        .count();
+  }
+
+  @Test
+  @DisplayName("tryAcquire should acquire a free lease for the lease time, and not a held one")
+  void tryAcquire_should_acquire_a_free_lease_and_not_a_held_one() {
+    // Test
+    final CustomerRefreshLease.Lease first = toTest.tryAcquire("123");
+    final CustomerRefreshLease.Lease second = toTest.tryAcquire("123");
+    final Long ttl = redisTemplate.getExpire("CustomerRefreshLease:123", MILLISECONDS);
+
+    // Assert
+    assertThat(first.isAcquired()).isTrue();
+    assertThat(second.isAcquired()).isFalse();
+    assertThat(ttl).isBetween(1L, 2000L);
+    assertThat(acquisitions("acquired")).isEqualTo(1.0);
+    assertThat(acquisitions("contended")).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("release should release the lease only while it is still the one of its owner")
+  void release_should_release_only_its_own_lease() {
+    // Given a lease released, then acquired by another caller
+    final CustomerRefreshLease.Lease first = toTest.tryAcquire("123");
+    first.release();
+    final boolean releasedOnce = !Boolean.TRUE.equals(redisTemplate.hasKey("CustomerRefreshLease:123"));
+    final CustomerRefreshLease.Lease second = toTest.tryAcquire("123");
+
+    // Test
+    first.release();
+
+    // Assert
+    assertThat(releasedOnce).isTrue();
+    assertThat(second.isAcquired()).isTrue();
+    assertThat(redisTemplate.hasKey("CustomerRefreshLease:123")).isTrue();
+  }
+
+  @Test
+  @DisplayName("awaitRefreshed should return the customer once the holder of the lease saved it")
+  void awaitRefreshed_should_return_the_customer_once_saved() {
+    // Given a lease held by another caller, which saves the customer 100ms later
+    toTest.tryAcquire("123");
+    CompletableFuture.runAsync(() -> redisTemplate.opsForValue().set("refreshed:123", "Jack"),
+        CompletableFuture.delayedExecutor(100, MILLISECONDS));
+
+    // Test
+    final Optional<String> refreshed = toTest.awaitRefreshed("123",
+        () -> Optional.ofNullable(redisTemplate.opsForValue().get("refreshed:123")));
+
+    // Assert
+    assertThat(refreshed).contains("Jack");
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "refreshed").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("awaitRefreshed should stop waiting once the lease is released without the customer being saved")
+  void awaitRefreshed_should_stop_waiting_once_the_lease_is_released() {
+    // Given a lease released by its holder
+    toTest.tryAcquire("123").release();
+
+    // Test
+    final Optional<String> refreshed = toTest.awaitRefreshed("123",
+        () -> Optional.ofNullable(redisTemplate.opsForValue().get("refreshed:123")));
+
+    // Assert
+    assertThat(refreshed).isEmpty();
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "released").timer().totalTime(MILLISECONDS))
+        .isLessThan(500);
+  }
+
+  @Test
+  @DisplayName("tryAcquire should always acquire the lease, without Redis, when disabled")
+  void tryAcquire_should_always_acquire_when_disabled() {
+    // Given
+    final CustomerRefreshLease disabled = lease(false);
+
+    // Test
+    final CustomerRefreshLease.Lease first = disabled.tryAcquire("123");
+    final CustomerRefreshLease.Lease second = disabled.tryAcquire("123");
+
+    // Assert
+    assertThat(first.isAcquired()).isTrue();
+    assertThat(second.isAcquired()).isTrue();
+    assertThat(redisTemplate.hasKey("CustomerRefreshLease:123")).isFalse();
+  }
+}
@@ -0,0 +1,57 @@
+package com.prez.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.prez.UsingRedis;
+import com.prez.config.RedisConfig;
+import com.prez.model.Customer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.data.redis.DataRedisTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+@ActiveProfiles({"test"})
+@Tag("docker")
+@DataRedisTest
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ContextConfiguration(classes = RedisConfig.class)
+class LegacyCustomerKeysCleanerTest extends UsingRedis {
+
+  @Autowired
+  private RedisTemplate<String, Customer> customerInfoRedisTemplate;
+
+  @Autowired
+  private StringRedisTemplate stringRedisTemplate;
+
+  @BeforeEach
+  void beforeEach() {
+    stringRedisTemplate.delete(stringRedisTemplate.keys("*ustomer*"));
+  }
+
+  @Test
+  @DisplayName("clean should remove the keys of the former Redis repository and keep the new ones")
+  void clean_should_remove_legacy_keys_and_keep_new_ones() {
+    // Given the hashes, phantom copies and index set of the former repository, and an entry of the new cache
+    stringRedisTemplate.opsForHash().put("customer:jim", "firstName", "Jim");
+    stringRedisTemplate.opsForHash().put("customer:cinnamon", "firstName", "Cinnamon");
+    stringRedisTemplate.opsForHash().put("customer:cinnamon:phantom", "firstName", "Cinnamon");
+    stringRedisTemplate.opsForSet().add("customer", "jim", "cinnamon", "rollin");
+    customerInfoRedisTemplate.opsForValue()
+        .set("Customer:jim", Customer.builder().customerId("jim").firstName("Jim").lastName("Phelps").build());
+
+    // Test, batches smaller than the number of keys
+    final long removed = new LegacyCustomerKeysCleaner(2, customerInfoRedisTemplate).clean();
+
+    // Assert
+    assertThat(removed).isEqualTo(4L);
+    assertThat(stringRedisTemplate.keys("*ustomer*")).containsExactly("Customer:jim");
+  }
+}
@@ -0,0 +1,105 @@
+package com.prez.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.prez.lib.limit.LatencyBudget;
+import com.prez.model.Customer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+
+@ExtendWith(MockitoExtension.class)
+class ResilientCustomerCacheTest {
+
+  @Mock
+  private CustomerCacheRepository delegate;
+
+  private ExecutorService executor;
+
+  private ResilientCustomerCache toTest;
+
+  @BeforeEach
+  void setup() {
+    executor = Executors.newCachedThreadPool();
+    toTest = new ResilientCustomerCache(delegate, new LatencyBudget("redis", Duration.ofMillis(100),
+        Duration.ofMillis(100), CircuitBreaker.ofDefaults("redis"), executor, new SimpleMeterRegistry()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  @DisplayName("findEntryById should return the cached entry when Redis answers within the budget")
+  void findEntryById_should_return_the_cached_entry() {
+    // Given
+    final CustomerCacheEntry entry = new CustomerCacheEntry(Customer.builder().customerId("123").build(), false);
+    when(delegate.findEntryById("123")).thenReturn(Optional.of(entry));
+
+    // Test
+    final Optional<CustomerCacheEntry> found = toTest.findEntryById("123");
+
+    // Assert
+    assertThat(found).contains(entry);
+  }
+
+  @Test
+  @DisplayName("findEntryById should be a miss when Redis is too slow")
+  void findEntryById_should_be_a_miss_when_redis_is_too_slow() {
+    // Given
+    when(delegate.findEntryById("123")).thenAnswer(invocation -> {
+      Thread.sleep(1000);
+      return Optional.empty();
+    });
+
+    // Test
+    final Optional<CustomerCacheEntry> found = toTest.findEntryById("123");
+
+    // Assert
+    assertThat(found).isEmpty();
+  }
+
+  @Test
+  @DisplayName("findById should be a miss when Redis fails")
+  void findById_should_be_a_miss_when_redis_fails() {
+    // Given
+    when(delegate.findById("123")).thenThrow(new RedisConnectionFailureException("Redis down"));
+
+    // Test
+    final Optional<Customer> found = toTest.findById("123");
+
+    // Assert
+    assertThat(found).isEmpty();
+  }
+
+  @Test
+  @DisplayName("saveAll should give up the write when Redis fails")
+  void saveAll_should_give_up_when_redis_fails() {
+    // Given
+    final List<Customer> customers = List.of(Customer.builder().customerId("123").build());
+    doThrow(new RedisSystemException("Redis down", null)).when(delegate).saveAll(customers);
+
+    // Test
+    toTest.saveAll(customers);
+
+    // Assert
+    verify(delegate).saveAll(customers);
+  }
+}
@@ -7,6 +7,7 @@ import static org.springframework.http.HttpMethod.POST;
 
 import com.prez.Application;
 import com.prez.UsingMongoDBAndRedis;
+import com.prez.model.Customer;
 import com.prez.model.CustomerPreferences;
 import com.prez.utils.FakeTokenGenerator;
 import java.net.URI;
@@ -22,8 +23,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
-import org.springframework.data.keyvalue.core.KeyValueAdapter;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -41,7 +42,7 @@ class CreateCustomerPreferencesIntegrationTest extends UsingMongoDBAndRedis {
   @LocalServerPort
   private int localServerPort;
   @Autowired
-  private KeyValueAdapter redisKeyspace;
+  private RedisTemplate<String, Customer> customerInfoRedisTemplate;
   @Autowired
   private MongoOperations mongoOperations;
 
@@ -64,7 +65,7 @@ class CreateCustomerPreferencesIntegrationTest extends UsingMongoDBAndRedis {
 
   @AfterEach
   void afterEach() {
-    redisKeyspace.deleteAllOf("customer");
+    customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("Customer:*"));
     mongoOperations.dropCollection("preferences");
   }
 
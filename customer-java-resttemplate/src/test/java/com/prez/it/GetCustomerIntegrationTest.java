@@ -28,7 +28,6 @@ import com.prez.model.Customer;
 import com.prez.model.LoyaltyProgram;
 import com.prez.model.RailPass;
 import com.prez.utils.FakeTokenGenerator;
-import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.Period;
@@ -47,8 +46,8 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.data.keyvalue.core.KeyValueAdapter;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -75,7 +74,7 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
   @LocalServerPort
   private int localServerPort;
   @Autowired
-  private KeyValueAdapter customerInfoRedisTemplate;
+  private RedisTemplate<String, Customer> customerInfoRedisTemplate;
   @Autowired
   private MongoOperations mongoOperations;
 
@@ -155,7 +154,8 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
 
   @AfterEach
   void afterEach() {
-    customerInfoRedisTemplate.deleteAllOf("customer");
+    customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("Customer:*"));
+    customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("CustomerNotFound:*"));
     mongoOperations.dropCollection("preferences");
     resetAllRequests(); //reset all requests registered by wiremock to be isolate each fullCustomer.json
   }
@@ -216,7 +216,7 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
                 .build()
         ))
         .build();
-    customerInfoRedisTemplate.put("subzero", subzero, "customer");
+    customerInfoRedisTemplate.opsForValue().set("Customer:subzero", subzero);
 
     httpHeaders.set("Authorization", "Bearer " + VALID_TOKEN);
 
@@ -251,7 +251,8 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
 
   @Test
   @DisplayName("GET customers should return customer info if it is not cached, retrieve it and cached it")
-  void GET_customers_should_return_customer_info_if_it_is_not_cached_retrieve_it_and_cached_it() {
+  void GET_customers_should_return_customer_info_if_it_is_not_cached_retrieve_it_and_cached_it()
+      throws InterruptedException {
     // Given
     httpHeaders.set("Authorization", "Bearer " + VALID_TOKEN);
 
@@ -295,11 +296,12 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
     );
 
     /*
-     redis
+     redis, saved behind the response
     */
-    final Customer savedCustomer = (Customer) customerInfoRedisTemplate.get("72f028e2-fbb8-48b3-b943-bf4daad961ed", "customer");
+    final Customer savedCustomer = awaitInCache("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed");
+    final Long ttl = customerInfoRedisTemplate.getExpire("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed");
     assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
-    assertThat(savedCustomer).usingRecursiveComparison().ignoringFields("timeToLive").isEqualTo(Customer.builder()
+    assertThat(savedCustomer).usingRecursiveComparison().isEqualTo(Customer.builder()
         .customerId("72f028e2-fbb8-48b3-b943-bf4daad961ed")
         .firstName("Elliot")
         .lastName("Alderson")
@@ -328,9 +330,8 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
                 .validityEndDate(LocalDate.of(2019, 12, 23))
                 .build())).build());
 
-    final Duration ttl = Duration.ofSeconds(savedCustomer.getTimeToLive());
-    assertThat(ttl).isGreaterThanOrEqualTo(Duration.ofSeconds(3));
-    assertThat(ttl).isLessThanOrEqualTo(Duration.ofSeconds(10));
+    assertThat(ttl).isGreaterThanOrEqualTo(3L);
+    assertThat(ttl).isLessThanOrEqualTo(10L);
   }
 
   @Test
@@ -346,6 +347,12 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
 
     // Then
     assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+    // asked again, the customer is known as not found: the customer web service is not called twice
+    ResponseEntity<Customer> askedAgain = this.restTemplate.exchange(baseUrl + "/customers", GET,
+        new HttpEntity<>(httpHeaders), Customer.class);
+    assertThat(askedAgain.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    verify(1, getRequestedFor(urlEqualTo("/customers/unknownCustomer")));
   }
 
   @Test
@@ -400,6 +407,17 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
 
   // we could have added other tests with timeouts... (like "a real app in production", right? :>)
 
+  private Customer awaitInCache(String key) throws InterruptedException {
+    for (int attempt = 0; attempt < 20; attempt++) {
+      final Customer customer = customerInfoRedisTemplate.opsForValue().get(key);
+      if (customer != null) {
+        return customer;
+      }
+      Thread.sleep(50);
+    }
+    return null;
+  }
+
   static class Initializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
     @Override
     public void initialize(ConfigurableApplicationContext applicationContext) {
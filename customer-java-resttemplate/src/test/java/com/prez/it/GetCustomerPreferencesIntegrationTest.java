@@ -9,6 +9,7 @@ import static org.springframework.http.HttpMethod.GET;
 import com.prez.Application;
 import com.prez.UsingMongoDBAndRedis;
 import com.prez.api.dto.CustomerPreferencesProfileResponse;
+import com.prez.model.Customer;
 import com.prez.model.CustomerPreferences;
 import com.prez.model.SeatPreference;
 import com.prez.utils.FakeTokenGenerator;
@@ -22,8 +23,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
-import org.springframework.data.keyvalue.core.KeyValueAdapter;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -40,7 +41,7 @@ class GetCustomerPreferencesIntegrationTest extends UsingMongoDBAndRedis {
   @LocalServerPort
   private int localServerPort;
   @Autowired
-  private KeyValueAdapter redisKeySpace;
+  private RedisTemplate<String, Customer> customerInfoRedisTemplate;
   @Autowired
   private MongoOperations mongoOperations;
 
@@ -62,7 +63,7 @@ class GetCustomerPreferencesIntegrationTest extends UsingMongoDBAndRedis {
 
   @AfterEach
   void afterEach() {
-    redisKeySpace.deleteAllOf("customer");
+    customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("Customer:*"));
     mongoOperations.dropCollection("preferences");
   }
 
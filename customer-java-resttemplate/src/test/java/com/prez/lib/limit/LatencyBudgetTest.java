@@ -0,0 +1,174 @@
+package com.prez.lib.limit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LatencyBudgetTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicInteger calls = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private ExecutorService executor;
+  private CircuitBreaker circuitBreaker;
+  private LatencyBudget toTest;
+  private LatencyBudget.Operation get;
+  private LatencyBudget.Operation put;
+
+  @BeforeEach
+  void setup() {
+    // two calls in progress at most
+    executor = new ThreadPoolExecutor(0, 2, 1, TimeUnit.SECONDS, new SynchronousQueue<>());
+    circuitBreaker = CircuitBreaker.of("redis", CircuitBreakerConfig.custom()
+        .slidingWindowSize(2)
+        .minimumNumberOfCalls(2)
+        .failureRateThreshold(50)
+        .waitDurationInOpenState(Duration.ofMinutes(1))
+        .build());
+    toTest = new LatencyBudget("redis", Duration.ofMillis(50), Duration.ofMillis(100), circuitBreaker, executor,
+        meterRegistry);
+    get = toTest.operation("get");
+    put = toTest.operation("put");
+  }
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  private String stalled() {
+    calls.incrementAndGet();
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return "too late";
+  }
+
+  private double count(String operation, String result) {
+    return meterRegistry.get("budget.calls").tag("name", "redis").tag("operation", operation).tag("result", result)
+        .counter().count();
+  }
+
+  @Test
+  @DisplayName("read should return what the read returned within the budget")
+  void read_shouldReturnResult_whenWithinBudget() {
+    // Test
+    final String result = get.read(() -> "cached", "fallback");
+
+    // Assert
+    assertThat(result).isEqualTo("cached");
+    assertThat(count("get", "success")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read should return the fallback once the budget is over, without waiting for the read")
+  void read_shouldReturnFallback_whenPastBudget() {
+    // Given
+    final long start = System.nanoTime();
+
+    // Test
+    final String result = get.read(this::stalled, "fallback");
+
+    // Assert
+    assertThat(result).isEqualTo("fallback");
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    assertThat(count("get", "timeout")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read should return the fallback when the read fails")
+  void read_shouldReturnFallback_whenReadFails() {
+    // Test
+    final String result = get.read(() -> {
+      throw new IllegalStateException("Redis down");
+    }, "fallback");
+
+    // Assert
+    assertThat(result).isEqualTo("fallback");
+    assertThat(count("get", "error")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read should not even try once the circuit breaker opened after repeated calls past their budget")
+  void read_shouldNotCall_whenCircuitOpen() {
+    // Given two reads past their budget
+    get.read(this::stalled, "fallback");
+    get.read(this::stalled, "fallback");
+
+    // Test
+    final String result = get.read(this::stalled, "fallback");
+
+    // Assert
+    assertThat(result).isEqualTo("fallback");
+    assertThat(calls.get()).isEqualTo(2);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(count("get", "circuit-open")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read and write should return the fallback within the budget when every executor thread is busy")
+  void readAndWrite_shouldReturnFallback_whenExecutorFull() {
+    // Given two stalled writes holding the two threads, the circuit breaker kept closed
+    circuitBreaker = CircuitBreaker.ofDefaults("redis");
+    toTest = new LatencyBudget("redis", Duration.ofMillis(50), Duration.ofMillis(50), circuitBreaker, executor,
+        meterRegistry);
+    toTest.operation("put").write(this::stalled);
+    toTest.operation("put").write(this::stalled);
+    final long start = System.nanoTime();
+
+    // Test
+    final String result = toTest.operation("get").read(() -> "cached", "fallback");
+    final boolean written = toTest.operation("put").write(calls::incrementAndGet);
+
+    // Assert
+    assertThat(result).isEqualTo("fallback");
+    assertThat(written).isFalse();
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(50));
+    assertThat(calls.get()).isEqualTo(2);
+    assertThat(count("get", "rejected")).isEqualTo(1);
+    assertThat(count("put", "rejected")).isEqualTo(1);
+    assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("operation should register the counters of every result once, before any call")
+  void operation_shouldRegisterCounters_beforeAnyCall() {
+    // Test
+    toTest.operation("delete");
+
+    // Assert
+    assertThat(meterRegistry.get("budget.calls").tag("operation", "delete").counters()).hasSize(6);
+    assertThat(count("delete", "timeout")).isZero();
+  }
+
+  @Test
+  @DisplayName("write should tell whether the write was done within the budget")
+  void write_shouldTellWhetherDone_withinBudget() {
+    // Test
+    final boolean done = put.write(calls::incrementAndGet);
+    final boolean tooLate = put.write(this::stalled);
+
+    // Assert
+    assertThat(done).isTrue();
+    assertThat(tooLate).isFalse();
+    assertThat(count("put", "success")).isEqualTo(1);
+    assertThat(count("put", "timeout")).isEqualTo(1);
+  }
+}
@@ -0,0 +1,122 @@
+package com.prez.lib.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+class CachingJwtDecoderTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final JwtDecoder delegate = mock(JwtDecoder.class);
+  private final CachingJwtDecoder toTest = new CachingJwtDecoder(delegate, 10, Duration.ofMinutes(10), meterRegistry);
+
+  private static Jwt jwt(Instant expiresAt) {
+    return Jwt.withTokenValue("token")
+        .header("alg", "RS256")
+        .subject("trotro")
+        .issuedAt(Instant.now().minusSeconds(10))
+        .expiresAt(expiresAt)
+        .build();
+  }
+
+  @Test
+  @DisplayName("decode should verify a token only once")
+  void decode_shouldVerifyOnce_whenSameTokenDecodedTwice() {
+    // Given
+    final Jwt expected = jwt(Instant.now().plusSeconds(60));
+    when(delegate.decode("token")).thenReturn(expected);
+
+    // Test
+    final Jwt first = toTest.decode("token");
+    final Jwt second = toTest.decode("token");
+
+    // Assert
+    assertThat(first).isSameAs(expected);
+    assertThat(second).isSameAs(expected);
+    verify(delegate).decode("token");
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "jwt").tag("result", "hit").functionCounter().count())
+        .isEqualTo(1);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "jwt").tag("result", "miss").functionCounter().count())
+        .isEqualTo(1);
+    assertThat(meterRegistry.get("jwt.verification").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("decode should verify again a token past its expiration")
+  void decode_shouldVerifyAgain_whenTokenExpired() {
+    // Given
+    when(delegate.decode("token")).thenReturn(jwt(Instant.now().minusSeconds(1)));
+
+    // Test
+    toTest.decode("token");
+    toTest.decode("token");
+
+    // Assert
+    verify(delegate, times(2)).decode("token");
+  }
+
+  @Test
+  @DisplayName("decode should not cache a token failing the verification")
+  void decode_shouldNotCache_whenVerificationFails() {
+    // Given
+    when(delegate.decode("token")).thenThrow(new BadJwtException("bad signature"));
+
+    // Test
+    final Throwable first = catchThrowable(() -> toTest.decode("token"));
+    final Throwable second = catchThrowable(() -> toTest.decode("token"));
+
+    // Assert
+    assertThat(first).isInstanceOf(BadJwtException.class);
+    assertThat(second).isInstanceOf(BadJwtException.class);
+    verify(delegate, times(2)).decode("token");
+  }
+
+  @Test
+  @DisplayName("invalidateAll should make the tokens verified again")
+  void invalidateAll_shouldForgetVerifiedTokens() {
+    // Given
+    when(delegate.decode("token")).thenReturn(jwt(Instant.now().plusSeconds(60)));
+    toTest.decode("token");
+
+    // Test
+    toTest.invalidateAll();
+    toTest.decode("token");
+
+    // Assert
+    verify(delegate, times(2)).decode("token");
+  }
+
+  @Test
+  @DisplayName("decode should not cache a token verified while the keys changed")
+  void decode_shouldNotCache_whenInvalidatedDuringVerification() {
+    // Given the keys changing while the first token is verified
+    final Jwt rotated = jwt(Instant.now().plusSeconds(60));
+    when(delegate.decode("token"))
+        .thenAnswer(invocation -> {
+          toTest.invalidateAll();
+          return rotated;
+        })
+        .thenReturn(rotated);
+
+    // Test
+    final Jwt first = toTest.decode("token");
+    toTest.decode("token");
+
+    // Assert
+    assertThat(first).isSameAs(rotated);
+    verify(delegate, times(2)).decode("token");
+  }
+}
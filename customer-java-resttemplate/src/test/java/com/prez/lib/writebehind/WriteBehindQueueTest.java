@@ -0,0 +1,176 @@
+package com.prez.lib.writebehind;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.prez.cache.CustomerCacheRepository;
+import com.prez.config.CacheConfig;
+import com.prez.model.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+class WriteBehindQueueTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final List<List<String>> batches = new ArrayList<>();
+  // drains only run when told to
+  private final List<Runnable> drains = new ArrayList<>();
+
+  // values are "key:version"
+  private WriteBehindQueue<String, String> queue(int capacity, int batchSize, Consumer<List<String>> writer,
+                                                 Executor executor) {
+    return new WriteBehindQueue<>("test", capacity, batchSize, value -> value.split(":")[0], writer, executor,
+        meterRegistry);
+  }
+
+  private WriteBehindQueue<String, String> queue(int capacity) {
+    return queue(capacity, 10, batches::add, drains::add);
+  }
+
+  private void runDrains() {
+    new ArrayList<>(drains).forEach(Runnable::run);
+    drains.clear();
+  }
+
+  private double count(String result) {
+    return meterRegistry.get("write-behind.offers").tag("name", "test").tag("result", result).counter().count();
+  }
+
+  private double size() {
+    return meterRegistry.get("write-behind.size").tag("name", "test").gauge().value();
+  }
+
+  @Test
+  @DisplayName("offer should return right away and write the value on the executor")
+  void offer_should_return_right_away_and_write_the_value_on_the_executor() {
+    // Given
+    final WriteBehindQueue<String, String> toTest = queue(10);
+
+    // Test
+    final boolean queued = toTest.offer("a:1");
+    final List<List<String>> writtenBeforeDrain = new ArrayList<>(batches);
+    runDrains();
+
+    // Assert
+    assertThat(queued).isTrue();
+    assertThat(writtenBeforeDrain).isEmpty();
+    assertThat(batches).containsExactly(List.of("a:1"));
+    assertThat(count("queued")).isEqualTo(1.0);
+    assertThat(count("written")).isEqualTo(1.0);
+    assertThat(size()).isZero();
+  }
+
+  @Test
+  @DisplayName("offer should only keep the last value of a key until it is written, and write the values at once")
+  void offer_should_coalesce_values_of_the_same_key_until_written() {
+    // Given
+    final WriteBehindQueue<String, String> toTest = queue(10);
+
+    // Test
+    toTest.offer("a:1");
+    toTest.offer("b:1");
+    toTest.offer("a:2");
+    runDrains();
+
+    // Assert
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0)).containsExactlyInAnyOrder("a:2", "b:1");
+    assertThat(count("coalesced")).isEqualTo(1.0);
+    assertThat(count("written")).isEqualTo(2.0);
+  }
+
+  @Test
+  @DisplayName("offer should drop the value of a new key when the queue is full")
+  void offer_should_drop_the_value_of_a_new_key_when_the_queue_is_full() {
+    // Given a full queue
+    final WriteBehindQueue<String, String> toTest = queue(2);
+    toTest.offer("a:1");
+    toTest.offer("b:1");
+
+    // Test
+    final boolean dropped = !toTest.offer("c:1");
+    final boolean coalesced = toTest.offer("b:2");
+
+    // Assert
+    assertThat(dropped).isTrue();
+    assertThat(coalesced).isTrue();
+    assertThat(count("dropped")).isEqualTo(1.0);
+    assertThat(size()).isEqualTo(2.0);
+  }
+
+  @Test
+  @DisplayName("offer should count the failed writes and keep on writing the next values")
+  void offer_should_count_failed_writes_and_keep_on_writing() {
+    // Given a writer failing for a, one value written at a time
+    final WriteBehindQueue<String, String> toTest = queue(10, 1, batch -> {
+      if (batch.contains("a:1")) {
+        throw new IllegalStateException("Redis down");
+      }
+      batches.add(batch);
+    }, drains::add);
+
+    // Test
+    toTest.offer("a:1");
+    toTest.offer("b:1");
+    runDrains();
+
+    // Assert
+    assertThat(batches).containsExactly(List.of("b:1"));
+    assertThat(count("failed")).isEqualTo(1.0);
+    assertThat(count("written")).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("offer should keep the values queued when the executor rejects the drain")
+  void offer_should_keep_the_values_queued_when_the_executor_rejects_the_drain() {
+    // Given an executor rejecting the first drain
+    final boolean[] rejecting = {true};
+    final WriteBehindQueue<String, String> toTest = queue(10, 10, batches::add, drain -> {
+      if (rejecting[0]) {
+        throw new RejectedExecutionException("busy");
+      }
+      drain.run();
+    });
+    toTest.offer("a:1");
+
+    // Test
+    rejecting[0] = false;
+    toTest.offer("b:1");
+
+    // Assert
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0)).containsExactlyInAnyOrder("a:1", "b:1");
+  }
+
+  @Test
+  @DisplayName("customerCacheWriteBehind should write batch-size customers at most per saveAll, on the given executor")
+  void customerCacheWriteBehind_should_write_batch_size_customers_per_save_all_on_the_given_executor() {
+    // Given a batch size of 1
+    final CustomerCacheRepository customerCache = mock(CustomerCacheRepository.class);
+    final CacheConfig cacheConfig = new CacheConfig(new DefaultListableBeanFactory(), 1, false);
+    final WriteBehindQueue<String, Customer> toTest =
+        cacheConfig.customerCacheWriteBehind(customerCache, 10, 1, drains::add, meterRegistry);
+    final Customer jack = Customer.builder().customerId("123").firstName("Jack").build();
+    final Customer jill = Customer.builder().customerId("456").firstName("Jill").build();
+    toTest.offer(jack);
+    toTest.offer(jill);
+
+    // Test
+    runDrains();
+    cacheConfig.shutdownRedisExecutor();
+
+    // Assert
+    verify(customerCache).saveAll(List.of(jack));
+    verify(customerCache).saveAll(List.of(jill));
+    assertThat(meterRegistry.get("write-behind.offers").tag("name", "customer").tag("result", "written").counter()
+        .count()).isEqualTo(2.0);
+  }
+}
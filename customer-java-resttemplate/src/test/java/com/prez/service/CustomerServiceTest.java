@@ -6,27 +6,47 @@ import static com.prez.model.SeatPreference.NEAR_WINDOW;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Locale.ENGLISH;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.prez.cache.CustomerCacheEntry;
 import com.prez.cache.CustomerCacheRepository;
+import com.prez.cache.CustomerLocalCache;
+import com.prez.cache.CustomerNotFoundCache;
+import com.prez.cache.CustomerRefreshLease;
+import com.prez.cache.CustomerRefreshLeaseProperties;
 import com.prez.db.CustomerPreferencesRepository;
 import com.prez.exception.NotFoundException;
+import com.prez.lib.limit.LatencyBudget;
+import com.prez.lib.writebehind.WriteBehindQueue;
 import com.prez.model.Customer;
 import com.prez.model.CustomerPreferences;
 import com.prez.model.LoyaltyProgram;
-import com.prez.ws.CustomerWSClient;
+import com.prez.ws.CustomerClient;
+import com.prez.ws.WebServiceUnavailableException;
 import com.prez.ws.model.Email;
 import com.prez.ws.model.GetCustomerWSResponse;
 import com.prez.ws.model.PersonalDetails;
 import com.prez.ws.model.PersonalInformation;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -34,19 +54,36 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
 
 @ExtendWith(MockitoExtension.class)
 class CustomerServiceTest {
 
   @Mock
   private CustomerCacheRepository customerCacheRepository;
+
+  @Mock
+  private CustomerLocalCache customerLocalCache;
+  @Mock
+  private CustomerNotFoundCache customerNotFoundCache;
   @Mock
   private CustomerPreferencesRepository customerPreferencesRepository;
   @Mock
-  private CustomerWSClient customerWSClient;
+  private CustomerClient customerWSClient;
   @Mock
   private CustomerWSResponseToCustomerMapper mapper;
+  @Mock
+  private WriteBehindQueue<String, Customer> customerCacheWriteBehind;
+  @Spy
+  private StaleCustomerRefresher refresher = new StaleCustomerRefresher(new SyncTaskExecutor());
+  // disabled: every lease is acquired
+  @Spy
+  private CustomerRefreshLease refreshLease = new CustomerRefreshLease(new CustomerRefreshLeaseProperties(), null,
+      new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1), CircuitBreaker.ofDefaults("redis"),
+          Runnable::run, new SimpleMeterRegistry()),
+      new SimpleMeterRegistry());
 
   @InjectMocks
   private CustomerService toTest;
@@ -71,11 +108,61 @@ class CustomerServiceTest {
     assertThat(thrown).isInstanceOf(NotFoundException.class);
   }
 
+  @Test
+  @DisplayName("getCustomerInfo should remember the customer as not found when the customer web service does not find it")
+  void shouldRememberNotFound_whenCustomerWebServiceDoesNotFindCustomer() {
+    // Given the customer web service cannot find the customer 123456789
+    when(customerWSClient.getCustomer("123456789")).thenReturn(Optional.empty());
+
+    // When
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomerInfo("123456789"));
+
+    // Then
+    assertThat(thrown).isInstanceOf(NotFoundException.class);
+    verify(customerNotFoundCache).putNotFound("123456789");
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should not call Customer web service when customer known as not found")
+  void shouldThrowNotFoundWithoutCallingWebService_whenCustomerKnownAsNotFound() {
+    // Given the customer web service did not find the customer 123456789 lately
+    when(customerNotFoundCache.isNotFound("123456789")).thenReturn(true);
+
+    // When
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomerInfo("123456789"));
+
+    // Then
+    assertThat(thrown).isInstanceOf(NotFoundException.class);
+    verify(customerWSClient, never()).getCustomer("123456789");
+    verify(customerNotFoundCache, never()).putNotFound("123456789");
+  }
+
   @Test
   @DisplayName("getCustomerInfo should not call Customer web service when customer found in cache")
   void shouldReturnCachedCustomer_whenCustomerFoundInCache() {
     // Given the cache does found the customer 123456789
-    when(customerCacheRepository.findById("123456789")).thenReturn(Optional.of(Customer.builder()
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Optional.of(new CustomerCacheEntry(
+        Customer.builder()
+            .customerId("123456789")
+            .firstName("Jack")
+            .lastName("Bauer")
+            .email("jb@boom.com")
+            .birthDate(LocalDate.of(1966, 2, 18))
+            .loyaltyProgram(LoyaltyProgram.builder()
+                .number("008")
+                .status(_019875)
+                .statusRefLabel("_019875 IT IS")
+                .validityStartDate(LocalDate.now())
+                .validityEndDate(LocalDate.MAX)
+                .build())
+            .build(),
+        false)));
+
+    // When I get the customer 123456789
+    Customer customer = toTest.getCustomerInfo("123456789");
+
+    // Then
+    assertThat(customer).isEqualTo(Customer.builder()
         .customerId("123456789")
         .firstName("Jack")
         .lastName("Bauer")
@@ -88,26 +175,129 @@ class CustomerServiceTest {
             .validityStartDate(LocalDate.now())
             .validityEndDate(LocalDate.MAX)
             .build())
-        .build()));
+        .build());
+    verify(customerWSClient, never()).getCustomer("123456789");
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should return stale customer from cache and refresh it in background")
+  void shouldReturnStaleCachedCustomerAndRefreshIt_whenCustomerStaleInCache() {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    final Customer stale = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Optional.of(new CustomerCacheEntry(stale, true)));
+    // and the WS knows a fresher one
+    final GetCustomerWSResponse getCustomerWSResponse = GetCustomerWSResponse.builder()
+        .id("123456789")
+        .personalInformation(PersonalInformation.builder().firstName("Jack").lastName("Bower").build())
+        .personalDetails(PersonalDetails.builder().email(Email.builder().address("jb@boom.com").build()).build())
+        .build();
+    when(customerWSClient.getCustomer("123456789")).thenReturn(Optional.of(getCustomerWSResponse));
+    final Customer refreshed = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bower")
+        .email("jb@boom.com")
+        .build();
+    when(mapper.toCustomer(getCustomerWSResponse)).thenReturn(refreshed);
 
     // When I get the customer 123456789
-    Customer customer = toTest.getCustomerInfo("123456789");
+    final Customer customer = toTest.getCustomerInfo("123456789");
+
+    // Then the stale customer is served and the cache is refreshed
+    assertThat(customer).isEqualTo(stale);
+    verify(customerWSClient).getCustomer("123456789");
+    verify(customerCacheWriteBehind).offer(refreshed);
+    verify(customerLocalCache).put(refreshed);
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should not refresh a stale customer another instance is refreshing")
+  void shouldReturnStaleCachedCustomerWithoutRefreshingIt_whenRefreshLeaseHeldElsewhere() {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    final Customer stale = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Optional.of(new CustomerCacheEntry(stale, true)));
+    // and another instance holds its refresh lease
+    doReturn(mock(CustomerRefreshLease.Lease.class)).when(refreshLease).tryAcquire("123456789");
+
+    // When I get the customer 123456789
+    final Customer customer = toTest.getCustomerInfo("123456789");
+
+    // Then the stale customer is served, and not refreshed
+    assertThat(customer).isEqualTo(stale);
+    verify(customerWSClient, never()).getCustomer("123456789");
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should serve the customer saved by the instance holding its refresh lease")
+  void shouldReturnCustomerRefreshedElsewhere_whenRefreshLeaseHeldElsewhere() {
+    // Given another instance holds the refresh lease of the customer 123456789, missing from the cache
+    final CustomerRefreshLease.Lease contended = mock(CustomerRefreshLease.Lease.class);
+    doReturn(contended).when(refreshLease).tryAcquire("123456789");
+    // and saves it meanwhile
+    final Customer refreshed = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    doReturn(Optional.of(refreshed)).when(refreshLease).awaitRefreshed(eq("123456789"), any());
+
+    // When I get the customer 123456789
+    final Customer customer = toTest.getCustomerInfo("123456789");
 
     // Then
-    assertThat(customer).isEqualTo(Customer.builder()
+    assertThat(customer).isEqualTo(refreshed);
+    verify(customerWSClient, never()).getCustomer("123456789");
+    verify(customerLocalCache).put(refreshed);
+    verify(contended, never()).release();
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should release the refresh lease when the customer web service does not find the customer")
+  void shouldReleaseRefreshLease_whenCustomerWebServiceDoesNotFindCustomer() {
+    // Given the refresh lease of the customer 123456789 is acquired
+    final CustomerRefreshLease.Lease lease = mock(CustomerRefreshLease.Lease.class);
+    when(lease.isAcquired()).thenReturn(true);
+    doReturn(lease).when(refreshLease).tryAcquire("123456789");
+    // and the customer web service cannot find it
+    when(customerWSClient.getCustomer("123456789")).thenReturn(Optional.empty());
+
+    // When
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomerInfo("123456789"));
+
+    // Then the instances waiting for the customer stop waiting
+    assertThat(thrown).isInstanceOf(NotFoundException.class);
+    verify(lease).release();
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should neither call Redis nor Customer web service when customer found in local cache")
+  void shouldReturnLocallyCachedCustomer_whenCustomerFoundInLocalCache() {
+    // Given the local cache does found the customer 123456789
+    final Customer expected = Customer.builder()
         .customerId("123456789")
         .firstName("Jack")
         .lastName("Bauer")
         .email("jb@boom.com")
-        .birthDate(LocalDate.of(1966, 2, 18))
-        .loyaltyProgram(LoyaltyProgram.builder()
-            .number("008")
-            .status(_019875)
-            .statusRefLabel("_019875 IT IS")
-            .validityStartDate(LocalDate.now())
-            .validityEndDate(LocalDate.MAX)
-            .build())
-        .build());
+        .build();
+    when(customerLocalCache.getIfPresent("123456789")).thenReturn(expected);
+
+    // When I get the customer 123456789
+    final Customer customer = toTest.getCustomerInfo("123456789");
+
+    // Then
+    assertThat(customer).isEqualTo(expected);
+    verify(customerCacheRepository, never()).findEntryById("123456789");
     verify(customerWSClient, never()).getCustomer("123456789");
   }
 
@@ -115,7 +305,7 @@ class CustomerServiceTest {
   @DisplayName("getCustomerInfo should return customer from web service when customer not found in cache")
   void shouldCallCustomerWebService_whenCustomerNotInCache() {
     //Given the repository does not found the account 123456789
-    when(customerCacheRepository.findById("123456789")).thenReturn(Optional.empty());
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Optional.empty());
     // The WS is called
     final GetCustomerWSResponse getCustomerWSResponse = GetCustomerWSResponse.builder()
         .id("123456789")
@@ -131,15 +321,82 @@ class CustomerServiceTest {
         .email("jb@boom.com")
         .build();
     when(mapper.toCustomer(getCustomerWSResponse)).thenReturn(expected);
-    // and everything is saved
-    when(customerCacheRepository.save(expected)).thenReturn(expected);
 
     // Test
     Customer customer = toTest.getCustomerInfo("123456789");
 
     // Assert
     assertThat(customer).isEqualTo(expected);
-    verify(customerCacheRepository).save(expected);
+    // saved in Redis behind the response
+    verify(customerCacheWriteBehind).offer(expected);
+    verify(customerCacheRepository, never()).save(expected);
+    verify(customerLocalCache).put(expected);
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should read the cache again when the customer web service is unavailable")
+  void shouldReadCacheAgain_whenCustomerWebServiceUnavailable() {
+    // Given the customer 123456789 is cached only once the circuit breaker refused the call
+    final Customer expected = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Optional.empty());
+    when(customerCacheRepository.findById("123456789")).thenReturn(Optional.of(expected));
+    when(customerWSClient.getCustomer("123456789")).thenThrow(
+        new WebServiceUnavailableException("CUSTOMER_WS_CIRCUIT_OPEN", "GET CustomerWS", "Circuit breaker OPEN"));
+
+    // Test
+    final Customer customer = toTest.getCustomerInfo("123456789");
+
+    // Assert
+    assertThat(customer).isEqualTo(expected);
+    verify(customerLocalCache).put(expected);
+    verify(customerCacheWriteBehind, never()).offer(expected);
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should serve the stale copy of an expired customer when the customer web service circuit is open")
+  void shouldServeStaleCustomer_whenExpiredAndCustomerWebServiceCircuitOpen() {
+    // Given the customer 123456789 expired from the local cache and from Redis, and the circuit breaker open
+    final Customer stale = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    when(customerLocalCache.getIfPresent("123456789")).thenReturn(null);
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Optional.empty());
+    when(customerLocalCache.getStale("123456789")).thenReturn(stale);
+    when(customerWSClient.getCustomer("123456789")).thenThrow(
+        new WebServiceUnavailableException("CUSTOMER_WS_CIRCUIT_OPEN", "GET CustomerWS", "Circuit breaker OPEN"));
+
+    // Test
+    final Customer customer = toTest.getCustomerInfo("123456789");
+
+    // Assert
+    assertThat(customer).isEqualTo(stale);
+    verify(customerCacheRepository, never()).findById("123456789");
+    verify(customerLocalCache, never()).put(stale);
+    verify(customerCacheWriteBehind, never()).offer(stale);
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should throw WebServiceUnavailableException when the customer web service is unavailable and the customer not cached")
+  void shouldThrowWebServiceUnavailableException_whenCustomerWebServiceUnavailableAndCustomerNotCached() {
+    // Given the customer 123456789 is not cached and the circuit breaker refuses the call
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Optional.empty());
+    when(customerCacheRepository.findById("123456789")).thenReturn(Optional.empty());
+    when(customerWSClient.getCustomer("123456789")).thenThrow(
+        new WebServiceUnavailableException("CUSTOMER_WS_CIRCUIT_OPEN", "GET CustomerWS", "Circuit breaker OPEN"));
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomerInfo("123456789"));
+
+    // Assert
+    assertThat(thrown).isInstanceOf(WebServiceUnavailableException.class);
   }
 
   @Test
@@ -247,4 +504,43 @@ class CustomerServiceTest {
     verify(customerPreferencesRepository).findByCustomerId("James");
   }
 
+
+  @Test
+  @DisplayName("streamCustomerPreferences should open the cursor only once the stream is asked, and close it with it")
+  void shouldStreamPreferencesFromRepository() {
+    // Given
+    final AtomicBoolean closed = new AtomicBoolean();
+    when(customerPreferencesRepository.existsByCustomerId("James")).thenReturn(true);
+    when(customerPreferencesRepository.streamByCustomerId("James"))
+        .thenReturn(Stream.of(
+            CustomerPreferences.builder().customerId("James").profileName("Bond").build(),
+            CustomerPreferences.builder().customerId("James").profileName("Gordon").build())
+            .onClose(() -> closed.set(true)));
+
+    // When
+    final Supplier<Stream<CustomerPreferences>> toStream = toTest.streamCustomerPreferences("James");
+    verify(customerPreferencesRepository, never()).streamByCustomerId(anyString());
+    final List<String> profileNames;
+    try (Stream<CustomerPreferences> preferences = toStream.get()) {
+      profileNames = preferences.map(CustomerPreferences::getProfileName).collect(toList());
+    }
+
+    // Then
+    assertThat(profileNames).containsExactly("Bond", "Gordon");
+    assertThat(closed).isTrue();
+  }
+
+  @Test
+  @DisplayName("streamCustomerPreferences should throw NotFoundException, without opening a cursor, when no preferences")
+  void shouldThrowNotFound_whenNoPreferencesToStream() {
+    // Given
+    when(customerPreferencesRepository.existsByCustomerId("James")).thenReturn(false);
+
+    // When
+    final Throwable thrown = catchThrowable(() -> toTest.streamCustomerPreferences("James"));
+
+    // Then
+    assertThat(thrown).isInstanceOf(NotFoundException.class);
+    verify(customerPreferencesRepository, never()).streamByCustomerId(anyString());
+  }
 }
@@ -0,0 +1,211 @@
+package com.prez.ws;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter;
+import com.prez.ws.model.GetCustomerWSResponse;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ResilientCustomerClientTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private ExecutorService executor;
+  private MeterRegistry meterRegistry;
+  private CustomerWSResilienceProperties properties;
+  private CircuitBreaker circuitBreaker;
+  private AdaptiveConcurrencyLimiter limiter;
+
+  @BeforeEach
+  void setup() {
+    executor = Executors.newCachedThreadPool();
+    meterRegistry = new SimpleMeterRegistry();
+    properties = new CustomerWSResilienceProperties();
+    properties.setDeadline(Duration.ofSeconds(1));
+    circuitBreaker = CircuitBreaker.of("customerWS", CircuitBreakerConfig.custom()
+        .slidingWindowSize(2)
+        .minimumNumberOfCalls(2)
+        .failureRateThreshold(50)
+        .waitDurationInOpenState(Duration.ofMinutes(1))
+        .build());
+    limiter = new AdaptiveConcurrencyLimiter("customer-ws", 1, 1, 1, 0.9, 2.0, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  private ResilientCustomerClient createClient(CustomerClient delegate) {
+    return new ResilientCustomerClient(delegate, circuitBreaker, limiter, executor, properties, meterRegistry);
+  }
+
+  private Optional<GetCustomerWSResponse> found(String customerId) {
+    calls.incrementAndGet();
+    return Optional.of(GetCustomerWSResponse.builder().id(customerId).build());
+  }
+
+  private Optional<GetCustomerWSResponse> blocked(String customerId) {
+    calls.incrementAndGet();
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return Optional.of(GetCustomerWSResponse.builder().id(customerId).build());
+  }
+
+  @Test
+  @DisplayName("getCustomer should return the delegate response")
+  void getCustomer_shouldReturnDelegateResponse() {
+    // Given
+    final ResilientCustomerClient toTest = createClient(this::found);
+
+    // Test
+    final Optional<GetCustomerWSResponse> response = toTest.getCustomer("123456789");
+
+    // Assert
+    assertThat(response).map(GetCustomerWSResponse::getId).contains("123456789");
+    assertThat(circuitBreaker.getMetrics().getNumberOfSuccessfulCalls()).isEqualTo(1);
+    assertThat(limiter.getInProgress()).isZero();
+  }
+
+  @Test
+  @DisplayName("getCustomer should not call the customer web service once the circuit breaker is open")
+  void getCustomer_shouldThrowWebServiceUnavailableException_whenCircuitBreakerOpen() {
+    // Given the customer web service fails
+    final ResilientCustomerClient toTest = createClient(customerId -> {
+      calls.incrementAndGet();
+      throw new WebServiceException("GET CustomerWS", INTERNAL_SERVER_ERROR, "boom");
+    });
+    catchThrowable(() -> toTest.getCustomer("123456789"));
+    catchThrowable(() -> toTest.getCustomer("123456789"));
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("123456789"));
+
+    // Assert
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(thrown).isInstanceOf(WebServiceUnavailableException.class)
+        .hasMessageContaining("CUSTOMER_WS_CIRCUIT_OPEN");
+    assertThat(calls).hasValue(2);
+  }
+
+  @Test
+  @DisplayName("getCustomer should not call the customer web service when too many calls are in progress")
+  void getCustomer_shouldThrowWebServiceUnavailableException_whenLimitReached() throws Exception {
+    // Given a call in progress
+    final ResilientCustomerClient toTest = createClient(this::blocked);
+    final CompletableFuture<Optional<GetCustomerWSResponse>> inProgress =
+        CompletableFuture.supplyAsync(() -> toTest.getCustomer("123456789"));
+    while (limiter.getInProgress() == 0) {
+      Thread.sleep(5);
+    }
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("987654321"));
+
+    // Assert
+    assertThat(thrown).isInstanceOf(WebServiceUnavailableException.class)
+        .hasMessageContaining("CUSTOMER_WS_LIMIT_REACHED");
+    release.countDown();
+    assertThat(inProgress.get(1, TimeUnit.SECONDS)).isPresent();
+    assertThat(calls).hasValue(1);
+    assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("getCustomer should give up past the deadline and count it as a failure")
+  void getCustomer_shouldThrowWebServiceException_whenPastDeadline() {
+    // Given
+    properties.setDeadline(Duration.ofMillis(50));
+    final ResilientCustomerClient toTest = createClient(this::blocked);
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("123456789"));
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException.class,
+        e -> assertThat(e.getHttpStatusCode()).isEqualTo(GATEWAY_TIMEOUT));
+    assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("getCustomer should call the customer web service again when the first call is slower than usual")
+  void getCustomer_shouldReturnHedgedResponse_whenFirstCallTooSlow() {
+    // Given the latencies are known
+    properties.getHedging().setEnabled(true);
+    properties.getHedging().setPercentile(0.5);
+    properties.getHedging().setMinDelay(Duration.ofMillis(20));
+    limiter = new AdaptiveConcurrencyLimiter("customer-ws-hedged", 2, 2, 2, 0.9, 2.0, meterRegistry);
+    final ResilientCustomerClient toTest = createClient(customerId -> {
+      if (calls.get() == 1) {
+        // the first call after the warm-up one hangs
+        return blocked(customerId);
+      }
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return found(customerId);
+    });
+    toTest.getCustomer("123456789");
+
+    // Test
+    final Optional<GetCustomerWSResponse> response = toTest.getCustomer("123456789");
+
+    // Assert
+    assertThat(response).map(GetCustomerWSResponse::getId).contains("123456789");
+    assertThat(calls).hasValue(3);
+    assertThat(meterRegistry.get("customer.webservice.hedged").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("getCustomer should not call the customer web service again when the first call fails before the delay")
+  void getCustomer_shouldNotHedge_whenFirstCallFailsFast() throws InterruptedException {
+    // Given the latencies are known
+    properties.getHedging().setEnabled(true);
+    properties.getHedging().setPercentile(0.5);
+    properties.getHedging().setMinDelay(Duration.ofMillis(20));
+    limiter = new AdaptiveConcurrencyLimiter("customer-ws-hedged", 2, 2, 2, 0.9, 2.0, meterRegistry);
+    final ResilientCustomerClient toTest = createClient(customerId -> {
+      if (calls.get() == 1) {
+        // the first call after the warm-up one fails right away
+        calls.incrementAndGet();
+        throw new WebServiceException("GET CustomerWS", INTERNAL_SERVER_ERROR, "boom");
+      }
+      return found(customerId);
+    });
+    toTest.getCustomer("123456789");
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("123456789"));
+    Thread.sleep(50);
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException.class,
+        e -> assertThat(e.getHttpStatusCode()).isEqualTo(INTERNAL_SERVER_ERROR));
+    assertThat(calls).hasValue(2);
+    assertThat(meterRegistry.get("customer.webservice.hedged").counter().count()).isZero();
+  }
+}
@@ -0,0 +1,110 @@
+package com.prez.ws.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prez.service.CustomerWSResponseToCustomerMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class CustomerWSResponseReaderTest {
+
+  private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+  private final CustomerWSResponseToCustomerMapper mapper = new CustomerWSResponseToCustomerMapper();
+  private final CustomerWSResponseReader toTest = new CustomerWSResponseReader(objectMapper);
+
+  @ParameterizedTest
+  @ValueSource(strings = {"fullCustomer.json", "partialCustomer.json"})
+  @DisplayName("read should give the same response and customer as the full binding")
+  void shouldReadSameResponse_whenWebServiceResponse(String file) throws IOException {
+    // Given
+    final byte[] body = readResource(file);
+
+    // Test
+    final GetCustomerWSResponse read = toTest.read(body);
+
+    // Assert
+    assertThat(read.getCards()).isNotNull();
+    assertThat(read.getServices()).isNotNull();
+    assertThat(read.getPhotos()).isNotNull();
+    assertSameResponse(read, body);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      // fields before their type
+      "{\"misc\":[{\"records\":[{\"fields\":[{\"key\":\"pass_number\",\"value\":\"P1\"},"
+          + "{\"key\":\"pass_is_active\",\"value\":\"000\"},{\"key\":\"new_product_code\",\"value\":\"YOUTH\"}],"
+          + "\"type\":{\"value\":\"PASS\"}}],\"type\":{\"value\":\"PASS\"}}],\"id\":\"c1\"}",
+      // misc and records of other types, without type, null
+      "{\"id\":\"c2\",\"misc\":[{\"type\":{\"value\":\"OTHER\"},\"records\":[{\"type\":{\"value\":\"PASS\"}}]},"
+          + "{\"records\":[]},{\"type\":{\"value\":\"LOYALTY\"},\"records\":[{\"type\":{\"value\":\"OTHER\"}},"
+          + "{\"fields\":null,\"type\":{\"value\":\"LOYALTY\"}}]}]}",
+      // fields which are not strings or not a list of key/value
+      "{\"id\":\"c3\",\"misc\":[{\"type\":{\"value\":\"LOYALTY\"},\"records\":[{\"type\":{\"value\":\"LOYALTY\"},"
+          + "\"fields\":[{\"key\":\"loyalty_number\",\"value\":12.5},{\"key\":\"disable_status\",\"value\":0},"
+          + "{\"key\":\"loyalty_status\",\"value\":\"B0B0B0\"},{\"key\":\"validity_start\",\"value\":null},"
+          + "{\"key\":\"validity_end\",\"value\":{\"a\":1}},{\"key\":true,\"value\":false},\"oops\",[],"
+          + "{\"value\":\"no key\"}]},{\"type\":{\"value\":\"LOYALTY\"},\"fields\":{\"key\":\"k\"}}]}]}",
+      // explicit nulls, values which are not strings, duplicates
+      "{\"id\":1234,\"personalInformation\":null,\"personalDetails\":{\"email\":null,\"cell\":{\"number\":33}},"
+          + "\"misc\":null}",
+      "{\"id\":\"c5\",\"personalInformation\":{\"firstName\":\"A\",\"birthdate\":null},"
+          + "\"personalInformation\":{\"lastName\":\"B\",\"birthdate\":\"2001-02-03\"},\"personalDetails\":{}}",
+      "{}",
+  })
+  @DisplayName("read should give the same response and customer as the full binding for unusual responses")
+  void shouldReadSameResponse_whenUnusualResponse(String json) throws IOException {
+    // Given
+    final byte[] body = json.getBytes(UTF_8);
+
+    // Test
+    final GetCustomerWSResponse read = toTest.read(body);
+
+    // Assert
+    assertSameResponse(read, body);
+  }
+
+  @Test
+  @DisplayName("read should return null when the body is empty or null")
+  void shouldReturnNull_whenBodyEmpty() throws IOException {
+    // Test && Assert
+    assertThat(toTest.read(new byte[0])).isNull();
+    assertThat(toTest.read("null".getBytes(UTF_8))).isNull();
+  }
+
+  @Test
+  @DisplayName("read should fail as the full binding when the body is not a customer")
+  void shouldFail_whenBodyNotCustomer() {
+    // Given
+    final byte[] body = "{\"id\":\"c1\",\"personalInformation\":{\"birthdate\":\"not a date\"}}".getBytes(UTF_8);
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.read(body));
+
+    // Assert
+    assertThat(thrown).isInstanceOf(IOException.class)
+        .hasSameClassAs(catchThrowable(() -> objectMapper.readValue(body, GetCustomerWSResponse.class)));
+  }
+
+  private void assertSameResponse(GetCustomerWSResponse read, byte[] body) throws IOException {
+    final GetCustomerWSResponse expected = objectMapper.readValue(body, GetCustomerWSResponse.class);
+    assertThat(read).usingRecursiveComparison().isEqualTo(expected);
+    assertThat(mapper.toCustomer(read)).usingRecursiveComparison().isEqualTo(mapper.toCustomer(expected));
+  }
+
+  private byte[] readResource(String file) throws IOException {
+    try (InputStream resource = Objects.requireNonNull(
+        getClass().getResourceAsStream("/com/devoxx/ws/__files/" + file))) {
+      return resource.readAllBytes();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.prez.ws.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class ListOfObjectsToMapDeserializerTest {
+
+  private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+  private final ObjectReader recordReader = objectMapper.readerFor(Record.class);
+
+  @Test
+  @DisplayName("deserialize should map each key to its value")
+  void shouldMapKeysToValues_whenListOfKeyValues() throws IOException {
+    // Given
+    final String json = "{\"fields\":[{\"key\":\"pass_number\",\"value\":\"P1\"},{\"key\":\"some_key\",\"value\":\"v\"},"
+        + "{\"key\":\"pass_number\",\"value\":\"P2\"}]}";
+
+    // Test
+    final Map<String, String> fields = recordReader.<Record>readValue(json).getMap();
+
+    // Assert
+    assertThat(fields).containsExactlyInAnyOrderEntriesOf(Map.of("pass_number", "P2", "some_key", "v"));
+  }
+
+  @Test
+  @DisplayName("deserialize should give the text of the values and ignore the empty or incomplete entries")
+  void shouldMapValuesAsText_whenValuesNotStrings() throws IOException {
+    // Given
+    final String json = "{\"fields\":[{\"key\":\"int\",\"value\":12,\"other\":{\"key\":\"k\"}},"
+        + "{\"key\":\"double\",\"value\":12.50},{\"key\":\"big\",\"value\":123456789012345678901234567890},"
+        + "{\"key\":\"boolean\",\"value\":false},{\"key\":\"null\",\"value\":null},{\"key\":\"object\",\"value\":{}},"
+        + "{\"key\":\"array\",\"value\":[\"a\"]},{\"key\":\"empty\",\"value\":\"\"},{\"key\":\"\",\"value\":\"v\"},"
+        + "{\"value\":\"no key\"},{\"key\":\"no value\"},\"not an object\",[{\"key\":\"k\",\"value\":\"v\"}],"
+        + "{\"value\":\"last\",\"key\":1}]}";
+
+    // Test
+    final Map<String, String> fields = recordReader.<Record>readValue(json).getMap();
+
+    // Assert
+    assertThat(fields).containsExactlyInAnyOrderEntriesOf(Map.of(
+        "int", "12",
+        "double", "12.5",
+        "big", "123456789012345678901234567890",
+        "boolean", "false",
+        "null", "null",
+        "1", "last"));
+  }
+
+  @Test
+  @DisplayName("deserialize should give an empty map when the fields are not a list")
+  void shouldReturnEmptyMap_whenNotList() throws IOException {
+    // Test
+    final Record record = recordReader.readValue("{\"fields\":{\"key\":\"k\",\"value\":\"v\"},\"otherId\":\"id\"}");
+
+    // Assert
+    assertThat(record.getMap()).isEmpty();
+    assertThat(record.getOtherId()).isEqualTo("id");
+  }
+
+  @Test
+  @DisplayName("deserialize should reuse the keys read by the mapper")
+  void shouldReuseKnownKeys() throws IOException {
+    // Given
+    final String json = "{\"fields\":[{\"key\":\"loyalty_number\",\"value\":\"L1\"},"
+        + "{\"key\":\"pass_validity_start\",\"value\":\"2020-01-01\"},{\"key\":\"pass_validity_end2\",\"value\":\"x\"}]}";
+
+    // Test
+    final Map<String, String> fields = recordReader.<Record>readValue(json).getMap();
+
+    // Assert
+    assertThat(fields.keySet()).anySatisfy(key -> assertThat(key).isSameAs("loyalty_number"))
+        .anySatisfy(key -> assertThat(key).isSameAs("pass_validity_start"))
+        .contains("pass_validity_end2");
+  }
+}
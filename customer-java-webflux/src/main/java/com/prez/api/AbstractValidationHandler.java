@@ -1,7 +1,5 @@
 package com.prez.api;
 
-import static org.springframework.http.HttpStatus.BAD_REQUEST;
-
 import com.prez.api.dto.ErrorResponse;
 import java.util.stream.Collectors;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
@@ -10,7 +8,7 @@ import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Mono;
 
 public abstract class AbstractValidationHandler<T, U extends Validator> {
@@ -26,7 +24,7 @@ public abstract class AbstractValidationHandler<T, U extends Validator> {
 
   public final Mono<ServerResponse> handleRequest(final ServerRequest request) {
     return request.bodyToMono(this.validationClass)
-        .switchIfEmpty(Mono.error(() -> new ResponseStatusException(BAD_REQUEST, "Request body is mandatory")))
+        .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Request body is mandatory")))
         .flatMap(body -> {
           final Errors errors = new BeanPropertyBindingResult(body, this.validationClass.getName());
           this.validator.validate(body, errors);
@@ -0,0 +1,32 @@
+package com.prez.api;
+
+import static org.springframework.http.HttpStatus.UNAUTHORIZED;
+
+import lombok.Value;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * The caller of the api, resolved once per exchange from the bearer token by {@link CustomJwtTokenHandler} and stored
+ * as an exchange attribute: the filters and handlers downstream read it instead of resolving the principal again.
+ */
+@Value
+public class AuthenticatedCaller {
+
+  public static final String ATTRIBUTE = AuthenticatedCaller.class.getName();
+
+  // subject of the token
+  String customerId;
+  // authorized party, ie the client application calling on behalf of the customer, may be null
+  String azp;
+
+  /**
+   * @return the caller stored by CustomJwtTokenHandler, an error 401 when the route is not filtered by it
+   */
+  public static Mono<AuthenticatedCaller> of(ServerRequest request) {
+    return Mono.justOrEmpty(request.attribute(ATTRIBUTE))
+        .cast(AuthenticatedCaller.class)
+        .switchIfEmpty(Mono.error(() -> new ResponseStatusException(UNAUTHORIZED, "No principal")));
+  }
+}
@@ -33,9 +33,9 @@ public class CreateCustomerPreferencesHandler
   @Override
   protected Mono<ServerResponse> processBody(CreateCustomerPreferencesRequest validBody, ServerRequest originalRequest) {
     LOGGER.info("CreateCustomerPreferences : {}", originalRequest.uri());
-    return originalRequest.principal()
-        .flatMap(principal -> customerService
-            .createCustomerPreferences(principal.getName(), validBody.getSeatPreference(), validBody.getClassPreference(),
+    return AuthenticatedCaller.of(originalRequest)
+        .flatMap(caller -> customerService
+            .createCustomerPreferences(caller.getCustomerId(), validBody.getSeatPreference(), validBody.getClassPreference(),
                 validBody.getProfileName(), toLocale(validBody.getLanguage())))
         .map(CustomerPreferencesProfileResponse::of)
         .flatMap(created -> created(URI.create("/customers/preferences/" + created.getId())).bodyValue(created))
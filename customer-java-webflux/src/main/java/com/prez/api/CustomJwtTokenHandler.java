@@ -2,6 +2,8 @@ package com.prez.api;
 
 import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
@@ -12,22 +14,39 @@ import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 
+/**
+ * Resolves the principal once per exchange and stores it as an {@link AuthenticatedCaller} exchange attribute.
+ * Only a sample of the callers is written to the audit logger, a ratio of 1 writes them all, 0 none.
+ */
 public class CustomJwtTokenHandler implements HandlerFilterFunction<ServerResponse, ServerResponse> {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(CustomJwtTokenHandler.class);
+  private static final Logger AUDIT_LOGGER = LoggerFactory.getLogger("AUDIT_LOGGER");
+
+  private final double auditSampleRatio;
+
+  public CustomJwtTokenHandler(double auditSampleRatio) {
+    this.auditSampleRatio = auditSampleRatio;
+  }
 
   @Override
   public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
     return request.principal()
-        .doOnSuccess(principal
-            -> LOGGER.debug("Principal type : {} - value : {}", principal.getClass().getName(), principal))
         .ofType(JwtAuthenticationToken.class)
-        .switchIfEmpty(Mono.error(new ResponseStatusException(UNAUTHORIZED, "No principal")))
-        // Log just to see if we get the value of the custom azp attribute, but imagine we are doing something meaningful here
-        .doOnSuccess(principal ->
-            LOGGER.info("Principal info : name={}, azp={}",
-                principal.getName(),
-                principal.getTokenAttributes().get("azp")))
-        .then(next.handle(request));
+        .switchIfEmpty(Mono.error(() -> new ResponseStatusException(UNAUTHORIZED, "No principal")))
+        .flatMap(principal -> {
+          final AuthenticatedCaller caller = new AuthenticatedCaller(principal.getName(),
+              Objects.toString(principal.getTokenAttributes().get("azp"), null));
+          request.exchange().getAttributes().put(AuthenticatedCaller.ATTRIBUTE, caller);
+          audit(request, caller);
+          return next.handle(request);
+        });
+  }
+
+  private void audit(ServerRequest request, AuthenticatedCaller caller) {
+    if (AUDIT_LOGGER.isInfoEnabled() && auditSampleRatio > 0
+        && (auditSampleRatio >= 1 || ThreadLocalRandom.current().nextDouble() < auditSampleRatio)) {
+      AUDIT_LOGGER.info("Caller : {} {} name={}, azp={}", request.methodName(), request.path(),
+          caller.getCustomerId(), caller.getAzp());
+    }
   }
-}
\ No newline at end of file
+}
@@ -16,9 +16,10 @@ public class ElementNotFoundErrorHandler implements HandlerFilterFunction<Server
   public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
     return next
         .handle(request)
-        .onErrorResume(NotFoundException.class, ex ->
-            status(NOT_FOUND)
-                .bodyValue(new ErrorResponse("NOT_FOUND", ex.getLocalizedMessage()))
-        );
+        .onErrorResume(NotFoundException.class, ElementNotFoundErrorHandler::toResponse);
+  }
+
+  public static Mono<ServerResponse> toResponse(NotFoundException ex) {
+    return status(NOT_FOUND).bodyValue(new ErrorResponse("NOT_FOUND", ex.getLocalizedMessage()));
   }
 }
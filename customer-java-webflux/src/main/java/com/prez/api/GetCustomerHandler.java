@@ -30,8 +30,8 @@ public class GetCustomerHandler {
 
   @CrossOrigin
   public Mono<ServerResponse> getCustomer(ServerRequest request) {
-    return request.principal()
-        .flatMap(principal -> customerService.getCustomerInfo(principal.getName()))
+    return AuthenticatedCaller.of(request)
+        .flatMap(caller -> customerService.getCustomerInfo(caller.getCustomerId()))
         .map(CustomerResponse::of)
         .doOnSuccess(response -> LOGGER.debug("Response: {}", response))
         .flatMap(ok()::bodyValue)
@@ -2,6 +2,8 @@ package com.prez.api;
 
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 import static org.springframework.web.reactive.function.server.ServerResponse.notFound;
 import static org.springframework.web.reactive.function.server.ServerResponse.ok;
 import static org.springframework.web.reactive.function.server.ServerResponse.status;
@@ -10,11 +12,18 @@ import com.prez.api.dto.CustomerPreferencesProfileResponse;
 import com.prez.exception.NotFoundException;
 import com.prez.model.CustomerPreferences;
 import com.prez.service.CustomerService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
@@ -25,6 +34,7 @@ import reactor.util.Loggers;
 public class GetCustomerPreferencesHandler {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(GetCustomerPreferencesHandler.class);
+  private static final List<MediaType> STREAMING_MEDIA_TYPES = List.of(APPLICATION_NDJSON, TEXT_EVENT_STREAM);
   private final CustomerService customerService;
 
   public GetCustomerPreferencesHandler(CustomerService customerService) {
@@ -34,17 +44,60 @@ public class GetCustomerPreferencesHandler {
   @CrossOrigin
   public Mono<ServerResponse> getCustomerPreferences(ServerRequest request) {
     LOGGER.info("getCustomerPreferences : {}", request.uri());
-    return request.principal()
-        .flatMap(principalToken -> {
-          final Flux<CustomerPreferences> preferences = customerService.getCustomerPreferences(principalToken.getName());
-          return preferences.hasElements()
-              .flatMap(hasElement -> hasElement ?
-                  ok().contentType(APPLICATION_JSON).body(preferences.map(CustomerPreferencesProfileResponse::of), CustomerPreferencesProfileResponse.class)
-                  : Mono.error(new NotFoundException(principalToken.getName(), "customer"))
-              );
-            })
+    return AuthenticatedCaller.of(request)
+        .flatMap(caller -> customerService.getCustomerPreferences(caller.getCustomerId())
+            // a single query: its first preference decides the status, and is replayed at the head of the body,
+            // which keeps reading the preferences once the response is emitted (cancelSourceOnComplete=false)
+            .switchOnFirst((first, preferences) -> {
+              if (first.hasValue()) {
+                return ok().contentType(responseMediaType(request)).body(bodyCancellingQuery(preferences));
+              }
+              return Mono.error(first.hasError() ? first.getThrowable()
+                  : new NotFoundException(caller.getCustomerId(), "customer"));
+            }, false)
+            .singleOrEmpty())
         .log(Loggers.getLogger(CreateCustomerPreferencesHandler.class), Level.FINE, true);
   }
 
+  /**
+   * The preferences written as the body. The query is only cancelled through the body, so it is cancelled here when
+   * the body ends up not being written, for instance when no writer can encode the negotiated media type.
+   */
+  static BodyInserter<Flux<CustomerPreferences>, ReactiveHttpOutputMessage> bodyCancellingQuery(
+      Flux<CustomerPreferences> preferences) {
+    final AtomicBoolean written = new AtomicBoolean();
+    final Flux<CustomerPreferencesProfileResponse> body = preferences
+        .doOnSubscribe(subscription -> written.set(true))
+        .map(CustomerPreferencesProfileResponse::of);
+    return (message, context) -> BodyInserters.fromPublisher(body, CustomerPreferencesProfileResponse.class)
+        .insert(message, context)
+        .doFinally(signal -> {
+          if (!written.get()) {
+            preferences.take(0).subscribe();
+          }
+        });
+  }
+
+  /**
+   * The first streaming media type accepted, by order of preference of the client, or else JSON. With a streaming
+   * type, each preference is written and flushed as soon as read from Mongo (a JSON line or a server-sent event),
+   * the next ones being requested as the client reads them. A JSON array is only written once whole.
+   */
+  static MediaType responseMediaType(ServerRequest request) {
+    final List<MediaType> accepted = new ArrayList<>(request.headers().accept());
+    MediaType.sortBySpecificityAndQuality(accepted);
+    for (MediaType mediaType : accepted) {
+      for (MediaType streaming : STREAMING_MEDIA_TYPES) {
+        if (streaming.equalsTypeAndSubtype(mediaType)) {
+          return streaming;
+        }
+      }
+      if (APPLICATION_JSON.isCompatibleWith(mediaType)) {
+        return APPLICATION_JSON;
+      }
+    }
+    return APPLICATION_JSON;
+  }
+
 
 }
@@ -0,0 +1,40 @@
+package com.prez.api;
+
+import static org.springframework.web.reactive.function.server.ServerResponse.ok;
+
+import com.prez.api.dto.CustomersBatchRequest;
+import com.prez.api.dto.CustomersBatchResponse;
+import com.prez.service.CustomerService;
+import java.util.logging.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.Validator;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.util.Loggers;
+
+/**
+ * Customers asked by id, for the back-office services which need many of them at once
+ */
+@Component
+public class GetCustomersBatchHandler extends AbstractValidationHandler<CustomersBatchRequest, Validator> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GetCustomersBatchHandler.class);
+  private final CustomerService customerService;
+
+  public GetCustomersBatchHandler(Validator validator, CustomerService customerService) {
+    super(CustomersBatchRequest.class, validator);
+    this.customerService = customerService;
+  }
+
+  @Override
+  protected Mono<ServerResponse> processBody(CustomersBatchRequest validBody, ServerRequest originalRequest) {
+    LOGGER.info("GetCustomersBatch : {} customer ids", validBody.getCustomerIds().size());
+    return customerService.getCustomersInfo(validBody.getCustomerIds())
+        .map(CustomersBatchResponse::of)
+        .flatMap(ok()::bodyValue)
+        .log(Loggers.getLogger(GetCustomersBatchHandler.class), Level.FINE, true);
+  }
+}
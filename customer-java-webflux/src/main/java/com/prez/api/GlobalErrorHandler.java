@@ -21,13 +21,13 @@ public class GlobalErrorHandler implements HandlerFilterFunction<ServerResponse,
   public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
     return next
         .handle(request)
-        .onErrorResume(e -> {
-              LOGGER.error(
-                  Optional.ofNullable(e.getCause()).map(Throwable::getLocalizedMessage).orElse(e.getLocalizedMessage()),
-                  e);
-              return status(INTERNAL_SERVER_ERROR).bodyValue(new ErrorResponse("UNEXPECTED_ERROR",
-                  "Something horribly wrong happened, I could tell you what but then I’d have to kill you."));
-            }
-        );
+        .onErrorResume(GlobalErrorHandler::toResponse);
+  }
+
+  public static Mono<ServerResponse> toResponse(Throwable e) {
+    LOGGER.error(Optional.ofNullable(e.getCause()).map(Throwable::getLocalizedMessage).orElse(e.getLocalizedMessage()),
+        e);
+    return status(INTERNAL_SERVER_ERROR).bodyValue(new ErrorResponse("UNEXPECTED_ERROR",
+        "Something horribly wrong happened, I could tell you what but then I’d have to kill you."));
   }
 }
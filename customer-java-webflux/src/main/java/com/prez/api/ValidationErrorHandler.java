@@ -8,10 +8,12 @@ import com.prez.api.dto.ErrorResponse;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.codec.DecodingException;
 import org.springframework.web.reactive.function.server.HandlerFilterFunction;
 import org.springframework.web.reactive.function.server.HandlerFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Mono;
 
 public class ValidationErrorHandler implements HandlerFilterFunction<ServerResponse, ServerResponse> {
@@ -22,12 +24,13 @@ public class ValidationErrorHandler implements HandlerFilterFunction<ServerRespo
   public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
     return next
         .handle(request)
-        .onErrorResume(e -> {
-              LOGGER.error(
-                  Optional.ofNullable(e.getCause()).map(Throwable::getLocalizedMessage).orElse(e.getLocalizedMessage()),
-                  e);
-              return status(BAD_REQUEST).bodyValue(new ErrorResponse("VALIDATION_ERROR", "Bad input"));
-            }
-        );
+        .onErrorResume(e -> e instanceof ServerWebInputException || e instanceof DecodingException,
+            ValidationErrorHandler::toResponse);
+  }
+
+  public static Mono<ServerResponse> toResponse(Throwable e) {
+    LOGGER.error(Optional.ofNullable(e.getCause()).map(Throwable::getLocalizedMessage).orElse(e.getLocalizedMessage()),
+        e);
+    return status(BAD_REQUEST).bodyValue(new ErrorResponse("VALIDATION_ERROR", "Bad input"));
   }
 }
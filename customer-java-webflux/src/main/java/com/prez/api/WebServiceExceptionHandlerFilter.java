@@ -19,9 +19,11 @@ public final class WebServiceExceptionHandlerFilter implements HandlerFilterFunc
   public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
     return next
         .handle(request)
-        .onErrorResume(WebServiceException.class, ex ->
-            status(ex.getHttpStatusCode())
-                .bodyValue(new ErrorResponse(ex.getError().getError(), ex.getError().getErrorDescription()))
-        );
+        .onErrorResume(WebServiceException.class, WebServiceExceptionHandlerFilter::toResponse);
+  }
+
+  public static Mono<ServerResponse> toResponse(WebServiceException ex) {
+    return status(ex.getHttpStatusCode())
+        .bodyValue(new ErrorResponse(ex.getError().getError(), ex.getError().getErrorDescription()));
   }
 }
\ No newline at end of file
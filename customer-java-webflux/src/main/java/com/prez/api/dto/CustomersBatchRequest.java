@@ -0,0 +1,25 @@
+package com.prez.api.dto;
+
+import java.io.Serializable;
+import java.util.List;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class CustomersBatchRequest implements Serializable {
+
+  public static final int MAX_CUSTOMER_IDS = 100;
+
+  @NotEmpty(message = "{NotEmpty.customerIds}")
+  @Size(max = MAX_CUSTOMER_IDS, message = "{Size.customerIds}")
+  private List<@NotBlank(message = "{NotBlank.customerId}") String> customerIds;
+}
@@ -0,0 +1,32 @@
+package com.prez.api.dto;
+
+import static java.util.stream.Collectors.toList;
+
+import com.prez.model.CustomerBatch;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class CustomersBatchResponse {
+
+  private List<CustomerResponse> customers;
+  // ids of the customers which do not exist
+  private List<String> notFound;
+  // ids of the customers which could not be fetched, worth retrying
+  private List<String> failed;
+
+  public static CustomersBatchResponse of(CustomerBatch batch) {
+    return CustomersBatchResponse.builder()
+        .customers(batch.getCustomers().stream().map(CustomerResponse::of).collect(toList()))
+        .notFound(batch.getNotFound())
+        .failed(batch.getFailed())
+        .build();
+  }
+}
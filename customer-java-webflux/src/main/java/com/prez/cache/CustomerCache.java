@@ -1,13 +1,22 @@
 package com.prez.cache;
 
+import static java.util.stream.Collectors.toList;
+
 import com.prez.model.Customer;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.ReactiveRedisOperations;
 import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 // because Spring Data does not implement a reactive version of ReactiveCrudRepository for Redis
@@ -19,11 +28,18 @@ public class CustomerCache implements CustomerCacheRepository {
   private static final String CUSTOMER_KEY_SPACE = Customer.class.getSimpleName() + ":";
 
   private final Duration timeToLive;
+  // an entry whose remaining time-to-live is below this threshold is older than the soft time-to-live
+  private final Duration staleBelow;
+  private final ReactiveRedisOperations<String, Customer> redisTemplate;
   private final ReactiveValueOperations<String, Customer> reactiveValueOps;
 
   public CustomerCache(@Value("${spring.redis.time-to-live.customer}") Long ttlSeconds,
+                       @Value("${spring.redis.time-to-live.customer-soft:${spring.redis.time-to-live.customer}}")
+                           Long softTtlSeconds,
                        ReactiveRedisOperations<String, Customer> redisTemplate) {
     this.timeToLive = Duration.ofSeconds(ttlSeconds);
+    this.staleBelow = Duration.ofSeconds(Math.max(ttlSeconds - softTtlSeconds, 0));
+    this.redisTemplate = redisTemplate;
     this.reactiveValueOps = redisTemplate.opsForValue();
   }
 
@@ -33,9 +49,75 @@ public class CustomerCache implements CustomerCacheRepository {
     return reactiveValueOps.set(CUSTOMER_KEY_SPACE + entity.getCustomerId(), entity, timeToLive);
   }
 
+  /**
+   * Every SET EX is written on the shared connection without waiting for the previous replies: the commands are
+   * pipelined and the whole batch costs a single round trip.
+   */
+  @Override
+  public Mono<Boolean> saveAll(Collection<Customer> entities) {
+    LOGGER.debug("Saving in cache {} customers", entities.size());
+    return Flux.fromIterable(entities)
+        .flatMap(entity -> reactiveValueOps.set(CUSTOMER_KEY_SPACE + entity.getCustomerId(), entity, timeToLive),
+            Math.max(entities.size(), 1))
+        .all(Boolean.TRUE::equals);
+  }
+
   @Override
   public Mono<Customer> findById(String id) {
     LOGGER.debug("Looking for customer in cache for id='{}'", id);
-    return reactiveValueOps.get(CUSTOMER_KEY_SPACE + id);
+    return reactiveValueOps.get(CUSTOMER_KEY_SPACE + id)
+        .onErrorResume(SerializationException.class, e -> unreadable(id, e));
+  }
+
+  @Override
+  public Mono<CustomerCacheEntry> findEntryById(String id) {
+    if (staleBelow.isZero()) {
+      // soft time-to-live not shorter than the hard one: entries never get stale, no need to ask for their TTL
+      return findById(id).map(customer -> new CustomerCacheEntry(customer, false));
+    }
+    LOGGER.debug("Looking for customer and its time-to-live in cache for id='{}'", id);
+    final String key = CUSTOMER_KEY_SPACE + id;
+    // both commands are pipelined on the shared connection
+    return Mono.zip(reactiveValueOps.get(key), redisTemplate.getExpire(key).defaultIfEmpty(Duration.ZERO),
+        (customer, remaining) -> new CustomerCacheEntry(customer, remaining.compareTo(staleBelow) < 0))
+        .onErrorResume(SerializationException.class, e -> unreadable(id, e));
+  }
+
+  /**
+   * A single MGET for all the ids. Should one of the entries be unreadable, they are read again one by one so that
+   * only that one is treated as missing.
+   */
+  @Override
+  public Mono<Map<String, Customer>> findAllByIds(Collection<String> ids) {
+    if (ids.isEmpty()) {
+      return Mono.just(new HashMap<>());
+    }
+    LOGGER.debug("Looking for {} customers in cache", ids.size());
+    final List<String> keys = ids.stream().map(id -> CUSTOMER_KEY_SPACE + id).collect(toList());
+    return reactiveValueOps.multiGet(keys)
+        .map(customers -> byId(ids, customers))
+        .onErrorResume(SerializationException.class, e -> Flux.fromIterable(ids)
+            .flatMap(this::findById)
+            .collectMap(Customer::getCustomerId));
+  }
+
+  private static Map<String, Customer> byId(Collection<String> ids, List<Customer> customers) {
+    final Map<String, Customer> byId = new HashMap<>();
+    final Iterator<Customer> customer = customers.iterator();
+    for (String id : ids) {
+      final Customer found = customer.next();
+      if (found != null) {
+        byId.put(id, found);
+      }
+    }
+    return byId;
+  }
+
+  /**
+   * An entry written in a format this version cannot read is just treated as missing, it will be overwritten.
+   */
+  private static <T> Mono<T> unreadable(String id, SerializationException e) {
+    LOGGER.warn("Unreadable customer in cache for id='{}', ignoring it", id, e);
+    return Mono.empty();
   }
 }
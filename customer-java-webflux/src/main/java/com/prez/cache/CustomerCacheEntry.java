@@ -0,0 +1,15 @@
+package com.prez.cache;
+
+import com.prez.model.Customer;
+import lombok.Value;
+
+/**
+ * A customer read from the cache, flagged as stale once it is older than the soft time-to-live:
+ * it can still be served, but should be refreshed.
+ */
+@Value
+public class CustomerCacheEntry {
+
+  private Customer customer;
+  private boolean stale;
+}
@@ -1,6 +1,8 @@
 package com.prez.cache;
 
 import com.prez.model.Customer;
+import java.util.Collection;
+import java.util.Map;
 import reactor.core.publisher.Mono;
 
 // because Spring Data does not implement a reactive version of ReactiveCrudRepository for Redis
@@ -16,6 +18,14 @@ public interface CustomerCacheRepository /* extends ReactiveCrudRepository<Custo
    */
   Mono<Boolean> save(Customer entity);
 
+  /**
+   * Saves the given entities in a single round trip.
+   *
+   * @param entities must not be null.
+   * @return [Mono] emitting true if every entity has been set.
+   */
+  Mono<Boolean> saveAll(Collection<Customer> entities);
+
   /**
    * Retrieves an entity by its id.
    *
@@ -25,6 +35,22 @@ public interface CustomerCacheRepository /* extends ReactiveCrudRepository<Custo
    */
   Mono<Customer> findById(String id);
 
+  /**
+   * Retrieves an entity by its id, telling whether it is past its soft time-to-live.
+   *
+   * @param id must not be null.
+   * @return [Mono] emitting the entry with the given id or [Mono.empty] if none found.
+   * @throws IllegalArgumentException in case the given `id` is null.
+   */
+  Mono<CustomerCacheEntry> findEntryById(String id);
+
+  /**
+   * Retrieves the entities with the given ids in a single round trip.
+   *
+   * @param ids must not be null.
+   * @return [Mono] emitting the entities found by id, an id with no entity is missing from the map.
+   */
+  Mono<Map<String, Customer>> findAllByIds(Collection<String> ids);
 
 }
 
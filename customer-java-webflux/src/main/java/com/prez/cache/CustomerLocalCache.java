@@ -0,0 +1,47 @@
+package com.prez.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.prez.model.Customer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caffeine cache in front of Redis, its time-to-live capped by the Redis one.
+ * Stats under the "customer.local" cache name.
+ */
+@Component
+public class CustomerLocalCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CustomerLocalCache.class);
+  static final String CACHE_NAME = "customer.local";
+
+  private final Cache<String, Customer> cache;
+
+  public CustomerLocalCache(@Value("${customer.cache.local.maximum-size:10000}") Long maximumSize,
+                            @Value("${customer.cache.local.time-to-live:30}") Long ttlSeconds,
+                            @Value("${spring.redis.time-to-live.customer}") Long redisTtlSeconds,
+                            MeterRegistry meterRegistry) {
+    final Duration timeToLive = Duration.ofSeconds(Math.min(ttlSeconds, redisTtlSeconds));
+    LOGGER.debug("Local customer cache with maximumSize={} and timeToLive={}", maximumSize, timeToLive);
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive)
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+  }
+
+  public Customer getIfPresent(String id) {
+    return cache.getIfPresent(id);
+  }
+
+  public void put(Customer customer) {
+    cache.put(customer.getCustomerId(), customer);
+  }
+}
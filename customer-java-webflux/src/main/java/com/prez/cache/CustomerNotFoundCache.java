@@ -0,0 +1,77 @@
+package com.prez.cache;
+
+import com.prez.lib.limit.LatencyBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Customers the customer web service did not find, kept customer-not-found seconds in Redis.
+ * Past the Redis latency budget, both Monos emit false. Stats under the "customer.not-found" cache name.
+ */
+@Component
+public class CustomerNotFoundCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CustomerNotFoundCache.class);
+  static final String CACHE_NAME = "customer.not-found";
+  static final String NOT_FOUND_KEY_SPACE = "CustomerNotFound:";
+
+  private final Duration timeToLive;
+  private final ReactiveStringRedisTemplate redisTemplate;
+  private final LatencyBudget.Operation gets;
+  private final LatencyBudget.Operation writes;
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter puts;
+
+  public CustomerNotFoundCache(@Value("${spring.redis.time-to-live.customer-not-found:30}") Long ttlSeconds,
+                               ReactiveStringRedisTemplate redisTemplate, LatencyBudget redisLatencyBudget,
+                               MeterRegistry meterRegistry) {
+    this.timeToLive = Duration.ofSeconds(ttlSeconds);
+    this.redisTemplate = redisTemplate;
+    this.gets = redisLatencyBudget.operation("customer.not-found.get");
+    this.writes = redisLatencyBudget.operation("customer.not-found.put");
+    this.hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit")
+        .description("Customers known as not found").register(meterRegistry);
+    this.misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss")
+        .description("Customers not known as not found").register(meterRegistry);
+    this.puts = Counter.builder("cache.puts").tag("cache", CACHE_NAME)
+        .description("Customers the customer web service did not find").register(meterRegistry);
+  }
+
+  /**
+   * @return [Mono] emitting true if the customer web service did not find the customer lately
+   */
+  public Mono<Boolean> isNotFound(String id) {
+    return gets.read(redisTemplate.hasKey(NOT_FOUND_KEY_SPACE + id))
+        .defaultIfEmpty(false)
+        .doOnNext(notFound -> {
+          if (notFound) {
+            LOGGER.debug("Customer {} known as not found", id);
+            hits.increment();
+          } else {
+            misses.increment();
+          }
+        });
+  }
+
+  /**
+   * @return [Mono] emitting true if the customer is now known as not found
+   */
+  public Mono<Boolean> putNotFound(String id) {
+    LOGGER.debug("Saving in cache customer {} as not found", id);
+    return writes.write(redisTemplate.opsForValue().set(NOT_FOUND_KEY_SPACE + id, "1", timeToLive))
+        .defaultIfEmpty(false)
+        .doOnNext(saved -> {
+          if (saved) {
+            puts.increment();
+          }
+        });
+  }
+}
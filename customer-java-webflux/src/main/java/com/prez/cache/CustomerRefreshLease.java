@@ -0,0 +1,176 @@
+package com.prez.cache;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.prez.lib.limit.LatencyBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+
+/**
+ * Lease, in Redis, on the customer web service call for a customer: when several instances miss the same customer at
+ * once, only the one holding the lease calls the customer web service, the others poll Redis for the customer, see
+ * {@link #awaitRefreshed}.
+ * <p>
+ * The lease is a "CustomerRefreshLease:&lt;id&gt;" key set with SET NX PX to a token of its owner, and released by a
+ * script deleting it only while it still holds this token. Disabled, or past the Redis latency budget, every lease is
+ * acquired: each instance calls the customer web service as without lease.
+ * Acquisitions are counted in Micrometer under "refresh.lease.acquisitions", the waits are timed under
+ * "refresh.lease.wait".
+ */
+public class CustomerRefreshLease {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CustomerRefreshLease.class);
+  static final String LEASE_KEY_SPACE = "CustomerRefreshLease:";
+  private static final String NAME = "customer";
+  private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+  private final boolean enabled;
+  private final Duration leaseTime;
+  private final Duration maxWait;
+  private final Duration pollInterval;
+  private final ReactiveStringRedisTemplate redisTemplate;
+  private final LatencyBudget.Operation acquires;
+  private final LatencyBudget.Operation releases;
+  private final LatencyBudget.Operation gets;
+  private final MeterRegistry meterRegistry;
+  private final Counter acquired;
+  private final Counter contended;
+  private final Counter unavailable;
+
+  public CustomerRefreshLease(CustomerRefreshLeaseProperties properties, ReactiveStringRedisTemplate redisTemplate,
+                              LatencyBudget redisLatencyBudget, MeterRegistry meterRegistry) {
+    this.enabled = properties.isEnabled();
+    this.leaseTime = properties.getLeaseTime();
+    this.maxWait = properties.getMaxWait();
+    this.pollInterval = properties.getPollInterval();
+    this.redisTemplate = redisTemplate;
+    this.acquires = redisLatencyBudget.operation("customer.lease.acquire");
+    this.releases = redisLatencyBudget.operation("customer.lease.release");
+    this.gets = redisLatencyBudget.operation("customer.lease.get");
+    this.meterRegistry = meterRegistry;
+    this.acquired = acquisitions("acquired", meterRegistry);
+    this.contended = acquisitions("contended", meterRegistry);
+    this.unavailable = acquisitions("unavailable", meterRegistry);
+  }
+
+  private static Counter acquisitions(String result, MeterRegistry meterRegistry) {
+    return Counter.builder("refresh.lease.acquisitions").tag("name", NAME).tag("result", result)
+        .description("Refresh lease acquisitions: acquired, held by another caller or Redis unavailable")
+        .register(meterRegistry);
+  }
+
+  /**
+   * @return [Mono] emitting the lease, not acquired when another caller, on this instance or another one, holds it
+   */
+  public Mono<Lease> tryAcquire(String customerId) {
+    if (!enabled) {
+      return Mono.just(Lease.UNGUARDED);
+    }
+    return Mono.defer(() -> {
+      final String key = LEASE_KEY_SPACE + customerId;
+      final String token = UUID.randomUUID().toString();
+      // SET NX PX, on the request path as the reads
+      return acquires.read(redisTemplate.opsForValue().setIfAbsent(key, token, leaseTime))
+          .map(set -> {
+            if (!set) {
+              LOGGER.debug("Refresh lease of customer {} held by another caller", customerId);
+              contended.increment();
+              return Lease.CONTENDED;
+            }
+            acquired.increment();
+            return new Lease(true, releases.write(redisTemplate.execute(RELEASE, List.of(key), List.of(token))
+                .next()
+                .map(deleted -> deleted > 0)));
+          })
+          .switchIfEmpty(Mono.fromSupplier(() -> {
+            unavailable.increment();
+            return Lease.UNGUARDED;
+          }));
+    });
+  }
+
+  /**
+   * Polls Redis, max-wait at most, for the customer the caller holding the lease saves, reading it with the given read
+   * every poll-interval.
+   *
+   * @return [Mono] emitting the customer, empty when the lease is released or expired without the customer being
+   * saved, or when max-wait is over
+   */
+  public <T> Mono<T> awaitRefreshed(String customerId, Mono<T> read) {
+    return Mono.defer(() -> {
+      final String key = LEASE_KEY_SPACE + customerId;
+      final long start = System.nanoTime();
+      final AtomicReference<String> result = new AtomicReference<>("timeout");
+      return poll(key, read, result)
+          .timeout(maxWait, Mono.fromRunnable(() -> LOGGER.debug(
+              "Customer {} not refreshed by the holder of its lease within {}ms", customerId, maxWait.toMillis())))
+          .doOnSuccess(refreshed -> recordWait(result.get(), start))
+          .doOnCancel(() -> recordWait("cancelled", start));
+    });
+  }
+
+  private void recordWait(String result, long start) {
+    Timer.builder("refresh.lease.wait").tag("name", NAME).tag("result", result)
+        .description("Waits for the customer refreshed by the holder of its lease")
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, NANOSECONDS);
+  }
+
+  private <T> Mono<T> poll(String key, Mono<T> read, AtomicReference<String> result) {
+    return Mono.delay(pollInterval)
+        .then(read)
+        .doOnNext(refreshed -> result.set("refreshed"))
+        .switchIfEmpty(Mono.defer(() -> isHeld(key).flatMap(held -> {
+          if (held) {
+            return poll(key, read, result);
+          }
+          result.set("released");
+          return Mono.empty();
+        })));
+  }
+
+  private Mono<Boolean> isHeld(String key) {
+    return gets.read(redisTemplate.hasKey(key)).defaultIfEmpty(false);
+  }
+
+  public static class Lease {
+
+    // lease disabled or Redis unavailable: nothing to release
+    static final Lease UNGUARDED = new Lease(true, Mono.just(false));
+    static final Lease CONTENDED = new Lease(false, Mono.just(false));
+
+    private final boolean acquired;
+    private final Mono<Boolean> release;
+
+    Lease(boolean acquired, Mono<Boolean> release) {
+      this.acquired = acquired;
+      this.release = release;
+    }
+
+    /**
+     * @return false when another caller holds the lease
+     */
+    public boolean isAcquired() {
+      return acquired;
+    }
+
+    /**
+     * Releases the lease before it expires, so that the callers waiting for the customer stop waiting.
+     */
+    public Mono<Void> release() {
+      return release.then();
+    }
+  }
+}
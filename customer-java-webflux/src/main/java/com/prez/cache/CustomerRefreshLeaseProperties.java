@@ -0,0 +1,23 @@
+package com.prez.cache;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Lease on the customer web service call for a customer, shared by the instances through Redis, see
+ * CustomerRefreshLease.
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "customer.cache.refresh-lease")
+public class CustomerRefreshLeaseProperties {
+
+  private boolean enabled = false;
+  // kept until it expires once the customer is fetched, so that it is saved in Redis behind the response meanwhile
+  private Duration leaseTime = Duration.ofSeconds(2);
+  // an instance not holding the lease waits at most this long for the customer, then calls the web service itself
+  private Duration maxWait = Duration.ofMillis(500);
+  private Duration pollInterval = Duration.ofMillis(20);
+}
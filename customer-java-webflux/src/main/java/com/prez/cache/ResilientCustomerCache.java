@@ -0,0 +1,52 @@
+package com.prez.cache;
+
+import com.prez.lib.limit.LatencyBudget;
+import com.prez.model.Customer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decorates the customer cache with the Redis latency budget, see LatencyBudget: a read past its budget, failed or
+ * refused by the Redis circuit breaker is a miss, so that the customer web service is called instead of failing the
+ * request, and such a write is given up, the customer being saved again on the next miss.
+ */
+public class ResilientCustomerCache implements CustomerCacheRepository {
+
+  private final CustomerCacheRepository delegate;
+  private final LatencyBudget.Operation gets;
+  private final LatencyBudget.Operation puts;
+
+  public ResilientCustomerCache(CustomerCacheRepository delegate, LatencyBudget budget) {
+    this.delegate = delegate;
+    this.gets = budget.operation("customer.get");
+    this.puts = budget.operation("customer.put");
+  }
+
+  @Override
+  public Mono<Boolean> save(Customer entity) {
+    return puts.write(delegate.save(entity));
+  }
+
+  @Override
+  public Mono<Boolean> saveAll(Collection<Customer> entities) {
+    return puts.write(delegate.saveAll(entities));
+  }
+
+  @Override
+  public Mono<Customer> findById(String id) {
+    return gets.read(delegate.findById(id));
+  }
+
+  @Override
+  public Mono<CustomerCacheEntry> findEntryById(String id) {
+    return gets.read(delegate.findEntryById(id));
+  }
+
+  // past the budget, every customer is a miss
+  @Override
+  public Mono<Map<String, Customer>> findAllByIds(Collection<String> ids) {
+    return gets.read(delegate.findAllByIds(ids)).defaultIfEmpty(new HashMap<>());
+  }
+}
@@ -0,0 +1,95 @@
+package com.prez.config;
+
+import com.prez.cache.CustomerCache;
+import com.prez.cache.CustomerCacheRepository;
+import com.prez.cache.CustomerCacheResilienceProperties;
+import com.prez.cache.CustomerRefreshLease;
+import com.prez.cache.CustomerRefreshLeaseProperties;
+import com.prez.cache.ResilientCustomerCache;
+import com.prez.lib.limit.LatencyBudget;
+import com.prez.lib.writebehind.WriteBehindQueue;
+import com.prez.model.Customer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+/**
+ * The customer cache calls go through a latency budget and a circuit breaker, see ResilientCustomerCache, shared with
+ * CustomerNotFoundCache and CustomerRefreshLease: a slow or down Redis turns into misses instead of failed requests.
+ * The circuit breaker is exported as resilience4j.* metrics, its state transitions are counted too, the calls as
+ * budget.calls metrics.
+ */
+@Configuration
+@EnableConfigurationProperties({CustomerCacheResilienceProperties.class, CustomerRefreshLeaseProperties.class})
+public class CacheConfig {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheConfig.class);
+  private static final String REDIS = "redis";
+
+  @Bean
+  public CircuitBreaker redisCircuitBreaker(CustomerCacheResilienceProperties properties, MeterRegistry meterRegistry) {
+    final CustomerCacheResilienceProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+    final CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+        .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+        .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+        .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+        .waitDurationInOpenState(circuitBreaker.getWaitDurationInOpenState())
+        .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState())
+        .build());
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+    final CircuitBreaker redisCircuitBreaker = registry.circuitBreaker(REDIS);
+    redisCircuitBreaker.getEventPublisher().onStateTransition(event -> {
+      LOGGER.warn("Redis circuit breaker {}", event.getStateTransition());
+      Counter.builder("redis.circuitbreaker.transitions")
+          .description("Number of state transitions of the Redis circuit breaker")
+          .tag("from", event.getStateTransition().getFromState().name())
+          .tag("to", event.getStateTransition().getToState().name())
+          .register(meterRegistry)
+          .increment();
+    });
+    return redisCircuitBreaker;
+  }
+
+  @Bean
+  public LatencyBudget redisLatencyBudget(CustomerCacheResilienceProperties properties,
+                                          @Qualifier("redisCircuitBreaker") CircuitBreaker redisCircuitBreaker,
+                                          MeterRegistry meterRegistry) {
+    return new LatencyBudget(REDIS, properties.getReadBudget(), properties.getWriteBudget(), redisCircuitBreaker,
+        meterRegistry);
+  }
+
+  @Bean
+  @Primary
+  public CustomerCacheRepository resilientCustomerCache(CustomerCache customerCache, LatencyBudget redisLatencyBudget) {
+    return new ResilientCustomerCache(customerCache, redisLatencyBudget);
+  }
+
+  @Bean
+  public CustomerRefreshLease customerRefreshLease(CustomerRefreshLeaseProperties properties,
+                                                   ReactiveStringRedisTemplate redisTemplate,
+                                                   LatencyBudget redisLatencyBudget, MeterRegistry meterRegistry) {
+    return new CustomerRefreshLease(properties, redisTemplate, redisLatencyBudget, meterRegistry);
+  }
+
+  @Bean
+  public WriteBehindQueue<String, Customer> customerCacheWriteBehind(
+      CustomerCacheRepository customerCache,
+      @Value("${customer.cache.write-behind.capacity:10000}") int capacity,
+      @Value("${customer.cache.write-behind.batch-size:100}") int batchSize,
+      MeterRegistry meterRegistry) {
+    return new WriteBehindQueue<>("customer", capacity, batchSize, Customer::getCustomerId, customerCache::saveAll,
+        meterRegistry);
+  }
+}
@@ -1,31 +1,80 @@
 package com.prez.config;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 import brave.SpanCustomizer;
+import com.prez.lib.coalescing.RequestCoalescer;
+import com.prez.lib.http.ConnectionPoolMeterRegistrar;
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter;
 import com.prez.lib.tracing.ResponseMarkerFilter;
 import com.prez.lib.tracing.SpanCustomizationWebClientFilter;
+import com.prez.model.Customer;
+import com.prez.ws.CustomerClient;
 import com.prez.ws.CustomerWSClient;
+import com.prez.ws.CustomerWSHttpProperties;
+import com.prez.ws.CustomerWSLimitProperties;
 import com.prez.ws.CustomerWSProperties;
+import com.prez.ws.CustomerWSResilienceProperties;
+import com.prez.ws.LimitedCustomerClient;
+import com.prez.ws.ResilientCustomerClient;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+/**
+ * The customer web service calls go through a circuit breaker, a deadline and an adaptive concurrency limit, see
+ * ResilientCustomerClient and LimitedCustomerClient. The circuit breaker is exported as resilience4j.* metrics, its
+ * state transitions are counted too, the limit as concurrency.limit.* metrics.
+ */
 @Configuration
-@EnableConfigurationProperties(CustomerWSProperties.class)
+@EnableConfigurationProperties({CustomerWSProperties.class, CustomerWSHttpProperties.class,
+    CustomerWSLimitProperties.class, CustomerWSResilienceProperties.class})
 public class CustomerWebServiceConfig {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(CustomerWebServiceConfig.class);
+
+  @Bean(destroyMethod = "dispose")
+  public ConnectionProvider customerWsConnectionProvider(CustomerWSHttpProperties http, MeterRegistry meterRegistry) {
+    return ConnectionProvider.builder("customer-ws")
+        .maxConnections(http.getMaxConnections())
+        .pendingAcquireMaxCount(http.getPendingAcquireMaxCount())
+        .pendingAcquireTimeout(http.getPendingAcquireTimeout())
+        .maxIdleTime(http.getMaxIdleTime())
+        .maxLifeTime(http.getMaxLifeTime())
+        .evictInBackground(http.getEvictionInterval())
+        .metrics(true, () -> new ConnectionPoolMeterRegistrar(meterRegistry))
+        .build();
+  }
 
   @Bean
-  public CustomerWSClient customerWsClient(CustomerWSProperties properties,
+  public CustomerWSClient customerWsClient(CustomerWSProperties properties, CustomerWSHttpProperties http,
+                                           ConnectionProvider customerWsConnectionProvider,
                                            @Qualifier("customerWSSummary") DistributionSummary customerWSSummary,
                                            SpanCustomizer spanCustomizer) {
     WebClient webClient = WebClient.builder()
+        .clientConnector(new ReactorClientHttpConnector(httpClient(properties, http, customerWsConnectionProvider)))
         .defaultHeader(ACCEPT, APPLICATION_JSON_VALUE)
         .defaultHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE)
         .filter(new SpanCustomizationWebClientFilter("CustomerWS", spanCustomizer))
@@ -34,4 +83,75 @@ public class CustomerWebServiceConfig {
 
     return new CustomerWSClient(properties, webClient);
   }
+
+  @Bean
+  public AdaptiveConcurrencyLimiter customerWSLimiter(CustomerWSLimitProperties limit, MeterRegistry meterRegistry) {
+    return new AdaptiveConcurrencyLimiter("customer-ws", limit.getInitialLimit(), limit.getMinLimit(),
+        limit.getMaxLimit(), limit.getBackoffRatio(), limit.getLatencyTolerance(), meterRegistry);
+  }
+
+  @Bean
+  public CircuitBreaker customerWSCircuitBreaker(CustomerWSResilienceProperties properties,
+                                                 MeterRegistry meterRegistry) {
+    final CustomerWSResilienceProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+    final CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+        .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+        .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+        .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+        .waitDurationInOpenState(circuitBreaker.getWaitDurationInOpenState())
+        .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState())
+        // same failures as the ResponseMarkerFilter ones: a 4xx answer means the web service is up
+        .recordException(ResilientCustomerClient::isFailure)
+        .build());
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+    final CircuitBreaker customerWSCircuitBreaker = registry.circuitBreaker("customerWS");
+    customerWSCircuitBreaker.getEventPublisher().onStateTransition(event -> {
+      LOGGER.warn("Customer web service circuit breaker {}", event.getStateTransition());
+      Counter.builder("customer.webservice.circuitbreaker.transitions")
+          .description("Number of state transitions of the customer web service circuit breaker")
+          .tag("from", event.getStateTransition().getFromState().name())
+          .tag("to", event.getStateTransition().getToState().name())
+          .register(meterRegistry)
+          .increment();
+    });
+    return customerWSCircuitBreaker;
+  }
+
+  @Bean
+  @Primary
+  public CustomerClient resilientCustomerClient(
+      CustomerWSClient customerWsClient,
+      AdaptiveConcurrencyLimiter customerWSLimiter,
+      @Qualifier("customerWSCircuitBreaker") CircuitBreaker customerWSCircuitBreaker,
+      CustomerWSResilienceProperties properties, MeterRegistry meterRegistry) {
+    return new ResilientCustomerClient(new LimitedCustomerClient(customerWsClient, customerWSLimiter),
+        customerWSCircuitBreaker, properties, meterRegistry);
+  }
+
+  private static HttpClient httpClient(CustomerWSProperties properties, CustomerWSHttpProperties http,
+                                       ConnectionProvider connectionProvider) {
+    final HttpClient httpClient = HttpClient.create(connectionProvider)
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.getConnectTimeout().toMillis())
+        .option(ChannelOption.SO_KEEPALIVE, http.isKeepAlive())
+        .keepAlive(http.isKeepAlive())
+        .responseTimeout(http.getResponseTimeout())
+        .compress(http.isCompression())
+        // handlers added to a connection are removed when it goes back to the pool, so an idle one never times out
+        .doOnRequest((request, connection) ->
+            connection.addHandlerLast(new WriteTimeoutHandler(http.getWriteTimeout().toMillis(), MILLISECONDS)))
+        .doOnResponse((response, connection) ->
+            connection.addHandlerLast(new ReadTimeoutHandler(http.getReadTimeout().toMillis(), MILLISECONDS)));
+    if (!http.isHttp2()) {
+      return httpClient;
+    }
+    return properties.getUrl().startsWith("https")
+        ? httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+        : httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+  }
+
+  @Bean
+  public RequestCoalescer<Customer> customerRequestCoalescer(
+      @Qualifier("customerWSCoalescedCounter") Counter customerWSCoalescedCounter) {
+    return new RequestCoalescer<>(customerWSCoalescedCounter);
+  }
 }
@@ -0,0 +1,49 @@
+package com.prez.config;
+
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import com.prez.lib.security.CachingReactiveJwtDecoder;
+import com.prez.lib.security.RefreshingPublicKeys;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+/**
+ * Replaces the decoder Spring Boot builds from spring.security.oauth2.resourceserver.jwt.public-key-location:
+ * the keys are local and read again in background, the verified tokens are cached until they expire.
+ */
+@Configuration
+@EnableConfigurationProperties(JwtDecoderProperties.class)
+public class JwtDecoderConfig {
+
+  @Bean(destroyMethod = "close")
+  public RefreshingPublicKeys jwtPublicKeys(JwtDecoderProperties properties) {
+    return new RefreshingPublicKeys(properties.getPublicKeyLocations(), properties.getKeysRefreshInterval());
+  }
+
+  @Bean
+  public ReactiveJwtDecoder jwtDecoder(RefreshingPublicKeys jwtPublicKeys, JwtDecoderProperties properties,
+                                       MeterRegistry meterRegistry) {
+    final DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+    jwtProcessor.setJWSKeySelector(jwtPublicKeys);
+    // the claims are validated by NimbusReactiveJwtDecoder ( JwtValidators.createDefault() ), not by Nimbus itself
+    jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+    });
+    // the keys are in memory, verifying a signature does not block
+    final NimbusReactiveJwtDecoder nimbusDecoder = new NimbusReactiveJwtDecoder(jwt ->
+        Mono.fromCallable(() -> jwtProcessor.process(jwt, null))
+            // a bad signature must end up in a 401, not a 500
+            .onErrorMap(BadJOSEException.class, e -> new BadJwtException(e.getMessage(), e)));
+    final CachingReactiveJwtDecoder jwtDecoder = new CachingReactiveJwtDecoder(nimbusDecoder,
+        properties.getCache().getMaximumSize(), properties.getCache().getMaxTimeToLive(), meterRegistry);
+    // a token verified with a key removed since then must be verified again
+    jwtPublicKeys.onChange(jwtDecoder::invalidateAll);
+    return jwtDecoder;
+  }
+}
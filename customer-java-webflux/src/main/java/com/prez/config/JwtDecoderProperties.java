@@ -0,0 +1,33 @@
+package com.prez.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.Resource;
+
+/**
+ * Keys verifying the bearer tokens and cache of the verified tokens, see JwtDecoderConfig.
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "customer.security.jwt")
+public class JwtDecoderProperties {
+
+  // PEM files of the RSA public keys, every one of them is tried: list both the old and the new key during a rotation
+  private List<Resource> publicKeyLocations = new ArrayList<>();
+  // how often the keys are read again
+  private Duration keysRefreshInterval = Duration.ofMinutes(5);
+  private Cache cache = new Cache();
+
+  @Setter
+  @Getter
+  public static class Cache {
+
+    private long maximumSize = 10000;
+    // a token is cached until it expires, but never longer than this
+    private Duration maxTimeToLive = Duration.ofMinutes(10);
+  }
+}
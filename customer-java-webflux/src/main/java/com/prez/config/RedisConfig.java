@@ -3,13 +3,16 @@ package com.prez.config;
 import static org.springframework.data.redis.serializer.RedisSerializationContext.newSerializationContext;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prez.cache.CustomerBinaryRedisSerializer;
 import com.prez.model.Customer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -17,14 +20,30 @@ public class RedisConfig {
 
   @Bean
   public ReactiveRedisTemplate<String, Customer> customerInfoRedisTemplate(ObjectMapper objectMapper,
-                                                                           LettuceConnectionFactory factory) {
+                                                                           LettuceConnectionFactory factory,
+                                                                           @Value("${spring.redis.serializer.customer:binary}")
+                                                                               String customerSerializer) {
     StringRedisSerializer keySerializer = new StringRedisSerializer();
-    Jackson2JsonRedisSerializer<Customer> valueSerializer = new Jackson2JsonRedisSerializer<>(Customer.class);
+    Jackson2JsonRedisSerializer<Customer> jsonSerializer = new Jackson2JsonRedisSerializer<>(Customer.class);
+    jsonSerializer.setObjectMapper(objectMapper);
     RedisSerializationContext.RedisSerializationContextBuilder<String, Customer> builder =
         newSerializationContext(keySerializer);
-    valueSerializer.setObjectMapper(objectMapper);
-    RedisSerializationContext<String, Customer> context = builder.value(valueSerializer).build();
+    RedisSerializationContext<String, Customer> context =
+        builder.value(customerValueSerializer(customerSerializer, jsonSerializer)).build();
 
     return new ReactiveRedisTemplate<>(factory, context);
   }
+
+  private static RedisSerializer<Customer> customerValueSerializer(String customerSerializer,
+                                                                   RedisSerializer<Customer> jsonSerializer) {
+    switch (customerSerializer) {
+      case "binary":
+        return new CustomerBinaryRedisSerializer(jsonSerializer);
+      case "json":
+        return jsonSerializer;
+      default:
+        throw new IllegalArgumentException("Unknown customer serializer '" + customerSerializer
+            + "', expecting binary or json");
+    }
+  }
 }
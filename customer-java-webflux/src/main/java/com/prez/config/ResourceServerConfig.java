@@ -17,12 +17,15 @@ public class ResourceServerConfig {
   public static final String CUSTOMERS_URL_PATTERN = "/customers/**";
   public static final String SCOPE_CUSTOMER_READ = "SCOPE_customer.read";
   public static final String SCOPE_CUSTOMER_WRITE = "SCOPE_customer.write";
+  // only granted to the back-office services, which may read any customer
+  public static final String SCOPE_CUSTOMER_SERVICE = "SCOPE_customer.service";
 
   @Bean
   SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http) {
     http
         .authorizeExchange(exchanges ->
             exchanges
+                .pathMatchers(POST, "/customers/batch").hasAuthority(SCOPE_CUSTOMER_SERVICE)
                 .pathMatchers(GET, "/customers", CUSTOMERS_URL_PATTERN).hasAuthority(SCOPE_CUSTOMER_READ)
                 .pathMatchers(PATCH, CUSTOMERS_URL_PATTERN).hasAuthority(SCOPE_CUSTOMER_WRITE)
                 .pathMatchers(POST, CUSTOMERS_URL_PATTERN).hasAuthority(SCOPE_CUSTOMER_WRITE)
@@ -2,6 +2,8 @@ package com.prez.config;
 
 import static java.util.Arrays.asList;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
 import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
@@ -13,16 +15,21 @@ import com.prez.api.CustomJwtTokenHandler;
 import com.prez.api.ElementNotFoundErrorHandler;
 import com.prez.api.GetCustomerHandler;
 import com.prez.api.GetCustomerPreferencesHandler;
+import com.prez.api.GetCustomersBatchHandler;
 import com.prez.api.GlobalErrorHandler;
+import com.prez.api.RouteFilter;
 import com.prez.api.ValidationErrorHandler;
 import com.prez.api.WebServiceExceptionHandlerFilter;
-import com.prez.lib.tracing.SpanCustomizationApiFilter;
+import com.prez.exception.NotFoundException;
+import com.prez.ws.WebServiceException;
 import java.util.Collections;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.codec.DecodingException;
 import org.springframework.validation.Validator;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.cors.CorsConfiguration;
@@ -31,6 +38,7 @@ import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
 import org.springframework.web.reactive.config.EnableWebFlux;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
 
 
 @EnableWebFlux
@@ -38,9 +46,13 @@ import org.springframework.web.reactive.function.server.ServerResponse;
 public class WebfluxConfiguration {
 
   private final SpanCustomizer spanCustomizer;
+  // shared by all the routes, it holds no state
+  private final CustomJwtTokenHandler customJwtTokenHandler;
 
-  public WebfluxConfiguration(SpanCustomizer spanCustomizer) {
+  public WebfluxConfiguration(SpanCustomizer spanCustomizer,
+                              @Value("${customer.audit.sample-ratio:0.01}") double auditSampleRatio) {
     this.spanCustomizer = spanCustomizer;
+    this.customJwtTokenHandler = new CustomJwtTokenHandler(auditSampleRatio);
   }
 
   // This is necessary to allow bean validation
@@ -70,11 +82,13 @@ public class WebfluxConfiguration {
   public RouterFunction<ServerResponse> getCustomer(final GetCustomerHandler getCustomerHandler) {
     return route(GET("/customers")
         .and(accept(APPLICATION_JSON)), getCustomerHandler::getCustomer)
-        .filter(new SpanCustomizationApiFilter(spanCustomizer, "GET /customers"))
-        .filter(new CustomJwtTokenHandler())
-        .filter(new WebServiceExceptionHandlerFilter())
-        .filter(new ElementNotFoundErrorHandler())
-        .filter(new GlobalErrorHandler());
+        .filter(RouteFilter.builder(spanCustomizer)
+            .spanName("GET /customers")
+            .authentication(customJwtTokenHandler)
+            .onError(WebServiceException.class, WebServiceExceptionHandlerFilter::toResponse)
+            .onError(NotFoundException.class, ElementNotFoundErrorHandler::toResponse)
+            .onError(Throwable.class, GlobalErrorHandler::toResponse)
+            .build());
   }
 
   @Bean
@@ -82,24 +96,42 @@ public class WebfluxConfiguration {
       final CreateCustomerPreferencesHandler createCustomerPreferencesHandler) {
     return route(POST("/customers/preferences")
         .and(accept(APPLICATION_JSON)), createCustomerPreferencesHandler::handleRequest)
-        .filter(new SpanCustomizationApiFilter(spanCustomizer))
-        .filter(new CustomJwtTokenHandler())
-        .filter(new ValidationErrorHandler())
-        .filter(new WebServiceExceptionHandlerFilter())
-        .filter(new GlobalErrorHandler());
+        .filter(RouteFilter.builder(spanCustomizer)
+            .authentication(customJwtTokenHandler)
+            // the invalid bodies are answered by the handler, a body missing or not readable is a bad input too
+            .onError(ServerWebInputException.class, ValidationErrorHandler::toResponse)
+            .onError(DecodingException.class, ValidationErrorHandler::toResponse)
+            .onError(WebServiceException.class, WebServiceExceptionHandlerFilter::toResponse)
+            .onError(Throwable.class, GlobalErrorHandler::toResponse)
+            .build());
   }
 
   @Bean
   public RouterFunction<ServerResponse> getCustomerPreferences(
       final GetCustomerPreferencesHandler getCustomerPreferencesHandler) {
     return route(GET("/customers/preferences")
-        .and(accept(APPLICATION_JSON)), getCustomerPreferencesHandler::getCustomerPreferences)
-        .filter(new SpanCustomizationApiFilter(spanCustomizer))
-        .filter(new CustomJwtTokenHandler())
-        .filter(new WebServiceExceptionHandlerFilter())
-        .filter(new ElementNotFoundErrorHandler())
-        .filter(new GlobalErrorHandler());
+        .and(accept(APPLICATION_JSON, APPLICATION_NDJSON, TEXT_EVENT_STREAM)),
+        getCustomerPreferencesHandler::getCustomerPreferences)
+        .filter(RouteFilter.builder(spanCustomizer)
+            .authentication(customJwtTokenHandler)
+            .onError(WebServiceException.class, WebServiceExceptionHandlerFilter::toResponse)
+            .onError(NotFoundException.class, ElementNotFoundErrorHandler::toResponse)
+            .onError(Throwable.class, GlobalErrorHandler::toResponse)
+            .build());
   }
 
+  @Bean
+  public RouterFunction<ServerResponse> getCustomersBatch(final GetCustomersBatchHandler getCustomersBatchHandler) {
+    return route(POST("/customers/batch")
+        .and(accept(APPLICATION_JSON)), getCustomersBatchHandler::handleRequest)
+        .filter(RouteFilter.builder(spanCustomizer)
+            .spanName("POST /customers/batch")
+            .authentication(customJwtTokenHandler)
+            .onError(ServerWebInputException.class, ValidationErrorHandler::toResponse)
+            .onError(DecodingException.class, ValidationErrorHandler::toResponse)
+            .onError(WebServiceException.class, WebServiceExceptionHandlerFilter::toResponse)
+            .onError(Throwable.class, GlobalErrorHandler::toResponse)
+            .build());
+  }
 
 }
@@ -0,0 +1,53 @@
+package com.prez.lib.coalescing;
+
+import io.micrometer.core.instrument.Counter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Deduplicates concurrent calls sharing the same key (aka "single flight"): while a call is in flight for a key,
+ * any other caller for this key subscribes to the very same shared {@link Mono} instead of triggering a new call.
+ * The key is released as soon as the call terminates, so the next caller triggers a fresh call.
+ * Each caller joining an in-flight call increments the given counter.
+ */
+public class RequestCoalescer<T> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RequestCoalescer.class);
+
+  // package-private for the tests
+  final ConcurrentMap<String, Mono<T>> inFlight = new ConcurrentHashMap<>();
+  private final Counter coalesced;
+
+  public RequestCoalescer(Counter coalesced) {
+    this.coalesced = coalesced;
+  }
+
+  public Mono<T> coalesce(String key, Supplier<Mono<T>> call) {
+    return Mono.defer(() -> {
+      final Mono<T> existing = inFlight.get(key);
+      if (existing != null) {
+        return join(key, existing);
+      }
+      // share() cancels the call only when every caller has cancelled, and replays the result to late subscribers;
+      // a late subscriber to a call over subscribes to it again: its end must not release a newer call of the key
+      final AtomicReference<Mono<T>> created = new AtomicReference<>();
+      final Mono<T> shared = call.get()
+          .doFinally(signal -> inFlight.remove(key, created.get()))
+          .share();
+      created.set(shared);
+      final Mono<T> raced = inFlight.putIfAbsent(key, shared);
+      return raced != null ? join(key, raced) : shared;
+    });
+  }
+
+  private Mono<T> join(String key, Mono<T> existing) {
+    LOGGER.debug("Joining in-flight call for key='{}'", key);
+    coalesced.increment();
+    return existing;
+  }
+}
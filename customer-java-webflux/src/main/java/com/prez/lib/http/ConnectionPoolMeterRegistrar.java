@@ -0,0 +1,56 @@
+package com.prez.lib.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Exports the state of each Reactor Netty connection pool (one per remote address) as gauges in the given registry,
+ * rather than in the global one Reactor Netty uses on its own.
+ */
+public class ConnectionPoolMeterRegistrar implements ConnectionProvider.MeterRegistrar {
+
+  public static final String ACTIVE = "http.client.pool.active";
+  public static final String IDLE = "http.client.pool.idle";
+  public static final String PENDING = "http.client.pool.pending";
+  public static final String ALLOCATED = "http.client.pool.allocated";
+
+  private final MeterRegistry meterRegistry;
+
+  public ConnectionPoolMeterRegistrar(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+    final Tags tags = Tags.of("pool", poolName, "remote.address", address(remoteAddress));
+    Gauge.builder(ACTIVE, metrics, ConnectionPoolMetrics::acquiredSize)
+        .description("Connections in use")
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder(IDLE, metrics, ConnectionPoolMetrics::idleSize)
+        .description("Connections waiting in the pool to be used")
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder(PENDING, metrics, ConnectionPoolMetrics::pendingAcquireSize)
+        .description("Calls waiting for a connection")
+        .tags(tags)
+        .register(meterRegistry);
+    Gauge.builder(ALLOCATED, metrics, ConnectionPoolMetrics::allocatedSize)
+        .description("Connections opened, in use or idle")
+        .tags(tags)
+        .register(meterRegistry);
+  }
+
+  private static String address(SocketAddress remoteAddress) {
+    if (remoteAddress instanceof InetSocketAddress) {
+      final InetSocketAddress address = (InetSocketAddress) remoteAddress;
+      return address.getHostString() + ":" + address.getPort();
+    }
+    return String.valueOf(remoteAddress);
+  }
+}
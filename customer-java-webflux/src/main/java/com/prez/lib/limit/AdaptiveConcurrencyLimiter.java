@@ -0,0 +1,133 @@
+package com.prez.lib.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AIMD limit of the calls in progress to a remote service, a call over the limit is rejected right away.
+ * <ul>
+ * <li>The limit grows by one every "limit" calls as long as they are answered as fast as usual and the limit is
+ * really used, ie at least half of it is in progress.</li>
+ * <li>It is multiplied by the backoff ratio on a failed call, or on a call slower than the latency tolerance times
+ * the usual latency, an exponential moving average of the latencies. It shrinks once per wave of calls: the calls
+ * started before the last decrease do not shrink it again.</li>
+ * </ul>
+ * Exports the limit, the calls in progress and the rejected calls, tagged with the given name.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  // weight of the last latency in the usual latency
+  private static final double SMOOTHING = 0.05;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final double latencyTolerance;
+  private final AtomicInteger inProgress = new AtomicInteger();
+  private final AtomicLong rejected = new AtomicLong();
+  // read on every call, written under the lock only
+  private volatile int currentLimit;
+  private double limit;
+  private double usualLatencyNanos;
+  private long lastDecreaseNanos = System.nanoTime();
+
+  public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                                    double latencyTolerance, MeterRegistry meterRegistry) {
+    if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException("Expected 1 <= minLimit <= initialLimit <= maxLimit, got " + minLimit + ", "
+          + initialLimit + ", " + maxLimit);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.latencyTolerance = latencyTolerance;
+    this.limit = initialLimit;
+    this.currentLimit = initialLimit;
+    Gauge.builder("concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+        .description("Calls in progress allowed at most")
+        .tag("name", name)
+        .register(meterRegistry);
+    Gauge.builder("concurrency.limit.in.progress", inProgress, AtomicInteger::get)
+        .description("Calls in progress")
+        .tag("name", name)
+        .register(meterRegistry);
+    FunctionCounter.builder("concurrency.limit.rejected", rejected, AtomicLong::get)
+        .description("Calls rejected because the limit was reached")
+        .tag("name", name)
+        .register(meterRegistry);
+  }
+
+  public int getLimit() {
+    return currentLimit;
+  }
+
+  public int getInProgress() {
+    return inProgress.get();
+  }
+
+  /**
+   * @return false when the limit is reached, otherwise the call must be followed by one of the on* methods
+   */
+  public boolean tryAcquire() {
+    int current;
+    do {
+      current = inProgress.get();
+      if (current >= currentLimit) {
+        rejected.incrementAndGet();
+        return false;
+      }
+    } while (!inProgress.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  /**
+   * @param startNanos System.nanoTime() when the call started
+   */
+  public void onSuccess(long startNanos) {
+    final long now = System.nanoTime();
+    final long latencyNanos = now - startNanos;
+    final int inProgressBefore = inProgress.getAndDecrement();
+    synchronized (this) {
+      final boolean slow = usualLatencyNanos > 0 && latencyNanos > usualLatencyNanos * latencyTolerance;
+      usualLatencyNanos = usualLatencyNanos == 0 ? latencyNanos
+          : usualLatencyNanos + SMOOTHING * (latencyNanos - usualLatencyNanos);
+      if (slow) {
+        decrease(startNanos, now);
+      } else if (inProgressBefore * 2 >= limit) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+        currentLimit = (int) limit;
+      }
+    }
+  }
+
+  /**
+   * For a failed call: a 5xx response, a timeout, an unreachable service...
+   *
+   * @param startNanos System.nanoTime() when the call started
+   */
+  public void onDropped(long startNanos) {
+    inProgress.decrementAndGet();
+    synchronized (this) {
+      decrease(startNanos, System.nanoTime());
+    }
+  }
+
+  /**
+   * For a call which tells nothing about the remote service, a cancelled one for instance.
+   */
+  public void onIgnored() {
+    inProgress.decrementAndGet();
+  }
+
+  private void decrease(long startNanos, long now) {
+    if (startNanos - lastDecreaseNanos < 0) {
+      return;
+    }
+    lastDecreaseNanos = now;
+    limit = Math.max(minLimit, limit * backoffRatio);
+    currentLimit = (int) limit;
+  }
+}
@@ -0,0 +1,126 @@
+package com.prez.lib.limit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Calls a datastore within a latency budget, one for the reads and one for the writes, behind a circuit breaker.
+ * A call past its budget is cancelled: like a failed one or one refused by the circuit breaker, a read is then empty
+ * and a write false. A slow datastore costs its callers the budget at most, a down one nothing at all once the circuit
+ * is open.
+ * <p>
+ * The calls past the budget and the failed ones are failures for the circuit breaker, which opens after repeated ones
+ * and lets a few calls through again once its wait duration in open state is over.
+ * Outcomes are counted in Micrometer under "budget.calls" with the given name, the operation and the result, see
+ * {@link #operation}.
+ */
+public class LatencyBudget {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LatencyBudget.class);
+
+  private final String name;
+  private final Duration readBudget;
+  private final Duration writeBudget;
+  private final CircuitBreaker circuitBreaker;
+  private final MeterRegistry meterRegistry;
+
+  public LatencyBudget(String name, Duration readBudget, Duration writeBudget, CircuitBreaker circuitBreaker,
+                       MeterRegistry meterRegistry) {
+    this.name = name;
+    this.readBudget = readBudget;
+    this.writeBudget = writeBudget;
+    this.circuitBreaker = circuitBreaker;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * @param operation tags the calls of the operation, its counters are registered once here: to be kept by the caller
+   */
+  public Operation operation(String operation) {
+    return new Operation(operation);
+  }
+
+  public final class Operation {
+
+    private final String operation;
+    private final Counter success;
+    private final Counter timeout;
+    private final Counter error;
+    private final Counter circuitOpen;
+
+    private Operation(String operation) {
+      this.operation = operation;
+      this.success = count("success");
+      this.timeout = count("timeout");
+      this.error = count("error");
+      this.circuitOpen = count("circuit-open");
+    }
+
+    private Counter count(String result) {
+      return Counter.builder("budget.calls")
+          .description("Calls within a latency budget, by result")
+          .tag("name", name)
+          .tag("operation", operation)
+          .tag("result", result)
+          .register(meterRegistry);
+    }
+
+    /**
+     * @return [Mono] emitting what the read emitted, empty when it could not be done within the read budget
+     */
+    public <T> Mono<T> read(Mono<T> read) {
+      return call(readBudget, read, Mono.empty());
+    }
+
+    /**
+     * @return [Mono] emitting what the write emitted, false when it could not be done within the write budget
+     */
+    public Mono<Boolean> write(Mono<Boolean> write) {
+      return call(writeBudget, write, Mono.just(false));
+    }
+
+    private <T> Mono<T> call(Duration budget, Mono<T> call, Mono<T> fallback) {
+      return Mono.defer(() -> {
+        if (!circuitBreaker.tryAcquirePermission()) {
+          circuitOpen.increment();
+          return fallback;
+        }
+        final long start = System.nanoTime();
+        final AtomicBoolean done = new AtomicBoolean();
+        return call.timeout(budget)
+            .doOnSuccess(result -> {
+              done.set(true);
+              circuitBreaker.onSuccess(System.nanoTime() - start, NANOSECONDS);
+              success.increment();
+            })
+            .onErrorResume(e -> {
+              done.set(true);
+              circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, e);
+              if (e instanceof TimeoutException) {
+                LOGGER.debug("{} {} over its {}ms budget", name, operation, budget.toMillis());
+                timeout.increment();
+              } else {
+                LOGGER.warn("{} {} failed", name, operation, e);
+                error.increment();
+              }
+              return fallback;
+            })
+            .doOnCancel(() -> {
+              // given up by the caller before the outcome: neither a success nor a failure
+              if (!done.get()) {
+                circuitBreaker.releasePermission();
+              }
+            });
+      });
+    }
+  }
+}
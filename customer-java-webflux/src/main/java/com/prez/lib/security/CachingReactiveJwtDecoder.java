@@ -0,0 +1,130 @@
+package com.prez.lib.security;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the tokens already verified, so that a client sending the same token again and again costs neither a parsing
+ * nor a signature verification. The cache is keyed by a SHA-256 of the token, not the token itself, and an entry never
+ * outlives the expiration of its token. A token failing the verification is never cached, nor a token whose
+ * verification overlapped an invalidateAll: it may have been verified with a key no longer in use.
+ * <p>
+ * Hit/miss/eviction stats are exposed in Micrometer under the "jwt" cache name, the time to verify a token not found
+ * in cache as the jwt.verification timer.
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+  static final String CACHE_NAME = "jwt";
+
+  private final ReactiveJwtDecoder delegate;
+  private final Cache<String, Jwt> cache;
+  private final Timer verifications;
+  // incremented by invalidateAll
+  private final AtomicLong generation = new AtomicLong();
+
+  public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maximumSize, Duration maxTimeToLive,
+                                   MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfter(new UntilExpiration(maxTimeToLive))
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    this.verifications = Timer.builder("jwt.verification")
+        .description("Time to parse and verify a token not found in cache")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Mono<Jwt> decode(String token) {
+    return Mono.defer(() -> {
+      final String key = hash(token);
+      final Jwt cached = cache.getIfPresent(key);
+      if (cached != null) {
+        return Mono.just(cached);
+      }
+      final long verifiedGeneration = generation.get();
+      final long start = System.nanoTime();
+      return delegate.decode(token)
+          .doOnNext(jwt -> {
+            verifications.record(System.nanoTime() - start, NANOSECONDS);
+            cacheUnlessInvalidated(key, jwt, verifiedGeneration);
+          })
+          .doOnError(error -> verifications.record(System.nanoTime() - start, NANOSECONDS));
+    });
+  }
+
+  /**
+   * Forgets every token, the next ones are verified again.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  private void cacheUnlessInvalidated(String key, Jwt jwt, long verifiedGeneration) {
+    if (generation.get() == verifiedGeneration) {
+      cache.put(key, jwt);
+      // invalidated between the check and the put
+      if (generation.get() != verifiedGeneration) {
+        cache.invalidate(key);
+      }
+    }
+  }
+
+  static String hash(String token) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(digest);
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM provides SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class UntilExpiration implements Expiry<String, Jwt> {
+
+    private final long maxTimeToLiveNanos;
+
+    private UntilExpiration(Duration maxTimeToLive) {
+      this.maxTimeToLiveNanos = maxTimeToLive.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+      final Instant expiresAt = jwt.getExpiresAt();
+      if (expiresAt == null) {
+        return maxTimeToLiveNanos;
+      }
+      final long untilExpiration = Duration.between(Instant.now(), expiresAt).toNanos();
+      return Math.max(0, Math.min(untilExpiration, maxTimeToLiveNanos));
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, jwt, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.prez.lib.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Key;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.security.converter.RsaKeyConverters;
+
+/**
+ * RSA public keys verifying the RS256 token signatures, read from local PEM files ( X.509 "PUBLIC KEY" ) rather than
+ * fetched from the authorization server: no key retrieval on the request path.
+ * <p>
+ * The files are read again in background, so that a rotated key (a new file, or a mounted secret updated in place)
+ * is used without a restart. A token header naming a key id is ignored, every key is tried.
+ * A file which cannot be read keeps the previous keys in use.
+ */
+public class RefreshingPublicKeys implements JWSKeySelector<SecurityContext>, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RefreshingPublicKeys.class);
+
+  private final List<Resource> locations;
+  private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService scheduler;
+  private volatile List<RSAPublicKey> keys;
+
+  /**
+   * @throws IllegalStateException when a key cannot be read, the application should not start without its keys
+   */
+  public RefreshingPublicKeys(List<Resource> locations, Duration refreshInterval) {
+    this.locations = List.copyOf(locations);
+    try {
+      this.keys = load();
+    } catch (IOException | IllegalArgumentException e) {
+      throw new IllegalStateException("Unable to read the public keys from " + locations, e);
+    }
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "jwt-keys-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::refresh, refreshInterval.toMillis(), refreshInterval.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+    return JWSAlgorithm.RS256.equals(header.getAlgorithm()) ? keys : Collections.emptyList();
+  }
+
+  public List<RSAPublicKey> getKeys() {
+    return keys;
+  }
+
+  /**
+   * @param listener called after the keys changed, to forget the tokens verified with the previous ones
+   */
+  public void onChange(Runnable listener) {
+    changeListeners.add(listener);
+  }
+
+  void refresh() {
+    try {
+      final List<RSAPublicKey> loaded = load();
+      if (!loaded.equals(keys)) {
+        LOGGER.info("Public keys changed in {}, {} key(s) in use", locations, loaded.size());
+        keys = loaded;
+        changeListeners.forEach(Runnable::run);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to read the public keys from {}, keeping the previous ones", locations, e);
+    }
+  }
+
+  private List<RSAPublicKey> load() throws IOException {
+    final List<RSAPublicKey> loaded = new ArrayList<>(locations.size());
+    for (Resource location : locations) {
+      try (InputStream pem = location.getInputStream()) {
+        loaded.add(RsaKeyConverters.x509().convert(pem));
+      }
+    }
+    return Collections.unmodifiableList(loaded);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
@@ -0,0 +1,16 @@
+package com.prez.model;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Outcome of the lookup of a batch of customers: the customers found, in the order of the requested ids, and the ids
+ * of those which do not exist or could not be fetched from the customer web service.
+ */
+@Value
+public class CustomerBatch {
+
+  private List<Customer> customers;
+  private List<String> notFound;
+  private List<String> failed;
+}
@@ -1,17 +1,34 @@
 package com.prez.service;
 
+import com.prez.cache.CustomerCacheEntry;
 import com.prez.cache.CustomerCacheRepository;
+import com.prez.cache.CustomerLocalCache;
+import com.prez.cache.CustomerNotFoundCache;
+import com.prez.cache.CustomerRefreshLease;
 import com.prez.db.CustomerPreferencesRepository;
 import com.prez.exception.NotFoundException;
+import com.prez.lib.coalescing.RequestCoalescer;
+import com.prez.lib.writebehind.WriteBehindQueue;
 import com.prez.model.Customer;
+import com.prez.model.CustomerBatch;
 import com.prez.model.CustomerPreferences;
 import com.prez.model.SeatPreference;
-import com.prez.ws.CustomerWSClient;
+import com.prez.ws.CustomerClient;
+import com.prez.ws.model.GetCustomerWSResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -21,48 +38,193 @@ public class CustomerService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CustomerService.class);
 
-  private final CustomerWSClient customerWebService;
+  private final CustomerClient customerWebService;
   private final CustomerCacheRepository cache;
+  private final CustomerLocalCache localCache;
+  private final CustomerNotFoundCache notFoundCache;
   private final CustomerWSResponseToCustomerMapper mapper;
   private final CustomerPreferencesRepository database;
+  private final RequestCoalescer<Customer> customerRequestCoalescer;
+  private final WriteBehindQueue<String, Customer> cacheWriteBehind;
+  private final CustomerRefreshLease refreshLease;
+  // customer web service calls in flight at once for a batch
+  private final int batchConcurrency;
 
-  public CustomerService(CustomerWSClient customerWebService, CustomerCacheRepository customerCache,
-                         CustomerWSResponseToCustomerMapper mapper, CustomerPreferencesRepository database) {
+  public CustomerService(CustomerClient customerWebService, CustomerCacheRepository customerCache,
+                         CustomerLocalCache localCache, CustomerNotFoundCache notFoundCache,
+                         CustomerWSResponseToCustomerMapper mapper, CustomerPreferencesRepository database,
+                         RequestCoalescer<Customer> customerRequestCoalescer,
+                         WriteBehindQueue<String, Customer> cacheWriteBehind, CustomerRefreshLease refreshLease,
+                         @Value("${customer.batch.concurrency:8}") int batchConcurrency) {
     this.customerWebService = customerWebService;
     this.cache = customerCache;
+    this.localCache = localCache;
+    this.notFoundCache = notFoundCache;
     this.mapper = mapper;
     this.database = database;
+    this.customerRequestCoalescer = customerRequestCoalescer;
+    this.cacheWriteBehind = cacheWriteBehind;
+    this.refreshLease = refreshLease;
+    this.batchConcurrency = batchConcurrency;
   }
 
   public Mono<Customer> getCustomerInfo(final String customerId) {
     LOGGER.debug("Getting customer with customerId = {}", customerId);
-    return cache.findById(customerId)
+    return Mono.fromSupplier(() -> localCache.getIfPresent(customerId))
+        .switchIfEmpty(Mono.defer(() -> findInCache(customerId)))
         .switchIfEmpty(deferCallingCustomerWebService(customerId));
   }
 
+  /**
+   * A stale customer ( past the soft time-to-live ) is served right away and refreshed in background,
+   * so that only a customer past the hard time-to-live has to wait for the customer web service.
+   */
+  private Mono<Customer> findInCache(String customerId) {
+    return cache.findEntryById(customerId)
+        .doOnNext(entry -> {
+          localCache.put(entry.getCustomer());
+          if (entry.isStale()) {
+            refreshInBackground(customerId);
+          }
+        })
+        .map(CustomerCacheEntry::getCustomer);
+  }
+
+  /**
+   * Only the instance holding the refresh lease of the customer refreshes it, the others keep serving the stale entry.
+   */
+  private void refreshInBackground(String customerId) {
+    LOGGER.debug("Customer {} is stale in cache, refreshing it in background", customerId);
+    refreshLease.tryAcquire(customerId)
+        .flatMap(lease -> {
+          if (!lease.isAcquired()) {
+            LOGGER.debug("Customer {} already being refreshed by another instance", customerId);
+            return Mono.empty();
+          }
+          return customerRequestCoalescer.coalesce(customerId, () -> callCustomerWebService(customerId, lease));
+        })
+        .subscribe(null, e -> LOGGER.warn("Could not refresh customer {} in cache", customerId, e));
+  }
+
   /**
    * Defer the execution of call to getCustomer web service. If you don't defer, the call will be executed in //
    * of the "previous" mono ( aka look in cache ) which is NOT what we want.
    * See https://stackoverflow.com/questions/54373920/mono-switchifempty-is-always-called if you want a more complete explanation
+   * Concurrent misses for the same customer share a single web service call, and so do the instances through the
+   * refresh lease: one not holding it polls Redis for the customer, then calls the web service itself should the
+   * holder not save it in time.
    */
   private Mono<Customer> deferCallingCustomerWebService(String customerId) {
-    return Mono.defer(() ->
-        customerWebService.getCustomer(customerId)
-            .switchIfEmpty(Mono.error(new NotFoundException(customerId, "customer")))
-            .map(mapper::toCustomer)
-            .flatMap(customer ->
-                cache.save(customer)
-                    .defaultIfEmpty(false)
-                    .doOnSuccess(savedInCache -> {
-                      if (savedInCache) {
-                        LOGGER.debug("Customer {} saved in cache", customer.getCustomerId());
-                      } else {
-                        LOGGER.error("COULD NOT SAVE {} in cache", customer.getCustomerId());
-                      }
-                    })
-                    // then we just return the customer
-                    .then(Mono.justOrEmpty(customer)))
-    );
+    return customerRequestCoalescer.coalesce(customerId, () -> refreshLease.tryAcquire(customerId)
+        .flatMap(lease -> lease.isAcquired() ? callCustomerWebService(customerId, lease)
+            : refreshLease.awaitRefreshed(customerId, cache.findById(customerId))
+                .doOnNext(localCache::put)
+                .switchIfEmpty(Mono.defer(() -> callCustomerWebService(customerId, lease)))));
+  }
+
+  /**
+   * The customer is saved in cache behind the response, so that a miss costs a single web service call and no Redis
+   * write. The lease is kept until it expires once the customer is fetched, released should the call fail.
+   */
+  private Mono<Customer> callCustomerWebService(String customerId, CustomerRefreshLease.Lease lease) {
+    return getFromCustomerWebService(customerId)
+        .switchIfEmpty(Mono.error(new NotFoundException(customerId, "customer")))
+        .map(mapper::toCustomer)
+        .doOnNext(localCache::put)
+        .doOnNext(cacheWriteBehind::offer)
+        .onErrorResume(e -> lease.release().then(Mono.error(e)));
+  }
+
+  /**
+   * A customer the customer web service did not find lately is not asked for again, one it does not find is
+   * remembered as such.
+   *
+   * @return [Mono] emitting the customer web service response or [Mono.empty] if the customer is not found
+   */
+  private Mono<GetCustomerWSResponse> getFromCustomerWebService(String customerId) {
+    return notFoundCache.isNotFound(customerId)
+        .flatMap(notFound -> notFound ? Mono.<GetCustomerWSResponse>empty()
+            : customerWebService.getCustomer(customerId)
+                .switchIfEmpty(Mono.defer(() -> notFoundCache.putNotFound(customerId).then(Mono.empty()))));
+  }
+
+  /**
+   * The customers missing from the local cache are all looked for in Redis at once, then only those missing from Redis
+   * are fetched from the customer web service, at most batchConcurrency at a time, and saved back in Redis behind the
+   * response.
+   * Unlike getCustomerInfo, a stale customer is not refreshed: the whole batch is served from the entries as they are.
+   */
+  public Mono<CustomerBatch> getCustomersInfo(final Collection<String> customerIds) {
+    LOGGER.debug("Getting {} customers", customerIds.size());
+    return Mono.defer(() -> {
+      final Set<String> ids = new LinkedHashSet<>(customerIds);
+      final Map<String, Customer> found = new HashMap<>();
+      final List<String> notInLocalCache = new ArrayList<>();
+      for (String customerId : ids) {
+        final Customer customer = localCache.getIfPresent(customerId);
+        if (customer != null) {
+          found.put(customerId, customer);
+        } else {
+          notInLocalCache.add(customerId);
+        }
+      }
+      if (notInLocalCache.isEmpty()) {
+        return Mono.just(toBatch(ids, found, Set.of()));
+      }
+      final Set<String> failed = ConcurrentHashMap.newKeySet();
+      return cache.findAllByIds(notInLocalCache)
+          .flatMap(cached -> {
+            cached.values().forEach(localCache::put);
+            found.putAll(cached);
+            final List<String> misses = new ArrayList<>(notInLocalCache);
+            misses.removeAll(cached.keySet());
+            return callCustomerWebService(misses, failed);
+          })
+          .map(fetched -> {
+            fetched.forEach(customer -> found.put(customer.getCustomerId(), customer));
+            return toBatch(ids, found, failed);
+          });
+    });
+  }
+
+  /**
+   * A missing customer is not an error of the batch, neither is a failed call: they are told apart in the batch.
+   */
+  private Mono<List<Customer>> callCustomerWebService(List<String> customerIds, Set<String> failed) {
+    if (customerIds.isEmpty()) {
+      return Mono.just(List.of());
+    }
+    return Flux.fromIterable(customerIds)
+        .flatMap(customerId -> customerRequestCoalescer.coalesce(customerId, () ->
+                getFromCustomerWebService(customerId)
+                    .switchIfEmpty(Mono.error(new NotFoundException(customerId, "customer")))
+                    .map(mapper::toCustomer)
+                    .doOnNext(localCache::put)
+                    .doOnNext(cacheWriteBehind::offer))
+            .onErrorResume(NotFoundException.class, e -> Mono.empty())
+            .onErrorResume(e -> {
+              LOGGER.warn("Could not get customer {} from the customer web service", customerId, e);
+              failed.add(customerId);
+              return Mono.empty();
+            }), batchConcurrency)
+        .collectList();
+  }
+
+  private static CustomerBatch toBatch(Set<String> ids, Map<String, Customer> found, Set<String> failed) {
+    final List<Customer> customers = new ArrayList<>(found.size());
+    final List<String> notFound = new ArrayList<>();
+    final List<String> failedIds = new ArrayList<>(failed.size());
+    for (String customerId : ids) {
+      final Customer customer = found.get(customerId);
+      if (customer != null) {
+        customers.add(customer);
+      } else if (failed.contains(customerId)) {
+        failedIds.add(customerId);
+      } else {
+        notFound.add(customerId);
+      }
+    }
+    return new CustomerBatch(customers, notFound, failedIds);
   }
 
   public Mono<CustomerPreferences> createCustomerPreferences(String customerId, SeatPreference seatPreference,
@@ -0,0 +1,12 @@
+package com.prez.ws;
+
+import com.prez.ws.model.GetCustomerWSResponse;
+import reactor.core.publisher.Mono;
+
+public interface CustomerClient {
+
+  /**
+   * @return empty when the customer does not exist
+   */
+  Mono<GetCustomerWSResponse> getCustomer(String customerId);
+}
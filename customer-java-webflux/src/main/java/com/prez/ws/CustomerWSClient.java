@@ -3,22 +3,33 @@ package com.prez.ws;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.web.util.UriComponentsBuilder.fromHttpUrl;
 
+import com.prez.ws.model.CustomerWSResponseReader;
 import com.prez.ws.model.GetCustomerWSResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.logging.Level;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.sleuth.annotation.NewSpan;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.web.reactive.function.BodyExtractors;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 import reactor.util.Loggers;
 
-public class CustomerWSClient {
+public class CustomerWSClient implements CustomerClient {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(CustomerWSClient.class);
+  // same limit as the default codecs
+  private static final int MAX_IN_MEMORY_SIZE = 256 * 1024;
 
   private final WebClient customerWebClient;
   private final CustomerWSProperties configuration;
+  private final CustomerWSResponseReader responseReader = new CustomerWSResponseReader();
 
 
   public CustomerWSClient(CustomerWSProperties configuration, WebClient customerWebClient) {
@@ -26,6 +37,7 @@ public class CustomerWSClient {
     this.customerWebClient = customerWebClient;
   }
 
+  @Override
   @NewSpan("getCustomers")
   public Mono<GetCustomerWSResponse> getCustomer(final String customerId) {
     LOGGER.debug("Calling webservice GET {}/{}", configuration.getUrl(), customerId);
@@ -44,7 +56,9 @@ public class CustomerWSClient {
           // on pourrait mettre une exchange filter function ici et ça serait mieux, mais c'est plus simple pour comparer :P
           switch (response.statusCode()) {
             case OK:
-              return response.bodyToMono(GetCustomerWSResponse.class)
+              // the body is read straight from the joined buffers, see CustomerWSResponseReader
+              return DataBufferUtils.join(response.body(BodyExtractors.toDataBuffers()), MAX_IN_MEMORY_SIZE)
+                  .handle(this::readResponse)
                   .switchIfEmpty(Mono.error(new WebServiceException("CUSTOMER_WS_GET_CUSTOMER_ERROR", "GET CustomerWS",
                       OK, "Unable to map response body for customerId=" + customerId)))  // should never happen, but ...
                   .doOnSuccess(r -> LOGGER.debug("GET CustomerWS retrieved customer : {}", r))
@@ -66,5 +80,15 @@ public class CustomerWSClient {
         .log(Loggers.getLogger(CustomerWSClient.class), Level.FINE, true);
 
   }
-}
 
+  private void readResponse(DataBuffer body, SynchronousSink<GetCustomerWSResponse> sink) {
+    try (InputStream bodyStream = body.asInputStream(true)) {
+      final GetCustomerWSResponse response = responseReader.read(bodyStream);
+      if (response != null) {
+        sink.next(response);
+      }
+    } catch (IOException e) {
+      sink.error(new DecodingException("JSON decoding error: " + e.getMessage(), e));
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.prez.ws;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Connection pool and HTTP settings of the client calling the customer web service.
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = "customer.ws.http")
+public class CustomerWSHttpProperties {
+
+  // connections opened at most to the customer web service
+  private int maxConnections = 50;
+  // calls waiting for a connection at most, the next ones fail right away
+  private int pendingAcquireMaxCount = 100;
+  private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+  // idle connections are closed past this delay, before the server or a load balancer does it on our back
+  private Duration maxIdleTime = Duration.ofSeconds(20);
+  private Duration maxLifeTime = Duration.ofMinutes(5);
+  // how often the pool looks for connections to close, zero to only check them when acquired
+  private Duration evictionInterval = Duration.ofSeconds(30);
+  private Duration connectTimeout = Duration.ofSeconds(1);
+  // time to get the response headers
+  private Duration responseTimeout = Duration.ofSeconds(2);
+  // time without any byte read from / written to the connection while a call is in progress
+  private Duration readTimeout = Duration.ofSeconds(2);
+  private Duration writeTimeout = Duration.ofSeconds(2);
+  private boolean keepAlive = true;
+  // h2 with a fallback to http/1.1: negotiated through ALPN over TLS, through an upgrade (h2c) otherwise
+  private boolean http2 = false;
+  // asks for gzip responses
+  private boolean compression = false;
+
+}
@@ -0,0 +1,60 @@
+package com.prez.ws;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter;
+import com.prez.ws.model.GetCustomerWSResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Calls the customer web service within an adaptive limit of the calls in progress, see AdaptiveConcurrencyLimiter:
+ * the calls over the limit fail right away with a 503 WebServiceException instead of waiting for a connection.
+ * Same failures as ResponseMarkerFilter: 5xx responses and errors, a 4xx response means the web service is up. A call
+ * cancelled past the deadline ResilientCustomerClient puts in the context is a failed one too, any other cancelled
+ * call tells nothing about the web service.
+ */
+public class LimitedCustomerClient implements CustomerClient {
+
+  static final String LIMIT_REACHED = "CUSTOMER_WS_LIMIT_REACHED";
+  // System.nanoTime() past which the call is cancelled
+  static final String DEADLINE = LimitedCustomerClient.class.getName() + ".deadline";
+
+  private final CustomerClient delegate;
+  private final AdaptiveConcurrencyLimiter limiter;
+
+  public LimitedCustomerClient(CustomerClient delegate, AdaptiveConcurrencyLimiter limiter) {
+    this.delegate = delegate;
+    this.limiter = limiter;
+  }
+
+  @Override
+  public Mono<GetCustomerWSResponse> getCustomer(String customerId) {
+    return Mono.deferContextual(context -> {
+      if (!limiter.tryAcquire()) {
+        return Mono.error(new WebServiceException(LIMIT_REACHED, "GET CustomerWS", SERVICE_UNAVAILABLE,
+            limiter.getLimit() + " calls in progress, customer web service not called for customerId=" + customerId));
+      }
+      final long start = System.nanoTime();
+      return delegate.getCustomer(customerId)
+          .doOnSuccess(response -> limiter.onSuccess(start))
+          .doOnError(error -> {
+            if (isFailure(error)) {
+              limiter.onDropped(start);
+            } else {
+              limiter.onSuccess(start);
+            }
+          })
+          .doOnCancel(() -> {
+            if (context.<Long>getOrEmpty(DEADLINE).filter(deadline -> System.nanoTime() - deadline >= 0).isPresent()) {
+              limiter.onDropped(start);
+            } else {
+              limiter.onIgnored();
+            }
+          });
+    });
+  }
+
+  static boolean isFailure(Throwable e) {
+    return !(e instanceof WebServiceException) || ((WebServiceException) e).getHttpStatusCode().is5xxServerError();
+  }
+}
@@ -0,0 +1,161 @@
+package com.prez.ws;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import com.prez.ws.model.GetCustomerWSResponse;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+
+/**
+ * Decorates the limited customer web service client, see LimitedCustomerClient, with:
+ * <ul>
+ * <li>a circuit breaker, which counts as failures the same calls as ResponseMarkerFilter: 5xx responses and errors,
+ * plus the calls past the deadline,</li>
+ * <li>a deadline, past which the call is cancelled instead of waiting for the http client timeouts,</li>
+ * <li>optionally a hedged call, sent when the first one lasts longer than a percentile of the latencies: the first
+ * response wins, the other call is cancelled.</li>
+ * </ul>
+ * A call refused by the circuit breaker is not sent at all, it fails right away with a 503 WebServiceException. A call
+ * refused by the limit is not counted by the circuit breaker.
+ */
+public class ResilientCustomerClient implements CustomerClient {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResilientCustomerClient.class);
+  private static final String WEB_SERVICE_NAME = "GET CustomerWS";
+
+  private final CustomerClient delegate;
+  private final CircuitBreaker circuitBreaker;
+  private final Duration deadline;
+  private final CustomerWSResilienceProperties.Hedging hedging;
+  private final Timer latencies;
+  private final Counter hedgedCalls;
+
+  public ResilientCustomerClient(CustomerClient delegate, CircuitBreaker circuitBreaker,
+                                 CustomerWSResilienceProperties properties, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.circuitBreaker = circuitBreaker;
+    this.deadline = properties.getDeadline();
+    this.hedging = properties.getHedging();
+    this.latencies = Timer.builder("customer.webservice.latency")
+        .description("Latency of the successful customer web service calls")
+        .publishPercentiles(hedging.getPercentile())
+        .distributionStatisticExpiry(Duration.ofMinutes(1))
+        .register(meterRegistry);
+    this.hedgedCalls = Counter.builder("customer.webservice.hedged")
+        .description("Number of customer web service calls sent again because the first one was too slow")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Mono<GetCustomerWSResponse> getCustomer(String customerId) {
+    return Mono.defer(() -> {
+      if (!circuitBreaker.tryAcquirePermission()) {
+        return Mono.error(new WebServiceException("CUSTOMER_WS_CIRCUIT_OPEN", WEB_SERVICE_NAME, SERVICE_UNAVAILABLE,
+            "Circuit breaker " + circuitBreaker.getState() + ", customer web service not called for customerId="
+                + customerId));
+      }
+      final long start = System.nanoTime();
+      return (hedging.isEnabled() ? hedged(customerId) : timed(customerId))
+          .timeout(deadline, Mono.error(() -> new WebServiceException("CUSTOMER_WS_GET_CUSTOMER_ERROR",
+              WEB_SERVICE_NAME, GATEWAY_TIMEOUT, "No response within " + deadline.toMillis() + "ms for customerId="
+              + customerId)))
+          .doOnSuccess(response -> circuitBreaker.onSuccess(System.nanoTime() - start, NANOSECONDS))
+          .doOnError(error -> {
+            if (isLimitReached(error)) {
+              circuitBreaker.releasePermission();
+            } else {
+              circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, error);
+            }
+          })
+          .doOnCancel(circuitBreaker::releasePermission)
+          .flatMap(Mono::justOrEmpty)
+          // so that the limit shrinks for the calls cancelled by the deadline
+          .contextWrite(Context.of(LimitedCustomerClient.DEADLINE, start + deadline.toNanos()));
+    });
+  }
+
+  /**
+   * Same failures as ResponseMarkerFilter: a 4xx response means the web service is up.
+   */
+  public static boolean isFailure(Throwable e) {
+    return LimitedCustomerClient.isFailure(e);
+  }
+
+  private static boolean isLimitReached(Throwable e) {
+    return e instanceof WebServiceException
+        && LimitedCustomerClient.LIMIT_REACHED.equals(((WebServiceException) e).getError().getError());
+  }
+
+  /**
+   * @return the response, empty when the customer is not found, so that it is a value for the hedging
+   */
+  private Mono<Optional<GetCustomerWSResponse>> timed(String customerId) {
+    return Mono.defer(() -> {
+      final long start = System.nanoTime();
+      return delegate.getCustomer(customerId)
+          .map(Optional::of)
+          .defaultIfEmpty(Optional.empty())
+          .doOnNext(response -> latencies.record(System.nanoTime() - start, NANOSECONDS));
+    });
+  }
+
+  /**
+   * The first response wins, the result fails only when both calls failed, with the error of the first one: a hedged
+   * call refused by the limit leaves the first one decide. The hedged call is only sent while the first one is in
+   * progress: a first call failing before the hedge delay fails right away, it is not retried.
+   */
+  private Mono<Optional<GetCustomerWSResponse>> hedged(String customerId) {
+    final long delayMillis = hedgeDelayMillis();
+    if (delayMillis < 0) {
+      return timed(customerId);
+    }
+    return Mono.defer(() -> {
+      final Sinks.Empty<Void> firstFailed = Sinks.empty();
+      final Mono<Optional<GetCustomerWSResponse>> firstCall = timed(customerId)
+          .doOnError(error -> firstFailed.tryEmitEmpty());
+      final Mono<Optional<GetCustomerWSResponse>> hedgedCall = Mono.delay(Duration.ofMillis(delayMillis))
+          .thenReturn(true)
+          .or(firstFailed.asMono().thenReturn(false))
+          .filter(send -> send)
+          .flatMap(send -> {
+            LOGGER.debug("No response after {}ms for customerId={}, calling the customer web service again",
+                delayMillis, customerId);
+            hedgedCalls.increment();
+            return timed(customerId);
+          });
+      return Mono.firstWithValue(firstCall, hedgedCall)
+          .onErrorMap(NoSuchElementException.class, e -> {
+            final List<Throwable> errors = Exceptions.unwrapMultiple(e.getCause());
+            return errors.isEmpty() ? e : errors.get(0);
+          });
+    });
+  }
+
+  /**
+   * @return -1 as long as no latency is known
+   */
+  private long hedgeDelayMillis() {
+    for (ValueAtPercentile percentile : latencies.takeSnapshot().percentileValues()) {
+      if (percentile.percentile() == hedging.getPercentile() && percentile.value() > 0) {
+        return Math.max((long) percentile.value(MILLISECONDS), hedging.getMinDelay().toMillis());
+      }
+    }
+    return -1;
+  }
+}
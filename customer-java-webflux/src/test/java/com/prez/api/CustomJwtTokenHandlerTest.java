@@ -0,0 +1,93 @@
+package com.prez.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.springframework.http.HttpStatus.UNAUTHORIZED;
+
+import java.security.Principal;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+class CustomJwtTokenHandlerTest {
+
+  private final CustomJwtTokenHandler customJwtTokenHandler = new CustomJwtTokenHandler(1);
+
+  @Test
+  @DisplayName("filter should store the caller as an exchange attribute before calling the handler")
+  void filter_shouldStoreCaller() {
+    // Given
+    final Jwt jwt = Jwt.withTokenValue("token")
+        .header("alg", "RS256")
+        .subject("trotro")
+        .claim("azp", "mobile-app")
+        .build();
+    final AtomicInteger principalResolutions = new AtomicInteger();
+    final ServerRequest request = request(Mono.fromSupplier(() -> {
+      principalResolutions.incrementAndGet();
+      return new JwtAuthenticationToken(jwt);
+    }));
+    final AtomicReference<AuthenticatedCaller> seenByHandler = new AtomicReference<>();
+    final HandlerFunction<ServerResponse> handler = req -> AuthenticatedCaller.of(req)
+        .doOnNext(seenByHandler::set)
+        .then(ServerResponse.ok().build());
+
+    // Test
+    final ServerResponse response = customJwtTokenHandler.filter(request, handler).block();
+
+    // Assert
+    assertThat(response.statusCode().is2xxSuccessful()).isTrue();
+    assertThat(seenByHandler.get()).isEqualTo(new AuthenticatedCaller("trotro", "mobile-app"));
+    assertThat(principalResolutions).hasValue(1);
+  }
+
+  @Test
+  @DisplayName("filter should return 401 without calling the handler when there is no principal")
+  void filter_shouldFail_whenNoPrincipal() {
+    // Given
+    final AtomicInteger handlerCalls = new AtomicInteger();
+    final HandlerFunction<ServerResponse> handler = req -> {
+      handlerCalls.incrementAndGet();
+      return ServerResponse.ok().build();
+    };
+
+    // Test
+    final Throwable error = catchThrowable(() -> customJwtTokenHandler.filter(request(Mono.empty()), handler).block());
+
+    // Assert
+    assertThat(error).isInstanceOf(ResponseStatusException.class);
+    assertThat(((ResponseStatusException) error).getStatus()).isEqualTo(UNAUTHORIZED);
+    assertThat(handlerCalls).hasValue(0);
+  }
+
+  @Test
+  @DisplayName("AuthenticatedCaller should return 401 when the route is not filtered")
+  void authenticatedCaller_shouldFail_whenNotFiltered() {
+    // Test
+    final Throwable error = catchThrowable(() -> AuthenticatedCaller.of(request(Mono.empty())).block());
+
+    // Assert
+    assertThat(error).isInstanceOf(ResponseStatusException.class);
+    assertThat(((ResponseStatusException) error).getStatus()).isEqualTo(UNAUTHORIZED);
+  }
+
+  private static ServerRequest request(Mono<JwtAuthenticationToken> principal) {
+    final ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/customers"))
+        .mutate()
+        .principal(principal.cast(Principal.class))
+        .build();
+    return ServerRequest.create(exchange, HandlerStrategies.withDefaults().messageReaders());
+  }
+}
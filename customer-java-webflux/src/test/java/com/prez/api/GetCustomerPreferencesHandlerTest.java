@@ -1,24 +1,38 @@
 package com.prez.api;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 
 import com.prez.exception.NotFoundException;
 import com.prez.model.CustomerPreferences;
 import com.prez.model.SeatPreference;
 import com.prez.service.CustomerService;
 import com.prez.utils.FakeTokenGenerator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.UnsupportedMediaTypeException;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.reactive.result.view.ViewResolver;
 import reactor.core.publisher.Flux;
 
 @SpringBootTest
@@ -28,6 +42,9 @@ class GetCustomerPreferencesHandlerTest {
   @Autowired
   private WebTestClient webTestClient;
 
+  @Autowired
+  private GetCustomerPreferencesHandler handler;
+
   @MockBean
   private CustomerService customerService;
 
@@ -106,4 +123,141 @@ class GetCustomerPreferencesHandlerTest {
         + "\"profileName\":\"rigolo\"}]");
     verify(customerService).getCustomerPreferences("trotro");
   }
-}
\ No newline at end of file
+
+  @Test
+  @DisplayName("GET customers preferences should query the preferences once and return them all")
+  void getCustomerPreferences_shouldQueryPreferencesOnce() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read");
+    final AtomicInteger queries = new AtomicInteger();
+    final AtomicInteger cancellations = new AtomicInteger();
+    when(customerService.getCustomerPreferences("trotro"))
+        .thenReturn(Flux.defer(() -> {
+          queries.incrementAndGet();
+          return Flux.just(
+              CustomerPreferences.builder()
+                  .customerId("trotro")
+                  .profileName("rigolo")
+                  .seatPreference(SeatPreference.NO_PREFERENCE)
+                  .classPreference(2)
+                  .build(),
+              CustomerPreferences.builder()
+                  .customerId("trotro")
+                  .profileName("serieux")
+                  .seatPreference(SeatPreference.NEAR_WINDOW)
+                  .classPreference(1)
+                  .build());
+        }).doOnCancel(cancellations::incrementAndGet));
+
+    // When && Then
+    webTestClient.get().uri("/customers/preferences")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody().json("[{\"profileName\":\"rigolo\"},{\"profileName\":\"serieux\"}]");
+    assertThat(queries).hasValue(1);
+    assertThat(cancellations).hasValue(0);
+  }
+
+  @Test
+  @DisplayName("GET customers preferences should cancel the query when the response body cannot be written")
+  void getCustomerPreferences_shouldCancelQuery_whenBodyNotWritten() {
+    // Given
+    final AtomicInteger queries = new AtomicInteger();
+    final AtomicInteger cancellations = new AtomicInteger();
+    when(customerService.getCustomerPreferences("trotro"))
+        .thenReturn(Flux.defer(() -> {
+          queries.incrementAndGet();
+          return Flux.just(CustomerPreferences.builder()
+              .customerId("trotro")
+              .profileName("rigolo")
+              .seatPreference(SeatPreference.NO_PREFERENCE)
+              .classPreference(2)
+              .build())
+              .concatWith(Flux.never());
+        }).doOnCancel(cancellations::incrementAndGet));
+    final MockServerRequest request = MockServerRequest.builder()
+        .attribute(AuthenticatedCaller.ATTRIBUTE, new AuthenticatedCaller("trotro", null))
+        .build();
+    final ServerResponse.Context noWriters = new ServerResponse.Context() {
+      @Override
+      public List<HttpMessageWriter<?>> messageWriters() {
+        return emptyList();
+      }
+
+      @Override
+      public List<ViewResolver> viewResolvers() {
+        return emptyList();
+      }
+    };
+
+    // When
+    final ServerResponse response = handler.getCustomerPreferences(request).block();
+    final Throwable thrown = catchThrowable(() -> response
+        .writeTo(MockServerWebExchange.from(MockServerHttpRequest.get("/customers/preferences")), noWriters)
+        .block());
+
+    // Then
+    assertThat(thrown).isInstanceOf(UnsupportedMediaTypeException.class);
+    assertThat(queries).hasValue(1);
+    assertThat(cancellations).hasValue(1);
+  }
+
+  @Test
+  @DisplayName("GET customers preferences should stream the preferences as json lines when ndjson accepted")
+  void getCustomerPreferences_shouldStreamJsonLines_whenNdjsonAccepted() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read");
+    when(customerService.getCustomerPreferences("trotro"))
+        .thenReturn(Flux.just(
+            CustomerPreferences.builder()
+                .customerId("trotro")
+                .profileName("rigolo")
+                .seatPreference(SeatPreference.NO_PREFERENCE)
+                .classPreference(2)
+                .build(),
+            CustomerPreferences.builder()
+                .customerId("trotro")
+                .profileName("serieux")
+                .seatPreference(SeatPreference.NEAR_WINDOW)
+                .classPreference(1)
+                .build()));
+
+    // When && Then
+    webTestClient.get().uri("/customers/preferences")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentTypeCompatibleWith(APPLICATION_NDJSON)
+        .expectBody(String.class)
+        .value(body -> assertThat(body.split("\n"))
+            .hasSize(2)
+            .allSatisfy(line -> assertThat(line).startsWith("{\"customerId\":\"trotro\"")));
+  }
+
+  @Test
+  @DisplayName("GET customers preferences should stream the preferences as events when event stream accepted")
+  void getCustomerPreferences_shouldStreamEvents_whenEventStreamAccepted() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read");
+    when(customerService.getCustomerPreferences("trotro"))
+        .thenReturn(Flux.just(CustomerPreferences.builder()
+            .customerId("trotro")
+            .profileName("rigolo")
+            .seatPreference(SeatPreference.NO_PREFERENCE)
+            .classPreference(2)
+            .build()));
+
+    // When && Then
+    webTestClient.get().uri("/customers/preferences")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(TEXT_EVENT_STREAM)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentTypeCompatibleWith(TEXT_EVENT_STREAM)
+        .expectBody(String.class)
+        .value(body -> assertThat(body).startsWith("data:{\"customerId\":\"trotro\""));
+  }
+}
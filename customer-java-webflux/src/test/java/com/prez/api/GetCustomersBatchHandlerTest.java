@@ -0,0 +1,179 @@
+package com.prez.api;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.web.reactive.function.BodyInserters.fromValue;
+
+import com.prez.api.dto.CustomersBatchRequest;
+import com.prez.model.Customer;
+import com.prez.model.CustomerBatch;
+import com.prez.service.CustomerService;
+import com.prez.utils.FakeTokenGenerator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+@SpringBootTest
+@AutoConfigureWebTestClient
+class GetCustomersBatchHandlerTest {
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @MockBean
+  private CustomerService customerService;
+
+  private final FakeTokenGenerator fakeTokenGenerator = new FakeTokenGenerator("test-authorization-server");
+
+  @Test
+  @DisplayName("POST customers batch should return the customers found, not found and failed for a service")
+  void getCustomersBatch_shouldReturn200_whenServiceAuthenticated() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600,
+        "customer.service");
+    final List<String> customerIds = List.of("trotro", "ane", "rigolo");
+    when(customerService.getCustomersInfo(eq(customerIds)))
+        .thenReturn(Mono.just(new CustomerBatch(
+            List.of(Customer.builder().customerId("trotro").firstName("Ane").lastName("Trotro").build()),
+            List.of("ane"),
+            List.of("rigolo"))));
+
+    // Test & Assert
+    webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_JSON)
+        .contentType(APPLICATION_JSON)
+        .body(fromValue(CustomersBatchRequest.builder().customerIds(customerIds).build()))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .json("{\"customers\":[{\"customerId\":\"trotro\",\"firstName\":\"Ane\",\"lastName\":\"Trotro\"}]," +
+            "\"notFound\":[\"ane\"]," +
+            "\"failed\":[\"rigolo\"]}");
+    verify(customerService).getCustomersInfo(eq(customerIds));
+  }
+
+  @Test
+  @DisplayName("POST customers batch should return 403 forbidden for a customer token without the service scope")
+  void getCustomersBatch_shouldReturn403_whenNoServiceScope() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600,
+        "customer.read customer.write");
+
+    // Test & Assert
+    webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_JSON)
+        .contentType(APPLICATION_JSON)
+        .body(fromValue(CustomersBatchRequest.builder().customerIds(List.of("trotro")).build()))
+        .exchange()
+        .expectStatus().isForbidden();
+    verify(customerService, never()).getCustomersInfo(any());
+  }
+
+  @Test
+  @DisplayName("POST customers batch should return 400 when no customer id is asked")
+  void getCustomersBatch_shouldReturn400_whenNoCustomerIds() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600,
+        "customer.service");
+
+    // Test & Assert
+    webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_JSON)
+        .contentType(APPLICATION_JSON)
+        .body(fromValue(CustomersBatchRequest.builder().customerIds(List.of()).build()))
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody()
+        .json("{\"code\":\"VALIDATION_ERROR\"," +
+            "\"message\":\"1 error(s) while validating com.prez.api.dto.CustomersBatchRequest : " +
+            "The customer ids are missing\"}");
+    verify(customerService, never()).getCustomersInfo(any());
+  }
+
+  @Test
+  @DisplayName("POST customers batch should return 400 when too many customer ids are asked")
+  void getCustomersBatch_shouldReturn400_whenTooManyCustomerIds() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600,
+        "customer.service");
+    final List<String> customerIds = IntStream.rangeClosed(0, CustomersBatchRequest.MAX_CUSTOMER_IDS)
+        .mapToObj(i -> "customer" + i)
+        .collect(Collectors.toList());
+
+    // Test & Assert
+    webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_JSON)
+        .contentType(APPLICATION_JSON)
+        .body(fromValue(CustomersBatchRequest.builder().customerIds(customerIds).build()))
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody()
+        .json("{\"code\":\"VALIDATION_ERROR\"," +
+            "\"message\":\"1 error(s) while validating com.prez.api.dto.CustomersBatchRequest : " +
+            "At most 100 customer ids can be asked at once\"}");
+    verify(customerService, never()).getCustomersInfo(any());
+  }
+
+  @Test
+  @DisplayName("POST customers batch should return 400 when the body is missing")
+  void getCustomersBatch_shouldReturn400_whenNoBody() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600,
+        "customer.service");
+
+    // Test & Assert
+    webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_JSON)
+        .contentType(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody()
+        .json("{\"code\":\"VALIDATION_ERROR\"}");
+    verify(customerService, never()).getCustomersInfo(any());
+  }
+
+  @Test
+  @DisplayName("POST customers batch should return 500 and not 400 when the lookup fails unexpectedly")
+  void getCustomersBatch_shouldReturn500_whenUnexpectedError() {
+    // Given
+    final String accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600,
+        "customer.service");
+    final List<String> customerIds = List.of("trotro");
+    when(customerService.getCustomersInfo(eq(customerIds)))
+        .thenReturn(Mono.error(new IllegalStateException("Redis pipeline broken")));
+
+    // Test & Assert
+    webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer " + accessToken)
+        .accept(APPLICATION_JSON)
+        .contentType(APPLICATION_JSON)
+        .body(fromValue(CustomersBatchRequest.builder().customerIds(customerIds).build()))
+        .exchange()
+        .expectStatus().is5xxServerError()
+        .expectBody()
+        .json("{\"code\":\"UNEXPECTED_ERROR\"}");
+  }
+}
@@ -0,0 +1,149 @@
+package com.prez.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import brave.SpanCustomizer;
+import com.prez.exception.NotFoundException;
+import com.prez.ws.WebServiceException;
+import java.net.URI;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+class RouteFilterTest {
+
+  @Mock
+  private SpanCustomizer mockSpan;
+
+  private final MockServerRequest serverRequest = MockServerRequest.builder()
+      .method(HttpMethod.GET)
+      .uri(URI.create("/customers"))
+      .build();
+
+  private RouteFilter routeFilter() {
+    return RouteFilter.builder(mockSpan)
+        .onError(WebServiceException.class, WebServiceExceptionHandlerFilter::toResponse)
+        .onError(NotFoundException.class, ElementNotFoundErrorHandler::toResponse)
+        .build();
+  }
+
+  @Test
+  @DisplayName("filter should name the span after the request and tag the status of the response")
+  void filter_shouldTagSpan_whenResponse() {
+    // Given
+    final HandlerFunction<ServerResponse> ok = r -> ServerResponse.ok().build();
+
+    // Test
+    final ServerResponse serverResponse = routeFilter().filter(serverRequest, ok).block();
+
+    // Assert
+    assertThat(serverResponse.statusCode()).isEqualTo(OK);
+    verify(mockSpan).name("GET /customers");
+    verify(mockSpan).tag("service", "GET /customers");
+    verify(mockSpan).tag("http.statusCode", "200");
+    verify(mockSpan, never()).tag("error", NotFoundException.class.getName());
+  }
+
+  @Test
+  @DisplayName("filter should map the error with the first matching mapping and tag the error")
+  void filter_shouldMapError_withFirstMatchingMapping() {
+    // Given
+    final HandlerFunction<ServerResponse> notFound = r -> Mono.error(new NotFoundException("trotro", "customer"));
+    final RouteFilter routeFilter = RouteFilter.builder(mockSpan)
+        .spanName("GET customer")
+        .onError(NotFoundException.class, ElementNotFoundErrorHandler::toResponse)
+        .onError(Throwable.class, GlobalErrorHandler::toResponse)
+        .build();
+
+    // Test
+    final ServerResponse serverResponse = routeFilter.filter(serverRequest, notFound).block();
+
+    // Assert
+    assertThat(serverResponse.statusCode()).isEqualTo(NOT_FOUND);
+    verify(mockSpan).tag("error", NotFoundException.class.getName());
+    verify(mockSpan).tag("http.statusCode", "404");
+  }
+
+  @Test
+  @DisplayName("filter should map the web service errors to their status")
+  void filter_shouldMapWebServiceException() {
+    // Given
+    final HandlerFunction<ServerResponse> webServiceException =
+        r -> Mono.error(new WebServiceException("shakyService", SERVICE_UNAVAILABLE,
+            "Yes, as surprising as it can be web services do fail!"));
+
+    // Test
+    final ServerResponse serverResponse = routeFilter().filter(serverRequest, webServiceException).block();
+
+    // Assert
+    assertThat(serverResponse.statusCode()).isEqualTo(SERVICE_UNAVAILABLE);
+    verify(mockSpan).tag("webService", "shakyService");
+  }
+
+  @Test
+  @DisplayName("filter should fall back to the last mapping for the other errors")
+  void filter_shouldFallBack_whenNoOtherMappingMatches() {
+    // Given
+    final HandlerFunction<ServerResponse> otherException =
+        r -> Mono.error(new IllegalArgumentException("Totally random exception"));
+    final RouteFilter routeFilter = RouteFilter.builder(mockSpan)
+        .onError(NotFoundException.class, ElementNotFoundErrorHandler::toResponse)
+        .onError(Throwable.class, GlobalErrorHandler::toResponse)
+        .build();
+
+    // Test
+    final ServerResponse serverResponse = routeFilter.filter(serverRequest, otherException).block();
+
+    // Assert
+    assertThat(serverResponse.statusCode()).isEqualTo(INTERNAL_SERVER_ERROR);
+  }
+
+  @Test
+  @DisplayName("filter should propagate the errors matching no mapping")
+  void filter_shouldPropagateException_whenNoMappingMatches() {
+    // Given
+    final HandlerFunction<ServerResponse> otherException =
+        r -> Mono.error(new IllegalArgumentException("Totally random exception"));
+
+    // Test
+    final IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+        () -> routeFilter().filter(serverRequest, otherException).block());
+
+    // Assert
+    assertThat(exception).hasMessage("Totally random exception");
+    verify(mockSpan).name("GET /customers");
+    verify(mockSpan).tag("error", IllegalArgumentException.class.getName());
+  }
+
+  @Test
+  @DisplayName("filter should call the handler through the authentication")
+  void filter_shouldAuthenticate() {
+    // Given
+    final HandlerFunction<ServerResponse> ok = r -> ServerResponse.ok().build();
+    final RouteFilter routeFilter = RouteFilter.builder(mockSpan)
+        .authentication((request, next) -> Mono.error(new NotFoundException("nobody", "principal")))
+        .onError(NotFoundException.class, ElementNotFoundErrorHandler::toResponse)
+        .build();
+
+    // Test
+    final ServerResponse serverResponse = routeFilter.filter(serverRequest, ok).block();
+
+    // Assert
+    assertThat(serverResponse.statusCode()).isEqualTo(NOT_FOUND);
+  }
+}
@@ -0,0 +1,43 @@
+package com.prez.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the customer web service bodies served by castlemock, so that the benchmarks work on realistic payloads.
+ * The directory defaults to the one of this repository and can be overridden with -Dcastlemock.responses=...
+ */
+final class CastlemockResponses {
+
+  private static final String DIRECTORY =
+      System.getProperty("castlemock.responses", "../castlemock/rest/response/v2");
+
+  private CastlemockResponses() {
+  }
+
+  /**
+   * @param name the name of the mocked response, eg "John"
+   * @return the body of that response
+   */
+  static String body(String name) {
+    final File[] files = new File(DIRECTORY).listFiles((dir, fileName) -> fileName.endsWith(".rest"));
+    if (files == null) {
+      throw new IllegalStateException("No castlemock responses in " + new File(DIRECTORY).getAbsolutePath());
+    }
+    try {
+      for (File file : files) {
+        final Document response = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        if (name.equals(response.getElementsByTagName("name").item(0).getTextContent())) {
+          return response.getElementsByTagName("body").item(0).getTextContent();
+        }
+      }
+    } catch (ParserConfigurationException | SAXException | IOException e) {
+      throw new IllegalStateException("Unreadable castlemock response in " + DIRECTORY, e);
+    }
+    throw new IllegalArgumentException("No castlemock response named " + name);
+  }
+}
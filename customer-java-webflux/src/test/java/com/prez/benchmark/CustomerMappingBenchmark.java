@@ -0,0 +1,100 @@
+package com.prez.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.prez.api.dto.CustomerResponse;
+import com.prez.model.Customer;
+import com.prez.service.CustomerWSResponseToCustomerMapper;
+import com.prez.ws.model.CustomerWSResponseReader;
+import com.prez.ws.model.GetCustomerWSResponse;
+import com.prez.ws.model.Record;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Cost of each step between the customer web service body and the API response, on the castlemock customers:
+ * JSON parsing, misc records fields parsing alone (ListOfObjectsToMapDeserializer), mapping to the model,
+ * mapping to the DTO.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerMappingBenchmark {
+
+  @Param({"John", "Mia", "Jen"})
+  private String castlemockResponse;
+
+  private final CustomerWSResponseToCustomerMapper mapper = new CustomerWSResponseToCustomerMapper();
+  private ObjectMapper objectMapper;
+  private ObjectReader recordReader;
+  private CustomerWSResponseReader responseReader;
+  private byte[] body;
+  private List<String> records;
+  private GetCustomerWSResponse response;
+  private Customer customer;
+
+  @Setup
+  public void setup() throws IOException {
+    // same settings as the application ObjectMapper
+    objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    recordReader = objectMapper.readerFor(Record.class);
+    responseReader = new CustomerWSResponseReader(objectMapper);
+    // bytes, as received by the web service clients
+    body = CastlemockResponses.body(castlemockResponse).getBytes(StandardCharsets.UTF_8);
+    records = new ArrayList<>();
+    for (JsonNode misc : objectMapper.readTree(body).path("misc")) {
+      for (JsonNode record : misc.path("records")) {
+        records.add(record.toString());
+      }
+    }
+    response = objectMapper.readValue(body, GetCustomerWSResponse.class);
+    customer = mapper.toCustomer(response);
+  }
+
+  @Benchmark
+  public GetCustomerWSResponse readResponse() throws IOException {
+    return objectMapper.readValue(body, GetCustomerWSResponse.class);
+  }
+
+  @Benchmark
+  public GetCustomerWSResponse streamResponse() throws IOException {
+    return responseReader.read(body);
+  }
+
+  @Benchmark
+  public void readRecords(Blackhole blackhole) throws IOException {
+    for (String record : records) {
+      blackhole.consume(recordReader.<Record>readValue(record));
+    }
+  }
+
+  @Benchmark
+  public Customer toCustomer() {
+    return mapper.toCustomer(response);
+  }
+
+  @Benchmark
+  public CustomerResponse toCustomerResponse() {
+    return CustomerResponse.of(customer);
+  }
+}
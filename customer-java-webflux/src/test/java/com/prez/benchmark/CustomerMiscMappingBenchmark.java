@@ -0,0 +1,99 @@
+package com.prez.benchmark;
+
+import com.prez.model.Customer;
+import com.prez.service.CustomerWSResponseToCustomerMapper;
+import com.prez.ws.model.GetCustomerWSResponse;
+import com.prez.ws.model.Misc;
+import com.prez.ws.model.NestedValue;
+import com.prez.ws.model.Record;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mapping of customers holding many misc records: one active loyalty program, the other loyalty records inactive,
+ * and rail passes of which a quarter have dates which are not dates and half are rejected (inactive or unknown type).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerMiscMappingBenchmark {
+
+  /**
+   * misc records of the customer, spread over LOYALTY, PASS and other misc of 4 records each
+   */
+  @Param({"12", "48"})
+  private int recordCount;
+
+  private final CustomerWSResponseToCustomerMapper mapper = new CustomerWSResponseToCustomerMapper();
+  private GetCustomerWSResponse response;
+
+  @Setup
+  public void setup() {
+    final String[] types = {"LOYALTY", "PASS", "SERVICE"};
+    final List<Misc> allMisc = new ArrayList<>();
+    for (int i = 0; i < recordCount / 4; i++) {
+      final String type = types[i % types.length];
+      final List<Record> records = new ArrayList<>();
+      for (int j = 0; j < 4; j++) {
+        records.add(Record.builder()
+            .otherId(type + i + "-" + j)
+            .type(NestedValue.builder().value(type).build())
+            .map(fields(type, i * 4 + j, j))
+            .build());
+      }
+      allMisc.add(Misc.builder().type(NestedValue.builder().value(type).build()).count(records.size())
+          .records(records).build());
+    }
+    response = GetCustomerWSResponse.builder().id("customer").misc(allMisc).build();
+  }
+
+  @Benchmark
+  public Customer toCustomer() {
+    return mapper.toCustomer(response);
+  }
+
+  /**
+   * @param variant 0: valid, 1: valid with dates which are not dates, 2: inactive, 3: unknown status or pass type
+   */
+  private static Map<String, String> fields(String type, int number, int variant) {
+    final Map<String, String> fields = new HashMap<>();
+    final String startDate = variant == 1 ? "2019-02-30" : "2019-11-10";
+    final String endDate = variant == 1 ? "not a date" : "2020-11-09";
+    final String active = variant == 2 ? "001" : "000";
+    if ("PASS".equals(type)) {
+      fields.put("pass_number", "PASS-" + number);
+      fields.put("new_product_code", variant == 3 ? "UNKNOWN" : "FAMILY");
+      fields.put("pass_label", "FAMILY PASS");
+      fields.put("pass_validity_start", startDate);
+      fields.put("pass_validity_end", endDate);
+      fields.put("pass_is_active", active);
+    } else {
+      fields.put("loyalty_number", "LOYALTY-" + number);
+      fields.put("loyalty_status", variant == 3 ? "UNKNOWN" : "B0B0B0");
+      fields.put("loyalty_status_label", "PLATINIUM");
+      fields.put("validity_start", startDate);
+      fields.put("validity_end", endDate);
+      // only one active loyalty program, as a customer has
+      fields.put("disable_status", number == 0 ? active : "001");
+    }
+    fields.put("some_key", "some_value");
+    return fields;
+  }
+}
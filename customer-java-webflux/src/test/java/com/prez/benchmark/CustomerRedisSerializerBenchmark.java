@@ -0,0 +1,100 @@
+package com.prez.benchmark;
+
+import static com.prez.model.LoyaltyStatus.FFD700;
+import static com.prez.model.PassType.FAMILY;
+import static com.prez.model.PassType.PRO_FIRST;
+import static java.util.Arrays.asList;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.prez.cache.CustomerBinaryRedisSerializer;
+import com.prez.model.Customer;
+import com.prez.model.LoyaltyProgram;
+import com.prez.model.RailPass;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Encoding/decoding cost of the customer Redis value, for each serializer of RedisConfig.
+ * The payload sizes are printed at setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerRedisSerializerBenchmark {
+
+  @Param({"json", "binary"})
+  private String serializer;
+
+  private RedisSerializer<Customer> toTest;
+  private Customer customer;
+  private byte[] serialized;
+
+  @Setup
+  public void setup() {
+    final Jackson2JsonRedisSerializer<Customer> jsonSerializer = new Jackson2JsonRedisSerializer<>(Customer.class);
+    // same settings as the application ObjectMapper
+    jsonSerializer.setObjectMapper(Jackson2ObjectMapperBuilder.json()
+        .serializationInclusion(JsonInclude.Include.NON_EMPTY)
+        .build());
+    toTest = "json".equals(serializer) ? jsonSerializer : new CustomerBinaryRedisSerializer(jsonSerializer);
+    customer = Customer.builder()
+        .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+        .email("mission.impossible@connect.fr")
+        .firstName("Jim")
+        .lastName("Phelps")
+        .birthDate(LocalDate.of(1952, 2, 29))
+        .phoneNumber("0600000000")
+        .loyaltyProgram(LoyaltyProgram.builder()
+            .number("008")
+            .status(FFD700)
+            .statusRefLabel("GOLD IT IS")
+            .validityStartDate(LocalDate.of(2020, 1, 1))
+            .validityEndDate(LocalDate.of(2030, 12, 31))
+            .build())
+        .railPasses(asList(
+            RailPass.builder()
+                .number("JIMID")
+                .type(PRO_FIRST)
+                .typeRefLabel("I AM A PRO")
+                .validityStartDate(LocalDate.of(2019, 12, 25))
+                .validityEndDate(LocalDate.of(2045, 12, 23))
+                .build(),
+            RailPass.builder()
+                .number("JIMFAMILY")
+                .type(FAMILY)
+                .typeRefLabel("WE ARE FAMILY")
+                .validityStartDate(LocalDate.of(2021, 1, 1))
+                .validityEndDate(LocalDate.of(2022, 1, 1))
+                .build()))
+        .build();
+    serialized = toTest.serialize(customer);
+    System.out.printf("%n%s customer payload size: %d bytes%n", serializer, serialized.length);
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return toTest.serialize(customer);
+  }
+
+  @Benchmark
+  public Customer deserialize() {
+    return toTest.deserialize(serialized);
+  }
+}
@@ -0,0 +1,109 @@
+package com.prez.benchmark;
+
+import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.prez.ws.model.Record;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Misc record fields read by the ListOfObjectsToMapDeserializer, against the former implementation which built the
+ * JsonNode tree of the fields before copying it into the map.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListOfObjectsToMapDeserializerBenchmark {
+
+  /**
+   * fields in the record, the first ones are those read by the mapper
+   */
+  @Param({"10", "50", "200"})
+  private int fieldCount;
+
+  private ObjectReader recordReader;
+  private ObjectReader treeRecordReader;
+  private byte[] record;
+
+  @Setup
+  public void setup() {
+    final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    recordReader = objectMapper.readerFor(Record.class);
+    treeRecordReader = objectMapper.readerFor(TreeRecord.class);
+    final String[] mapperKeys = {"pass_number", "new_product_code", "pass_label", "pass_validity_start",
+        "pass_validity_end", "pass_is_active"};
+    final StringBuilder json = new StringBuilder("{\"otherId\":\"07239107/23/91\",\"type\":{\"value\":\"PASS\"},"
+        + "\"fields\":[");
+    for (int i = 0; i < fieldCount; i++) {
+      final String key = i < mapperKeys.length ? mapperKeys[i] : "some_key_" + i;
+      json.append(i == 0 ? "" : ",").append("{\"key\":\"").append(key).append("\",\"value\":\"value_").append(i)
+          .append("\"}");
+    }
+    record = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Record streaming() throws IOException {
+    return recordReader.readValue(record);
+  }
+
+  @Benchmark
+  public TreeRecord tree() throws IOException {
+    return treeRecordReader.readValue(record);
+  }
+
+  @Data
+  public static class TreeRecord {
+
+    private String otherId;
+    private Map<String, String> type;
+    @JsonDeserialize(using = TreeDeserializer.class)
+    private Map<String, String> fields;
+  }
+
+  public static class TreeDeserializer extends JsonDeserializer<Map<String, String>> {
+
+    @Override
+    public Map<String, String> deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
+      Map<String, String> ret = new HashMap<>();
+      JsonNode node = parser.getCodec().readTree(parser);
+      if (node.isArray()) {
+        for (JsonNode n : (ArrayNode) node) {
+          JsonNode key = n.get("key");
+          JsonNode value = n.get("value");
+          if (key != null && value != null && isNotEmpty(key.asText()) && isNotEmpty(value.asText())) {
+            ret.put(key.asText(), value.asText());
+          }
+        }
+      }
+      return ret;
+    }
+  }
+}
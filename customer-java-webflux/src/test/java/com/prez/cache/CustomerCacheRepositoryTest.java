@@ -11,6 +11,8 @@ import com.prez.model.LoyaltyProgram;
 import com.prez.model.RailPass;
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
@@ -33,7 +35,7 @@ class CustomerCacheRepositoryTest extends UsingRedis {
 
   @BeforeEach
   void beforeEach() {
-    toTest = new CustomerCache(4L, customerInfoRedisTemplate);
+    toTest = new CustomerCache(4L, 2L, customerInfoRedisTemplate);
     customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("Customer:*")).block();
   }
 
@@ -195,4 +197,96 @@ class CustomerCacheRepositoryTest extends UsingRedis {
     // Assert
     assertThat(savedCustomer).isNull();
   }
+
+  @Test
+  @DisplayName("findEntryById should find a fresh customer entry when it is younger than the soft time-to-live")
+  void findEntryById_should_find_a_fresh_entry_when_younger_than_soft_ttl() {
+    //given
+    final Customer customerInfo = Customer.builder()
+        .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+        .email("mission.impossible@connect.fr")
+        .firstName("Jim")
+        .lastName("Phelps")
+        .build();
+    customerInfoRedisTemplate.opsForValue()
+        .set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo, Duration.ofSeconds(4)).block();
+
+    // Test
+    final CustomerCacheEntry entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").block();
+
+    // Assert
+    assertThat(entry).isNotNull();
+    assertThat(entry.isStale()).isFalse();
+    assertThat(entry.getCustomer()).usingRecursiveComparison().isEqualTo(customerInfo);
+  }
+
+  @Test
+  @DisplayName("findEntryById should find a stale customer entry when it is older than the soft time-to-live")
+  void findEntryById_should_find_a_stale_entry_when_older_than_soft_ttl() {
+    //given an entry with less than (hard - soft) time-to-live left
+    final Customer customerInfo = Customer.builder()
+        .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+        .email("mission.impossible@connect.fr")
+        .firstName("Jim")
+        .lastName("Phelps")
+        .build();
+    customerInfoRedisTemplate.opsForValue()
+        .set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo, Duration.ofSeconds(1)).block();
+
+    // Test
+    final CustomerCacheEntry entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").block();
+
+    // Assert
+    assertThat(entry).isNotNull();
+    assertThat(entry.isStale()).isTrue();
+    assertThat(entry.getCustomer()).usingRecursiveComparison().isEqualTo(customerInfo);
+  }
+
+  @Test
+  @DisplayName("findEntryById should return empty if there is no entry with the provided id")
+  void findEntryById_should_return_empty_when_no_entry_found_corresponding_to_provided_id() {
+    // Test
+    final CustomerCacheEntry entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").block();
+
+    // Assert
+    assertThat(entry).isNull();
+  }
+
+  @Test
+  @DisplayName("saveAll should create all the customer entries with ttl")
+  void saveAll_should_create_all_customer_entries_with_ttl() {
+    //given
+    final Customer jim = Customer.builder().customerId("jim").firstName("Jim").lastName("Phelps").build();
+    final Customer cinnamon = Customer.builder().customerId("cinnamon").firstName("Cinnamon").lastName("Carter").build();
+
+    // Test
+    final Boolean areSaved = toTest.saveAll(List.of(jim, cinnamon)).block();
+    final Duration ttl = customerInfoRedisTemplate.getExpire("Customer:cinnamon").block();
+    final List<Customer> savedCustomers =
+        customerInfoRedisTemplate.opsForValue().multiGet(List.of("Customer:jim", "Customer:cinnamon")).block();
+
+    // Assert
+    assertThat(areSaved).isTrue();
+    assertThat(ttl).isGreaterThanOrEqualTo(Duration.ofSeconds(3));
+    assertThat(ttl).isLessThanOrEqualTo(Duration.ofSeconds(4));
+    assertThat(savedCustomers).usingRecursiveFieldByFieldElementComparator().containsExactly(jim, cinnamon);
+  }
+
+  @Test
+  @DisplayName("findAllByIds should find the saved customers by id and ignore the missing ones")
+  void findAllByIds_should_find_saved_customers_by_id() {
+    //given
+    final Customer jim = Customer.builder().customerId("jim").firstName("Jim").lastName("Phelps").build();
+    final Customer cinnamon = Customer.builder().customerId("cinnamon").firstName("Cinnamon").lastName("Carter").build();
+    customerInfoRedisTemplate.opsForValue().set("Customer:jim", jim).block();
+    customerInfoRedisTemplate.opsForValue().set("Customer:cinnamon", cinnamon).block();
+
+    // Test
+    final Map<String, Customer> savedCustomers = toTest.findAllByIds(List.of("jim", "rollin", "cinnamon")).block();
+
+    // Assert
+    assertThat(savedCustomers).containsOnlyKeys("jim", "cinnamon");
+    assertThat(savedCustomers.get("jim")).usingRecursiveComparison().isEqualTo(jim);
+    assertThat(savedCustomers.get("cinnamon")).usingRecursiveComparison().isEqualTo(cinnamon);
+  }
 }
@@ -0,0 +1,75 @@
+package com.prez.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.prez.model.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+class CustomerLocalCacheTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final Customer customer = Customer.builder()
+      .customerId("35adcf57-2cf7-4945-a980-e9753eb146f7")
+      .firstName("Jim")
+      .lastName("Phelps")
+      .build();
+
+  @Test
+  @DisplayName("getIfPresent should return a put customer and record hits and misses")
+  void getIfPresent_should_return_put_customer_and_record_hits_and_misses() {
+    // Given
+    final CustomerLocalCache toTest = new CustomerLocalCache(10L, 30L, 300L, meterRegistry);
+    toTest.put(customer);
+
+    // Test
+    final Customer found = toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7");
+    final Customer notFound = toTest.getIfPresent("unknown");
+
+    // Assert
+    assertThat(found).isEqualTo(customer);
+    assertThat(notFound).isNull();
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.local").tag("result", "hit")
+        .functionCounter().count()).isEqualTo(1.0);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.local").tag("result", "miss")
+        .functionCounter().count()).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("time to live should be capped by the Redis one")
+  void time_to_live_should_be_capped_by_redis_time_to_live() {
+    // Given a Redis time to live of 0 second
+    final CustomerLocalCache toTest = new CustomerLocalCache(10L, 30L, 0L, meterRegistry);
+    toTest.put(customer);
+
+    // Test
+    final Customer found = toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7");
+
+    // Assert
+    assertThat(found).isNull();
+  }
+
+  @Test
+  @DisplayName("getIfPresent should keep a customer for the application.yml time to live when Redis keeps it longer")
+  void getIfPresent_should_keep_customer_for_application_yml_time_to_live() {
+    new ApplicationContextRunner()
+        .withInitializer(new ConfigDataApplicationContextInitializer())
+        .withBean(SimpleMeterRegistry.class)
+        .withUserConfiguration(CustomerLocalCache.class)
+        .withPropertyValues("spring.redis.time-to-live.customer=3600")
+        .run(context -> {
+          // Given
+          final CustomerLocalCache toTest = context.getBean(CustomerLocalCache.class);
+
+          // Test
+          toTest.put(customer);
+
+          // Assert
+          assertThat(toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7")).isEqualTo(customer);
+        });
+  }
+}
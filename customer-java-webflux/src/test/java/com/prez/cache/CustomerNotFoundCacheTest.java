@@ -0,0 +1,116 @@
+package com.prez.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.prez.lib.limit.LatencyBudget;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerNotFoundCacheTest {
+
+  @Mock
+  private ReactiveStringRedisTemplate redisTemplate;
+
+  @Mock
+  private ReactiveValueOperations<String, String> valueOperations;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private CustomerNotFoundCache toTest;
+
+  @BeforeEach
+  void setup() {
+    final LatencyBudget budget = new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1),
+        CircuitBreaker.ofDefaults("redis"), meterRegistry);
+    toTest = new CustomerNotFoundCache(30L, redisTemplate, budget, meterRegistry);
+  }
+
+  @Test
+  @DisplayName("isNotFound should tell whether the customer is known as not found and record hits and misses")
+  void isNotFound_should_tell_known_not_found_customers_and_record_hits_and_misses() {
+    // Given
+    when(redisTemplate.hasKey("CustomerNotFound:unknown")).thenReturn(Mono.just(true));
+    when(redisTemplate.hasKey("CustomerNotFound:123456789")).thenReturn(Mono.just(false));
+
+    // Test
+    final Boolean unknown = toTest.isNotFound("unknown").block();
+    final Boolean known = toTest.isNotFound("123456789").block();
+
+    // Assert
+    assertThat(unknown).isTrue();
+    assertThat(known).isFalse();
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.not-found").tag("result", "hit")
+        .counter().count()).isEqualTo(1.0);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.not-found").tag("result", "miss")
+        .counter().count()).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("isNotFound should not know the customer as not found when Redis fails")
+  void isNotFound_should_return_false_when_redis_fails() {
+    // Given
+    when(redisTemplate.hasKey("CustomerNotFound:unknown"))
+        .thenReturn(Mono.error(new RedisConnectionFailureException("Redis down")));
+
+    // Test
+    final Boolean notFound = toTest.isNotFound("unknown").block();
+
+    // Assert
+    assertThat(notFound).isFalse();
+  }
+
+  @Test
+  @DisplayName("putNotFound should save the customer as not found with its own time-to-live")
+  void putNotFound_should_save_not_found_customer_with_ttl() {
+    // Given
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.set("CustomerNotFound:unknown", "1", Duration.ofSeconds(30))).thenReturn(Mono.just(true));
+
+    // Test
+    final Boolean saved = toTest.putNotFound("unknown").block();
+
+    // Assert
+    assertThat(saved).isTrue();
+    assertThat(meterRegistry.get("cache.puts").tag("cache", "customer.not-found").counter().count())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("putNotFound should keep the customer as not found for 30 seconds, application.yml setting none")
+  void putNotFound_should_default_to_thirty_seconds_from_application_yml() {
+    new ApplicationContextRunner()
+        .withInitializer(new ConfigDataApplicationContextInitializer())
+        .withBean(ReactiveStringRedisTemplate.class, () -> redisTemplate)
+        .withBean(LatencyBudget.class, () -> new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1),
+            CircuitBreaker.ofDefaults("redis"), meterRegistry))
+        .withBean(SimpleMeterRegistry.class)
+        .withUserConfiguration(CustomerNotFoundCache.class)
+        .run(context -> {
+          // Given
+          when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+          when(valueOperations.set("CustomerNotFound:unknown", "1", Duration.ofSeconds(30)))
+              .thenReturn(Mono.just(true));
+
+          // Test
+          final Boolean saved = context.getBean(CustomerNotFoundCache.class).putNotFound("unknown").block();
+
+          // Assert
+          assertThat(saved).isTrue();
+        });
+  }
+}
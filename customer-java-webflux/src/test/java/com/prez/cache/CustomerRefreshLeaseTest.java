@@ -0,0 +1,153 @@
+package com.prez.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.prez.UsingRedis;
+import com.prez.lib.limit.LatencyBudget;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+
+@Tag("docker")
+@SpringBootTest
+@ActiveProfiles("test")
+class CustomerRefreshLeaseTest extends UsingRedis {
+
+  @Autowired
+  private ReactiveStringRedisTemplate redisTemplate;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private CustomerRefreshLease toTest;
+
+  @BeforeEach
+  void beforeEach() {
+    meterRegistry = new SimpleMeterRegistry();
+    toTest = lease(true);
+    redisTemplate.delete(redisTemplate.keys("CustomerRefreshLease:*")).block();
+    redisTemplate.delete("refreshed:123").block();
+  }
+
+  private CustomerRefreshLease lease(boolean enabled) {
+    final CustomerRefreshLeaseProperties properties = new CustomerRefreshLeaseProperties();
+    properties.setEnabled(enabled);
+    properties.setLeaseTime(Duration.ofSeconds(2));
+    properties.setMaxWait(Duration.ofMillis(500));
+    properties.setPollInterval(Duration.ofMillis(20));
+    final LatencyBudget budget = new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1),
+        CircuitBreaker.ofDefaults("redis"), meterRegistry);
+    return new CustomerRefreshLease(properties, redisTemplate, budget, meterRegistry);
+  }
+
+  private double acquisitions(String result) {
+    return meterRegistry.get("refresh.lease.acquisitions").tag("name", "customer").tag("result", result).counter()
+        .count();
+  }
+
+  @Test
+  @DisplayName("tryAcquire should acquire a free lease for the lease time, and not a held one")
+  void tryAcquire_should_acquire_a_free_lease_and_not_a_held_one() {
+    // Test
+    final CustomerRefreshLease.Lease first = toTest.tryAcquire("123").block();
+    final CustomerRefreshLease.Lease second = toTest.tryAcquire("123").block();
+    final Duration ttl = redisTemplate.getExpire("CustomerRefreshLease:123").block();
+
+    // Assert
+    assertThat(first.isAcquired()).isTrue();
+    assertThat(second.isAcquired()).isFalse();
+    assertThat(ttl).isBetween(Duration.ofMillis(1), Duration.ofSeconds(2));
+    assertThat(acquisitions("acquired")).isEqualTo(1.0);
+    assertThat(acquisitions("contended")).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("release should release the lease only while it is still the one of its owner")
+  void release_should_release_only_its_own_lease() {
+    // Given a lease released, then acquired by another caller
+    final CustomerRefreshLease.Lease first = toTest.tryAcquire("123").block();
+    first.release().block();
+    final Boolean releasedOnce = !redisTemplate.hasKey("CustomerRefreshLease:123").block();
+    final CustomerRefreshLease.Lease second = toTest.tryAcquire("123").block();
+
+    // Test
+    first.release().block();
+
+    // Assert
+    assertThat(releasedOnce).isTrue();
+    assertThat(second.isAcquired()).isTrue();
+    assertThat(redisTemplate.hasKey("CustomerRefreshLease:123").block()).isTrue();
+  }
+
+  @Test
+  @DisplayName("awaitRefreshed should emit the customer once the holder of the lease saved it")
+  void awaitRefreshed_should_emit_the_customer_once_saved() {
+    // Given a lease held by another caller, which saves the customer 100ms later
+    toTest.tryAcquire("123").block();
+    Mono.delay(Duration.ofMillis(100))
+        .then(redisTemplate.opsForValue().set("refreshed:123", "Jack"))
+        .subscribe();
+
+    // Test
+    final String refreshed = toTest.awaitRefreshed("123", redisTemplate.opsForValue().get("refreshed:123")).block();
+
+    // Assert
+    assertThat(refreshed).isEqualTo("Jack");
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "refreshed").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("awaitRefreshed should stop waiting once the lease is released without the customer being saved")
+  void awaitRefreshed_should_stop_waiting_once_the_lease_is_released() {
+    // Given a lease released by its holder
+    toTest.tryAcquire("123").flatMap(CustomerRefreshLease.Lease::release).block();
+
+    // Test
+    final String refreshed = toTest.awaitRefreshed("123", redisTemplate.opsForValue().get("refreshed:123")).block();
+
+    // Assert
+    assertThat(refreshed).isNull();
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "released").timer()
+        .totalTime(TimeUnit.MILLISECONDS)).isLessThan(500);
+  }
+
+  @Test
+  @DisplayName("awaitRefreshed should give up once max-wait is over while the lease is held")
+  void awaitRefreshed_should_give_up_after_max_wait() {
+    // Given a lease held by another caller, which never saves the customer
+    toTest.tryAcquire("123").block();
+
+    // Test
+    final String refreshed = toTest.awaitRefreshed("123", redisTemplate.opsForValue().get("refreshed:123"))
+        .block(Duration.ofSeconds(2));
+
+    // Assert
+    assertThat(refreshed).isNull();
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "timeout").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("tryAcquire should always acquire the lease, without Redis, when disabled")
+  void tryAcquire_should_always_acquire_when_disabled() {
+    // Given
+    final CustomerRefreshLease disabled = lease(false);
+
+    // Test
+    final CustomerRefreshLease.Lease first = disabled.tryAcquire("123").block();
+    final CustomerRefreshLease.Lease second = disabled.tryAcquire("123").block();
+
+    // Assert
+    assertThat(first.isAcquired()).isTrue();
+    assertThat(second.isAcquired()).isTrue();
+    assertThat(redisTemplate.hasKey("CustomerRefreshLease:123").block()).isFalse();
+  }
+}
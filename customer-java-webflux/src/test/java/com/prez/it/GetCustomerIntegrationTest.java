@@ -119,6 +119,7 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
   @BeforeEach
   void beforeEach() {
     customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("Customer:*")).block();
+    customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("CustomerNotFound:*")).block();
     resetAllRequests(); //reset all requests registered by wiremock to be isolate each fullCustomer.json
   }
 
@@ -250,10 +251,12 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
             .withHeader("Content-Type", new EqualToPattern("application/json"))
     );
 
-    //redis
-    final Duration ttl = customerInfoRedisTemplate.getExpire("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed").block();
+    //redis, saved behind the response
     final Customer savedCustomer =
-        customerInfoRedisTemplate.opsForValue().get("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed").block();
+        customerInfoRedisTemplate.opsForValue().get("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed")
+            .repeatWhenEmpty(20, repeats -> repeats.delayElements(Duration.ofMillis(50)))
+            .block();
+    final Duration ttl = customerInfoRedisTemplate.getExpire("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed").block();
 
     assertThat(ttl).isGreaterThanOrEqualTo(Duration.ofSeconds(3));
     assertThat(ttl).isLessThanOrEqualTo(Duration.ofSeconds(10));
@@ -304,6 +307,16 @@ class GetCustomerIntegrationTest extends UsingMongoDBAndRedis {
         .exchange()
         .expectStatus().isNotFound()
         .expectBody().json("{\"code\":\"NOT_FOUND\",\"message\":\"No result for the given customer id=unknownCustomer\"}");
+
+    // asked again, the customer is known as not found: the customer web service is not called twice
+    client
+        .get()
+        .uri("/customers")
+        .header("Authorization", "Bearer " + unknown)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isNotFound();
+    verify(1, getRequestedFor(urlEqualTo("/customers/unknownCustomer")));
   }
 
   @Test
@@ -0,0 +1,98 @@
+package com.prez.lib.coalescing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class RequestCoalescerTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+  private Counter coalesced;
+  private RequestCoalescer<String> toTest;
+
+  @BeforeEach
+  void beforeEach() {
+    coalesced = Counter.builder("coalesced").register(new SimpleMeterRegistry());
+    toTest = new RequestCoalescer<>(coalesced);
+  }
+
+  @Test
+  @DisplayName("coalesce should share a single call between concurrent callers with the same key")
+  void coalesce_should_share_a_single_call_between_concurrent_callers_with_the_same_key() {
+    // Test
+    final List<String> results = Flux.range(0, 5)
+        .flatMap(i -> toTest.coalesce("key", this::slowCall))
+        .collectList()
+        .block();
+
+    // Assert
+    assertThat(results).containsExactly("result1", "result1", "result1", "result1", "result1");
+    assertThat(calls).hasValue(1);
+    assertThat(coalesced.count()).isEqualTo(4.0);
+  }
+
+  @Test
+  @DisplayName("coalesce should not share calls between different keys")
+  void coalesce_should_not_share_calls_between_different_keys() {
+    // Test
+    Flux.merge(toTest.coalesce("key1", this::slowCall), toTest.coalesce("key2", this::slowCall))
+        .blockLast();
+
+    // Assert
+    assertThat(calls).hasValue(2);
+    assertThat(coalesced.count()).isZero();
+  }
+
+  @Test
+  @DisplayName("coalesce should trigger a new call once the previous one is over, even when it failed")
+  void coalesce_should_trigger_a_new_call_once_the_previous_one_is_over() {
+    // Test
+    final Throwable error =
+        catchThrowable(() -> toTest.coalesce("key", () -> Mono.error(new IllegalStateException("boom"))).block());
+    final String result = toTest.coalesce("key", this::slowCall).block();
+
+    // Assert
+    assertThat(error).isInstanceOf(IllegalStateException.class);
+    assertThat(result).isEqualTo("result1");
+    assertThat(coalesced.count()).isZero();
+  }
+
+  @Test
+  @DisplayName("coalesce should keep sharing the call in flight when an older call of the same key ends again")
+  void coalesce_should_keep_sharing_the_call_in_flight_when_an_older_call_of_the_same_key_ends_again() {
+    // Given a first call over, a second one in flight
+    final Sinks.One<String> first = Sinks.one();
+    toTest.coalesce("key", first::asMono).subscribe();
+    final Mono<String> older = toTest.inFlight.get("key");
+    first.tryEmitValue("first");
+    final Sinks.One<String> second = Sinks.one();
+    toTest.coalesce("key", second::asMono).subscribe();
+
+    // Test the first call subscribed to again, by a caller which had joined it, then a new caller
+    older.block();
+    toTest.coalesce("key", () -> {
+      calls.incrementAndGet();
+      return Mono.never();
+    }).subscribe();
+
+    // Assert
+    assertThat(calls).hasValue(0);
+    assertThat(coalesced.count()).isEqualTo(1.0);
+  }
+
+  private Mono<String> slowCall() {
+    return Mono.delay(Duration.ofMillis(100))
+        .map(tick -> "result" + calls.incrementAndGet());
+  }
+}
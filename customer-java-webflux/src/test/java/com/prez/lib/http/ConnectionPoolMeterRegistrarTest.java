@@ -0,0 +1,46 @@
+package com.prez.lib.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.InetSocketAddress;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.netty.resources.ConnectionPoolMetrics;
+
+class ConnectionPoolMeterRegistrarTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ConnectionPoolMeterRegistrar toTest = new ConnectionPoolMeterRegistrar(meterRegistry);
+
+  @Test
+  @DisplayName("registerMetrics should export the pool state as gauges tagged with the pool and remote address")
+  void registerMetrics_should_export_pool_state_as_gauges() {
+    // Given
+    final ConnectionPoolMetrics metrics = mock(ConnectionPoolMetrics.class);
+    when(metrics.acquiredSize()).thenReturn(3);
+    when(metrics.idleSize()).thenReturn(2);
+    when(metrics.pendingAcquireSize()).thenReturn(1);
+    when(metrics.allocatedSize()).thenReturn(5);
+
+    // Test
+    toTest.registerMetrics("customer-ws", "id", InetSocketAddress.createUnresolved("localhost", 8085), metrics);
+
+    // Assert
+    assertThat(gauge(ConnectionPoolMeterRegistrar.ACTIVE)).isEqualTo(3.0);
+    assertThat(gauge(ConnectionPoolMeterRegistrar.IDLE)).isEqualTo(2.0);
+    assertThat(gauge(ConnectionPoolMeterRegistrar.PENDING)).isEqualTo(1.0);
+    assertThat(gauge(ConnectionPoolMeterRegistrar.ALLOCATED)).isEqualTo(5.0);
+  }
+
+  private double gauge(String name) {
+    return meterRegistry.get(name)
+        .tag("pool", "customer-ws")
+        .tag("remote.address", "localhost:8085")
+        .gauge()
+        .value();
+  }
+}
@@ -0,0 +1,147 @@
+package com.prez.lib.limit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  @DisplayName("tryAcquire should reject the calls over the limit and count them")
+  void tryAcquire_shouldReject_whenLimitReached() {
+    // Given
+    final AdaptiveConcurrencyLimiter toTest = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, 0.5, 2.0,
+        meterRegistry);
+
+    // Test
+    final boolean first = toTest.tryAcquire();
+    final boolean second = toTest.tryAcquire();
+    final boolean third = toTest.tryAcquire();
+
+    // Assert
+    assertThat(first).isTrue();
+    assertThat(second).isTrue();
+    assertThat(third).isFalse();
+    assertThat(toTest.getInProgress()).isEqualTo(2);
+    assertThat(meterRegistry.get("concurrency.limit.rejected").tag("name", "test").functionCounter().count())
+        .isEqualTo(1);
+    assertThat(meterRegistry.get("concurrency.limit").tag("name", "test").gauge().value()).isEqualTo(2);
+    assertThat(meterRegistry.get("concurrency.limit.in.progress").tag("name", "test").gauge().value()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("onSuccess should grow the limit when it is used and the calls are as fast as usual")
+  void onSuccess_shouldGrowLimit_whenLimitUsedAndCallsAsFastAsUsual() {
+    // Given
+    final AdaptiveConcurrencyLimiter toTest = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, 0.5, 2.0,
+        meterRegistry);
+
+    // Test: every call uses the whole limit
+    for (int i = 0; i < 10; i++) {
+      final int limit = toTest.getLimit();
+      for (int j = 0; j < limit; j++) {
+        toTest.tryAcquire();
+      }
+      final long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1);
+      for (int j = 0; j < limit; j++) {
+        toTest.onSuccess(start);
+      }
+    }
+
+    // Assert
+    assertThat(toTest.getLimit()).isGreaterThan(2).isLessThanOrEqualTo(10);
+    assertThat(toTest.getInProgress()).isZero();
+  }
+
+  @Test
+  @DisplayName("onSuccess should not grow the limit when less than half of it is used")
+  void onSuccess_shouldNotGrowLimit_whenLimitNotUsed() {
+    // Given
+    final AdaptiveConcurrencyLimiter toTest = new AdaptiveConcurrencyLimiter("test", 4, 1, 10, 0.5, 2.0,
+        meterRegistry);
+
+    // Test: one call at a time
+    for (int i = 0; i < 20; i++) {
+      toTest.tryAcquire();
+      toTest.onSuccess(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    // Assert
+    assertThat(toTest.getLimit()).isEqualTo(4);
+  }
+
+  @Test
+  @DisplayName("onDropped should shrink the limit once for the calls in progress together")
+  void onDropped_shouldShrinkLimitOncePerWave() {
+    // Given
+    final AdaptiveConcurrencyLimiter toTest = new AdaptiveConcurrencyLimiter("test", 8, 1, 10, 0.5, 2.0,
+        meterRegistry);
+    final long start = System.nanoTime();
+    for (int i = 0; i < 8; i++) {
+      toTest.tryAcquire();
+    }
+
+    // Test
+    for (int i = 0; i < 8; i++) {
+      toTest.onDropped(start);
+    }
+
+    // Assert
+    assertThat(toTest.getLimit()).isEqualTo(4);
+    assertThat(toTest.getInProgress()).isZero();
+
+    // Test: the next wave shrinks it again, but never under the minimum
+    for (int i = 0; i < 5; i++) {
+      toTest.tryAcquire();
+      toTest.onDropped(System.nanoTime());
+    }
+
+    // Assert
+    assertThat(toTest.getLimit()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("onSuccess should shrink the limit when a call is much slower than usual")
+  void onSuccess_shouldShrinkLimit_whenCallSlowerThanUsual() throws Exception {
+    // Given calls lasting about 1ms
+    final AdaptiveConcurrencyLimiter toTest = new AdaptiveConcurrencyLimiter("test", 8, 1, 10, 0.5, 2.0,
+        meterRegistry);
+    for (int i = 0; i < 5; i++) {
+      toTest.tryAcquire();
+      toTest.onSuccess(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    // Test: a call lasting 50ms
+    toTest.tryAcquire();
+    final long start = System.nanoTime();
+    Thread.sleep(50);
+    toTest.onSuccess(start);
+
+    // Assert
+    assertThat(toTest.getLimit()).isEqualTo(4);
+  }
+
+  @Test
+  @DisplayName("onIgnored should only release the call")
+  void onIgnored_shouldReleaseCallOnly() {
+    // Given
+    final AdaptiveConcurrencyLimiter toTest = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, 0.5, 2.0,
+        meterRegistry);
+    toTest.tryAcquire();
+    toTest.tryAcquire();
+
+    // Test
+    toTest.onIgnored();
+
+    // Assert
+    assertThat(toTest.getLimit()).isEqualTo(2);
+    assertThat(toTest.getInProgress()).isEqualTo(1);
+    assertThat(toTest.tryAcquire()).isTrue();
+  }
+}
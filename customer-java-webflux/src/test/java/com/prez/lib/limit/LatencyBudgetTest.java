@@ -0,0 +1,138 @@
+package com.prez.lib.limit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class LatencyBudgetTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicInteger calls = new AtomicInteger();
+  private final AtomicBoolean cancelled = new AtomicBoolean();
+  private CircuitBreaker circuitBreaker;
+  private LatencyBudget.Operation get;
+  private LatencyBudget.Operation put;
+
+  @BeforeEach
+  void setup() {
+    circuitBreaker = CircuitBreaker.of("redis", CircuitBreakerConfig.custom()
+        .slidingWindowSize(2)
+        .minimumNumberOfCalls(2)
+        .failureRateThreshold(50)
+        .waitDurationInOpenState(Duration.ofMinutes(1))
+        .build());
+    final LatencyBudget toTest =
+        new LatencyBudget("redis", Duration.ofMillis(50), Duration.ofMillis(100), circuitBreaker, meterRegistry);
+    get = toTest.operation("get");
+    put = toTest.operation("put");
+  }
+
+  private <T> Mono<T> stalled() {
+    return Mono.<T>never()
+        .doOnSubscribe(subscription -> calls.incrementAndGet())
+        .doOnCancel(() -> cancelled.set(true));
+  }
+
+  private double count(String operation, String result) {
+    return meterRegistry.get("budget.calls").tag("name", "redis").tag("operation", operation).tag("result", result)
+        .counter().count();
+  }
+
+  @Test
+  @DisplayName("read should emit what the read emitted within the budget")
+  void read_shouldEmitResult_whenWithinBudget() {
+    // Test
+    final String result = get.read(Mono.just("cached")).block();
+
+    // Assert
+    assertThat(result).isEqualTo("cached");
+    assertThat(count("get", "success")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read should cancel the read and be empty once the budget is over")
+  void read_shouldBeEmpty_whenPastBudget() {
+    // Test
+    final String result = get.<String>read(stalled()).block(Duration.ofSeconds(1));
+
+    // Assert
+    assertThat(result).isNull();
+    assertThat(cancelled).isTrue();
+    assertThat(count("get", "timeout")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read should be empty when the read fails")
+  void read_shouldBeEmpty_whenReadFails() {
+    // Test
+    final String result = get.read(Mono.<String>error(new IllegalStateException("Redis down"))).block();
+
+    // Assert
+    assertThat(result).isNull();
+    assertThat(count("get", "error")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read should not even subscribe once the circuit breaker opened after repeated calls past their budget")
+  void read_shouldNotCall_whenCircuitOpen() {
+    // Given two reads past their budget
+    get.read(stalled()).block();
+    get.read(stalled()).block();
+
+    // Test
+    final Object result = get.read(stalled()).block();
+
+    // Assert
+    assertThat(result).isNull();
+    assertThat(calls).hasValue(2);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(count("get", "circuit-open")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("read given up by the caller should be neither a success nor a failure for the circuit breaker")
+  void read_shouldReleasePermission_whenCancelledByCaller() {
+    // Test
+    get.read(stalled()).timeout(Duration.ofMillis(10), Mono.empty()).block();
+
+    // Assert
+    assertThat(cancelled).isTrue();
+    assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls()).isZero();
+  }
+
+  @Test
+  @DisplayName("operation should register the counters of every result once, before any call")
+  void operation_shouldRegisterCounters_beforeAnyCall() {
+    // Test
+    new LatencyBudget("redis", Duration.ofMillis(50), Duration.ofMillis(100), circuitBreaker, meterRegistry)
+        .operation("delete");
+
+    // Assert
+    assertThat(meterRegistry.get("budget.calls").tag("operation", "delete").counters()).hasSize(4);
+    assertThat(count("delete", "timeout")).isZero();
+  }
+
+  @Test
+  @DisplayName("write should tell whether the write was done within the budget")
+  void write_shouldTellWhetherDone_withinBudget() {
+    // Test
+    final Boolean done = put.write(Mono.just(true)).block();
+    final Boolean tooLate = put.write(stalled()).block();
+
+    // Assert
+    assertThat(done).isTrue();
+    assertThat(tooLate).isFalse();
+    assertThat(count("put", "success")).isEqualTo(1);
+    assertThat(count("put", "timeout")).isEqualTo(1);
+  }
+}
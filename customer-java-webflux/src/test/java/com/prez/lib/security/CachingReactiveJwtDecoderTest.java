@@ -0,0 +1,124 @@
+package com.prez.lib.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+class CachingReactiveJwtDecoderTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ReactiveJwtDecoder delegate = mock(ReactiveJwtDecoder.class);
+  private final CachingReactiveJwtDecoder toTest = new CachingReactiveJwtDecoder(delegate, 10, Duration.ofMinutes(10),
+      meterRegistry);
+
+  private static Jwt jwt(Instant expiresAt) {
+    return Jwt.withTokenValue("token")
+        .header("alg", "RS256")
+        .subject("trotro")
+        .issuedAt(Instant.now().minusSeconds(10))
+        .expiresAt(expiresAt)
+        .build();
+  }
+
+  @Test
+  @DisplayName("decode should verify a token only once")
+  void decode_shouldVerifyOnce_whenSameTokenDecodedTwice() {
+    // Given
+    final Jwt expected = jwt(Instant.now().plusSeconds(60));
+    when(delegate.decode("token")).thenReturn(Mono.just(expected));
+
+    // Test
+    final Jwt first = toTest.decode("token").block();
+    final Jwt second = toTest.decode("token").block();
+
+    // Assert
+    assertThat(first).isSameAs(expected);
+    assertThat(second).isSameAs(expected);
+    verify(delegate).decode("token");
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "jwt").tag("result", "hit")
+        .functionCounter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "jwt").tag("result", "miss")
+        .functionCounter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("jwt.verification").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("decode should verify again a token past its expiration")
+  void decode_shouldVerifyAgain_whenTokenExpired() {
+    // Given
+    when(delegate.decode("token")).thenReturn(Mono.just(jwt(Instant.now().minusSeconds(1))));
+
+    // Test
+    toTest.decode("token").block();
+    toTest.decode("token").block();
+
+    // Assert
+    verify(delegate, times(2)).decode("token");
+  }
+
+  @Test
+  @DisplayName("decode should not cache a token failing the verification")
+  void decode_shouldNotCache_whenVerificationFails() {
+    // Given
+    when(delegate.decode("token")).thenReturn(Mono.error(new BadJwtException("bad signature")));
+
+    // Test
+    final Throwable first = catchThrowable(() -> toTest.decode("token").block());
+    final Throwable second = catchThrowable(() -> toTest.decode("token").block());
+
+    // Assert
+    assertThat(first).isInstanceOf(BadJwtException.class);
+    assertThat(second).isInstanceOf(BadJwtException.class);
+    verify(delegate, times(2)).decode("token");
+  }
+
+  @Test
+  @DisplayName("invalidateAll should make the tokens verified again")
+  void invalidateAll_shouldForgetVerifiedTokens() {
+    // Given
+    when(delegate.decode("token")).thenReturn(Mono.just(jwt(Instant.now().plusSeconds(60))));
+    toTest.decode("token").block();
+
+    // Test
+    toTest.invalidateAll();
+    toTest.decode("token").block();
+
+    // Assert
+    verify(delegate, times(2)).decode("token");
+  }
+
+  @Test
+  @DisplayName("decode should not cache a token verified while the keys changed")
+  void decode_shouldNotCache_whenInvalidatedDuringVerification() {
+    // Given the keys changing while the first token is verified
+    final Jwt rotated = jwt(Instant.now().plusSeconds(60));
+    when(delegate.decode("token"))
+        .thenReturn(Mono.fromCallable(() -> {
+          toTest.invalidateAll();
+          return rotated;
+        }))
+        .thenReturn(Mono.just(rotated));
+
+    // Test
+    final Jwt first = toTest.decode("token").block();
+    toTest.decode("token").block();
+
+    // Assert
+    assertThat(first).isSameAs(rotated);
+    verify(delegate, times(2)).decode("token");
+  }
+}
@@ -0,0 +1,107 @@
+package com.prez.lib.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+class RefreshingPublicKeysTest {
+
+  @TempDir
+  Path directory;
+
+  private static PublicKey newPublicKey() throws Exception {
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair().getPublic();
+  }
+
+  private static void writePem(Path file, PublicKey key) throws Exception {
+    Files.writeString(file, "-----BEGIN PUBLIC KEY-----\n"
+        + Base64.getMimeEncoder().encodeToString(key.getEncoded())
+        + "\n-----END PUBLIC KEY-----\n");
+  }
+
+  @Test
+  @DisplayName("selectJWSKeys should return every key for a RS256 token only")
+  void selectJWSKeys_shouldReturnEveryKey_whenRS256() throws Exception {
+    // Given
+    final Path other = directory.resolve("other.pem");
+    writePem(other, newPublicKey());
+    try (RefreshingPublicKeys toTest = new RefreshingPublicKeys(
+        List.of(new ClassPathResource("public.pem"), new FileSystemResource(other)), Duration.ofMinutes(5))) {
+
+      // Test & Assert
+      assertThat(toTest.selectJWSKeys(new JWSHeader(JWSAlgorithm.RS256), null)).hasSize(2);
+      assertThat(toTest.selectJWSKeys(new JWSHeader(JWSAlgorithm.HS256), null)).isEmpty();
+    }
+  }
+
+  @Test
+  @DisplayName("refresh should use the new key and tell the listeners when the file changed")
+  void refresh_shouldUseNewKey_whenFileChanged() throws Exception {
+    // Given
+    final Path pem = directory.resolve("public.pem");
+    writePem(pem, newPublicKey());
+    final AtomicInteger changes = new AtomicInteger();
+    try (RefreshingPublicKeys toTest = new RefreshingPublicKeys(List.of(new FileSystemResource(pem)),
+        Duration.ofMinutes(5))) {
+      toTest.onChange(changes::incrementAndGet);
+      final PublicKey rotated = newPublicKey();
+      writePem(pem, rotated);
+
+      // Test
+      toTest.refresh();
+      toTest.refresh();
+
+      // Assert
+      assertThat(toTest.getKeys()).containsExactly((RSAPublicKey) rotated);
+      assertThat(changes).hasValue(1);
+    }
+  }
+
+  @Test
+  @DisplayName("refresh should keep the previous keys when the file cannot be read")
+  void refresh_shouldKeepPreviousKeys_whenFileUnreadable() throws Exception {
+    // Given
+    final Path pem = directory.resolve("public.pem");
+    writePem(pem, newPublicKey());
+    try (RefreshingPublicKeys toTest = new RefreshingPublicKeys(List.of(new FileSystemResource(pem)),
+        Duration.ofMinutes(5))) {
+      final List<?> previous = toTest.getKeys();
+      Files.writeString(pem, "not a key");
+
+      // Test
+      toTest.refresh();
+
+      // Assert
+      assertThat(toTest.getKeys()).isSameAs(previous);
+    }
+  }
+
+  @Test
+  @DisplayName("constructor should fail when a key cannot be read")
+  void constructor_shouldFail_whenKeyMissing() {
+    // Test
+    final Throwable thrown = catchThrowable(() -> new RefreshingPublicKeys(
+        List.of(new FileSystemResource(directory.resolve("missing.pem"))), Duration.ofMinutes(5)));
+
+    // Assert
+    assertThat(thrown).isInstanceOf(IllegalStateException.class);
+  }
+}
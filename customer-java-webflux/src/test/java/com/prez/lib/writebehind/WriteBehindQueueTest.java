@@ -0,0 +1,158 @@
+package com.prez.lib.writebehind;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.prez.cache.CustomerCacheRepository;
+import com.prez.config.CacheConfig;
+import com.prez.model.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class WriteBehindQueueTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final List<List<String>> batches = new ArrayList<>();
+  private final List<Sinks.One<Boolean>> writes = new ArrayList<>();
+
+  // values are "key:version", the writer completes only when told to
+  private WriteBehindQueue<String, String> queue(int capacity) {
+    return new WriteBehindQueue<>("test", capacity, 10, value -> value.split(":")[0], batch -> {
+      batches.add(batch);
+      final Sinks.One<Boolean> write = Sinks.one();
+      writes.add(write);
+      return write.asMono();
+    }, meterRegistry);
+  }
+
+  private double count(String result) {
+    return meterRegistry.get("write-behind.offers").tag("name", "test").tag("result", result).counter().count();
+  }
+
+  @Test
+  @DisplayName("offer should write the value right away when no write is in flight")
+  void offer_should_write_the_value_right_away_when_no_write_is_in_flight() {
+    // Given
+    final WriteBehindQueue<String, String> toTest = queue(10);
+
+    // Test
+    final boolean queued = toTest.offer("a:1");
+    writes.get(0).tryEmitValue(true);
+
+    // Assert
+    assertThat(queued).isTrue();
+    assertThat(batches).containsExactly(List.of("a:1"));
+    assertThat(count("queued")).isEqualTo(1.0);
+    assertThat(count("written")).isEqualTo(1.0);
+    assertThat(meterRegistry.get("write-behind.size").tag("name", "test").gauge().value()).isZero();
+  }
+
+  @Test
+  @DisplayName("offer should only keep the last value of a key while a write is in flight, and write them at once")
+  void offer_should_coalesce_values_of_the_same_key_while_a_write_is_in_flight() {
+    // Given a write in flight
+    final WriteBehindQueue<String, String> toTest = queue(10);
+    toTest.offer("a:1");
+
+    // Test
+    toTest.offer("a:2");
+    toTest.offer("b:1");
+    toTest.offer("a:3");
+    writes.get(0).tryEmitValue(true);
+    writes.get(1).tryEmitValue(true);
+
+    // Assert
+    assertThat(batches).hasSize(2);
+    assertThat(batches.get(0)).containsExactly("a:1");
+    assertThat(batches.get(1)).containsExactlyInAnyOrder("a:3", "b:1");
+    assertThat(count("coalesced")).isEqualTo(1.0);
+    assertThat(count("written")).isEqualTo(3.0);
+  }
+
+  @Test
+  @DisplayName("offer should drop the value of a new key when the queue is full")
+  void offer_should_drop_the_value_of_a_new_key_when_the_queue_is_full() {
+    // Given a write in flight and a full queue
+    final WriteBehindQueue<String, String> toTest = queue(2);
+    toTest.offer("a:1");
+    toTest.offer("b:1");
+    toTest.offer("c:1");
+
+    // Test
+    final boolean dropped = !toTest.offer("d:1");
+    final boolean coalesced = toTest.offer("c:2");
+
+    // Assert
+    assertThat(dropped).isTrue();
+    assertThat(coalesced).isTrue();
+    assertThat(count("dropped")).isEqualTo(1.0);
+    assertThat(meterRegistry.get("write-behind.size").tag("name", "test").gauge().value()).isEqualTo(2.0);
+  }
+
+  @Test
+  @DisplayName("offer should count the failed writes and keep on writing the next values")
+  void offer_should_count_failed_writes_and_keep_on_writing() {
+    // Given a write in flight
+    final WriteBehindQueue<String, String> toTest = queue(10);
+    toTest.offer("a:1");
+    toTest.offer("b:1");
+
+    // Test
+    writes.get(0).tryEmitError(new IllegalStateException("Redis down"));
+    writes.get(1).tryEmitValue(true);
+
+    // Assert
+    assertThat(batches).containsExactly(List.of("a:1"), List.of("b:1"));
+    assertThat(count("failed")).isEqualTo(1.0);
+    assertThat(count("written")).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("offer should count as failed a write throwing right away")
+  void offer_should_count_as_failed_a_write_throwing_right_away() {
+    // Given
+    final WriteBehindQueue<String, String> toTest = new WriteBehindQueue<>("test", 10, 10, value -> value,
+        batch -> {
+          throw new IllegalStateException("Redis down");
+        }, meterRegistry);
+
+    // Test
+    toTest.offer("a");
+    toTest.offer("b");
+
+    // Assert
+    assertThat(count("failed")).isEqualTo(2.0);
+  }
+
+  @Test
+  @DisplayName("customerCacheWriteBehind should drop the customers past capacity while saveAll is in flight")
+  void customerCacheWriteBehind_should_drop_customers_past_capacity_while_save_all_is_in_flight() {
+    // Given a capacity of 1 and a saveAll never completing
+    final CustomerCacheRepository customerCache = mock(CustomerCacheRepository.class);
+    when(customerCache.saveAll(any())).thenReturn(Mono.never());
+    final WriteBehindQueue<String, Customer> toTest =
+        new CacheConfig().customerCacheWriteBehind(customerCache, 1, 100, meterRegistry);
+    final Customer jack = Customer.builder().customerId("123").firstName("Jack").build();
+
+    // Test
+    final boolean written = toTest.offer(jack);
+    final boolean queued = toTest.offer(Customer.builder().customerId("456").firstName("Jill").build());
+    final boolean dropped = !toTest.offer(Customer.builder().customerId("789").firstName("Joe").build());
+
+    // Assert
+    assertThat(written).isTrue();
+    assertThat(queued).isTrue();
+    assertThat(dropped).isTrue();
+    verify(customerCache).saveAll(List.of(jack));
+    assertThat(meterRegistry.get("write-behind.offers").tag("name", "customer").tag("result", "dropped").counter()
+        .count()).isEqualTo(1.0);
+  }
+}
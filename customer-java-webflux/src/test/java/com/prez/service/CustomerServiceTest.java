@@ -6,30 +6,55 @@ import static com.prez.model.SeatPreference.NEAR_WINDOW;
 import static java.util.Locale.ENGLISH;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 
+import com.prez.cache.CustomerCacheEntry;
 import com.prez.cache.CustomerCacheRepository;
+import com.prez.cache.CustomerLocalCache;
+import com.prez.cache.CustomerNotFoundCache;
+import com.prez.cache.CustomerRefreshLease;
+import com.prez.cache.CustomerRefreshLeaseProperties;
 import com.prez.db.CustomerPreferencesRepository;
 import com.prez.exception.NotFoundException;
+import com.prez.lib.coalescing.RequestCoalescer;
+import com.prez.lib.limit.LatencyBudget;
+import com.prez.lib.writebehind.WriteBehindQueue;
 import com.prez.model.Customer;
+import com.prez.model.CustomerBatch;
 import com.prez.model.CustomerPreferences;
 import com.prez.model.LoyaltyProgram;
-import com.prez.ws.CustomerWSClient;
+import com.prez.ws.CustomerClient;
+import com.prez.ws.WebServiceException;
 import com.prez.ws.model.Email;
 import com.prez.ws.model.GetCustomerWSResponse;
 import com.prez.ws.model.PersonalDetails;
 import com.prez.ws.model.PersonalInformation;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
@@ -41,15 +66,31 @@ class CustomerServiceTest {
   @Mock
   private CustomerCacheRepository customerCacheRepository;
 
+  @Mock
+  private CustomerLocalCache customerLocalCache;
+
+  @Mock
+  private CustomerNotFoundCache customerNotFoundCache;
+
+  @Mock
+  private WriteBehindQueue<String, Customer> customerCacheWriteBehind;
+
   @Mock
   private CustomerPreferencesRepository customerPreferencesRepository;
 
   @Mock
-  private CustomerWSClient customerWSClient;
+  private CustomerClient customerWSClient;
   @Mock
   private CustomerWSResponseToCustomerMapper mapper;
 
-  @InjectMocks
+  private final RequestCoalescer<Customer> customerRequestCoalescer =
+      new RequestCoalescer<>(Counter.builder("customer.webservice.coalesced").register(new SimpleMeterRegistry()));
+
+  // disabled: every lease is acquired
+  private final CustomerRefreshLease refreshLease = spy(new CustomerRefreshLease(new CustomerRefreshLeaseProperties(),
+      null, new LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1), CircuitBreaker.ofDefaults("redis"),
+      new SimpleMeterRegistry()), new SimpleMeterRegistry()));
+
   private CustomerService toTest;
 
   @BeforeEach
@@ -57,13 +98,18 @@ class CustomerServiceTest {
     reset(customerCacheRepository);
     reset(customerPreferencesRepository);
     reset(customerWSClient);
+    // by default, no customer is known as not found
+    lenient().when(customerNotFoundCache.isNotFound(anyString())).thenReturn(Mono.just(false));
+    lenient().when(customerNotFoundCache.putNotFound(anyString())).thenReturn(Mono.just(true));
+    toTest = new CustomerService(customerWSClient, customerCacheRepository, customerLocalCache, customerNotFoundCache,
+        mapper, customerPreferencesRepository, customerRequestCoalescer, customerCacheWriteBehind, refreshLease, 2);
   }
 
   @Test
   @DisplayName("getCustomerInfo should throw not found exception when customer does not exist")
   void shouldReturnEmpty_whenCustomerDoesNotExists() {
     // Given the customer 123456789 cannot be found
-    when(customerCacheRepository.findById("123456789")).thenReturn(Mono.empty());
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty());
     when(customerWSClient.getCustomer("123456789")).thenReturn(Mono.empty());
 
     // When
@@ -75,6 +121,39 @@ class CustomerServiceTest {
     assertThat(thrown.getLocalizedMessage()).isEqualTo("No result for the given customer id=123456789");
   }
 
+  @Test
+  @DisplayName("getCustomerInfo should remember the customer as not found when the customer web service does not find it")
+  void shouldRememberNotFound_whenCustomerWebServiceDoesNotFindCustomer() {
+    // Given the customer 123456789 cannot be found
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty());
+    when(customerWSClient.getCustomer("123456789")).thenReturn(Mono.empty());
+
+    // When
+    final NotFoundException thrown = catchThrowableOfType(() -> toTest.getCustomerInfo("123456789").block(),
+        NotFoundException.class);
+
+    // Then
+    assertThat(thrown).isNotNull();
+    verify(customerNotFoundCache).putNotFound("123456789");
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should not call Customer web service when customer known as not found")
+  void shouldThrowNotFoundWithoutCallingWebService_whenCustomerKnownAsNotFound() {
+    // Given the customer web service did not find the customer 123456789 lately
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty());
+    when(customerNotFoundCache.isNotFound("123456789")).thenReturn(Mono.just(true));
+
+    // When
+    final NotFoundException thrown = catchThrowableOfType(() -> toTest.getCustomerInfo("123456789").block(),
+        NotFoundException.class);
+
+    // Then
+    assertThat(thrown).isNotNull();
+    verify(customerWSClient, never()).getCustomer("123456789");
+    verify(customerNotFoundCache, never()).putNotFound("123456789");
+  }
+
   @Test
   @DisplayName("getCustomerInfo should not call Customer web service when customer found in cache")
   void shouldReturnCachedCustomer_whenCustomerFoundInCache() {
@@ -93,14 +172,142 @@ class CustomerServiceTest {
             .validityEndDate(LocalDate.MAX)
             .build())
         .build();
-    when(customerCacheRepository.findById("123456789")).thenReturn(Mono.just(expected));
+    when(customerCacheRepository.findEntryById("123456789"))
+        .thenReturn(Mono.just(new CustomerCacheEntry(expected, false)));
 
     // When I get the customer 123456789
     final Customer customer = toTest.getCustomerInfo("123456789").block();
 
     // Then
     assertThat(customer).isEqualTo(expected);
-    verify(customerCacheRepository).findById("123456789");
+    verify(customerCacheRepository).findEntryById("123456789");
+    verify(customerWSClient, never()).getCustomer("123456789");
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should return stale customer from cache and refresh it in background")
+  void shouldReturnStaleCachedCustomerAndRefreshIt_whenCustomerStaleInCache() {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    final Customer stale = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.just(new CustomerCacheEntry(stale, true)));
+    // and the WS knows a fresher one
+    final GetCustomerWSResponse getCustomerWSResponse = GetCustomerWSResponse.builder()
+        .id("123456789")
+        .personalInformation(PersonalInformation.builder().firstName("Jack").lastName("Bower").build())
+        .personalDetails(PersonalDetails.builder().email(Email.builder().address("jb@boom.com").build()).build())
+        .build();
+    when(customerWSClient.getCustomer("123456789")).thenReturn(Mono.just(getCustomerWSResponse));
+    final Customer refreshed = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bower")
+        .email("jb@boom.com")
+        .build();
+    when(mapper.toCustomer(getCustomerWSResponse)).thenReturn(refreshed);
+
+    // When I get the customer 123456789
+    final Customer customer = toTest.getCustomerInfo("123456789").block();
+
+    // Then the stale customer is served and the cache is refreshed
+    assertThat(customer).isEqualTo(stale);
+    verify(customerWSClient, timeout(1000)).getCustomer("123456789");
+    verify(customerCacheWriteBehind, timeout(1000)).offer(refreshed);
+    verify(customerLocalCache, timeout(1000)).put(refreshed);
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should not refresh a stale customer another instance is refreshing")
+  void shouldReturnStaleCachedCustomerWithoutRefreshingIt_whenRefreshLeaseHeldElsewhere() {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    final Customer stale = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.just(new CustomerCacheEntry(stale, true)));
+    // and another instance holds its refresh lease
+    doReturn(Mono.just(mock(CustomerRefreshLease.Lease.class))).when(refreshLease).tryAcquire("123456789");
+
+    // When I get the customer 123456789
+    final Customer customer = toTest.getCustomerInfo("123456789").block();
+
+    // Then the stale customer is served, and not refreshed
+    assertThat(customer).isEqualTo(stale);
+    verify(refreshLease, timeout(1000)).tryAcquire("123456789");
+    verify(customerWSClient, never()).getCustomer("123456789");
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should serve the customer saved by the instance holding its refresh lease")
+  void shouldReturnCustomerRefreshedElsewhere_whenRefreshLeaseHeldElsewhere() {
+    // Given another instance holds the refresh lease of the customer 123456789, missing from the cache
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty());
+    final CustomerRefreshLease.Lease contended = mock(CustomerRefreshLease.Lease.class);
+    doReturn(Mono.just(contended)).when(refreshLease).tryAcquire("123456789");
+    // and saves it meanwhile
+    final Customer refreshed = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    doReturn(Mono.just(refreshed)).when(refreshLease).awaitRefreshed(eq("123456789"), any());
+
+    // When I get the customer 123456789
+    final Customer customer = toTest.getCustomerInfo("123456789").block();
+
+    // Then
+    assertThat(customer).isEqualTo(refreshed);
+    verify(customerWSClient, never()).getCustomer("123456789");
+    verify(customerLocalCache).put(refreshed);
+    verify(contended, never()).release();
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should release the refresh lease when the customer web service does not find the customer")
+  void shouldReleaseRefreshLease_whenCustomerWebServiceDoesNotFindCustomer() {
+    // Given the refresh lease of the customer 123456789, missing from the cache, is acquired
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty());
+    final CustomerRefreshLease.Lease lease = mock(CustomerRefreshLease.Lease.class);
+    when(lease.isAcquired()).thenReturn(true);
+    when(lease.release()).thenReturn(Mono.empty());
+    doReturn(Mono.just(lease)).when(refreshLease).tryAcquire("123456789");
+    // and the customer web service cannot find it
+    when(customerWSClient.getCustomer("123456789")).thenReturn(Mono.empty());
+
+    // When
+    final Throwable thrown = catchThrowableOfType(() -> toTest.getCustomerInfo("123456789").block(),
+        NotFoundException.class);
+
+    // Then the instances waiting for the customer stop waiting
+    assertThat(thrown).isNotNull();
+    verify(lease).release();
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should neither call Redis nor Customer web service when customer found in local cache")
+  void shouldReturnLocallyCachedCustomer_whenCustomerFoundInLocalCache() {
+    // Given the local cache does found the customer 123456789
+    final Customer expected = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bauer")
+        .email("jb@boom.com")
+        .build();
+    when(customerLocalCache.getIfPresent("123456789")).thenReturn(expected);
+
+    // When I get the customer 123456789
+    final Customer customer = toTest.getCustomerInfo("123456789").block();
+
+    // Then
+    assertThat(customer).isEqualTo(expected);
+    verify(customerCacheRepository, never()).findEntryById("123456789");
     verify(customerWSClient, never()).getCustomer("123456789");
   }
 
@@ -108,7 +315,7 @@ class CustomerServiceTest {
   @DisplayName("getCustomerInfo should return customer from web service when customer not found in cache")
   void shouldCallCustomerWebService_whenCustomerNotInCache() {
     //Given the repository does not found the account 123456789
-    when(customerCacheRepository.findById("123456789")).thenReturn(Mono.empty());
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty());
     // The WS is called
     final GetCustomerWSResponse getCustomerWSResponse = GetCustomerWSResponse.builder()
         .id("123456789")
@@ -124,17 +331,131 @@ class CustomerServiceTest {
         .email("jb@boom.com")
         .build();
     when(mapper.toCustomer(getCustomerWSResponse)).thenReturn(expected);
-    // and everything is saved
-    when(customerCacheRepository.save(expected)).thenReturn(Mono.just(true));
 
     // Test
     final Customer customer = toTest.getCustomerInfo("123456789").block();
 
     // Assert
     assertThat(customer).isEqualTo(expected);
-    verify(customerCacheRepository).findById("123456789");
+    verify(customerCacheRepository).findEntryById("123456789");
     verify(customerWSClient).getCustomer("123456789");
-    verify(customerCacheRepository).save(expected);
+    // saved in Redis behind the response
+    verify(customerCacheWriteBehind).offer(expected);
+    verify(customerCacheRepository, never()).save(any());
+    verify(customerLocalCache).put(expected);
+  }
+
+  @Test
+  @DisplayName("getCustomerInfo should share a single web service call between concurrent cache misses")
+  void shouldCallCustomerWebServiceOnce_whenConcurrentCacheMisses() {
+    //Given the repository does not found the account 123456789
+    when(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty());
+    // The WS is slow to answer
+    final GetCustomerWSResponse getCustomerWSResponse = GetCustomerWSResponse.builder()
+        .id("123456789")
+        .personalInformation(PersonalInformation.builder().firstName("Jack").lastName("Bower").build())
+        .build();
+    when(customerWSClient.getCustomer("123456789"))
+        .thenReturn(Mono.just(getCustomerWSResponse).delayElement(Duration.ofMillis(100)));
+    final Customer expected = Customer.builder()
+        .customerId("123456789")
+        .firstName("Jack")
+        .lastName("Bower")
+        .build();
+    when(mapper.toCustomer(getCustomerWSResponse)).thenReturn(expected);
+
+    // Test
+    final List<Customer> customers =
+        Flux.merge(toTest.getCustomerInfo("123456789"), toTest.getCustomerInfo("123456789")).collectList().block();
+
+    // Assert
+    assertThat(customers).containsExactly(expected, expected);
+    verify(customerWSClient).getCustomer("123456789");
+    verify(customerCacheWriteBehind).offer(expected);
+  }
+
+  @Test
+  @DisplayName("getCustomersInfo should look in Redis at once and only call Customer web service for the misses")
+  void shouldCallCustomerWebServiceForMissesOnly_whenBatchOfCustomers() {
+    // Given trotro in the local cache, ane in Redis
+    final Customer trotro = Customer.builder().customerId("trotro").lastName("Trotro").build();
+    final Customer ane = Customer.builder().customerId("ane").lastName("Ane").build();
+    when(customerLocalCache.getIfPresent(anyString()))
+        .thenAnswer(invocation -> "trotro".equals(invocation.getArgument(0)) ? trotro : null);
+    when(customerCacheRepository.findAllByIds(List.of("ane", "rigolo", "boum", "crash")))
+        .thenReturn(Mono.just(Map.of("ane", ane)));
+    // rigolo known by the WS, boum unknown and crash failing
+    final GetCustomerWSResponse rigoloResponse = GetCustomerWSResponse.builder().id("rigolo").build();
+    final Customer rigolo = Customer.builder().customerId("rigolo").lastName("Rigolo").build();
+    when(customerWSClient.getCustomer("rigolo")).thenReturn(Mono.just(rigoloResponse));
+    when(mapper.toCustomer(rigoloResponse)).thenReturn(rigolo);
+    when(customerWSClient.getCustomer("boum")).thenReturn(Mono.empty());
+    when(customerWSClient.getCustomer("crash"))
+        .thenReturn(Mono.error(new WebServiceException("CustomerWebService", INTERNAL_SERVER_ERROR, "crashed")));
+
+    // Test
+    final CustomerBatch batch =
+        toTest.getCustomersInfo(List.of("trotro", "ane", "rigolo", "boum", "crash", "ane")).block();
+
+    // Assert
+    assertThat(batch).isNotNull();
+    assertThat(batch.getCustomers()).containsExactly(trotro, ane, rigolo);
+    assertThat(batch.getNotFound()).containsExactly("boum");
+    assertThat(batch.getFailed()).containsExactly("crash");
+    verify(customerCacheRepository).findAllByIds(List.of("ane", "rigolo", "boum", "crash"));
+    verify(customerWSClient, never()).getCustomer("trotro");
+    verify(customerWSClient, never()).getCustomer("ane");
+    verify(customerCacheWriteBehind).offer(rigolo);
+    verify(customerCacheWriteBehind, never()).offer(ane);
+    verify(customerLocalCache).put(ane);
+    verify(customerLocalCache).put(rigolo);
+  }
+
+  @Test
+  @DisplayName("getCustomersInfo should neither call Redis nor Customer web service when all customers in local cache")
+  void shouldNotCallRedis_whenBatchOfCustomersInLocalCache() {
+    // Given
+    final Customer trotro = Customer.builder().customerId("trotro").lastName("Trotro").build();
+    when(customerLocalCache.getIfPresent("trotro")).thenReturn(trotro);
+
+    // Test
+    final CustomerBatch batch = toTest.getCustomersInfo(List.of("trotro")).block();
+
+    // Assert
+    assertThat(batch).isNotNull();
+    assertThat(batch.getCustomers()).containsExactly(trotro);
+    assertThat(batch.getNotFound()).isEmpty();
+    assertThat(batch.getFailed()).isEmpty();
+    verify(customerCacheRepository, never()).findAllByIds(any());
+    verify(customerWSClient, never()).getCustomer(anyString());
+  }
+
+  @Test
+  @DisplayName("getCustomersInfo should not have more Customer web service calls in flight than the batch concurrency")
+  void shouldBoundCustomerWebServiceCalls_whenBatchOfCustomers() {
+    // Given 6 customers which are nowhere in cache, and a slow WS
+    final List<String> customerIds = List.of("c1", "c2", "c3", "c4", "c5", "c6");
+    when(customerCacheRepository.findAllByIds(customerIds)).thenReturn(Mono.just(Map.of()));
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    when(customerWSClient.getCustomer(anyString())).thenAnswer(invocation -> {
+      final GetCustomerWSResponse response = GetCustomerWSResponse.builder().id(invocation.getArgument(0)).build();
+      return Mono.delay(Duration.ofMillis(20))
+          .doOnSubscribe(subscription -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+          .thenReturn(response)
+          .doOnTerminate(inFlight::decrementAndGet);
+    });
+    when(mapper.toCustomer(any())).thenAnswer(invocation ->
+        Customer.builder().customerId(invocation.<GetCustomerWSResponse>getArgument(0).getId()).build());
+
+    // Test
+    final CustomerBatch batch = toTest.getCustomersInfo(customerIds).block();
+
+    // Assert
+    assertThat(batch).isNotNull();
+    assertThat(batch.getCustomers()).extracting(Customer::getCustomerId).containsExactlyElementsOf(customerIds);
+    assertThat(maxInFlight.get()).isEqualTo(2);
+    verify(customerCacheWriteBehind, times(6)).offer(any());
   }
 
   @Test
@@ -29,8 +29,11 @@ import com.prez.ws.model.Record;
 import com.prez.ws.model.Service;
 import com.prez.ws.model.Services;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class CustomerWSResponseToGetCustomerMapperTest {
 
@@ -2500,4 +2503,22 @@ class CustomerWSResponseToGetCustomerMapperTest {
             ))
             .build());
   }
-}
\ No newline at end of file
+
+  @ParameterizedTest
+  @ValueSource(strings = {"2019-11-10", "2020-02-29", "0000-01-01", "+10000-01-01", "-0001-12-31", "2019-02-29",
+      "2019-13-01", "2019-00-10", "2019-11-31", "2019-11-1", "2019/11/10", "20191110", "2019-11-10T00:00", "+2019-11-10",
+      "10000-01-01", "2019-1a-10", "", " 2019-11-10"})
+  @DisplayName("parseDateOrNull should parse as LocalDate.parse does, null instead of an exception")
+  void parseDateOrNull_should_parse_as_LocalDate(String date) {
+    // Prepare
+    LocalDate expected;
+    try {
+      expected = LocalDate.parse(date);
+    } catch (DateTimeParseException e) {
+      expected = null;
+    }
+
+    // Test && Assert
+    assertThat(CustomerWSResponseToCustomerMapper.parseDateOrNull(date)).isEqualTo(expected);
+  }
+}
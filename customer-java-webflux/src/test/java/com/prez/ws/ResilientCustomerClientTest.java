@@ -0,0 +1,229 @@
+package com.prez.ws;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter;
+import com.prez.ws.model.GetCustomerWSResponse;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class ResilientCustomerClientTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+  private MeterRegistry meterRegistry;
+  private CustomerWSResilienceProperties properties;
+  private CircuitBreaker circuitBreaker;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    properties = new CustomerWSResilienceProperties();
+    properties.setDeadline(Duration.ofSeconds(1));
+    circuitBreaker = CircuitBreaker.of("customerWS", CircuitBreakerConfig.custom()
+        .slidingWindowSize(2)
+        .minimumNumberOfCalls(2)
+        .failureRateThreshold(50)
+        .waitDurationInOpenState(Duration.ofMinutes(1))
+        .recordException(ResilientCustomerClient::isFailure)
+        .build());
+  }
+
+  private ResilientCustomerClient createClient(CustomerClient delegate) {
+    return new ResilientCustomerClient(delegate, circuitBreaker, properties, meterRegistry);
+  }
+
+  private Mono<GetCustomerWSResponse> found(String customerId) {
+    return Mono.fromSupplier(() -> {
+      calls.incrementAndGet();
+      return GetCustomerWSResponse.builder().id(customerId).build();
+    });
+  }
+
+  private Mono<GetCustomerWSResponse> never(String customerId) {
+    return Mono.defer(() -> {
+      calls.incrementAndGet();
+      return Mono.never();
+    });
+  }
+
+  @Test
+  @DisplayName("getCustomer should return the delegate response")
+  void getCustomer_shouldReturnDelegateResponse() {
+    // Given
+    final ResilientCustomerClient toTest = createClient(this::found);
+
+    // Test
+    final GetCustomerWSResponse response = toTest.getCustomer("123456789").block();
+
+    // Assert
+    assertThat(response).extracting(GetCustomerWSResponse::getId).isEqualTo("123456789");
+    assertThat(circuitBreaker.getMetrics().getNumberOfSuccessfulCalls()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("getCustomer should return empty when the customer is not found, as a successful call")
+  void getCustomer_shouldReturnEmpty_whenNotFound() {
+    // Given
+    final ResilientCustomerClient toTest = createClient(customerId -> Mono.empty());
+
+    // Test
+    final GetCustomerWSResponse response = toTest.getCustomer("123456789").block();
+
+    // Assert
+    assertThat(response).isNull();
+    assertThat(circuitBreaker.getMetrics().getNumberOfSuccessfulCalls()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("getCustomer should not call the customer web service once the circuit breaker is open")
+  void getCustomer_shouldReturnServiceUnavailable_whenCircuitBreakerOpen() {
+    // Given the customer web service fails
+    final ResilientCustomerClient toTest = createClient(customerId -> Mono.defer(() -> {
+      calls.incrementAndGet();
+      return Mono.error(new WebServiceException("GET CustomerWS", INTERNAL_SERVER_ERROR, "boom"));
+    }));
+    catchThrowable(() -> toTest.getCustomer("123456789").block());
+    catchThrowable(() -> toTest.getCustomer("123456789").block());
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("123456789").block());
+
+    // Assert
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException.class, e -> {
+      assertThat(e.getHttpStatusCode()).isEqualTo(SERVICE_UNAVAILABLE);
+      assertThat(e.getError().getError()).isEqualTo("CUSTOMER_WS_CIRCUIT_OPEN");
+    });
+    assertThat(calls).hasValue(2);
+  }
+
+  @Test
+  @DisplayName("getCustomer should not count the calls refused by the limit as failures")
+  void getCustomer_shouldReleasePermission_whenLimitReached() {
+    // Given a limit of a single call, taken
+    final AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("customer-ws", 1, 1, 1, 0.9, 2.0, meterRegistry);
+    limiter.tryAcquire();
+    final ResilientCustomerClient toTest = createClient(new LimitedCustomerClient(this::found, limiter));
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("123456789").block());
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException.class,
+        e -> assertThat(e.getError().getError()).isEqualTo("CUSTOMER_WS_LIMIT_REACHED"));
+    assertThat(calls).hasValue(0);
+    assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls()).isZero();
+  }
+
+  @Test
+  @DisplayName("getCustomer should cancel the call past the deadline and count it as a failure")
+  void getCustomer_shouldReturnGatewayTimeout_whenPastDeadline() {
+    // Given
+    properties.setDeadline(Duration.ofMillis(50));
+    final ResilientCustomerClient toTest = createClient(this::never);
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("123456789").block());
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException.class,
+        e -> assertThat(e.getHttpStatusCode()).isEqualTo(GATEWAY_TIMEOUT));
+    assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("getCustomer should call the customer web service again when the first call is slower than usual")
+  void getCustomer_shouldReturnHedgedResponse_whenFirstCallTooSlow() {
+    // Given the latencies are known
+    properties.getHedging().setEnabled(true);
+    properties.getHedging().setPercentile(0.5);
+    properties.getHedging().setMinDelay(Duration.ofMillis(20));
+    final ResilientCustomerClient toTest = createClient(customerId -> calls.get() == 1
+        // the first call after the warm-up one hangs
+        ? never(customerId)
+        : found(customerId).delayElement(Duration.ofMillis(5)));
+    toTest.getCustomer("123456789").block();
+
+    // Test
+    final GetCustomerWSResponse response = toTest.getCustomer("123456789").block();
+
+    // Assert
+    assertThat(response).extracting(GetCustomerWSResponse::getId).isEqualTo("123456789");
+    assertThat(calls).hasValue(3);
+    assertThat(meterRegistry.get("customer.webservice.hedged").counter().count()).isEqualTo(1);
+  }
+
+
+  @Test
+  @DisplayName("getCustomer should not call the customer web service again when the first call fails before the delay")
+  void getCustomer_shouldNotHedge_whenFirstCallFailsFast() throws InterruptedException {
+    // Given the latencies are known
+    properties.getHedging().setEnabled(true);
+    properties.getHedging().setPercentile(0.5);
+    properties.getHedging().setMinDelay(Duration.ofMillis(20));
+    final ResilientCustomerClient toTest = createClient(customerId -> calls.get() == 1
+        // the first call after the warm-up one fails right away
+        ? Mono.defer(() -> {
+          calls.incrementAndGet();
+          return Mono.error(new WebServiceException("GET CustomerWS", INTERNAL_SERVER_ERROR, "boom"));
+        })
+        : found(customerId).delayElement(Duration.ofMillis(5)));
+    toTest.getCustomer("123456789").block();
+
+    // Test
+    final Throwable thrown = catchThrowable(() -> toTest.getCustomer("123456789").block());
+    Thread.sleep(50);
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException.class,
+        e -> assertThat(e.getHttpStatusCode()).isEqualTo(INTERNAL_SERVER_ERROR));
+    assertThat(calls).hasValue(2);
+    assertThat(meterRegistry.get("customer.webservice.hedged").counter().count()).isZero();
+  }
+
+  @Test
+  @DisplayName("getCustomer should shrink the limit when the deadline cancels a slow call")
+  void getCustomer_shouldShrinkLimit_whenPastDeadline() {
+    // Given
+    properties.setDeadline(Duration.ofMillis(50));
+    final AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("customer-ws", 10, 1, 20, 0.9, 2.0, meterRegistry);
+    final ResilientCustomerClient toTest = createClient(new LimitedCustomerClient(this::never, limiter));
+
+    // Test
+    catchThrowable(() -> toTest.getCustomer("123456789").block());
+
+    // Assert
+    assertThat(limiter.getLimit()).isEqualTo(9);
+    assertThat(limiter.getInProgress()).isZero();
+  }
+
+  @Test
+  @DisplayName("getCustomer should leave the limit as is when the caller cancels the call before the deadline")
+  void getCustomer_shouldKeepLimit_whenCancelledBeforeDeadline() {
+    // Given
+    final AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter("customer-ws", 10, 1, 20, 0.9, 2.0, meterRegistry);
+    final ResilientCustomerClient toTest = createClient(new LimitedCustomerClient(this::never, limiter));
+
+    // Test
+    toTest.getCustomer("123456789").timeout(Duration.ofMillis(10), Mono.empty()).block();
+
+    // Assert
+    assertThat(limiter.getLimit()).isEqualTo(10);
+    assertThat(limiter.getInProgress()).isZero();
+  }
+}
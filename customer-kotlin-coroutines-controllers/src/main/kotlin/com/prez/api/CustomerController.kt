@@ -4,8 +4,11 @@ import brave.SpanCustomizer
 import com.prez.api.dto.CreateCustomerPreferencesRequest
 import com.prez.api.dto.CustomerPreferencesProfileResponse
 import com.prez.api.dto.CustomerResponse
+import com.prez.api.dto.CustomersBatchRequest
+import com.prez.api.dto.CustomersBatchResponse
 import com.prez.extension.toCustomerPreferencesProfileResponse
 import com.prez.extension.toCustomerResponse
+import com.prez.extension.toCustomersBatchResponse
 import com.prez.model.CustomerPreferences
 import com.prez.service.CustomerService
 import kotlinx.coroutines.FlowPreview
@@ -37,6 +40,17 @@ class CustomerController(private val customerService: CustomerService, private v
     return ResponseEntity.ok(customer.toCustomerResponse())
   }
 
+  /**
+   * Customers asked by a back-office service, not by the customers themselves.
+   */
+  @PostMapping(produces = ["application/json"], value = ["/batch"])
+  @ResponseBody
+  suspend fun getCustomersBatch(@RequestBody @Validated validBody: CustomersBatchRequest): CustomersBatchResponse {
+    spanCustomizer.tag("service", "POST /customers/batch")
+    LOGGER.info("Getting {} customers", validBody.customerIds.size)
+    return customerService.getCustomersInfo(validBody.customerIds).toCustomersBatchResponse()
+  }
+
   @PostMapping(produces = ["application/json"], value = ["/preferences"])
   @ResponseStatus(HttpStatus.CREATED)
   @ResponseBody
@@ -53,8 +67,13 @@ class CustomerController(private val customerService: CustomerService, private v
     return saved.toCustomerPreferencesProfileResponse()
   }
 
+  /**
+   * Streamed when application/x-ndjson or text/event-stream is accepted: each preference is written and flushed as
+   * soon as read from Mongo, the next ones being requested as the client reads them. A JSON array is only written
+   * once whole.
+   */
   @FlowPreview
-  @GetMapping(produces = ["application/json"], path = ["/preferences"])
+  @GetMapping(produces = ["application/json", "application/x-ndjson", "text/event-stream"], path = ["/preferences"])
   @ResponseBody
   fun getCustomerPreferences(principal: Principal): Flow<CustomerPreferencesProfileResponse> {
     spanCustomizer.tag("service", "GET /customers/preferences")
@@ -0,0 +1,17 @@
+package com.prez.api.dto
+
+import java.io.Serializable
+import javax.validation.constraints.NotBlank
+import javax.validation.constraints.NotEmpty
+import javax.validation.constraints.Size
+
+data class CustomersBatchRequest(
+    @field:NotEmpty(message = "{NotEmpty.customerIds}")
+    @field:Size(max = MAX_CUSTOMER_IDS, message = "{Size.customerIds}")
+    val customerIds: List<@NotBlank(message = "{NotBlank.customerId}") String> = emptyList()
+) : Serializable {
+
+  companion object {
+    const val MAX_CUSTOMER_IDS = 100
+  }
+}
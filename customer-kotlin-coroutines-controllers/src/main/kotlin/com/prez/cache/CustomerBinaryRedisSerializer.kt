@@ -0,0 +1,142 @@
+package com.prez.cache
+
+import com.prez.model.Customer
+import com.prez.model.LoyaltyProgram
+import com.prez.model.LoyaltyStatus
+import com.prez.model.PassType
+import com.prez.model.RailPass
+import org.springframework.data.redis.serializer.RedisSerializer
+import org.springframework.data.redis.serializer.SerializationException
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInput
+import java.io.DataInputStream
+import java.io.DataOutput
+import java.io.DataOutputStream
+import java.io.IOException
+import java.time.LocalDate
+
+/**
+ * Compact binary [RedisSerializer] for [Customer]: no field names, dates as epoch days and enums by name,
+ * which makes the values smaller and cheaper to decode than JSON.
+ *
+ * Every value starts with a format version byte, so that a newer version of the format can still read the entries
+ * written by the previous ones. Entries written as JSON ( before this serializer was used ) are read with the given
+ * JSON serializer.
+ * The format is the same as the Java variants one, so that all variants can share the same Redis.
+ */
+class CustomerBinaryRedisSerializer(private val jsonSerializer: RedisSerializer<Customer>) : RedisSerializer<Customer> {
+
+    companion object {
+        internal const val VERSION_1: Byte = 1
+        private const val JSON_OBJECT_START = '{'.code.toByte()
+    }
+
+    override fun serialize(customer: Customer?): ByteArray {
+        if (customer == null) {
+            return ByteArray(0)
+        }
+        val bytes = ByteArrayOutputStream(256)
+        try {
+            DataOutputStream(bytes).use { output ->
+                output.writeByte(VERSION_1.toInt())
+                output.writeCustomer(customer)
+            }
+        } catch (e: IOException) {
+            throw SerializationException("Could not write customer ${customer.customerId}", e)
+        }
+        return bytes.toByteArray()
+    }
+
+    override fun deserialize(bytes: ByteArray?): Customer? {
+        if (bytes == null || bytes.isEmpty()) {
+            return null
+        }
+        return try {
+            when (bytes[0]) {
+                VERSION_1 -> DataInputStream(ByteArrayInputStream(bytes, 1, bytes.size - 1)).readCustomer()
+                JSON_OBJECT_START -> jsonSerializer.deserialize(bytes)
+                else -> throw SerializationException("Unknown customer format version ${bytes[0]}")
+            }
+        } catch (e: IOException) {
+            throw SerializationException("Could not read customer", e)
+        } catch (e: IllegalArgumentException) {
+            throw SerializationException("Could not read customer", e)
+        }
+    }
+
+    private fun DataOutput.writeCustomer(customer: Customer) {
+        writeUTF(customer.customerId)
+        writeNullable(customer.lastName)
+        writeNullable(customer.firstName)
+        writeNullable(customer.birthDate)
+        writeNullable(customer.phoneNumber)
+        writeNullable(customer.email)
+        val loyaltyProgram = customer.loyaltyProgram
+        writeBoolean(loyaltyProgram != null)
+        if (loyaltyProgram != null) {
+            writeNullable(loyaltyProgram.number)
+            writeNullable(loyaltyProgram.status.name)
+            writeNullable(loyaltyProgram.statusRefLabel)
+            writeNullable(loyaltyProgram.validityStartDate)
+            writeNullable(loyaltyProgram.validityEndDate)
+        }
+        writeInt(customer.railPasses.size)
+        customer.railPasses.forEach { railPass ->
+            writeNullable(railPass.number)
+            writeNullable(railPass.type.name)
+            writeNullable(railPass.typeRefLabel)
+            writeNullable(railPass.validityStartDate)
+            writeNullable(railPass.validityEndDate)
+        }
+    }
+
+    private fun DataInput.readCustomer(): Customer = Customer(
+        customerId = readUTF(),
+        lastName = readNullableString(),
+        firstName = readNullableString(),
+        birthDate = readNullableDate(),
+        phoneNumber = readNullableString(),
+        email = readNullableString(),
+        loyaltyProgram = if (readBoolean()) readLoyaltyProgram() else null,
+        // a negative count stands for no rail passes at all
+        railPasses = List(maxOf(readInt(), 0)) { readRailPass() }
+    )
+
+    private fun DataInput.readLoyaltyProgram() = LoyaltyProgram(
+        number = readRequiredString("loyalty program number"),
+        status = LoyaltyStatus.valueOf(readRequiredString("loyalty program status")),
+        statusRefLabel = readNullableString(),
+        validityStartDate = readNullableDate(),
+        validityEndDate = readNullableDate()
+    )
+
+    private fun DataInput.readRailPass() = RailPass(
+        number = readRequiredString("rail pass number"),
+        type = PassType.valueOf(readRequiredString("rail pass type")),
+        typeRefLabel = readNullableString(),
+        validityStartDate = readNullableDate(),
+        validityEndDate = readNullableDate()
+    )
+
+    private fun DataOutput.writeNullable(value: String?) {
+        writeBoolean(value != null)
+        if (value != null) {
+            writeUTF(value)
+        }
+    }
+
+    private fun DataOutput.writeNullable(value: LocalDate?) {
+        writeBoolean(value != null)
+        if (value != null) {
+            writeLong(value.toEpochDay())
+        }
+    }
+
+    private fun DataInput.readNullableString(): String? = if (readBoolean()) readUTF() else null
+
+    private fun DataInput.readRequiredString(name: String): String =
+        readNullableString() ?: throw SerializationException("Missing $name")
+
+    private fun DataInput.readNullableDate(): LocalDate? = if (readBoolean()) LocalDate.ofEpochDay(readLong()) else null
+}
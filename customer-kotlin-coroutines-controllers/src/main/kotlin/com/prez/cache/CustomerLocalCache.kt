@@ -0,0 +1,46 @@
+package com.prez.cache
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.prez.model.Customer
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.stereotype.Component
+import java.time.Duration
+
+/**
+ * Caffeine cache in front of Redis, its time-to-live capped by the Redis one.
+ * Stats under the "customer.local" cache name.
+ */
+@Component
+class CustomerLocalCache(
+    @Value("\${customer.cache.local.maximum-size:10000}") maximumSize: Long,
+    @Value("\${customer.cache.local.time-to-live:30}") ttlSeconds: Long,
+    @Value("\${spring.redis.time-to-live.customer}") redisTtlSeconds: Long,
+    meterRegistry: MeterRegistry
+) {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(CustomerLocalCache::class.java)
+        internal const val cacheName = "customer.local"
+    }
+
+    private val cache: Cache<String, Customer>
+
+    init {
+        val timeToLive = Duration.ofSeconds(minOf(ttlSeconds, redisTtlSeconds))
+        logger.debug("Local customer cache with maximumSize=$maximumSize and timeToLive=$timeToLive")
+        cache = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(timeToLive)
+            .recordStats()
+            .build()
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName)
+    }
+
+    fun getIfPresent(id: String): Customer? = cache.getIfPresent(id)
+
+    fun put(customer: Customer) = cache.put(customer.customerId, customer)
+}
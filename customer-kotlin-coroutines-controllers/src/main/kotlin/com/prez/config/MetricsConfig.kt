@@ -1,5 +1,6 @@
 package com.prez.config
 
+import io.micrometer.core.instrument.Counter
 import io.micrometer.core.instrument.DistributionSummary
 import io.micrometer.core.instrument.MeterRegistry
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry
@@ -23,6 +24,13 @@ class MetricsConfig {
             .register(metricRegistry)
     }
 
+    @Bean(name = ["customerWSCoalescedCounter"])
+    fun customerWSCoalescedCounter(metricRegistry: MeterRegistry): Counter {
+        return Counter.builder("customer.webservice.coalesced")
+            .description("Number of customer web service calls avoided by joining an in-flight one")
+            .register(metricRegistry)
+    }
+
   @Bean
   fun simpleMeterRegistry(): MeterRegistry {
     return SimpleMeterRegistry()
@@ -1,13 +1,16 @@
 package com.prez.config
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.prez.cache.CustomerBinaryRedisSerializer
 import com.prez.model.Customer
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory
 import org.springframework.data.redis.core.ReactiveRedisTemplate
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer
 import org.springframework.data.redis.serializer.RedisSerializationContext.newSerializationContext
+import org.springframework.data.redis.serializer.RedisSerializer
 import org.springframework.data.redis.serializer.StringRedisSerializer
 
 @Configuration
@@ -16,14 +19,24 @@ class RedisConfig {
   @Bean
   fun customerInfoRedisTemplate(
       objectMapper: ObjectMapper,
-      factory: LettuceConnectionFactory
+      factory: LettuceConnectionFactory,
+      @Value("\${spring.redis.serializer.customer:binary}") customerSerializer: String
   ): ReactiveRedisTemplate<String, Customer> {
     val keySerializer = StringRedisSerializer()
-    val valueSerializer = Jackson2JsonRedisSerializer(Customer::class.java)
+    val jsonSerializer = Jackson2JsonRedisSerializer(Customer::class.java)
+    jsonSerializer.setObjectMapper(objectMapper)
     val builder = newSerializationContext<String, Customer>(keySerializer)
-    valueSerializer.setObjectMapper(objectMapper)
-    val context = builder.value(valueSerializer).build()
+    val context = builder.value(customerValueSerializer(customerSerializer, jsonSerializer)).build()
 
     return ReactiveRedisTemplate(factory, context)
   }
-}
\ No newline at end of file
+
+  private fun customerValueSerializer(
+      customerSerializer: String,
+      jsonSerializer: RedisSerializer<Customer>
+  ): RedisSerializer<Customer> = when (customerSerializer) {
+    "binary" -> CustomerBinaryRedisSerializer(jsonSerializer)
+    "json" -> jsonSerializer
+    else -> throw IllegalArgumentException("Unknown customer serializer '$customerSerializer', expecting binary or json")
+  }
+}
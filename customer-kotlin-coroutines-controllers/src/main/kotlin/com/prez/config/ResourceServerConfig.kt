@@ -17,6 +17,8 @@ class ResourceServerConfig {
     const val CUSTOMERS_URL_PATTERN = "/customers/**"
     const val SCOPE_CUSTOMER_READ = "SCOPE_customer.read"
     const val SCOPE_CUSTOMER_WRITE = "SCOPE_customer.write"
+    // only granted to the back-office services, which may read any customer
+    const val SCOPE_CUSTOMER_SERVICE = "SCOPE_customer.service"
   }
 
   @Bean
@@ -24,6 +26,7 @@ class ResourceServerConfig {
     http
       .authorizeExchange { exchanges ->
         exchanges
+          .pathMatchers(POST, "/customers/batch").hasAuthority(SCOPE_CUSTOMER_SERVICE)
           .pathMatchers(GET, "/customers", CUSTOMERS_URL_PATTERN).hasAuthority(SCOPE_CUSTOMER_READ)
           .pathMatchers(PATCH, CUSTOMERS_URL_PATTERN).hasAuthority(SCOPE_CUSTOMER_WRITE)
           .pathMatchers(POST, CUSTOMERS_URL_PATTERN).hasAuthority(SCOPE_CUSTOMER_WRITE)
@@ -0,0 +1,48 @@
+package com.prez.lib.coalescing
+
+import io.micrometer.core.instrument.Counter
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Deduplicates concurrent calls sharing the same key (aka "single flight"): while a call is in flight for a key,
+ * any other caller for this key awaits the very same shared [Deferred] instead of triggering a new call.
+ * The key is released as soon as the call completes, so the next caller triggers a fresh call.
+ * Each caller joining an in-flight call increments the given counter.
+ */
+class RequestCoalescer<T>(private val coalesced: Counter) {
+
+  companion object {
+    private val logger = LoggerFactory.getLogger(RequestCoalescer::class.java)
+  }
+
+  // the shared call must survive the cancellation of the caller which started it, as others may be waiting for it
+  private val scope = CoroutineScope(SupervisorJob())
+  private val inFlight = ConcurrentHashMap<String, Deferred<T>>()
+
+  suspend fun coalesce(key: String, call: suspend () -> T): T {
+    inFlight[key]?.let { return join(key, it) }
+
+    val created = scope.async(coroutineContext.minusKey(Job), CoroutineStart.LAZY) { call() }
+    val raced = inFlight.putIfAbsent(key, created)
+    if (raced != null) {
+      created.cancel()
+      return join(key, raced)
+    }
+    created.invokeOnCompletion { inFlight.remove(key, created) }
+    return created.await()
+  }
+
+  private suspend fun join(key: String, existing: Deferred<T>): T {
+    logger.debug("Joining in-flight call for key='$key'")
+    coalesced.increment()
+    return existing.await()
+  }
+}
@@ -0,0 +1,123 @@
+package com.prez.lib.writebehind
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import reactor.core.publisher.Mono
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Queue of the values to write later, batchSize at most per writer Mono, one Mono in flight at a time.
+ * Past capacity keys, the values of new keys are dropped. Meters under "write-behind" with the given name.
+ */
+class WriteBehindQueue<K : Any, V : Any>(
+  private val name: String,
+  private val capacity: Int,
+  private val batchSize: Int,
+  private val keyOf: (V) -> K,
+  private val writer: (List<V>) -> Mono<Boolean>,
+  meterRegistry: MeterRegistry
+) {
+
+  companion object {
+    private val logger = LoggerFactory.getLogger(WriteBehindQueue::class.java)
+  }
+
+  private enum class Outcome { QUEUED, COALESCED, DROPPED }
+
+  private val queued = ConcurrentHashMap<K, V>()
+  private val size = AtomicInteger()
+  private val draining = AtomicBoolean()
+  private val queuedCounter = counter("queued", meterRegistry)
+  private val coalescedCounter = counter("coalesced", meterRegistry)
+  private val droppedCounter = counter("dropped", meterRegistry)
+  private val writtenCounter = counter("written", meterRegistry)
+  private val failedCounter = counter("failed", meterRegistry)
+
+  init {
+    Gauge.builder("write-behind.size", size) { it.get().toDouble() }.tag("name", name)
+      .description("Values waiting to be written").register(meterRegistry)
+  }
+
+  private fun counter(result: String, meterRegistry: MeterRegistry): Counter =
+    Counter.builder("write-behind.offers").tag("name", name).tag("result", result).register(meterRegistry)
+
+  /**
+   * @return false if the value is dropped, the queue being full
+   */
+  fun offer(value: V): Boolean {
+    val key = keyOf(value)
+    var outcome = Outcome.QUEUED
+    queued.compute(key) { _, previous ->
+      when {
+        previous != null -> {
+          outcome = Outcome.COALESCED
+          value
+        }
+        size.incrementAndGet() > capacity -> {
+          size.decrementAndGet()
+          outcome = Outcome.DROPPED
+          null
+        }
+        else -> value
+      }
+    }
+    return when (outcome) {
+      Outcome.COALESCED -> {
+        coalescedCounter.increment()
+        true
+      }
+      Outcome.DROPPED -> {
+        logger.debug("Write-behind $name full, dropping key='$key'")
+        droppedCounter.increment()
+        false
+      }
+      Outcome.QUEUED -> {
+        queuedCounter.increment()
+        drain()
+        true
+      }
+    }
+  }
+
+  private fun drain() {
+    if (!draining.compareAndSet(false, true)) {
+      return
+    }
+    val batch = takeBatch()
+    if (batch.isEmpty()) {
+      draining.set(false)
+      // a value queued after takeBatch and before draining was released would otherwise wait for the next offer
+      if (queued.isNotEmpty()) {
+        drain()
+      }
+      return
+    }
+    Mono.defer { writer(batch) }
+      .defaultIfEmpty(false)
+      .onErrorResume {
+        logger.warn("Write-behind $name could not write ${batch.size} values", it)
+        Mono.just(false)
+      }
+      .subscribe { written ->
+        (if (written) writtenCounter else failedCounter).increment(batch.size.toDouble())
+        draining.set(false)
+        drain()
+      }
+  }
+
+  private fun takeBatch(): List<V> {
+    val batch = ArrayList<V>(minOf(batchSize, size.get()))
+    val keys = queued.keys.iterator()
+    while (batch.size < batchSize && keys.hasNext()) {
+      queued.remove(keys.next())?.let {
+        size.decrementAndGet()
+        batch.add(it)
+      }
+    }
+    return batch
+  }
+}
@@ -1,27 +1,46 @@
 package com.prez.service
 
 import com.prez.cache.CustomerCacheRepository
+import com.prez.cache.CustomerLocalCache
+import com.prez.cache.CustomerNotFoundCache
+import com.prez.cache.CustomerRefreshLease
 import com.prez.db.CustomerPreferencesRepository
 import com.prez.exception.NotFoundException
 import com.prez.extension.toCustomer
+import com.prez.lib.coalescing.RequestCoalescer
+import com.prez.lib.writebehind.WriteBehindQueue
 import com.prez.model.Customer
+import com.prez.model.CustomerBatch
 import com.prez.model.CustomerPreferences
 import com.prez.model.SeatPreference
 import com.prez.ws.CustomerClient
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.onEmpty
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.reactive.asFlow
 import kotlinx.coroutines.reactive.awaitFirstOrNull
 import kotlinx.coroutines.reactive.awaitSingle
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Component
 import java.util.Locale
 import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
 
 interface CustomerService {
   suspend fun getCustomerInfo(customerId: String): Customer
 
+  suspend fun getCustomersInfo(customerIds: Collection<String>): CustomerBatch
+
   suspend fun createCustomerPreferences(
     customerId: String,
     seatPreference: SeatPreference,
@@ -38,31 +57,170 @@ interface CustomerService {
 class CustomerServiceImpl(
   val customerWebService: CustomerClient,
   val cache: CustomerCacheRepository,
-  val database: CustomerPreferencesRepository
+  val localCache: CustomerLocalCache,
+  val notFoundCache: CustomerNotFoundCache,
+  val database: CustomerPreferencesRepository,
+  val customerRequestCoalescer: RequestCoalescer<Customer>,
+  val cacheWriteBehind: WriteBehindQueue<String, Customer>,
+  val refreshLease: CustomerRefreshLease,
+  // customer web service calls in flight at once for a batch
+  @Value("\${customer.batch.concurrency:8}") val batchConcurrency: Int = 8
 ) : CustomerService {
 
   companion object {
     private val logger = LoggerFactory.getLogger(CustomerService::class.java)
   }
 
+  // stale customers are refreshed outside of the request which found them
+  private val refreshScope = CoroutineScope(SupervisorJob())
+
   override suspend fun getCustomerInfo(customerId: String): Customer {
     logger.debug("Getting customer with customerId=$customerId")
-    return cache.findById(customerId).awaitFirstOrNull()
-      ?: callCustomerWebService(customerId)
+    return localCache.getIfPresent(customerId)
+      ?: findInCache(customerId)
+      // concurrent misses for the same customer share a single web service call
+      ?: customerRequestCoalescer.coalesce(customerId) { refreshCustomer(customerId) }
+  }
+
+  /**
+   * Concurrent misses on several instances share a single web service call too, through the refresh lease: an instance
+   * not holding it polls Redis for the customer, then calls the web service itself should the holder not save it in
+   * time.
+   */
+  private suspend fun refreshCustomer(customerId: String): Customer {
+    val lease = refreshLease.tryAcquire(customerId).awaitSingle()
+    if (!lease.acquired) {
+      val refreshed = refreshLease.awaitRefreshed(customerId, cache.findById(customerId)).awaitFirstOrNull()
+      if (refreshed != null) {
+        localCache.put(refreshed)
+        return refreshed
+      }
+    }
+    return callCustomerWebService(customerId, lease)
+  }
+
+  /**
+   * A stale customer ( past the soft time-to-live ) is served right away and refreshed in background,
+   * so that only a customer past the hard time-to-live has to wait for the customer web service.
+   */
+  private suspend fun findInCache(customerId: String): Customer? {
+    val entry = cache.findEntryById(customerId).awaitFirstOrNull() ?: return null
+    localCache.put(entry.customer)
+    if (entry.stale) {
+      refreshInBackground(customerId)
+    }
+    return entry.customer
+  }
+
+  /**
+   * Only the instance holding the refresh lease of the customer refreshes it, the others keep serving the stale entry.
+   */
+  private fun refreshInBackground(customerId: String) {
+    logger.debug("Customer $customerId is stale in cache, refreshing it in background")
+    refreshScope.launch {
+      runCatching {
+        val lease = refreshLease.tryAcquire(customerId).awaitSingle()
+        if (lease.acquired) {
+          customerRequestCoalescer.coalesce(customerId) { callCustomerWebService(customerId, lease) }
+        } else {
+          logger.debug("Customer $customerId already being refreshed by another instance")
+        }
+      }
+        .onFailure { logger.warn("Could not refresh customer $customerId in cache", it) }
+    }
   }
 
-  private suspend fun callCustomerWebService(customerId: String): Customer {
+  /**
+   * The customers missing from the local cache are all looked for in Redis at once, then only those missing from Redis
+   * are fetched from the customer web service, at most batchConcurrency at a time, and saved back in Redis behind the
+   * response.
+   * Unlike getCustomerInfo, a stale customer is not refreshed: the whole batch is served from the entries as they are.
+   */
+  override suspend fun getCustomersInfo(customerIds: Collection<String>): CustomerBatch {
+    logger.debug("Getting ${customerIds.size} customers")
+    val ids = customerIds.toCollection(LinkedHashSet())
+    val found = ids.mapNotNull { id -> localCache.getIfPresent(id)?.let { id to it } }.toMap(HashMap())
+    val notInLocalCache = ids.filterNot(found::containsKey)
+    if (notInLocalCache.isEmpty()) {
+      return toBatch(ids, found, emptySet())
+    }
+    val cached = cache.findAllByIds(notInLocalCache).awaitSingle()
+    cached.values.forEach(localCache::put)
+    found.putAll(cached)
+    val failed = ConcurrentHashMap.newKeySet<String>()
+    callCustomerWebService(notInLocalCache.filterNot(cached::containsKey), failed)
+      .forEach { found[it.customerId] = it }
+    return toBatch(ids, found, failed)
+  }
+
+  /**
+   * A missing customer is not an error of the batch, neither is a failed call: they are told apart in the batch.
+   */
+  private suspend fun callCustomerWebService(customerIds: List<String>, failed: MutableSet<String>): List<Customer> {
+    if (customerIds.isEmpty()) {
+      return emptyList()
+    }
+    val permits = Semaphore(batchConcurrency)
+    val fetched = coroutineScope {
+      customerIds.map { customerId ->
+        async {
+          permits.withPermit {
+            try {
+              customerRequestCoalescer.coalesce(customerId) { fetchCustomer(customerId) }
+            } catch (e: NotFoundException) {
+              null
+            } catch (e: CancellationException) {
+              throw e
+            } catch (e: Exception) {
+              logger.warn("Could not get customer $customerId from the customer web service", e)
+              failed.add(customerId)
+              null
+            }
+          }
+        }
+      }.awaitAll().filterNotNull()
+    }
+    fetched.forEach { cacheWriteBehind.offer(it) }
+    return fetched
+  }
+
+  private fun toBatch(ids: Set<String>, found: Map<String, Customer>, failed: Set<String>): CustomerBatch {
+    val (failedIds, notFound) = ids.filterNot(found::containsKey).partition(failed::contains)
+    return CustomerBatch(ids.mapNotNull(found::get), notFound, failedIds)
+  }
+
+  /**
+   * A customer the customer web service did not find lately is not asked for again, one it does not find is
+   * remembered as such.
+   */
+  private suspend fun fetchCustomer(customerId: String): Customer {
+    if (notFoundCache.isNotFound(customerId).awaitSingle()) {
+      throw NotFoundException(customerId, "customer")
+    }
     val wsResponse = customerWebService.getCustomer(customerId)
-      ?: throw NotFoundException(customerId, "customer")
+      ?: run {
+        notFoundCache.putNotFound(customerId).awaitSingle()
+        throw NotFoundException(customerId, "customer")
+      }
     val customer = wsResponse.toCustomer()
-    val savedInCache = cache.save(customer).awaitSingle()
+    localCache.put(customer)
+    return customer
+  }
 
-    if (savedInCache) {
-      logger.debug("Customer ${customer.customerId} avec in cache")
-    } else {
-      logger.error("COULD NOT SAVE ${customer.customerId} in cache")
+  /**
+   * The customer is saved in cache behind the response, so that a miss costs a single web service call and no Redis
+   * write. The lease is kept until it expires once the customer is fetched, released should the call fail.
+   */
+  private suspend fun callCustomerWebService(customerId: String, lease: CustomerRefreshLease.Lease): Customer {
+    val customer = try {
+      fetchCustomer(customerId)
+    } catch (e: CancellationException) {
+      throw e
+    } catch (e: Exception) {
+      lease.release().awaitFirstOrNull()
+      throw e
     }
-    // then we just return the customer
+    cacheWriteBehind.offer(customer)
     return customer
   }
 
@@ -0,0 +1,84 @@
+package com.prez.benchmark
+
+import com.prez.extension.toCustomer
+import com.prez.model.Customer
+import com.prez.ws.model.GetCustomerWSResponse
+import com.prez.ws.model.Misc
+import com.prez.ws.model.NestedValue
+import com.prez.ws.model.Record
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Mapping of customers holding many misc records: one active loyalty program, the other loyalty records inactive,
+ * and rail passes of which a quarter have dates which are not dates and half are rejected (inactive or unknown type).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+open class CustomerMiscMappingBenchmark {
+
+  // misc records of the customer, spread over LOYALTY, PASS and other misc of 4 records each
+  @Param("12", "48")
+  @JvmField
+  var recordCount: Int = 0
+
+  private lateinit var response: GetCustomerWSResponse
+
+  @Setup
+  fun setup() {
+    val types = listOf("LOYALTY", "PASS", "SERVICE")
+    val allMisc = (0 until recordCount / 4).map { i ->
+      val type = types[i % types.size]
+      val records = (0 until 4).map { j ->
+        Record(otherId = "$type$i-$j", type = NestedValue(type), map = fields(type, i * 4 + j, j))
+      }
+      Misc(type = NestedValue(type), count = records.size, hasMore = false, records = records)
+    }
+    response = GetCustomerWSResponse(id = "customer", personalInformation = null, personalDetails = null, misc = allMisc)
+  }
+
+  @Benchmark
+  fun toCustomer(): Customer = response.toCustomer()
+
+  // variant 0: valid, 1: valid with dates which are not dates, 2: inactive, 3: unknown status or pass type
+  private fun fields(type: String, number: Int, variant: Int): List<Map<String, String>> {
+    val startDate = if (variant == 1) "2019-02-30" else "2019-11-10"
+    val endDate = if (variant == 1) "not a date" else "2020-11-09"
+    val active = if (variant == 2) "001" else "000"
+    val fields = if (type == "PASS") {
+      mapOf(
+          "pass_number" to "PASS-$number",
+          "new_product_code" to if (variant == 3) "UNKNOWN" else "FAMILY",
+          "pass_label" to "FAMILY PASS",
+          "pass_validity_start" to startDate,
+          "pass_validity_end" to endDate,
+          "pass_is_active" to active
+      )
+    } else {
+      mapOf(
+          "loyalty_number" to "LOYALTY-$number",
+          "loyalty_status" to if (variant == 3) "UNKNOWN" else "B0B0B0",
+          "loyalty_status_label" to "PLATINIUM",
+          "validity_start" to startDate,
+          "validity_end" to endDate,
+          // only one active loyalty program, as a customer has
+          "disable_status" to if (number == 0) active else "001"
+      )
+    }
+    return (fields + ("some_key" to "some_value")).map { mapOf("key" to it.key, "value" to it.value) }
+  }
+}
@@ -24,7 +24,10 @@ import com.prez.ws.model.Service
 import com.prez.ws.model.Services
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
 import java.time.LocalDate
+import java.time.format.DateTimeParseException
 
 class CustomerWSModelExtensionTest {
 
@@ -2975,4 +2978,20 @@ class CustomerWSModelExtensionTest {
         )
       )
   }
-}
\ No newline at end of file
+
+  @ParameterizedTest
+  @ValueSource(strings = ["2019-11-10", "2020-02-29", "0000-01-01", "+10000-01-01", "-0001-12-31", "2019-02-29",
+    "2019-13-01", "2019-00-10", "2019-11-31", "2019-11-1", "2019/11/10", "20191110", "2019-11-10T00:00", "+2019-11-10",
+    "10000-01-01", "2019-1a-10", "", " 2019-11-10"])
+  fun `parseDateOrNull should parse as LocalDate parse does, null instead of an exception`(date: String) {
+    // Prepare
+    val expected = try {
+      LocalDate.parse(date)
+    } catch (e: DateTimeParseException) {
+      null
+    }
+
+    // Test && Assert
+    assertThat(parseDateOrNull(date)).isEqualTo(expected)
+  }
+}
@@ -136,6 +136,7 @@ internal class GetCustomerIntegrationTest(
   @BeforeEach
   internal fun beforeEach() {
     customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("Customer:*")).block()
+    customerInfoRedisTemplate.delete(customerInfoRedisTemplate.keys("CustomerNotFound:*")).block()
     resetAllRequests() //reset all requests registered by wiremock to be isolate each fullCustomer.json
   }
 
@@ -267,9 +268,11 @@ internal class GetCustomerIntegrationTest(
         .withHeader("Content-Type", EqualToPattern("application/json"))
     )
 
-    //redis
+    //redis, saved behind the response
+    val savedCustomer = customerInfoRedisTemplate.opsForValue().get("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed")
+      .repeatWhenEmpty(20) { repeats -> repeats.delayElements(Duration.ofMillis(50)) }
+      .block()
     val ttl = customerInfoRedisTemplate.getExpire("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed").block()
-    val savedCustomer = customerInfoRedisTemplate.opsForValue().get("Customer:72f028e2-fbb8-48b3-b943-bf4daad961ed").block()
     assertThat(ttl).isGreaterThanOrEqualTo(Duration.ofSeconds(3))
     assertThat(ttl).isLessThanOrEqualTo(Duration.ofSeconds(10))
     val compConfig = RecursiveComparisonConfiguration()
@@ -310,6 +313,16 @@ internal class GetCustomerIntegrationTest(
           "message":"No result for the given customer id=unknownCustomer"
         }
         """.trimIndent())
+
+    // asked again, the customer is known as not found: the customer web service is not called twice
+    client
+      .get()
+      .uri("/customers")
+      .header("Authorization", "Bearer $unknown")
+      .accept(APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isNotFound
+    verify(1, getRequestedFor(urlEqualTo("/customers/unknownCustomer")))
   }
 
   @Test
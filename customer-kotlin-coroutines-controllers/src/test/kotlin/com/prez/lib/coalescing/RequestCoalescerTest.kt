@@ -0,0 +1,58 @@
+package com.prez.lib.coalescing
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertFailsWith
+
+class RequestCoalescerTest {
+
+  private val calls = AtomicInteger()
+  private val coalesced = Counter.builder("coalesced").register(SimpleMeterRegistry())
+  private val toTest = RequestCoalescer<String>(coalesced)
+
+  @Test
+  fun `coalesce should share a single call between concurrent callers with the same key`(): Unit = runBlocking {
+    // Test
+    val results = (0 until 5).map { async { toTest.coalesce("key", ::slowCall) } }.awaitAll()
+
+    // Assert
+    assertThat(results).containsExactly("result1", "result1", "result1", "result1", "result1")
+    assertThat(calls).hasValue(1)
+    assertThat(coalesced.count()).isEqualTo(4.0)
+  }
+
+  @Test
+  fun `coalesce should not share calls between different keys`(): Unit = runBlocking {
+    // Test
+    listOf(async { toTest.coalesce("key1", ::slowCall) }, async { toTest.coalesce("key2", ::slowCall) }).awaitAll()
+
+    // Assert
+    assertThat(calls).hasValue(2)
+    assertThat(coalesced.count()).isZero()
+  }
+
+  @Test
+  fun `coalesce should trigger a new call once the previous one is over, even when it failed`(): Unit = runBlocking {
+    // Test
+    assertFailsWith<IllegalStateException> {
+      toTest.coalesce("key") { throw IllegalStateException("boom") }
+    }
+    val result = toTest.coalesce("key", ::slowCall)
+
+    // Assert
+    assertThat(result).isEqualTo("result1")
+    assertThat(coalesced.count()).isZero()
+  }
+
+  private suspend fun slowCall(): String {
+    delay(100)
+    return "result${calls.incrementAndGet()}"
+  }
+}
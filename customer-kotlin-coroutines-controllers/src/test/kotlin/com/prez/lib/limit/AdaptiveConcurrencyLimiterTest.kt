@@ -0,0 +1,130 @@
+package com.prez.lib.limit
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit.MILLISECONDS
+
+class AdaptiveConcurrencyLimiterTest {
+
+  private val meterRegistry = SimpleMeterRegistry()
+
+  private fun limiter(initialLimit: Int) =
+    AdaptiveConcurrencyLimiter("test", initialLimit, 1, 10, 0.5, 2.0, meterRegistry)
+
+  // a call started 1ms ago
+  private fun oneMillisecondAgo() = System.nanoTime() - MILLISECONDS.toNanos(1)
+
+  @Test
+  fun `tryAcquire should reject the calls over the limit and count them`() {
+    // Given
+    val toTest = limiter(2)
+
+    // Test
+    val first = toTest.tryAcquire()
+    val second = toTest.tryAcquire()
+    val third = toTest.tryAcquire()
+
+    // Assert
+    assertThat(first).isTrue
+    assertThat(second).isTrue
+    assertThat(third).isFalse
+    assertThat(toTest.inProgressCount).isEqualTo(2)
+    assertThat(meterRegistry.get("concurrency.limit.rejected").tag("name", "test").functionCounter().count())
+      .isEqualTo(1.0)
+    assertThat(meterRegistry.get("concurrency.limit").tag("name", "test").gauge().value()).isEqualTo(2.0)
+    assertThat(meterRegistry.get("concurrency.limit.in.progress").tag("name", "test").gauge().value()).isEqualTo(2.0)
+  }
+
+  @Test
+  fun `onSuccess should grow the limit when it is used and the calls are as fast as usual`() {
+    // Given
+    val toTest = limiter(2)
+
+    // Test: every call uses the whole limit
+    repeat(10) {
+      val limit = toTest.limit
+      repeat(limit) { toTest.tryAcquire() }
+      val start = oneMillisecondAgo()
+      repeat(limit) { toTest.onSuccess(start) }
+    }
+
+    // Assert
+    assertThat(toTest.limit).isGreaterThan(2).isLessThanOrEqualTo(10)
+    assertThat(toTest.inProgressCount).isZero
+  }
+
+  @Test
+  fun `onSuccess should not grow the limit when less than half of it is used`() {
+    // Given
+    val toTest = limiter(4)
+
+    // Test: one call at a time
+    repeat(20) {
+      toTest.tryAcquire()
+      toTest.onSuccess(oneMillisecondAgo())
+    }
+
+    // Assert
+    assertThat(toTest.limit).isEqualTo(4)
+  }
+
+  @Test
+  fun `onDropped should shrink the limit once for the calls in progress together`() {
+    // Given
+    val toTest = limiter(8)
+    val start = System.nanoTime()
+    repeat(8) { toTest.tryAcquire() }
+
+    // Test
+    repeat(8) { toTest.onDropped(start) }
+
+    // Assert
+    assertThat(toTest.limit).isEqualTo(4)
+    assertThat(toTest.inProgressCount).isZero
+
+    // Test: the next wave shrinks it again, but never under the minimum
+    repeat(5) {
+      toTest.tryAcquire()
+      toTest.onDropped(System.nanoTime())
+    }
+
+    // Assert
+    assertThat(toTest.limit).isEqualTo(1)
+  }
+
+  @Test
+  fun `onSuccess should shrink the limit when a call is much slower than usual`() {
+    // Given calls lasting about 1ms
+    val toTest = limiter(8)
+    repeat(5) {
+      toTest.tryAcquire()
+      toTest.onSuccess(oneMillisecondAgo())
+    }
+
+    // Test: a call lasting 50ms
+    toTest.tryAcquire()
+    val start = System.nanoTime()
+    Thread.sleep(50)
+    toTest.onSuccess(start)
+
+    // Assert
+    assertThat(toTest.limit).isEqualTo(4)
+  }
+
+  @Test
+  fun `onIgnored should only release the call`() {
+    // Given
+    val toTest = limiter(2)
+    toTest.tryAcquire()
+    toTest.tryAcquire()
+
+    // Test
+    toTest.onIgnored()
+
+    // Assert
+    assertThat(toTest.limit).isEqualTo(2)
+    assertThat(toTest.inProgressCount).isEqualTo(1)
+    assertThat(toTest.tryAcquire()).isTrue
+  }
+}
@@ -0,0 +1,97 @@
+package com.prez.lib.security
+
+import com.nimbusds.jose.JWSAlgorithm
+import com.nimbusds.jose.JWSHeader
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.catchThrowable
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.springframework.core.io.ClassPathResource
+import org.springframework.core.io.FileSystemResource
+import java.nio.file.Files
+import java.nio.file.Path
+import java.security.KeyPairGenerator
+import java.security.PublicKey
+import java.security.interfaces.RSAPublicKey
+import java.time.Duration
+import java.util.Base64
+import java.util.concurrent.atomic.AtomicInteger
+
+class RefreshingPublicKeysTest {
+
+  @TempDir
+  lateinit var directory: Path
+
+  private fun newPublicKey(): PublicKey =
+    KeyPairGenerator.getInstance("RSA").apply { initialize(2048) }.generateKeyPair().public
+
+  private fun writePem(file: Path, key: PublicKey) {
+    Files.writeString(
+      file,
+      "-----BEGIN PUBLIC KEY-----\n${Base64.getMimeEncoder().encodeToString(key.encoded)}\n-----END PUBLIC KEY-----\n"
+    )
+  }
+
+  @Test
+  fun `selectJWSKeys should return every key for a RS256 token only`() {
+    // Given
+    val other = directory.resolve("other.pem")
+    writePem(other, newPublicKey())
+    RefreshingPublicKeys(listOf(ClassPathResource("public.pem"), FileSystemResource(other)), Duration.ofMinutes(5))
+      .use { toTest ->
+
+        // Test & Assert
+        assertThat(toTest.selectJWSKeys(JWSHeader(JWSAlgorithm.RS256), null)).hasSize(2)
+        assertThat(toTest.selectJWSKeys(JWSHeader(JWSAlgorithm.HS256), null)).isEmpty()
+      }
+  }
+
+  @Test
+  fun `refresh should use the new key and tell the listeners when the file changed`() {
+    // Given
+    val pem = directory.resolve("public.pem")
+    writePem(pem, newPublicKey())
+    val changes = AtomicInteger()
+    RefreshingPublicKeys(listOf(FileSystemResource(pem)), Duration.ofMinutes(5)).use { toTest ->
+      toTest.onChange { changes.incrementAndGet() }
+      val rotated = newPublicKey() as RSAPublicKey
+      writePem(pem, rotated)
+
+      // Test
+      toTest.refresh()
+      toTest.refresh()
+
+      // Assert
+      assertThat(toTest.keys).containsExactly(rotated)
+      assertThat(changes).hasValue(1)
+    }
+  }
+
+  @Test
+  fun `refresh should keep the previous keys when the file cannot be read`() {
+    // Given
+    val pem = directory.resolve("public.pem")
+    writePem(pem, newPublicKey())
+    RefreshingPublicKeys(listOf(FileSystemResource(pem)), Duration.ofMinutes(5)).use { toTest ->
+      val previous = toTest.keys
+      Files.writeString(pem, "not a key")
+
+      // Test
+      toTest.refresh()
+
+      // Assert
+      assertThat(toTest.keys).isSameAs(previous)
+    }
+  }
+
+  @Test
+  fun `constructor should fail when a key cannot be read`() {
+    // Test
+    val thrown = catchThrowable {
+      RefreshingPublicKeys(listOf(FileSystemResource(directory.resolve("missing.pem"))), Duration.ofMinutes(5))
+    }
+
+    // Assert
+    assertThat(thrown).isInstanceOf(IllegalStateException::class.java)
+  }
+}
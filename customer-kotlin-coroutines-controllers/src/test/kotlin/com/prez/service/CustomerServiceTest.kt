@@ -1,6 +1,11 @@
 package com.prez.service
 
+import com.prez.cache.CustomerCacheEntry
 import com.prez.cache.CustomerCacheRepository
+import com.prez.cache.CustomerLocalCache
+import com.prez.cache.CustomerNotFoundCache
+import com.prez.cache.CustomerRefreshLease
+import com.prez.cache.CustomerRefreshLeaseProperties
 import com.prez.db.CustomerPreferencesRepository
 import com.prez.exception.NotFoundException
 import com.prez.model.Customer
@@ -10,14 +15,25 @@ import com.prez.model.LoyaltyStatus._019875
 import com.prez.model.SeatPreference
 import com.prez.model.SeatPreference.NEAR_CORRIDOR
 import com.prez.model.SeatPreference.NEAR_WINDOW
+import com.prez.ws.CustomerClient
 import com.prez.ws.CustomerWSClient
 import com.prez.ws.WebServiceException
 import com.prez.ws.model.GetCustomerWSResponse
 import com.prez.ws.model.Email
 import com.prez.ws.model.PersonalDetails
 import com.prez.ws.model.PersonalInformation
+import com.prez.lib.coalescing.RequestCoalescer
+import com.prez.lib.limit.LatencyBudget
+import com.prez.lib.writebehind.WriteBehindQueue
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
@@ -25,16 +41,26 @@ import org.junit.jupiter.api.extension.ExtendWith
 import org.mockito.ArgumentCaptor
 import org.mockito.Mockito
 import org.mockito.Mockito.`when`
+import org.mockito.Mockito.anyList
 import org.mockito.Mockito.anyString
+import org.mockito.Mockito.eq
 import org.mockito.Mockito.mock
 import org.mockito.Mockito.never
 import org.mockito.Mockito.reset
+import org.mockito.Mockito.timeout
 import org.mockito.Mockito.verify
+import org.mockito.Mockito.verifyNoInteractions
 import org.mockito.junit.jupiter.MockitoExtension
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate
+import org.springframework.data.redis.core.ReactiveValueOperations
+import org.springframework.data.redis.core.script.RedisScript
+import org.springframework.http.HttpStatus
 import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
+import java.time.Duration
 import java.time.LocalDate
 import java.util.Locale
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.test.assertFailsWith
 
 @ExtendWith(MockitoExtension::class)
@@ -46,13 +72,47 @@ class CustomerServiceTest {
 
   private val customerWSClient = mock(CustomerWSClient::class.java)
 
-  private val toTest = CustomerServiceImpl(customerWSClient, customerCacheRepository, customerPreferencesRepository)
+  private val customerLocalCache = CustomerLocalCache(10, 30, 300, SimpleMeterRegistry())
+
+  private val customerNotFoundCache = mock(CustomerNotFoundCache::class.java)
+
+  private val customerRequestCoalescer =
+    RequestCoalescer<Customer>(Counter.builder("customer.webservice.coalesced").register(SimpleMeterRegistry()))
+
+  private val customerCacheWriteBehind = WriteBehindQueue<String, Customer>("customer", 10, 10, Customer::customerId,
+    customerCacheRepository::saveAll, SimpleMeterRegistry())
+
+  private val redisTemplate = mock(ReactiveStringRedisTemplate::class.java)
+
+  @Suppress("UNCHECKED_CAST")
+  private val valueOperations = mock(ReactiveValueOperations::class.java) as ReactiveValueOperations<String, String>
+
+  private fun refreshLease(enabled: Boolean) = CustomerRefreshLease(
+    CustomerRefreshLeaseProperties(enabled = enabled), redisTemplate,
+    LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1), CircuitBreaker.ofDefaults("redis"),
+      SimpleMeterRegistry()),
+    SimpleMeterRegistry()
+  )
+
+  private fun customerService(refreshLease: CustomerRefreshLease) = CustomerServiceImpl(
+    customerWSClient, customerCacheRepository, customerLocalCache, customerNotFoundCache, customerPreferencesRepository,
+    customerRequestCoalescer, customerCacheWriteBehind, refreshLease, 2
+  )
+
+  // disabled: every lease is acquired
+  private val toTest = customerService(refreshLease(false))
 
   @BeforeEach
   fun setup() {
     reset(customerCacheRepository)
     reset(customerPreferencesRepository)
     reset(customerWSClient)
+    reset(customerNotFoundCache)
+    reset(redisTemplate)
+    `when`(redisTemplate.opsForValue()).thenReturn(valueOperations)
+    // by default, no customer is known as not found
+    `when`(customerNotFoundCache.isNotFound(anyString())).thenReturn(Mono.just(false))
+    `when`(customerNotFoundCache.putNotFound(anyString())).thenReturn(Mono.just(true))
   }
 
   /* use runBlocking before kotlin.coroutines 1.4.0 and runBlockingTest from 1.4.0,
@@ -60,7 +120,7 @@ class CustomerServiceTest {
   @Test
     fun `getCustomerInfo should return empty customer when customer does not exist`(): Unit = runBlocking {
     // Given the customer 123456789 cannot be found
-    `when`(customerCacheRepository.findById("123456789")).thenReturn(Mono.empty())
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
     `when`(customerWSClient.getCustomer("123456789")).thenReturn(null)
 
     // When
@@ -71,6 +131,38 @@ class CustomerServiceTest {
     assertThat(thrown).hasMessage("No result for the given customer id=123456789")
   }
 
+  @Test
+  fun `getCustomerInfo should remember the customer as not found when the customer web service does not find it`(): Unit =
+    runBlocking {
+      // Given the customer 123456789 cannot be found
+      `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+      `when`(customerWSClient.getCustomer("123456789")).thenReturn(null)
+
+      // When
+      assertFailsWith<NotFoundException> {
+        toTest.getCustomerInfo("123456789")
+      }
+
+      // Then
+      verify(customerNotFoundCache).putNotFound("123456789")
+    }
+
+  @Test
+  fun `getCustomerInfo should not call Customer web service when customer known as not found`(): Unit = runBlocking {
+    // Given the customer web service did not find the customer 123456789 lately
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(customerNotFoundCache.isNotFound("123456789")).thenReturn(Mono.just(true))
+
+    // When
+    assertFailsWith<NotFoundException> {
+      toTest.getCustomerInfo("123456789")
+    }
+
+    // Then
+    verify(customerWSClient, never()).getCustomer("123456789")
+    verify(customerNotFoundCache, never()).putNotFound("123456789")
+  }
+
   @Test
   fun `getCustomer should not call Customer web service when customer found in cache`(): Unit = runBlocking {
     // Given the cache does found the customer 123456789
@@ -89,8 +181,8 @@ class CustomerServiceTest {
         validityEndDate = LocalDate.MAX
       )
     )
-    `when`(customerCacheRepository.findById("123456789")).thenReturn(
-      Mono.just(expected)
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(
+      Mono.just(CustomerCacheEntry(expected, false))
     )
 
     // When I get the customer 123456789
@@ -98,14 +190,146 @@ class CustomerServiceTest {
 
     // Then
     assertThat(customerInfo).isEqualTo(expected)
-    verify(customerCacheRepository).findById("123456789")
+    verify(customerCacheRepository).findEntryById("123456789")
+    verify(customerWSClient, never()).getCustomer(anyString())
+  }
+
+  @Test
+  fun `getCustomerInfo should return stale customer from cache and refresh it in background`(): Unit = runBlocking {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    val stale = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
+    )
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.just(CustomerCacheEntry(stale, true)))
+    // and the WS knows a fresher one
+    `when`(customerWSClient.getCustomer("123456789"))
+      .thenReturn(
+        GetCustomerWSResponse(
+          id = "123456789",
+          personalInformation = PersonalInformation(
+            civility = null,
+            firstName = "Jack",
+            lastName = "Bower",
+            alive = null,
+            birthdate = null
+          ),
+          personalDetails = PersonalDetails(email = Email("jb@boom.com"), cell = null)
+        )
+      )
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+
+    // When I get the customer 123456789
+    val customerInfo = toTest.getCustomerInfo("123456789")
+
+    // Then the stale customer is served and the cache is refreshed
+    assertThat(customerInfo).isEqualTo(stale)
+    verify(customerWSClient, timeout(1000)).getCustomer("123456789")
+    verify(customerCacheRepository, timeout(1000)).saveAll(listOf(stale.copy(lastName = "Bower")))
+    assertThat(customerLocalCache.getIfPresent("123456789")).isEqualTo(stale.copy(lastName = "Bower"))
+  }
+
+  @Test
+  fun `getCustomerInfo should not refresh a stale customer another instance is refreshing`(): Unit = runBlocking {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    val stale = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
+    )
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.just(CustomerCacheEntry(stale, true)))
+    // and another instance holds its refresh lease
+    `when`(valueOperations.setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any()))
+      .thenReturn(Mono.just(false))
+
+    // When I get the customer 123456789
+    val customerInfo = customerService(refreshLease(true)).getCustomerInfo("123456789")
+
+    // Then the stale customer is served, and not refreshed
+    assertThat(customerInfo).isEqualTo(stale)
+    verify(valueOperations, timeout(1000)).setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any())
+    verify(customerWSClient, never()).getCustomer("123456789")
+  }
+
+  @Test
+  fun `getCustomerInfo should serve the customer saved by the instance holding its refresh lease`(): Unit = runBlocking {
+    // Given another instance holds the refresh lease of the customer 123456789, missing from the cache
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(valueOperations.setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any()))
+      .thenReturn(Mono.just(false))
+    // and saves it meanwhile
+    val refreshed = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
+    )
+    `when`(customerCacheRepository.findById("123456789")).thenReturn(Mono.just(refreshed))
+
+    // When I get the customer 123456789
+    val customerInfo = customerService(refreshLease(true)).getCustomerInfo("123456789")
+
+    // Then
+    assertThat(customerInfo).isEqualTo(refreshed)
+    verify(customerWSClient, never()).getCustomer("123456789")
+    assertThat(customerLocalCache.getIfPresent("123456789")).isEqualTo(refreshed)
+  }
+
+  @Test
+  fun `getCustomerInfo should release the refresh lease when the customer web service does not find the customer`(): Unit =
+    runBlocking {
+      // Given the refresh lease of the customer 123456789, missing from the cache, is acquired
+      `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+      `when`(valueOperations.setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any()))
+        .thenReturn(Mono.just(true))
+      `when`(redisTemplate.execute(any<RedisScript<Long>>(), anyList<String>(), anyList<Any>()))
+        .thenReturn(Flux.just(1L))
+      // and the customer web service cannot find it
+      `when`(customerWSClient.getCustomer("123456789")).thenReturn(null)
+
+      // When
+      assertFailsWith<NotFoundException> { customerService(refreshLease(true)).getCustomerInfo("123456789") }
+
+      // Then the instances waiting for the customer stop waiting
+      verify(redisTemplate)
+        .execute(any<RedisScript<Long>>(), eq(listOf("CustomerRefreshLease:123456789")), anyList<Any>())
+    }
+
+  @Test
+  fun `getCustomerInfo should neither call Redis nor Customer web service when customer found in local cache`(): Unit = runBlocking {
+    // Given the local cache does found the customer 123456789
+    val expected = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
+    )
+    customerLocalCache.put(expected)
+
+    // When I get the customer 123456789
+    val customerInfo = toTest.getCustomerInfo("123456789")
+
+    // Then
+    assertThat(customerInfo).isEqualTo(expected)
+    verify(customerCacheRepository, never()).findEntryById(anyString())
     verify(customerWSClient, never()).getCustomer(anyString())
   }
 
   @Test
   fun `getCustomerInfo should return customer from web service when customer not found in cache`(): Unit = runBlocking {
     // Given
-    `when`(customerCacheRepository.findById("123456789")).thenReturn(Mono.empty())
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
     // The WS is called
     `when`(customerWSClient.getCustomer("123456789"))
       .thenReturn(
@@ -121,7 +345,7 @@ class CustomerServiceTest {
           personalDetails = PersonalDetails(email = Email("jb@boom.com"), cell = null)
         )
       )
-    `when`(customerCacheRepository.save(any())).thenReturn(Mono.just(true))
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
 
     // When
     val customer = toTest.getCustomerInfo("123456789")
@@ -134,11 +358,163 @@ class CustomerServiceTest {
     assertThat(customer.phoneNumber).isNull()
     assertThat(customer.email).isEqualTo("jb@boom.com")
 
-    verify(customerCacheRepository).findById("123456789")
+    verify(customerCacheRepository).findEntryById("123456789")
     verify(customerWSClient).getCustomer("123456789")
-    verify(customerCacheRepository).save(customer)
+    verify(customerCacheRepository).saveAll(listOf(customer))
+  }
+
+  @Test
+  fun `getCustomerInfo should not wait for the customer to be saved in cache`(): Unit = runBlocking {
+    // Given the customer 123456789 is not in cache and Redis never answers the save
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(customerWSClient.getCustomer("123456789")).thenReturn(wsResponse("123456789"))
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.never())
+
+    // When
+    val customer = withTimeout(1000) { toTest.getCustomerInfo("123456789") }
+
+    // Then
+    assertThat(customer.customerId).isEqualTo("123456789")
+    verify(customerCacheRepository).saveAll(listOf(customer))
   }
 
+  @Test
+  fun `getCustomerInfo should call Customer web service once when concurrent calls miss the cache`(): Unit = runBlocking {
+    // Given the customer 123456789 is not in cache and telling whether it is known as not found is slow
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(customerWSClient.getCustomer("123456789"))
+      .thenReturn(
+        GetCustomerWSResponse(
+          id = "123456789",
+          personalInformation = PersonalInformation(
+            civility = null,
+            firstName = "Jack",
+            lastName = "Bower",
+            alive = null,
+            birthdate = null
+          ),
+          personalDetails = PersonalDetails(email = Email("jb@boom.com"), cell = null)
+        )
+      )
+    `when`(customerNotFoundCache.isNotFound("123456789")).thenReturn(Mono.just(false).delayElement(Duration.ofMillis(100)))
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+
+    // When I get the customer 123456789 twice at the same time
+    val customers = listOf(
+      async { toTest.getCustomerInfo("123456789") },
+      async { toTest.getCustomerInfo("123456789") }
+    ).awaitAll()
+
+    // Then both get the customer from a single web service call
+    assertThat(customers).hasSize(2).allMatch { it.customerId == "123456789" }
+    verify(customerWSClient).getCustomer("123456789")
+    verify(customerCacheRepository).saveAll(any())
+  }
+
+  @Test
+  fun `getCustomersInfo should get cached customers with one multi-get and only call web service for the others`(): Unit =
+    runBlocking {
+      // Given James is in the local cache, Jack in Redis, Kim is known by the web service only, Nina is unknown
+      // and the web service fails for Tony
+      val james = customer("James")
+      val jack = customer("Jack")
+      customerLocalCache.put(james)
+      `when`(customerCacheRepository.findAllByIds(listOf("Tony", "Nina", "Jack", "Kim")))
+        .thenReturn(Mono.just(mapOf("Jack" to jack)))
+      `when`(customerWSClient.getCustomer("Kim")).thenReturn(wsResponse("Kim"))
+      `when`(customerWSClient.getCustomer("Nina")).thenReturn(null)
+      `when`(customerWSClient.getCustomer("Tony")).thenAnswer {
+        throw WebServiceException(
+          webServiceName = "Customer",
+          httpStatusCode = HttpStatus.INTERNAL_SERVER_ERROR,
+          errorDescription = "boom"
+        )
+      }
+      `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+
+      // When
+      val batch = toTest.getCustomersInfo(listOf("Tony", "James", "Nina", "Jack", "Kim", "James"))
+
+      // Then the customers are in the asked order, each asked once
+      assertThat(batch.customers.map { it.customerId }).containsExactly("James", "Jack", "Kim")
+      assertThat(batch.notFound).containsExactly("Nina")
+      assertThat(batch.failed).containsExactly("Tony")
+      verify(customerWSClient, never()).getCustomer("James")
+      verify(customerWSClient, never()).getCustomer("Jack")
+      // and only the customer from the web service is cached, in a single call
+      verify(customerCacheRepository).saveAll(listOf(batch.customers[2]))
+      verify(customerCacheRepository, never()).save(any())
+    }
+
+  @Test
+  fun `getCustomersInfo should neither call Redis nor web service when all customers are in local cache`(): Unit =
+    runBlocking {
+      // Given
+      customerLocalCache.put(customer("James"))
+      customerLocalCache.put(customer("Jack"))
+
+      // When
+      val batch = toTest.getCustomersInfo(listOf("Jack", "James"))
+
+      // Then
+      assertThat(batch.customers.map { it.customerId }).containsExactly("Jack", "James")
+      assertThat(batch.notFound).isEmpty()
+      assertThat(batch.failed).isEmpty()
+      verifyNoInteractions(customerCacheRepository, customerWSClient)
+    }
+
+  @Test
+  fun `getCustomersInfo should not call web service for more than batch concurrency customers at once`(): Unit =
+    runBlocking {
+      // Given a slow web service which knows all the customers
+      val inFlight = AtomicInteger()
+      val maxInFlight = AtomicInteger()
+      val slowWebService = object : CustomerClient {
+        override suspend fun getCustomer(customerId: String): GetCustomerWSResponse? {
+          maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), ::maxOf)
+          delay(20)
+          inFlight.decrementAndGet()
+          return wsResponse(customerId)
+        }
+      }
+      val ids = (1..6).map { "customer$it" }
+      `when`(customerCacheRepository.findAllByIds(ids)).thenReturn(Mono.just(emptyMap()))
+      `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+      val service = CustomerServiceImpl(
+        slowWebService, customerCacheRepository, customerLocalCache, customerNotFoundCache,
+        customerPreferencesRepository, customerRequestCoalescer, customerCacheWriteBehind, refreshLease(false), 2
+      )
+
+      // When
+      val batch = service.getCustomersInfo(ids)
+
+      // Then
+      assertThat(batch.customers).hasSize(6)
+      assertThat(maxInFlight.get()).isEqualTo(2)
+    }
+
+  private fun customer(customerId: String) = Customer(
+    customerId = customerId,
+    firstName = customerId,
+    lastName = "Bauer",
+    phoneNumber = null,
+    email = null,
+    birthDate = null,
+    loyaltyProgram = null
+  )
+
+  private fun wsResponse(customerId: String) = GetCustomerWSResponse(
+    id = customerId,
+    personalInformation = PersonalInformation(
+      civility = null,
+      firstName = customerId,
+      lastName = "Bower",
+      alive = null,
+      birthdate = null
+    ),
+    personalDetails = PersonalDetails(email = Email("jb@boom.com"), cell = null)
+  )
+
   @Test
   fun `createCustomerPreferences should save with customerPreferencesRepository`(): Unit = runBlocking {
     // Given
@@ -1,21 +1,25 @@
 package com.prez.api
 
+import com.prez.api.dto.CustomerPreferencesProfileResponse
 import com.prez.exception.NotFoundException
 import com.prez.extension.toCustomerPreferencesProfileResponse
 import com.prez.model.CustomerPreferences
 import com.prez.service.CustomerService
 import kotlinx.coroutines.FlowPreview
-import kotlinx.coroutines.flow.count
-import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.reactive.awaitSingle
+import kotlinx.coroutines.reactor.asFlux
 import org.slf4j.LoggerFactory
+import org.springframework.http.MediaType
+import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.http.MediaType.APPLICATION_NDJSON
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
 import org.springframework.stereotype.Component
 import org.springframework.web.bind.annotation.CrossOrigin
 import org.springframework.web.reactive.function.server.ServerRequest
 import org.springframework.web.reactive.function.server.ServerResponse
 import org.springframework.web.reactive.function.server.ServerResponse.ok
 import org.springframework.web.reactive.function.server.awaitPrincipal
-import org.springframework.web.reactive.function.server.bodyAndAwait
-import org.springframework.web.reactive.function.server.json
+import reactor.core.publisher.Mono
 
 /**
  * This is the equivalent of our RestTemplate controller
@@ -25,6 +29,24 @@ class GetCustomerPreferencesHandler(private val customerService: CustomerService
 
   companion object {
     private val LOGGER = LoggerFactory.getLogger(GetCustomerPreferencesHandler::class.java)
+    private val STREAMING_MEDIA_TYPES = listOf(APPLICATION_NDJSON, TEXT_EVENT_STREAM)
+
+    /**
+     * The first streaming media type accepted, by order of preference of the client, or else JSON. With a streaming
+     * type, each preference is written and flushed as soon as read from Mongo (a JSON line or a server-sent event),
+     * the next ones being requested as the client reads them. A JSON array is only written once whole.
+     */
+    internal fun responseMediaType(request: ServerRequest): MediaType {
+      val accepted = request.headers().accept().toMutableList()
+      MediaType.sortBySpecificityAndQuality(accepted)
+      for (mediaType in accepted) {
+        STREAMING_MEDIA_TYPES.firstOrNull { it.equalsTypeAndSubtype(mediaType) }?.let { return it }
+        if (APPLICATION_JSON.isCompatibleWith(mediaType)) {
+          return APPLICATION_JSON
+        }
+      }
+      return APPLICATION_JSON
+    }
   }
 
   @FlowPreview
@@ -32,13 +54,20 @@ class GetCustomerPreferencesHandler(private val customerService: CustomerService
   suspend fun getCustomerPreferences(request: ServerRequest): ServerResponse {
     val principal = request.awaitPrincipal()!!
     LOGGER.info("getCustomerPreferences for user: {}", principal.name)
-    val customerPreferences = customerService.getCustomerPreferences(principal.name)
-    if (customerPreferences.count() < 1) {
-      throw NotFoundException(principal.name, "customer")
-    }
-    return ok().json().bodyAndAwait(
-      customerPreferences
-        .map(CustomerPreferences::toCustomerPreferencesProfileResponse)
-    )
+    return customerService.getCustomerPreferences(principal.name)
+      .asFlux()
+      // a single query: its first preference decides the status, and is replayed at the head of the body,
+      // which keeps reading the preferences once the response is emitted (cancelSourceOnComplete=false)
+      .switchOnFirst<ServerResponse>({ first, preferences ->
+        when {
+          first.hasValue() -> ok().contentType(responseMediaType(request)).body(
+            preferences.map(CustomerPreferences::toCustomerPreferencesProfileResponse),
+            CustomerPreferencesProfileResponse::class.java
+          )
+          first.hasError() -> Mono.error<ServerResponse>(first.throwable!!)
+          else -> Mono.error<ServerResponse>(NotFoundException(principal.name, "customer"))
+        }
+      }, false)
+      .awaitSingle()
   }
 }
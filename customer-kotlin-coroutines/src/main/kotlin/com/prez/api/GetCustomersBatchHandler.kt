@@ -0,0 +1,30 @@
+package com.prez.api
+
+import com.prez.api.dto.CustomersBatchRequest
+import com.prez.extension.awaitBodyAndValidate
+import com.prez.extension.toCustomersBatchResponse
+import com.prez.service.CustomerService
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.validation.Validator
+import org.springframework.web.reactive.function.server.ServerRequest
+import org.springframework.web.reactive.function.server.ServerResponse
+import org.springframework.web.reactive.function.server.ServerResponse.ok
+import org.springframework.web.reactive.function.server.bodyValueAndAwait
+import org.springframework.web.reactive.function.server.json
+
+/**
+ * Customers asked by id, for the back-office services which need many of them at once
+ */
+@Component
+class GetCustomersBatchHandler(val validator: Validator, val customerService: CustomerService) {
+
+  private val logger = LoggerFactory.getLogger(GetCustomersBatchHandler::class.java)
+
+  suspend fun getCustomersBatch(originalRequest: ServerRequest): ServerResponse {
+    val validBody: CustomersBatchRequest = originalRequest.awaitBodyAndValidate(validator)
+    logger.info("GetCustomersBatch : ${validBody.customerIds.size} customer ids")
+    val batch = customerService.getCustomersInfo(validBody.customerIds)
+    return ok().json().bodyValueAndAwait(batch.toCustomersBatchResponse())
+  }
+}
@@ -0,0 +1,9 @@
+package com.prez.api.dto
+
+data class CustomersBatchResponse(
+    val customers: List<CustomerResponse>,
+    // ids of the customers which do not exist
+    val notFound: List<String>,
+    // ids of the customers which could not be fetched, worth retrying
+    val failed: List<String>
+)
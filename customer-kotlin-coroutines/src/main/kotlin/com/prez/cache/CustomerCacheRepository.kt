@@ -4,7 +4,9 @@ import com.prez.model.Customer
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.data.redis.core.ReactiveRedisTemplate
+import org.springframework.data.redis.serializer.SerializationException
 import org.springframework.stereotype.Component
+import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
 import java.time.Duration
 
@@ -21,6 +23,14 @@ interface CustomerCacheRepository { /* extends ReactiveCrudRepository<Customer,
      */
     fun save(entity: Customer): Mono<Boolean>
 
+    /**
+     * Saves the given entities in a single round trip.
+     *
+     * @param entities must not be null.
+     * @return [Mono] emitting true if every entity has been set.
+     */
+    fun saveAll(entities: Collection<Customer>): Mono<Boolean>
+
     /**
      * Retrieves an entity by its id.
      *
@@ -30,12 +40,36 @@ interface CustomerCacheRepository { /* extends ReactiveCrudRepository<Customer,
      */
     fun findById(id: String): Mono<Customer>
 
+    /**
+     * Retrieves an entity by its id, telling whether it is past its soft time-to-live.
+     *
+     * @param id must not be null.
+     * @return [Mono] emitting the entry with the given id or [Mono.empty] if none found.
+     * @throws IllegalArgumentException in case the given `id` is null.
+     */
+    fun findEntryById(id: String): Mono<CustomerCacheEntry>
+
+    /**
+     * Retrieves the entities with the given ids in a single round trip.
+     *
+     * @param ids must not be null.
+     * @return [Mono] emitting the entities found by id, an id with no entity is missing from the map.
+     */
+    fun findAllByIds(ids: Collection<String>): Mono<Map<String, Customer>>
+
 }
 
+/**
+ * A customer read from the cache, flagged as stale once it is older than the soft time-to-live:
+ * it can still be served, but should be refreshed.
+ */
+data class CustomerCacheEntry(val customer: Customer, val stale: Boolean)
+
 @Component
 class CustomerCache(
     @Value("\${spring.redis.time-to-live.customer}") ttlSeconds: Long,
-    redisTemplate: ReactiveRedisTemplate<String, Customer>
+    @Value("\${spring.redis.time-to-live.customer-soft:\${spring.redis.time-to-live.customer}}") softTtlSeconds: Long,
+    private val redisTemplate: ReactiveRedisTemplate<String, Customer>
 ) : CustomerCacheRepository {
 
     companion object {
@@ -45,14 +79,68 @@ class CustomerCache(
 
     private val reactiveValueOps = redisTemplate.opsForValue();
     private val timeToLive = Duration.ofSeconds(ttlSeconds);
+    // an entry whose remaining time-to-live is below this threshold is older than the soft time-to-live
+    private val staleBelow = Duration.ofSeconds(maxOf(ttlSeconds - softTtlSeconds, 0))
 
     override fun save(entity: Customer): Mono<Boolean> {
         logger.debug("Saving in cache customer='$entity'")
         return reactiveValueOps.set("$customerKeyspaceName${entity.customerId}", entity, timeToLive)
     }
 
+    /**
+     * Every SET EX is written on the shared connection without waiting for the previous replies: the commands are
+     * pipelined and the whole batch costs a single round trip.
+     */
+    override fun saveAll(entities: Collection<Customer>): Mono<Boolean> {
+        logger.debug("Saving in cache ${entities.size} customers")
+        return Flux.fromIterable(entities)
+            .flatMap({ reactiveValueOps.set("$customerKeyspaceName${it.customerId}", it, timeToLive) },
+                maxOf(entities.size, 1))
+            .all { it }
+    }
+
     override fun findById(id: String): Mono<Customer> {
         logger.debug("Looking for customer in cache for id='$id'")
-        return reactiveValueOps.get("$customerKeyspaceName${id}");
+        return reactiveValueOps.get("$customerKeyspaceName${id}")
+            .onErrorResume(SerializationException::class.java) { unreadable(id, it) }
+    }
+
+    override fun findEntryById(id: String): Mono<CustomerCacheEntry> {
+        if (staleBelow.isZero) {
+            // soft time-to-live not shorter than the hard one: entries never get stale, no need to ask for their TTL
+            return findById(id).map { CustomerCacheEntry(it, false) }
+        }
+        logger.debug("Looking for customer and its time-to-live in cache for id='$id'")
+        val key = "$customerKeyspaceName${id}"
+        // both commands are pipelined on the shared connection
+        return Mono.zip(reactiveValueOps.get(key), redisTemplate.getExpire(key).defaultIfEmpty(Duration.ZERO))
+            .map { CustomerCacheEntry(it.t1, it.t2 < staleBelow) }
+            .onErrorResume(SerializationException::class.java) { unreadable(id, it) }
+    }
+
+    /**
+     * A single MGET for all the ids. Should one of the entries be unreadable, they are read again one by one so that
+     * only that one is treated as missing.
+     */
+    override fun findAllByIds(ids: Collection<String>): Mono<Map<String, Customer>> {
+        if (ids.isEmpty()) {
+            return Mono.just(emptyMap())
+        }
+        logger.debug("Looking for ${ids.size} customers in cache")
+        return reactiveValueOps.multiGet(ids.map { "$customerKeyspaceName$it" })
+            .map { customers ->
+                ids.zip(customers).mapNotNull { (id, customer) -> customer?.let { id to it } }.toMap()
+            }
+            .onErrorResume(SerializationException::class.java) {
+                Flux.fromIterable(ids).flatMap(::findById).collectMap { it.customerId }
+            }
+    }
+
+    /**
+     * An entry written in a format this version cannot read is just treated as missing, it will be overwritten.
+     */
+    private fun <T> unreadable(id: String, e: SerializationException): Mono<T> {
+        logger.warn("Unreadable customer in cache for id='$id', ignoring it", e)
+        return Mono.empty()
     }
 }
@@ -0,0 +1,23 @@
+package com.prez.cache
+
+import java.time.Duration
+
+/**
+ * Latency budget and circuit breaker of the Redis calls, see ResilientCustomerCache.
+ */
+data class CustomerCacheResilienceProperties(
+    // past this delay a read is cancelled and is a miss, a write is cancelled and given up
+    var readBudget: Duration = Duration.ofMillis(50),
+    var writeBudget: Duration = Duration.ofMillis(200),
+    var circuitBreaker: CircuitBreaker = CircuitBreaker()
+) {
+
+    data class CircuitBreaker(
+        // percentage of calls past their budget or failed, among the last sliding-window-size ones, opening the circuit
+        var failureRateThreshold: Float = 50f,
+        var slidingWindowSize: Int = 20,
+        var minimumNumberOfCalls: Int = 10,
+        var waitDurationInOpenState: Duration = Duration.ofSeconds(5),
+        var permittedNumberOfCallsInHalfOpenState: Int = 3
+    )
+}
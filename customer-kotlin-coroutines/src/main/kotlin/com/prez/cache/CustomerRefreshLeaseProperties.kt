@@ -0,0 +1,16 @@
+package com.prez.cache
+
+import java.time.Duration
+
+/**
+ * Lease on the customer web service call for a customer, shared by the instances through Redis, see
+ * CustomerRefreshLease.
+ */
+data class CustomerRefreshLeaseProperties(
+    var enabled: Boolean = false,
+    // kept until it expires once the customer is fetched, so that it is saved in Redis behind the response meanwhile
+    var leaseTime: Duration = Duration.ofSeconds(2),
+    // an instance not holding the lease waits at most this long for the customer, then calls the web service itself
+    var maxWait: Duration = Duration.ofMillis(500),
+    var pollInterval: Duration = Duration.ofMillis(20)
+)
@@ -0,0 +1,31 @@
+package com.prez.cache
+
+import com.prez.lib.limit.LatencyBudget
+import com.prez.model.Customer
+import reactor.core.publisher.Mono
+
+/**
+ * Decorates the customer cache with the Redis latency budget, see LatencyBudget: a read past its budget, failed or
+ * refused by the Redis circuit breaker is a miss, so that the customer web service is called instead of failing the
+ * request, and such a write is given up, the customer being saved again on the next miss.
+ */
+class ResilientCustomerCache(
+    private val delegate: CustomerCacheRepository,
+    budget: LatencyBudget
+) : CustomerCacheRepository {
+
+    private val gets = budget.operation("customer.get")
+    private val puts = budget.operation("customer.put")
+
+    override fun save(entity: Customer): Mono<Boolean> = puts.write(delegate.save(entity))
+
+    override fun saveAll(entities: Collection<Customer>): Mono<Boolean> = puts.write(delegate.saveAll(entities))
+
+    override fun findById(id: String): Mono<Customer> = gets.read(delegate.findById(id))
+
+    override fun findEntryById(id: String): Mono<CustomerCacheEntry> = gets.read(delegate.findEntryById(id))
+
+    // past the budget, every customer is a miss
+    override fun findAllByIds(ids: Collection<String>): Mono<Map<String, Customer>> =
+        gets.read(delegate.findAllByIds(ids)).defaultIfEmpty(emptyMap())
+}
@@ -1,27 +1,67 @@
 package com.prez.config
 
 import brave.SpanCustomizer
+import com.prez.lib.coalescing.RequestCoalescer
+import com.prez.lib.http.ConnectionPoolMeterRegistrar
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter
 import com.prez.lib.tracing.ResponseMarkerFilter
 import com.prez.lib.tracing.SpanCustomizationWebClientFilter
+import com.prez.model.Customer
+import com.prez.ws.CustomerClient
 import com.prez.ws.CustomerWSClient
+import com.prez.ws.CustomerWSHttpProperties
+import com.prez.ws.CustomerWSLimitProperties
 import com.prez.ws.CustomerWSProperties
+import com.prez.ws.CustomerWSResilienceProperties
+import com.prez.ws.LimitedCustomerClient
+import com.prez.ws.ResilientCustomerClient
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics
+import io.micrometer.core.instrument.Counter
 import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import io.netty.channel.ChannelOption
+import io.netty.handler.timeout.ReadTimeoutHandler
+import io.netty.handler.timeout.WriteTimeoutHandler
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.boot.context.properties.ConfigurationProperties
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Primary
 import org.springframework.http.HttpHeaders.ACCEPT
 import org.springframework.http.HttpHeaders.CONTENT_TYPE
 import org.springframework.http.MediaType.APPLICATION_JSON_VALUE
+import org.springframework.http.client.reactive.ReactorClientHttpConnector
 import org.springframework.web.reactive.function.client.WebClient
+import reactor.netty.http.HttpProtocol
+import reactor.netty.http.client.HttpClient
+import reactor.netty.resources.ConnectionProvider
+import java.util.concurrent.TimeUnit.MILLISECONDS
 import javax.validation.constraints.NotBlank
 
+/**
+ * The customer web service calls go through a circuit breaker, a deadline and an adaptive concurrency limit, see
+ * ResilientCustomerClient and LimitedCustomerClient. The circuit breaker is exported as resilience4j.* metrics, its
+ * state transitions are counted too, the limit as concurrency.limit.* metrics.
+ */
 @Configuration
 @ConfigurationProperties(prefix = "customer.ws")
 class CustomerWebServiceConfig {
 
+  private val logger = LoggerFactory.getLogger(CustomerWebServiceConfig::class.java)
+
   @NotBlank
   lateinit var url: String
 
+  var http = CustomerWSHttpProperties()
+
+  var limit = CustomerWSLimitProperties()
+
+  var resilience = CustomerWSResilienceProperties()
+
   @Bean
   internal fun CustomerWebServiceConfig(): CustomerWSProperties {
     return CustomerWSProperties(
@@ -29,13 +69,27 @@ class CustomerWebServiceConfig {
     )
   }
 
+  @Bean(destroyMethod = "dispose")
+  internal fun customerWsConnectionProvider(meterRegistry: MeterRegistry): ConnectionProvider =
+    ConnectionProvider.builder("customer-ws")
+      .maxConnections(http.maxConnections)
+      .pendingAcquireMaxCount(http.pendingAcquireMaxCount)
+      .pendingAcquireTimeout(http.pendingAcquireTimeout)
+      .maxIdleTime(http.maxIdleTime)
+      .maxLifeTime(http.maxLifeTime)
+      .evictInBackground(http.evictionInterval)
+      .metrics(true) { ConnectionPoolMeterRegistrar(meterRegistry) }
+      .build()
+
   @Bean
   internal fun customerWsClient(
     properties: CustomerWSProperties,
+    customerWsConnectionProvider: ConnectionProvider,
     customerWSSummary: DistributionSummary,
     spanCustomizer: SpanCustomizer
   ): CustomerWSClient {
     val webClient = WebClient.builder()
+      .clientConnector(ReactorClientHttpConnector(httpClient(customerWsConnectionProvider)))
       .defaultHeader(ACCEPT, APPLICATION_JSON_VALUE)
       .defaultHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE)
       .filter(SpanCustomizationWebClientFilter("CustomerWS", spanCustomizer))
@@ -44,4 +98,78 @@ class CustomerWebServiceConfig {
 
     return CustomerWSClient(properties, webClient)
   }
+
+  @Bean
+  internal fun customerWSLimiter(meterRegistry: MeterRegistry): AdaptiveConcurrencyLimiter =
+    AdaptiveConcurrencyLimiter(
+      "customer-ws", limit.initialLimit, limit.minLimit, limit.maxLimit, limit.backoffRatio, limit.latencyTolerance,
+      meterRegistry
+    )
+
+  @Bean
+  internal fun customerWSCircuitBreaker(meterRegistry: MeterRegistry): CircuitBreaker {
+    val circuitBreaker = resilience.circuitBreaker
+    val registry = CircuitBreakerRegistry.of(
+      CircuitBreakerConfig.custom()
+        .failureRateThreshold(circuitBreaker.failureRateThreshold)
+        .slidingWindowSize(circuitBreaker.slidingWindowSize)
+        .minimumNumberOfCalls(circuitBreaker.minimumNumberOfCalls)
+        .waitDurationInOpenState(circuitBreaker.waitDurationInOpenState)
+        .permittedNumberOfCallsInHalfOpenState(circuitBreaker.permittedNumberOfCallsInHalfOpenState)
+        // same failures as the ResponseMarkerFilter ones: a 4xx answer means the web service is up
+        .recordException { ResilientCustomerClient.isFailure(it) }
+        .build()
+    )
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry)
+    return registry.circuitBreaker("customerWS").apply {
+      eventPublisher.onStateTransition { event ->
+        logger.warn("Customer web service circuit breaker ${event.stateTransition}")
+        Counter.builder("customer.webservice.circuitbreaker.transitions")
+          .description("Number of state transitions of the customer web service circuit breaker")
+          .tag("from", event.stateTransition.fromState.name)
+          .tag("to", event.stateTransition.toState.name)
+          .register(meterRegistry)
+          .increment()
+      }
+    }
+  }
+
+  @Bean
+  @Primary
+  internal fun resilientCustomerClient(
+    customerWsClient: CustomerWSClient,
+    customerWSLimiter: AdaptiveConcurrencyLimiter,
+    @Qualifier("customerWSCircuitBreaker") customerWSCircuitBreaker: CircuitBreaker,
+    meterRegistry: MeterRegistry
+  ): CustomerClient = ResilientCustomerClient(
+    LimitedCustomerClient(customerWsClient, customerWSLimiter), customerWSCircuitBreaker, resilience, meterRegistry
+  )
+
+  private fun httpClient(connectionProvider: ConnectionProvider): HttpClient {
+    val httpClient = HttpClient.create(connectionProvider)
+      .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, http.connectTimeout.toMillis().toInt())
+      .option(ChannelOption.SO_KEEPALIVE, http.keepAlive)
+      .keepAlive(http.keepAlive)
+      .responseTimeout(http.responseTimeout)
+      .compress(http.compression)
+      // handlers added to a connection are removed when it goes back to the pool, so an idle one never times out
+      .doOnRequest { _, connection ->
+        connection.addHandlerLast(WriteTimeoutHandler(http.writeTimeout.toMillis(), MILLISECONDS))
+      }
+      .doOnResponse { _, connection ->
+        connection.addHandlerLast(ReadTimeoutHandler(http.readTimeout.toMillis(), MILLISECONDS))
+      }
+    return when {
+      !http.http2 -> httpClient
+      url.startsWith("https") -> httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+      else -> httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11)
+    }
+  }
+
+  @Bean
+  internal fun customerRequestCoalescer(
+    @Qualifier("customerWSCoalescedCounter") customerWSCoalescedCounter: Counter
+  ): RequestCoalescer<Customer> {
+    return RequestCoalescer(customerWSCoalescedCounter)
+  }
 }
@@ -1,9 +1,11 @@
 package com.prez.extension
 
 import com.prez.api.dto.CustomerResponse
+import com.prez.api.dto.CustomersBatchResponse
 import com.prez.api.dto.LoyaltyProgramResponse
 import com.prez.api.dto.RailPassResponse
 import com.prez.model.Customer
+import com.prez.model.CustomerBatch
 import com.prez.model.LoyaltyProgram
 import com.prez.model.RailPass
 import java.time.LocalDate
@@ -25,6 +27,13 @@ fun Customer.toCustomerResponse() =
     railPasses = railPasses.map { it.toRailPassResponse() }
   )
 
+fun CustomerBatch.toCustomersBatchResponse() =
+  CustomersBatchResponse(
+    customers = customers.map { it.toCustomerResponse() },
+    notFound = notFound,
+    failed = failed
+  )
+
 fun LoyaltyProgram.toLoyaltyProgramResponse(): LoyaltyProgramResponse? =
   LoyaltyProgramResponse(
     number = number,
@@ -0,0 +1,52 @@
+package com.prez.lib.http
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import reactor.netty.resources.ConnectionPoolMetrics
+import reactor.netty.resources.ConnectionProvider
+import java.net.InetSocketAddress
+import java.net.SocketAddress
+
+/**
+ * Exports the state of each Reactor Netty connection pool (one per remote address) as gauges in the given registry,
+ * rather than in the global one Reactor Netty uses on its own.
+ */
+class ConnectionPoolMeterRegistrar(private val meterRegistry: MeterRegistry) : ConnectionProvider.MeterRegistrar {
+
+  companion object {
+    const val ACTIVE = "http.client.pool.active"
+    const val IDLE = "http.client.pool.idle"
+    const val PENDING = "http.client.pool.pending"
+    const val ALLOCATED = "http.client.pool.allocated"
+  }
+
+  override fun registerMetrics(
+    poolName: String,
+    id: String,
+    remoteAddress: SocketAddress,
+    metrics: ConnectionPoolMetrics
+  ) {
+    val tags = Tags.of("pool", poolName, "remote.address", address(remoteAddress))
+    Gauge.builder(ACTIVE, metrics) { it.acquiredSize().toDouble() }
+      .description("Connections in use")
+      .tags(tags)
+      .register(meterRegistry)
+    Gauge.builder(IDLE, metrics) { it.idleSize().toDouble() }
+      .description("Connections waiting in the pool to be used")
+      .tags(tags)
+      .register(meterRegistry)
+    Gauge.builder(PENDING, metrics) { it.pendingAcquireSize().toDouble() }
+      .description("Calls waiting for a connection")
+      .tags(tags)
+      .register(meterRegistry)
+    Gauge.builder(ALLOCATED, metrics) { it.allocatedSize().toDouble() }
+      .description("Connections opened, in use or idle")
+      .tags(tags)
+      .register(meterRegistry)
+  }
+
+  private fun address(remoteAddress: SocketAddress): String =
+    if (remoteAddress is InetSocketAddress) "${remoteAddress.hostString}:${remoteAddress.port}"
+    else remoteAddress.toString()
+}
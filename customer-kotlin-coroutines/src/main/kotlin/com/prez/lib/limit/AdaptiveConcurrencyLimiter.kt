@@ -0,0 +1,130 @@
+package com.prez.lib.limit
+
+import io.micrometer.core.instrument.FunctionCounter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * AIMD limit of the calls in progress to a remote service, a call over the limit is rejected right away.
+ * - The limit grows by one every "limit" calls as long as they are answered as fast as usual and the limit is
+ * really used, ie at least half of it is in progress.
+ * - It is multiplied by the backoff ratio on a failed call, or on a call slower than the latency tolerance times
+ * the usual latency, an exponential moving average of the latencies. It shrinks once per wave of calls: the calls
+ * started before the last decrease do not shrink it again.
+ *
+ * Exports the limit, the calls in progress and the rejected calls, tagged with the given name.
+ */
+class AdaptiveConcurrencyLimiter(
+  name: String,
+  initialLimit: Int,
+  private val minLimit: Int,
+  private val maxLimit: Int,
+  private val backoffRatio: Double,
+  private val latencyTolerance: Double,
+  meterRegistry: MeterRegistry
+) {
+
+  companion object {
+    // weight of the last latency in the usual latency
+    private const val SMOOTHING = 0.05
+  }
+
+  private val inProgress = AtomicInteger()
+  private val rejected = AtomicLong()
+
+  // read on every call, written under the lock only
+  @Volatile
+  var limit: Int = initialLimit
+    private set
+  private var exactLimit: Double = initialLimit.toDouble()
+  private var usualLatencyNanos: Double = 0.0
+  private var lastDecreaseNanos: Long = System.nanoTime()
+
+  init {
+    require(minLimit in 1..initialLimit && initialLimit <= maxLimit) {
+      "Expected 1 <= minLimit <= initialLimit <= maxLimit, got $minLimit, $initialLimit, $maxLimit"
+    }
+    Gauge.builder("concurrency.limit", this) { it.limit.toDouble() }
+      .description("Calls in progress allowed at most")
+      .tag("name", name)
+      .register(meterRegistry)
+    Gauge.builder("concurrency.limit.in.progress", inProgress) { it.get().toDouble() }
+      .description("Calls in progress")
+      .tag("name", name)
+      .register(meterRegistry)
+    FunctionCounter.builder("concurrency.limit.rejected", rejected) { it.get().toDouble() }
+      .description("Calls rejected because the limit was reached")
+      .tag("name", name)
+      .register(meterRegistry)
+  }
+
+  val inProgressCount: Int
+    get() = inProgress.get()
+
+  /**
+   * @return false when the limit is reached, otherwise the call must be followed by one of the on* methods
+   */
+  fun tryAcquire(): Boolean {
+    while (true) {
+      val current = inProgress.get()
+      if (current >= limit) {
+        rejected.incrementAndGet()
+        return false
+      }
+      if (inProgress.compareAndSet(current, current + 1)) {
+        return true
+      }
+    }
+  }
+
+  /**
+   * @param startNanos System.nanoTime() when the call started
+   */
+  fun onSuccess(startNanos: Long) {
+    val now = System.nanoTime()
+    val latencyNanos = now - startNanos
+    val inProgressBefore = inProgress.getAndDecrement()
+    synchronized(this) {
+      val slow = usualLatencyNanos > 0 && latencyNanos > usualLatencyNanos * latencyTolerance
+      usualLatencyNanos =
+        if (usualLatencyNanos == 0.0) latencyNanos.toDouble()
+        else usualLatencyNanos + SMOOTHING * (latencyNanos - usualLatencyNanos)
+      if (slow) {
+        decrease(startNanos, now)
+      } else if (inProgressBefore * 2 >= exactLimit) {
+        exactLimit = minOf(maxLimit.toDouble(), exactLimit + 1 / exactLimit)
+        limit = exactLimit.toInt()
+      }
+    }
+  }
+
+  /**
+   * For a failed call: a 5xx response, a timeout, an unreachable service...
+   *
+   * @param startNanos System.nanoTime() when the call started
+   */
+  fun onDropped(startNanos: Long) {
+    inProgress.decrementAndGet()
+    synchronized(this) {
+      decrease(startNanos, System.nanoTime())
+    }
+  }
+
+  /**
+   * For a call which tells nothing about the remote service, a cancelled one for instance.
+   */
+  fun onIgnored() {
+    inProgress.decrementAndGet()
+  }
+
+  private fun decrease(startNanos: Long, now: Long) {
+    if (startNanos - lastDecreaseNanos < 0) {
+      return
+    }
+    lastDecreaseNanos = now
+    exactLimit = maxOf(minLimit.toDouble(), exactLimit * backoffRatio)
+    limit = exactLimit.toInt()
+  }
+}
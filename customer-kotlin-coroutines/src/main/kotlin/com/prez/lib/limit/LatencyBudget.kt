@@ -0,0 +1,94 @@
+package com.prez.lib.limit
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.util.concurrent.TimeUnit.NANOSECONDS
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Calls a datastore within a latency budget, one for the reads and one for the writes, behind a circuit breaker.
+ * A call past its budget is cancelled: like a failed one or one refused by the circuit breaker, a read is then empty
+ * and a write false. A slow datastore costs its callers the budget at most, a down one nothing at all once the circuit
+ * is open.
+ *
+ * The calls past the budget and the failed ones are failures for the circuit breaker, which opens after repeated ones
+ * and lets a few calls through again once its wait duration in open state is over.
+ * Outcomes are counted in Micrometer under "budget.calls" with the given name, the operation and the result, see
+ * [operation].
+ */
+class LatencyBudget(
+  private val name: String,
+  private val readBudget: Duration,
+  private val writeBudget: Duration,
+  private val circuitBreaker: CircuitBreaker,
+  private val meterRegistry: MeterRegistry
+) {
+
+  private val logger = LoggerFactory.getLogger(LatencyBudget::class.java)
+
+  /**
+   * @param operation tags the calls of the operation, its counters are registered once here: to be kept by the caller
+   */
+  fun operation(operation: String) = Operation(operation)
+
+  inner class Operation internal constructor(private val operation: String) {
+
+    private val success = count("success")
+    private val timeout = count("timeout")
+    private val error = count("error")
+    private val circuitOpen = count("circuit-open")
+
+    private fun count(result: String) = Counter.builder("budget.calls")
+      .description("Calls within a latency budget, by result")
+      .tag("name", name)
+      .tag("operation", operation)
+      .tag("result", result)
+      .register(meterRegistry)
+
+    /**
+     * @return [Mono] emitting what the read emitted, empty when it could not be done within the read budget
+     */
+    fun <T> read(read: Mono<T>): Mono<T> = call(readBudget, read, Mono.empty())
+
+    /**
+     * @return [Mono] emitting what the write emitted, false when it could not be done within the write budget
+     */
+    fun write(write: Mono<Boolean>): Mono<Boolean> = call(writeBudget, write, Mono.just(false))
+
+    private fun <T> call(budget: Duration, call: Mono<T>, fallback: Mono<T>): Mono<T> = Mono.defer {
+      if (!circuitBreaker.tryAcquirePermission()) {
+        circuitOpen.increment()
+        return@defer fallback
+      }
+      val start = System.nanoTime()
+      val done = AtomicBoolean()
+      call.timeout(budget)
+        .doOnSuccess {
+          done.set(true)
+          circuitBreaker.onSuccess(System.nanoTime() - start, NANOSECONDS)
+          success.increment()
+        }
+        .onErrorResume {
+          done.set(true)
+          circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, it)
+          if (it is TimeoutException) {
+            logger.debug("$name $operation over its ${budget.toMillis()}ms budget")
+            timeout.increment()
+          } else {
+            logger.warn("$name $operation failed", it)
+            error.increment()
+          }
+          fallback
+        }
+        .doOnCancel {
+          // given up by the caller before the outcome: neither a success nor a failure
+          if (!done.get()) circuitBreaker.releasePermission()
+        }
+    }
+  }
+}
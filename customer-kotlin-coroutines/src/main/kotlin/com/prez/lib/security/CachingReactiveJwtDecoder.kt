@@ -0,0 +1,109 @@
+package com.prez.lib.security
+
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.Expiry
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics
+import org.springframework.security.oauth2.jwt.Jwt
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder
+import reactor.core.publisher.Mono
+import java.security.MessageDigest
+import java.time.Duration
+import java.time.Instant
+import java.util.Base64
+import java.util.concurrent.TimeUnit.NANOSECONDS
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Keeps the tokens already verified, so that a client sending the same token again and again costs neither a parsing
+ * nor a signature verification. The cache is keyed by a SHA-256 of the token, not the token itself, and an entry never
+ * outlives the expiration of its token. A token failing the verification is never cached, nor a token whose
+ * verification overlapped an invalidateAll: it may have been verified with a key no longer in use.
+ *
+ * Hit/miss/eviction stats are exposed in Micrometer under the "jwt" cache name, the time to verify a token not found
+ * in cache as the jwt.verification timer.
+ */
+class CachingReactiveJwtDecoder(
+  private val delegate: ReactiveJwtDecoder,
+  maximumSize: Long,
+  maxTimeToLive: Duration,
+  meterRegistry: MeterRegistry
+) : ReactiveJwtDecoder {
+
+  companion object {
+    internal const val cacheName = "jwt"
+
+    internal fun hash(token: String): String =
+      Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(token.toByteArray(Charsets.US_ASCII)))
+  }
+
+  private val cache: Cache<String, Jwt> = Caffeine.newBuilder()
+    .maximumSize(maximumSize)
+    .expireAfter(UntilExpiration(maxTimeToLive))
+    .recordStats()
+    .build()
+
+  private val verifications = Timer.builder("jwt.verification")
+    .description("Time to parse and verify a token not found in cache")
+    .register(meterRegistry)
+
+  // incremented by invalidateAll
+  private val generation = AtomicLong()
+
+  init {
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName)
+  }
+
+  override fun decode(token: String): Mono<Jwt> = Mono.defer {
+    val key = hash(token)
+    val cached = cache.getIfPresent(key)
+    if (cached != null) {
+      return@defer Mono.just(cached)
+    }
+    val verifiedGeneration = generation.get()
+    val start = System.nanoTime()
+    delegate.decode(token)
+      .doOnNext {
+        verifications.record(System.nanoTime() - start, NANOSECONDS)
+        cacheUnlessInvalidated(key, it, verifiedGeneration)
+      }
+      .doOnError { verifications.record(System.nanoTime() - start, NANOSECONDS) }
+  }
+
+  /**
+   * Forgets every token, the next ones are verified again.
+   */
+  fun invalidateAll() {
+    generation.incrementAndGet()
+    cache.invalidateAll()
+  }
+
+  private fun cacheUnlessInvalidated(key: String, jwt: Jwt, verifiedGeneration: Long) {
+    if (generation.get() == verifiedGeneration) {
+      cache.put(key, jwt)
+      // invalidated between the check and the put
+      if (generation.get() != verifiedGeneration) {
+        cache.invalidate(key)
+      }
+    }
+  }
+
+  private class UntilExpiration(maxTimeToLive: Duration) : Expiry<String, Jwt> {
+
+    private val maxTimeToLiveNanos = maxTimeToLive.toNanos()
+
+    override fun expireAfterCreate(key: String, jwt: Jwt, currentTime: Long): Long {
+      val expiresAt = jwt.expiresAt ?: return maxTimeToLiveNanos
+      val untilExpiration = Duration.between(Instant.now(), expiresAt).toNanos()
+      return untilExpiration.coerceIn(0, maxTimeToLiveNanos)
+    }
+
+    override fun expireAfterUpdate(key: String, jwt: Jwt, currentTime: Long, currentDuration: Long): Long =
+      expireAfterCreate(key, jwt, currentTime)
+
+    override fun expireAfterRead(key: String, jwt: Jwt, currentTime: Long, currentDuration: Long): Long =
+      currentDuration
+  }
+}
@@ -0,0 +1,30 @@
+package com.prez.ws
+
+import java.time.Duration
+
+/**
+ * Connection pool and HTTP settings of the client calling the customer web service.
+ */
+data class CustomerWSHttpProperties(
+  // connections opened at most to the customer web service
+  var maxConnections: Int = 50,
+  // calls waiting for a connection at most, the next ones fail right away
+  var pendingAcquireMaxCount: Int = 100,
+  var pendingAcquireTimeout: Duration = Duration.ofSeconds(2),
+  // idle connections are closed past this delay, before the server or a load balancer does it on our back
+  var maxIdleTime: Duration = Duration.ofSeconds(20),
+  var maxLifeTime: Duration = Duration.ofMinutes(5),
+  // how often the pool looks for connections to close, zero to only check them when acquired
+  var evictionInterval: Duration = Duration.ofSeconds(30),
+  var connectTimeout: Duration = Duration.ofSeconds(1),
+  // time to get the response headers
+  var responseTimeout: Duration = Duration.ofSeconds(2),
+  // time without any byte read from / written to the connection while a call is in progress
+  var readTimeout: Duration = Duration.ofSeconds(2),
+  var writeTimeout: Duration = Duration.ofSeconds(2),
+  var keepAlive: Boolean = true,
+  // h2 with a fallback to http/1.1: negotiated through ALPN over TLS, through an upgrade (h2c) otherwise
+  var http2: Boolean = false,
+  // asks for gzip responses
+  var compression: Boolean = false
+)
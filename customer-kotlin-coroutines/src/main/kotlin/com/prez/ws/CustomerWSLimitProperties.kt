@@ -0,0 +1,15 @@
+package com.prez.ws
+
+/**
+ * Adaptive limit of the calls in progress to the customer web service, see AdaptiveConcurrencyLimiter.
+ */
+data class CustomerWSLimitProperties(
+  var initialLimit: Int = 20,
+  var minLimit: Int = 2,
+  // no use going past the connections of the pool
+  var maxLimit: Int = 50,
+  // the limit is multiplied by this ratio on a failed or slow call
+  var backoffRatio: Double = 0.9,
+  // a call slower than this many times the usual latency shrinks the limit
+  var latencyTolerance: Double = 2.0
+)
@@ -0,0 +1,56 @@
+package com.prez.ws
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter
+import com.prez.ws.model.GetCustomerWSResponse
+import kotlinx.coroutines.CancellationException
+import org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Calls the customer web service within an adaptive limit of the calls in progress, see AdaptiveConcurrencyLimiter:
+ * the calls over the limit fail right away with a 503 WebServiceException instead of waiting for a connection.
+ * Same failures as ResponseMarkerFilter: 5xx responses and errors, a 4xx response means the web service is up. A call
+ * cancelled past its [CallDeadline] is a failed one too, any other cancelled call tells nothing about the web service.
+ */
+class LimitedCustomerClient(
+  private val delegate: CustomerClient,
+  private val limiter: AdaptiveConcurrencyLimiter
+) : CustomerClient {
+
+  override suspend fun getCustomer(customerId: String): GetCustomerWSResponse? {
+    if (!limiter.tryAcquire()) {
+      throw WebServiceException(
+        LIMIT_REACHED, "CUSTOMER_WS", SERVICE_UNAVAILABLE,
+        "${limiter.limit} calls in progress, customer web service not called for customerId=$customerId"
+      )
+    }
+    val start = System.nanoTime()
+    try {
+      val response = delegate.getCustomer(customerId)
+      limiter.onSuccess(start)
+      return response
+    } catch (e: CancellationException) {
+      val pastDeadline = coroutineContext[CallDeadline]?.let { System.nanoTime() - it.nanoTime >= 0 } ?: false
+      if (pastDeadline) limiter.onDropped(start) else limiter.onIgnored()
+      throw e
+    } catch (e: Exception) {
+      if (isFailure(e)) limiter.onDropped(start) else limiter.onSuccess(start)
+      throw e
+    }
+  }
+
+  companion object {
+    const val LIMIT_REACHED = "CUSTOMER_WS_LIMIT_REACHED"
+
+    fun isFailure(e: Throwable) = e !is WebServiceException || e.httpStatusCode.is5xxServerError
+  }
+}
+
+/**
+ * System.nanoTime() past which ResilientCustomerClient cancels the call.
+ */
+class CallDeadline(val nanoTime: Long) : AbstractCoroutineContextElement(CallDeadline) {
+  companion object Key : CoroutineContext.Key<CallDeadline>
+}
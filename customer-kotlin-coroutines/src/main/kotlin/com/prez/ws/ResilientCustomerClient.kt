@@ -0,0 +1,137 @@
+package com.prez.ws
+
+import com.prez.ws.model.GetCustomerWSResponse
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.selects.select
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeout
+import kotlinx.coroutines.withTimeoutOrNull
+import org.slf4j.LoggerFactory
+import org.springframework.http.HttpStatus.GATEWAY_TIMEOUT
+import org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE
+import java.time.Duration
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.TimeUnit.NANOSECONDS
+
+/**
+ * Decorates the limited customer web service client, see LimitedCustomerClient, with:
+ * - a circuit breaker, which counts as failures the same calls as ResponseMarkerFilter: 5xx responses and errors, plus
+ * the calls past the deadline,
+ * - a deadline, past which the call is cancelled instead of waiting for the http client timeouts,
+ * - optionally a hedged call, sent when the first one lasts longer than a percentile of the latencies: the first
+ * response wins, the other call is cancelled.
+ *
+ * A call refused by the circuit breaker is not sent at all, it fails right away with a 503 WebServiceException. A call
+ * refused by the limit is not counted by the circuit breaker.
+ */
+class ResilientCustomerClient(
+  private val delegate: CustomerClient,
+  private val circuitBreaker: CircuitBreaker,
+  properties: CustomerWSResilienceProperties,
+  meterRegistry: MeterRegistry
+) : CustomerClient {
+
+  private val logger = LoggerFactory.getLogger(ResilientCustomerClient::class.java)
+
+  private val deadline = properties.deadline
+  private val hedging = properties.hedging
+  private val latencies = Timer.builder("customer.webservice.latency")
+    .description("Latency of the successful customer web service calls")
+    .publishPercentiles(hedging.percentile)
+    .distributionStatisticExpiry(Duration.ofMinutes(1))
+    .register(meterRegistry)
+  private val hedgedCalls = Counter.builder("customer.webservice.hedged")
+    .description("Number of customer web service calls sent again because the first one was too slow")
+    .register(meterRegistry)
+
+  override suspend fun getCustomer(customerId: String): GetCustomerWSResponse? {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      throw WebServiceException(
+        "CUSTOMER_WS_CIRCUIT_OPEN", "CUSTOMER_WS", SERVICE_UNAVAILABLE,
+        "Circuit breaker ${circuitBreaker.state}, customer web service not called for customerId=$customerId"
+      )
+    }
+    val start = System.nanoTime()
+    try {
+      val response = try {
+        // so that the limit shrinks for the calls cancelled by the deadline
+        withContext(CallDeadline(start + deadline.toNanos())) {
+          withTimeout(deadline.toMillis()) { if (hedging.enabled) hedged(customerId) else timed(customerId) }
+        }
+      } catch (e: TimeoutCancellationException) {
+        throw WebServiceException(
+          "CUSTOMER_WS_GET_CUSTOMER_ERROR", "CUSTOMER_WS", GATEWAY_TIMEOUT,
+          "No response within ${deadline.toMillis()}ms for customerId=$customerId"
+        )
+      }
+      circuitBreaker.onSuccess(System.nanoTime() - start, NANOSECONDS)
+      return response
+    } catch (e: CancellationException) {
+      circuitBreaker.releasePermission()
+      throw e
+    } catch (e: Exception) {
+      if (isLimitReached(e)) circuitBreaker.releasePermission()
+      else circuitBreaker.onError(System.nanoTime() - start, NANOSECONDS, e)
+      throw e
+    }
+  }
+
+  private suspend fun timed(customerId: String): GetCustomerWSResponse? {
+    val start = System.nanoTime()
+    val response = delegate.getCustomer(customerId)
+    latencies.record(System.nanoTime() - start, NANOSECONDS)
+    return response
+  }
+
+  /**
+   * The first response wins, the result fails only when both calls failed, with the error of the first one: a hedged
+   * call refused by the limit leaves the first one decide. The hedged call is only sent while the first one is in
+   * progress: a first call failing before the hedge delay fails right away, it is not retried.
+   */
+  private suspend fun hedged(customerId: String): GetCustomerWSResponse? {
+    val delayMillis = hedgeDelayMillis() ?: return timed(customerId)
+    return coroutineScope {
+      val first = async { runCatching { timed(customerId) } }
+      // awaiting the first call past the delay does not cancel it
+      withTimeoutOrNull(delayMillis) { first.await() }?.let { return@coroutineScope it.getOrThrow() }
+      logger.debug(
+        "No response after ${delayMillis}ms for customerId=$customerId, calling the customer web service again"
+      )
+      hedgedCalls.increment()
+      val second = async { runCatching { timed(customerId) } }
+      val done = select<Deferred<Result<GetCustomerWSResponse?>>> {
+        first.onAwait { first }
+        second.onAwait { second }
+      }
+      val other = if (done === first) second else first
+      val result = done.await().takeIf { it.isSuccess } ?: other.await().takeIf { it.isSuccess } ?: first.await()
+      other.cancel()
+      result.getOrThrow()
+    }
+  }
+
+  /**
+   * @return null as long as no latency is known
+   */
+  private fun hedgeDelayMillis(): Long? = latencies.takeSnapshot().percentileValues()
+    .firstOrNull { it.percentile() == hedging.percentile && it.value() > 0 }
+    ?.let { maxOf(it.value(MILLISECONDS).toLong(), hedging.minDelay.toMillis()) }
+
+  companion object {
+    /**
+     * Same failures as ResponseMarkerFilter: a 4xx response means the web service is up.
+     */
+    fun isFailure(e: Throwable) = LimitedCustomerClient.isFailure(e)
+
+    private fun isLimitReached(e: Throwable) =
+      e is WebServiceException && e.errorName == LimitedCustomerClient.LIMIT_REACHED
+  }
+}
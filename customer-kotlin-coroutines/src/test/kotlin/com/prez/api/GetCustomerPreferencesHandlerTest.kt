@@ -7,6 +7,7 @@ import com.prez.utils.FakeTokenGenerator
 import kotlinx.coroutines.flow.emptyFlow
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import org.mockito.ArgumentMatchers
 import org.mockito.Mockito.`when`
@@ -119,6 +120,43 @@ internal class GetCustomerPreferencesHandlerTest(@Autowired val webTestClient: W
     verify(customerService).getCustomerPreferences("trotro")
   }
 
+  @Test
+  fun `GET customers preferences should stream the preferences as json lines when ndjson accepted`(): Unit = runBlocking {
+    // Given
+    val accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read")
+    `when`(customerService.getCustomerPreferences("trotro"))
+      .thenReturn(
+        flowOf(
+          CustomerPreferences(
+            customerId = "trotro",
+            profileName = "rigolo",
+            seatPreference = SeatPreference.NO_PREFERENCE,
+            classPreference = 2
+          ),
+          CustomerPreferences(
+            customerId = "trotro",
+            profileName = "serieux",
+            seatPreference = SeatPreference.NEAR_WINDOW,
+            classPreference = 1
+          )
+        )
+      )
+
+    // When && Then
+    webTestClient.get().uri("/customers/preferences")
+      .header("Authorization", "Bearer $accessToken")
+      .accept(MediaType.APPLICATION_NDJSON)
+      .exchange()
+      .expectStatus().isOk
+      .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+      .expectBody(String::class.java)
+      .value { body ->
+        assertThat(body!!.lines().filter(String::isNotEmpty))
+          .hasSize(2)
+          .allSatisfy { assertThat(it).startsWith("{\"customerId\":\"trotro\"") }
+      }
+  }
+
   @Test
   fun `GET customers preferences should return internal server error when something went wrong`(): Unit = runBlocking {
     // When && Then
@@ -0,0 +1,135 @@
+package com.prez.api
+
+import com.prez.api.dto.CustomersBatchRequest
+import com.prez.model.Customer
+import com.prez.model.CustomerBatch
+import com.prez.service.CustomerService
+import com.prez.utils.FakeTokenGenerator
+import kotlinx.coroutines.runBlocking
+import org.hamcrest.CoreMatchers.containsString
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.test.mock.mockito.MockBean
+import org.springframework.http.MediaType
+import org.springframework.test.web.reactive.server.WebTestClient
+import org.springframework.web.reactive.function.BodyInserters
+
+@SpringBootTest
+@AutoConfigureWebTestClient
+internal class GetCustomersBatchHandlerTest(@Autowired private val webTestClient: WebTestClient) {
+
+  @MockBean
+  lateinit var customerService: CustomerService
+
+  private val fakeTokenGenerator = FakeTokenGenerator("test-authorization-server")
+
+  @Test
+  fun `POST customers batch should return the customers found, not found and failed for a service`(): Unit =
+    runBlocking {
+      // Given
+      val accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600, "customer.service")
+      val customerIds = listOf("trotro", "ane", "rigolo")
+      `when`(customerService.getCustomersInfo(customerIds))
+        .thenReturn(
+          CustomerBatch(
+            customers = listOf(
+              Customer(customerId = "trotro", firstName = "Ane", lastName = "Trotro", birthDate = null,
+                phoneNumber = null, email = null)
+            ),
+            notFound = listOf("ane"),
+            failed = listOf("rigolo")
+          )
+        )
+
+      // When && Then
+      webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer $accessToken")
+        .accept(MediaType.APPLICATION_JSON)
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(BodyInserters.fromValue(CustomersBatchRequest(customerIds)))
+        .exchange()
+        .expectStatus().isOk
+        .expectBody()
+        .json(
+          """
+                  {
+                    "customers":[{"customerId":"trotro","firstName":"Ane","lastName":"Trotro"}],
+                    "notFound":["ane"],
+                    "failed":["rigolo"]
+                  }
+                  """.trimIndent()
+        )
+      verify(customerService).getCustomersInfo(customerIds)
+    }
+
+  @Test
+  fun `POST customers batch should return 403 forbidden for a customer token without the service scope`(): Unit =
+    runBlocking {
+      // Given
+      val accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read customer.write")
+
+      // When && Then
+      webTestClient.post()
+        .uri("/customers/batch")
+        .header("Authorization", "Bearer $accessToken")
+        .accept(MediaType.APPLICATION_JSON)
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(BodyInserters.fromValue(CustomersBatchRequest(listOf("trotro"))))
+        .exchange()
+        .expectStatus().isForbidden
+      verify(customerService, never()).getCustomersInfo(anyObject())
+    }
+
+  @Test
+  fun `POST customers batch should return 400 when no customer id is asked`(): Unit = runBlocking {
+    // Given
+    val accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600, "customer.service")
+
+    // When && Then
+    webTestClient.post()
+      .uri("/customers/batch")
+      .header("Authorization", "Bearer $accessToken")
+      .accept(MediaType.APPLICATION_JSON)
+      .contentType(MediaType.APPLICATION_JSON)
+      .body(BodyInserters.fromValue(CustomersBatchRequest(emptyList())))
+      .exchange()
+      .expectStatus().isBadRequest
+      .expectBody().json("{\"code\":\"VALIDATION_ERROR\"}")
+      .jsonPath("$.message").value(containsString("The customer ids are missing"))
+    verify(customerService, never()).getCustomersInfo(anyObject())
+  }
+
+  @Test
+  fun `POST customers batch should return 400 when too many customer ids are asked`(): Unit = runBlocking {
+    // Given
+    val accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("back-office", 3600, "customer.service")
+    val customerIds = (0..CustomersBatchRequest.MAX_CUSTOMER_IDS).map { "customer$it" }
+
+    // When && Then
+    webTestClient.post()
+      .uri("/customers/batch")
+      .header("Authorization", "Bearer $accessToken")
+      .accept(MediaType.APPLICATION_JSON)
+      .contentType(MediaType.APPLICATION_JSON)
+      .body(BodyInserters.fromValue(CustomersBatchRequest(customerIds)))
+      .exchange()
+      .expectStatus().isBadRequest
+      .expectBody().json("{\"code\":\"VALIDATION_ERROR\"}")
+      .jsonPath("$.message").value(containsString("At most 100 customer ids can be asked at once"))
+    verify(customerService, never()).getCustomersInfo(anyObject())
+  }
+
+  private fun <T> anyObject(): T {
+    Mockito.any<T>()
+    return uninitialized()
+  }
+
+  private fun <T> uninitialized(): T = null as T
+}
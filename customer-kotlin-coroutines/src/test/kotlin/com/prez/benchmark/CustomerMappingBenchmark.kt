@@ -0,0 +1,78 @@
+package com.prez.benchmark
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.ObjectReader
+import com.prez.api.dto.CustomerResponse
+import com.prez.extension.toCustomer
+import com.prez.extension.toCustomerResponse
+import com.prez.model.Customer
+import com.prez.ws.model.GetCustomerWSResponse
+import com.prez.ws.model.Record
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.infra.Blackhole
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cost of each step between the customer web service body and the API response, on the castlemock customers:
+ * JSON parsing, misc records fields parsing alone (with their map view), mapping to the model, mapping to the DTO.
+ * JMH subclasses state classes, hence the open class.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+open class CustomerMappingBenchmark {
+
+  @Param("John", "Mia", "Jen")
+  @JvmField
+  var castlemockResponse: String = ""
+
+  private lateinit var objectMapper: ObjectMapper
+  private lateinit var recordReader: ObjectReader
+  private lateinit var body: String
+  private lateinit var records: List<String>
+  private lateinit var response: GetCustomerWSResponse
+  private lateinit var customer: Customer
+
+  @Setup
+  fun setup() {
+    // same settings as the application ObjectMapper
+    objectMapper = Jackson2ObjectMapperBuilder.json().build()
+    recordReader = objectMapper.readerFor(Record::class.java)
+    body = CastlemockResponses.body(castlemockResponse)
+    records = objectMapper.readTree(body).path("misc")
+      .flatMap { it.path("records") }
+      .map { it.toString() }
+    response = objectMapper.readValue(body, GetCustomerWSResponse::class.java)
+    customer = response.toCustomer()
+  }
+
+  @Benchmark
+  fun readResponse(): GetCustomerWSResponse = objectMapper.readValue(body, GetCustomerWSResponse::class.java)
+
+  @Benchmark
+  fun readRecords(blackhole: Blackhole) {
+    for (record in records) {
+      blackhole.consume(recordReader.readValue<Record>(record).mapAsRealMap)
+    }
+  }
+
+  @Benchmark
+  fun toCustomer(): Customer = response.toCustomer()
+
+  @Benchmark
+  fun toCustomerResponse(): CustomerResponse = customer.toCustomerResponse()
+}
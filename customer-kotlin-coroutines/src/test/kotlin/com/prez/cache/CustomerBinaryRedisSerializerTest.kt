@@ -0,0 +1,110 @@
+package com.prez.cache
+
+import com.fasterxml.jackson.annotation.JsonInclude
+import com.prez.model.Customer
+import com.prez.model.LoyaltyProgram
+import com.prez.model.LoyaltyStatus.FFD700
+import com.prez.model.PassType.PRO_FIRST
+import com.prez.model.RailPass
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer
+import org.springframework.data.redis.serializer.SerializationException
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import java.time.LocalDate
+
+class CustomerBinaryRedisSerializerTest {
+
+  private val jsonSerializer = Jackson2JsonRedisSerializer(Customer::class.java).apply {
+    setObjectMapper(Jackson2ObjectMapperBuilder.json().serializationInclusion(JsonInclude.Include.NON_EMPTY).build())
+  }
+
+  private val toTest = CustomerBinaryRedisSerializer(jsonSerializer)
+
+  private val jimPhelps = Customer(
+    customerId = "35adcf57-2cf7-4945-a980-e9753eb146f7",
+    email = "mission.impossible@connect.fr",
+    firstName = "Jim",
+    lastName = "Phelps",
+    birthDate = LocalDate.of(1952, 2, 29),
+    phoneNumber = null,
+    loyaltyProgram = LoyaltyProgram(
+      number = "008",
+      status = FFD700,
+      statusRefLabel = "GOLD IT IS",
+      validityStartDate = LocalDate.of(2020, 1, 1),
+      validityEndDate = LocalDate.MAX
+    ),
+    railPasses = listOf(
+      RailPass(
+        number = "JIMID",
+        type = PRO_FIRST,
+        typeRefLabel = "I AM A PRO",
+        validityStartDate = LocalDate.of(2019, 12, 25),
+        validityEndDate = LocalDate.of(2045, 12, 23)
+      )
+    )
+  )
+
+  @Test
+  fun `serialize then deserialize should give back a complete customer`() {
+    // Test
+    val serialized = toTest.serialize(jimPhelps)
+    val deserialized = toTest.deserialize(serialized)
+
+    // Assert
+    assertThat(serialized[0]).isEqualTo(CustomerBinaryRedisSerializer.VERSION_1)
+    assertThat(deserialized).isEqualTo(jimPhelps)
+  }
+
+  @Test
+  fun `serialize then deserialize should give back a customer with missing fields`() {
+    // Given
+    val customer = Customer(
+      customerId = "123456789",
+      lastName = null,
+      firstName = null,
+      birthDate = null,
+      phoneNumber = null,
+      email = null
+    )
+
+    // Test
+    val deserialized = toTest.deserialize(toTest.serialize(customer))
+
+    // Assert
+    assertThat(deserialized).isEqualTo(customer)
+  }
+
+  @Test
+  fun `serialize should be more compact than json`() {
+    // Test
+    val binary = toTest.serialize(jimPhelps)
+    val json = jsonSerializer.serialize(jimPhelps)
+
+    // Assert
+    assertThat(binary.size).isLessThan(json.size)
+  }
+
+  @Test
+  fun `deserialize should read customers previously written in json`() {
+    // Given
+    val json = jsonSerializer.serialize(jimPhelps)
+
+    // Test
+    val deserialized = toTest.deserialize(json)
+
+    // Assert
+    assertThat(deserialized).isEqualTo(jimPhelps)
+  }
+
+  @Test
+  fun `deserialize should throw SerializationException when format version is unknown`() {
+    // Given
+    val unknown = "\u007Fwhatever".toByteArray()
+
+    // Test & Assert
+    assertThrows<SerializationException> { toTest.deserialize(unknown) }
+  }
+}
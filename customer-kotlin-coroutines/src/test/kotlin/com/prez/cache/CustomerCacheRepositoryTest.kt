@@ -24,7 +24,7 @@ import java.time.LocalDate
 internal class CustomerCacheRepositoryTest(@Autowired val customerInfoRedisTemplate: ReactiveRedisTemplate<String, Customer>) :
   UsingRedis() {
 
-  private val toTest: CustomerCacheRepository = CustomerCache(4, customerInfoRedisTemplate)
+  private val toTest: CustomerCacheRepository = CustomerCache(4, 2, customerInfoRedisTemplate)
 
   @BeforeEach
   internal fun beforeEach() {
@@ -186,4 +186,96 @@ internal class CustomerCacheRepositoryTest(@Autowired val customerInfoRedisTempl
     // Assert
     assertThat(savedCustomer).isNull()
   }
-}
\ No newline at end of file
+
+  @Test
+  fun `findEntryById should find a fresh customer entry when it is younger than the soft time-to-live`() {
+    //given
+    val customerInfo = Customer(
+        customerId = "35adcf57-2cf7-4945-a980-e9753eb146f7",
+        email = "mission.impossible@connect.fr",
+        firstName = "Jim",
+        lastName = "Phelps",
+        birthDate = null,
+        phoneNumber = null
+    )
+    customerInfoRedisTemplate.opsForValue()
+        .set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo, Duration.ofSeconds(4))
+        .block()
+
+    // Test
+    val entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").block()
+
+    // Assert
+    assertThat(entry?.stale).isFalse()
+    assertThat(entry?.customer).usingRecursiveComparison().isEqualTo(customerInfo)
+  }
+
+  @Test
+  fun `findEntryById should find a stale customer entry when it is older than the soft time-to-live`() {
+    //given an entry with less than (hard - soft) time-to-live left
+    val customerInfo = Customer(
+        customerId = "35adcf57-2cf7-4945-a980-e9753eb146f7",
+        email = "mission.impossible@connect.fr",
+        firstName = "Jim",
+        lastName = "Phelps",
+        birthDate = null,
+        phoneNumber = null
+    )
+    customerInfoRedisTemplate.opsForValue()
+        .set("Customer:35adcf57-2cf7-4945-a980-e9753eb146f7", customerInfo, Duration.ofSeconds(1))
+        .block()
+
+    // Test
+    val entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").block()
+
+    // Assert
+    assertThat(entry?.stale).isTrue()
+    assertThat(entry?.customer).usingRecursiveComparison().isEqualTo(customerInfo)
+  }
+
+  @Test
+  fun `findEntryById should return empty if there is no entry with the provided id`() {
+    // Test
+    val entry = toTest.findEntryById("35adcf57-2cf7-4945-a980-e9753eb146f7").block()
+
+    // Assert
+    assertThat(entry).isNull()
+  }
+
+  @Test
+  fun `saveAll should create all the customer entries with ttl`() {
+    //given
+    val jim = Customer(customerId = "jim", firstName = "Jim", lastName = "Phelps", email = null, birthDate = null,
+      phoneNumber = null)
+    val cinnamon = Customer(customerId = "cinnamon", firstName = "Cinnamon", lastName = "Carter", email = null,
+      birthDate = null, phoneNumber = null)
+
+    // Test
+    val areSaved = toTest.saveAll(listOf(jim, cinnamon)).block()
+    val ttl = customerInfoRedisTemplate.getExpire("Customer:cinnamon").block()
+    val savedCustomers =
+      customerInfoRedisTemplate.opsForValue().multiGet(listOf("Customer:jim", "Customer:cinnamon")).block()
+
+    // Assert
+    assertThat(areSaved).isTrue()
+    assertThat(ttl).isBetween(Duration.ofSeconds(3), Duration.ofSeconds(4))
+    assertThat(savedCustomers).containsExactly(jim, cinnamon)
+  }
+
+  @Test
+  fun `findAllByIds should find the saved customers by id and ignore the missing ones`() {
+    //given
+    val jim = Customer(customerId = "jim", firstName = "Jim", lastName = "Phelps", email = null, birthDate = null,
+      phoneNumber = null)
+    val cinnamon = Customer(customerId = "cinnamon", firstName = "Cinnamon", lastName = "Carter", email = null,
+      birthDate = null, phoneNumber = null)
+    customerInfoRedisTemplate.opsForValue().set("Customer:jim", jim).block()
+    customerInfoRedisTemplate.opsForValue().set("Customer:cinnamon", cinnamon).block()
+
+    // Test
+    val savedCustomers = toTest.findAllByIds(listOf("jim", "rollin", "cinnamon")).block()
+
+    // Assert
+    assertThat(savedCustomers).isEqualTo(mapOf("jim" to jim, "cinnamon" to cinnamon))
+  }
+}
@@ -0,0 +1,73 @@
+package com.prez.cache
+
+import com.prez.model.Customer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.boot.test.context.runner.ApplicationContextRunner
+
+class CustomerLocalCacheTest {
+
+  private val meterRegistry = SimpleMeterRegistry()
+
+  private val customer = Customer(
+    customerId = "35adcf57-2cf7-4945-a980-e9753eb146f7",
+    firstName = "Jim",
+    lastName = "Phelps",
+    birthDate = null,
+    phoneNumber = null,
+    email = null
+  )
+
+  @Test
+  fun `getIfPresent should return a put customer and record hits and misses`() {
+    // Given
+    val toTest = CustomerLocalCache(10, 30, 300, meterRegistry)
+    toTest.put(customer)
+
+    // Test
+    val found = toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7")
+    val notFound = toTest.getIfPresent("unknown")
+
+    // Assert
+    assertThat(found).isEqualTo(customer)
+    assertThat(notFound).isNull()
+    assertThat(
+      meterRegistry.get("cache.gets").tag("cache", "customer.local").tag("result", "hit").functionCounter().count()
+    ).isEqualTo(1.0)
+    assertThat(
+      meterRegistry.get("cache.gets").tag("cache", "customer.local").tag("result", "miss").functionCounter().count()
+    ).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `time to live should be capped by the Redis one`() {
+    // Given a Redis time to live of 0 second
+    val toTest = CustomerLocalCache(10, 30, 0, meterRegistry)
+    toTest.put(customer)
+
+    // Test
+    val found = toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7")
+
+    // Assert
+    assertThat(found).isNull()
+  }
+
+  @Test
+  fun `getIfPresent should miss right away when spring redis time-to-live customer is 0`() {
+    ApplicationContextRunner()
+      .withBean(SimpleMeterRegistry::class.java)
+      .withUserConfiguration(CustomerLocalCache::class.java)
+      .withPropertyValues("spring.redis.time-to-live.customer=0")
+      .run { context ->
+        // Given
+        val toTest = context.getBean(CustomerLocalCache::class.java)
+
+        // Test
+        toTest.put(customer)
+
+        // Assert
+        assertThat(toTest.getIfPresent("35adcf57-2cf7-4945-a980-e9753eb146f7")).isNull()
+      }
+  }
+}
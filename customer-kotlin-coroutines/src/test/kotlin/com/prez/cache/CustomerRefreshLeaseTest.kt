@@ -0,0 +1,135 @@
+package com.prez.cache
+
+import com.prez.UsingRedis
+import com.prez.lib.limit.LatencyBudget
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate
+import org.springframework.test.context.ActiveProfiles
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.util.concurrent.TimeUnit.MILLISECONDS
+
+@Tag("docker")
+@ActiveProfiles(profiles = ["test"])
+@SpringBootTest
+internal class CustomerRefreshLeaseTest(@Autowired val redisTemplate: ReactiveStringRedisTemplate) : UsingRedis() {
+
+  private val meterRegistry = SimpleMeterRegistry()
+
+  private val toTest = lease(true)
+
+  private fun lease(enabled: Boolean) = CustomerRefreshLease(
+    CustomerRefreshLeaseProperties(enabled, Duration.ofSeconds(2), Duration.ofMillis(500), Duration.ofMillis(20)),
+    redisTemplate,
+    LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1), CircuitBreaker.ofDefaults("redis"),
+      meterRegistry),
+    meterRegistry
+  )
+
+  private fun acquisitions(result: String) =
+    meterRegistry.get("refresh.lease.acquisitions").tag("name", "customer").tag("result", result).counter().count()
+
+  @BeforeEach
+  internal fun beforeEach() {
+    redisTemplate.delete(redisTemplate.keys("CustomerRefreshLease:*")).block()
+    redisTemplate.delete("refreshed:123").block()
+  }
+
+  @Test
+  fun `tryAcquire should acquire a free lease for the lease time, and not a held one`() {
+    // Test
+    val first = toTest.tryAcquire("123").block()!!
+    val second = toTest.tryAcquire("123").block()!!
+    val ttl = redisTemplate.getExpire("CustomerRefreshLease:123").block()
+
+    // Assert
+    assertThat(first.acquired).isTrue
+    assertThat(second.acquired).isFalse
+    assertThat(ttl).isBetween(Duration.ofMillis(1), Duration.ofSeconds(2))
+    assertThat(acquisitions("acquired")).isEqualTo(1.0)
+    assertThat(acquisitions("contended")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `release should release the lease only while it is still the one of its owner`() {
+    // Given a lease released, then acquired by another caller
+    val first = toTest.tryAcquire("123").block()!!
+    first.release().block()
+    val releasedOnce = redisTemplate.hasKey("CustomerRefreshLease:123").block() == false
+    val second = toTest.tryAcquire("123").block()!!
+
+    // Test
+    first.release().block()
+
+    // Assert
+    assertThat(releasedOnce).isTrue
+    assertThat(second.acquired).isTrue
+    assertThat(redisTemplate.hasKey("CustomerRefreshLease:123").block()).isTrue
+  }
+
+  @Test
+  fun `awaitRefreshed should emit the customer once the holder of the lease saved it`() {
+    // Given a lease held by another caller, which saves the customer 100ms later
+    toTest.tryAcquire("123").block()
+    Mono.delay(Duration.ofMillis(100))
+      .then(redisTemplate.opsForValue().set("refreshed:123", "Jack"))
+      .subscribe()
+
+    // Test
+    val refreshed = toTest.awaitRefreshed("123", redisTemplate.opsForValue().get("refreshed:123")).block()
+
+    // Assert
+    assertThat(refreshed).isEqualTo("Jack")
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "refreshed").timer().count()).isEqualTo(1)
+  }
+
+  @Test
+  fun `awaitRefreshed should stop waiting once the lease is released without the customer being saved`() {
+    // Given a lease released by its holder
+    toTest.tryAcquire("123").flatMap { it.release() }.block()
+
+    // Test
+    val refreshed = toTest.awaitRefreshed("123", redisTemplate.opsForValue().get("refreshed:123")).block()
+
+    // Assert
+    assertThat(refreshed).isNull()
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "released").timer().totalTime(MILLISECONDS))
+      .isLessThan(500.0)
+  }
+
+  @Test
+  fun `awaitRefreshed should give up once max-wait is over while the lease is held`() {
+    // Given a lease held by another caller, which never saves the customer
+    toTest.tryAcquire("123").block()
+
+    // Test
+    val refreshed = toTest.awaitRefreshed("123", redisTemplate.opsForValue().get("refreshed:123"))
+      .block(Duration.ofSeconds(2))
+
+    // Assert
+    assertThat(refreshed).isNull()
+    assertThat(meterRegistry.get("refresh.lease.wait").tag("result", "timeout").timer().count()).isEqualTo(1)
+  }
+
+  @Test
+  fun `tryAcquire should always acquire the lease, without Redis, when disabled`() {
+    // Given
+    val disabled = lease(false)
+
+    // Test
+    val first = disabled.tryAcquire("123").block()!!
+    val second = disabled.tryAcquire("123").block()!!
+
+    // Assert
+    assertThat(first.acquired).isTrue
+    assertThat(second.acquired).isTrue
+    assertThat(redisTemplate.hasKey("CustomerRefreshLease:123").block()).isFalse
+  }
+}
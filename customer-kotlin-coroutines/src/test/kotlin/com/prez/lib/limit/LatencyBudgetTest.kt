@@ -0,0 +1,124 @@
+package com.prez.lib.limit
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class LatencyBudgetTest {
+
+  private val meterRegistry = SimpleMeterRegistry()
+
+  private val calls = AtomicInteger()
+
+  private val cancelled = AtomicBoolean()
+
+  private val circuitBreaker = CircuitBreaker.of(
+    "redis", CircuitBreakerConfig.custom()
+      .slidingWindowSize(2)
+      .minimumNumberOfCalls(2)
+      .failureRateThreshold(50f)
+      .waitDurationInOpenState(Duration.ofMinutes(1))
+      .build()
+  )
+
+  private val toTest =
+    LatencyBudget("redis", Duration.ofMillis(50), Duration.ofMillis(100), circuitBreaker, meterRegistry)
+
+  private val get = toTest.operation("get")
+
+  private val put = toTest.operation("put")
+
+  private fun <T> stalled(): Mono<T> = Mono.never<T>()
+    .doOnSubscribe { calls.incrementAndGet() }
+    .doOnCancel { cancelled.set(true) }
+
+  private fun count(operation: String, result: String) =
+    meterRegistry.get("budget.calls").tag("name", "redis").tag("operation", operation).tag("result", result)
+      .counter().count()
+
+  @Test
+  fun `read should emit what the read emitted within the budget`() {
+    // Test
+    val result = get.read(Mono.just("cached")).block()
+
+    // Assert
+    assertThat(result).isEqualTo("cached")
+    assertThat(count("get", "success")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `read should cancel the read and be empty once the budget is over`() {
+    // Test
+    val result = get.read(stalled<String>()).block(Duration.ofSeconds(1))
+
+    // Assert
+    assertThat(result).isNull()
+    assertThat(cancelled).isTrue
+    assertThat(count("get", "timeout")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `read should be empty when the read fails`() {
+    // Test
+    val result = get.read(Mono.error<String>(IllegalStateException("Redis down"))).block()
+
+    // Assert
+    assertThat(result).isNull()
+    assertThat(count("get", "error")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `read should not even subscribe once the circuit breaker opened after repeated calls past their budget`() {
+    // Given two reads past their budget
+    get.read(stalled<String>()).block()
+    get.read(stalled<String>()).block()
+
+    // Test
+    val result = get.read(stalled<String>()).block()
+
+    // Assert
+    assertThat(result).isNull()
+    assertThat(calls).hasValue(2)
+    assertThat(circuitBreaker.state).isEqualTo(CircuitBreaker.State.OPEN)
+    assertThat(count("get", "circuit-open")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `read given up by the caller should be neither a success nor a failure for the circuit breaker`() {
+    // Test
+    get.read(stalled<String>()).timeout(Duration.ofMillis(10), Mono.empty()).block()
+
+    // Assert
+    assertThat(cancelled).isTrue
+    assertThat(circuitBreaker.metrics.numberOfBufferedCalls).isZero
+  }
+
+  @Test
+  fun `operation should register the counters of every result once, before any call`() {
+    // Test
+    toTest.operation("delete")
+
+    // Assert
+    assertThat(meterRegistry.get("budget.calls").tag("operation", "delete").counters()).hasSize(4)
+    assertThat(count("delete", "timeout")).isZero
+  }
+
+  @Test
+  fun `write should tell whether the write was done within the budget`() {
+    // Test
+    val done = put.write(Mono.just(true)).block()
+    val tooLate = put.write(stalled()).block()
+
+    // Assert
+    assertThat(done).isTrue
+    assertThat(tooLate).isFalse
+    assertThat(count("put", "success")).isEqualTo(1.0)
+    assertThat(count("put", "timeout")).isEqualTo(1.0)
+  }
+}
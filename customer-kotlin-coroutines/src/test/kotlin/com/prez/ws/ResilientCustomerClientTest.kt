@@ -0,0 +1,236 @@
+package com.prez.ws
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter
+import com.prez.ws.model.GetCustomerWSResponse
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeoutOrNull
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.catchThrowable
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpStatus.GATEWAY_TIMEOUT
+import org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR
+import org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class ResilientCustomerClientTest {
+
+  private val calls = AtomicInteger()
+
+  private val meterRegistry = SimpleMeterRegistry()
+
+  private val properties = CustomerWSResilienceProperties(deadline = Duration.ofSeconds(1))
+
+  private val circuitBreaker = CircuitBreaker.of(
+    "customerWS", CircuitBreakerConfig.custom()
+      .slidingWindowSize(2)
+      .minimumNumberOfCalls(2)
+      .failureRateThreshold(50f)
+      .waitDurationInOpenState(Duration.ofMinutes(1))
+      .recordException { ResilientCustomerClient.isFailure(it) }
+      .build()
+  )
+
+  private fun createClient(delegate: CustomerClient) =
+    ResilientCustomerClient(delegate, circuitBreaker, properties, meterRegistry)
+
+  private fun found(customerId: String): GetCustomerWSResponse {
+    calls.incrementAndGet()
+    return GetCustomerWSResponse(id = customerId, personalInformation = null, personalDetails = null)
+  }
+
+  private suspend fun never(): GetCustomerWSResponse {
+    calls.incrementAndGet()
+    awaitCancellation()
+  }
+
+  @Test
+  fun `getCustomer should return the delegate response`() {
+    // Given
+    val toTest = createClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String) = found(customerId)
+    })
+
+    // Test
+    val response = runBlocking { toTest.getCustomer("123456789") }
+
+    // Assert
+    assertThat(response?.id).isEqualTo("123456789")
+    assertThat(circuitBreaker.metrics.numberOfSuccessfulCalls).isEqualTo(1)
+  }
+
+  @Test
+  fun `getCustomer should return null when the customer is not found, as a successful call`() {
+    // Given
+    val toTest = createClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String): GetCustomerWSResponse? = null
+    })
+
+    // Test
+    val response = runBlocking { toTest.getCustomer("123456789") }
+
+    // Assert
+    assertThat(response).isNull()
+    assertThat(circuitBreaker.metrics.numberOfSuccessfulCalls).isEqualTo(1)
+  }
+
+  @Test
+  fun `getCustomer should not call the customer web service once the circuit breaker is open`() {
+    // Given the customer web service fails
+    val toTest = createClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String): GetCustomerWSResponse? {
+        calls.incrementAndGet()
+        throw WebServiceException(webServiceName = "CUSTOMER_WS", httpStatusCode = INTERNAL_SERVER_ERROR,
+          errorDescription = "boom")
+      }
+    })
+    catchThrowable { runBlocking { toTest.getCustomer("123456789") } }
+    catchThrowable { runBlocking { toTest.getCustomer("123456789") } }
+
+    // Test
+    val thrown = catchThrowable { runBlocking { toTest.getCustomer("123456789") } }
+
+    // Assert
+    assertThat(circuitBreaker.state).isEqualTo(CircuitBreaker.State.OPEN)
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException::class.java) {
+      assertThat(it.httpStatusCode).isEqualTo(SERVICE_UNAVAILABLE)
+      assertThat(it.errorName).isEqualTo("CUSTOMER_WS_CIRCUIT_OPEN")
+    }
+    assertThat(calls).hasValue(2)
+  }
+
+  @Test
+  fun `getCustomer should not count the calls refused by the limit as failures`() {
+    // Given a limit of a single call, taken
+    val limiter = AdaptiveConcurrencyLimiter("customer-ws", 1, 1, 1, 0.9, 2.0, meterRegistry)
+    limiter.tryAcquire()
+    val toTest = createClient(LimitedCustomerClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String) = found(customerId)
+    }, limiter))
+
+    // Test
+    val thrown = catchThrowable { runBlocking { toTest.getCustomer("123456789") } }
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException::class.java) {
+      assertThat(it.errorName).isEqualTo("CUSTOMER_WS_LIMIT_REACHED")
+    }
+    assertThat(calls).hasValue(0)
+    assertThat(circuitBreaker.metrics.numberOfBufferedCalls).isZero
+  }
+
+  @Test
+  fun `getCustomer should cancel the call past the deadline and count it as a failure`() {
+    // Given
+    properties.deadline = Duration.ofMillis(50)
+    val toTest = createClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String) = never()
+    })
+
+    // Test
+    val thrown = catchThrowable { runBlocking { toTest.getCustomer("123456789") } }
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException::class.java) {
+      assertThat(it.httpStatusCode).isEqualTo(GATEWAY_TIMEOUT)
+    }
+    assertThat(circuitBreaker.metrics.numberOfFailedCalls).isEqualTo(1)
+  }
+
+  @Test
+  fun `getCustomer should call the customer web service again when the first call is slower than usual`() {
+    // Given the latencies are known
+    properties.hedging = CustomerWSResilienceProperties.Hedging(
+      enabled = true, percentile = 0.5, minDelay = Duration.ofMillis(20)
+    )
+    val toTest = createClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String): GetCustomerWSResponse {
+        if (calls.get() == 1) {
+          // the first call after the warm-up one hangs
+          return never()
+        }
+        delay(5)
+        return found(customerId)
+      }
+    })
+    runBlocking { toTest.getCustomer("123456789") }
+
+    // Test
+    val response = runBlocking { toTest.getCustomer("123456789") }
+
+    // Assert
+    assertThat(response?.id).isEqualTo("123456789")
+    assertThat(calls).hasValue(3)
+    assertThat(meterRegistry.get("customer.webservice.hedged").counter().count()).isEqualTo(1.0)
+  }
+
+
+  @Test
+  fun `getCustomer should not call the customer web service again when the first call fails before the hedge delay`() {
+    // Given the latencies are known
+    properties.hedging = CustomerWSResilienceProperties.Hedging(
+      enabled = true, percentile = 0.5, minDelay = Duration.ofMillis(20)
+    )
+    val toTest = createClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String): GetCustomerWSResponse {
+        if (calls.getAndIncrement() == 1) {
+          // the first call after the warm-up one fails right away
+          throw WebServiceException(webServiceName = "CUSTOMER_WS", httpStatusCode = INTERNAL_SERVER_ERROR,
+            errorDescription = "boom")
+        }
+        delay(5)
+        return GetCustomerWSResponse(id = customerId, personalInformation = null, personalDetails = null)
+      }
+    })
+    runBlocking { toTest.getCustomer("123456789") }
+
+    // Test
+    val thrown = catchThrowable { runBlocking { toTest.getCustomer("123456789") } }
+    Thread.sleep(50)
+
+    // Assert
+    assertThat(thrown).isInstanceOfSatisfying(WebServiceException::class.java) {
+      assertThat(it.httpStatusCode).isEqualTo(INTERNAL_SERVER_ERROR)
+    }
+    assertThat(calls).hasValue(2)
+    assertThat(meterRegistry.get("customer.webservice.hedged").counter().count()).isZero()
+  }
+
+  @Test
+  fun `getCustomer should shrink the limit when the deadline cancels a slow call`() {
+    // Given
+    properties.deadline = Duration.ofMillis(50)
+    val limiter = AdaptiveConcurrencyLimiter("customer-ws", 10, 1, 20, 0.9, 2.0, meterRegistry)
+    val toTest = createClient(LimitedCustomerClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String) = never()
+    }, limiter))
+
+    // Test
+    catchThrowable { runBlocking { toTest.getCustomer("123456789") } }
+
+    // Assert
+    assertThat(limiter.limit).isEqualTo(9)
+    assertThat(limiter.inProgressCount).isZero()
+  }
+
+  @Test
+  fun `getCustomer should leave the limit as is when the caller cancels the call before the deadline`() {
+    // Given
+    val limiter = AdaptiveConcurrencyLimiter("customer-ws", 10, 1, 20, 0.9, 2.0, meterRegistry)
+    val toTest = createClient(LimitedCustomerClient(object : CustomerClient {
+      override suspend fun getCustomer(customerId: String) = never()
+    }, limiter))
+
+    // Test
+    runBlocking { withTimeoutOrNull(10) { toTest.getCustomer("123456789") } }
+
+    // Assert
+    assertThat(limiter.limit).isEqualTo(10)
+    assertThat(limiter.inProgressCount).isZero()
+  }
+}
@@ -9,25 +9,29 @@ import org.springframework.web.reactive.function.server.ServerRequest
 import org.springframework.web.reactive.function.server.ServerResponse
 import org.springframework.web.server.ResponseStatusException
 import reactor.core.publisher.Mono
+import java.util.concurrent.ThreadLocalRandom
 
-class CustomJwtTokenHandler : HandlerFilterFunction<ServerResponse, ServerResponse> {
+/**
+ * Only a sample of the callers is written to the audit logger, a ratio of 1 writes them all, 0 none.
+ */
+class CustomJwtTokenHandler(private val auditSampleRatio: Double) : HandlerFilterFunction<ServerResponse, ServerResponse> {
 
-  private val logger = LoggerFactory.getLogger(CustomJwtTokenHandler::class.java)
+  private val auditLogger = LoggerFactory.getLogger("AUDIT_LOGGER")
 
   override fun filter(request: ServerRequest, next: HandlerFunction<ServerResponse>): Mono<ServerResponse> {
     return request.principal()
-      .doOnSuccess {
-        logger.debug("Principal type : {} - value : {}", it.javaClass.name, it)
-      }
       .ofType(JwtAuthenticationToken::class.java)
       .switchIfEmpty(Mono.error(ResponseStatusException(HttpStatus.UNAUTHORIZED, "No principal")))
-      // Log just to see if we get the value of the custom azp attribute, but imagine we are doing something meaningful here
-      .doOnSuccess {
-        logger.info("Principal info : name={}, azp={}",
-          it.name,
-          it.tokenAttributes["azp"]
-        )
+      .doOnSuccess { audit(request, it) }
+      .then(next.handle(request))
+  }
 
-      }.then(next.handle(request))
+  private fun audit(request: ServerRequest, principal: JwtAuthenticationToken) {
+    if (auditLogger.isInfoEnabled && auditSampleRatio > 0
+      && (auditSampleRatio >= 1 || ThreadLocalRandom.current().nextDouble() < auditSampleRatio)
+    ) {
+      auditLogger.info("Caller : {} {} name={}, azp={}", request.methodName(), request.path(),
+        principal.name, principal.tokenAttributes["azp"])
+    }
   }
-}
\ No newline at end of file
+}
@@ -6,13 +6,21 @@ import com.prez.extension.toCustomerPreferencesProfileResponse
 import com.prez.model.CustomerPreferences
 import com.prez.service.CustomerService
 import org.slf4j.LoggerFactory
+import org.springframework.http.MediaType
+import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.http.MediaType.APPLICATION_NDJSON
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
+import org.springframework.http.ReactiveHttpOutputMessage
 import org.springframework.stereotype.Component
 import org.springframework.web.bind.annotation.CrossOrigin
+import org.springframework.web.reactive.function.BodyInserter
+import org.springframework.web.reactive.function.BodyInserters
 import org.springframework.web.reactive.function.server.ServerRequest
 import org.springframework.web.reactive.function.server.ServerResponse
 import org.springframework.web.reactive.function.server.ServerResponse.ok
-import org.springframework.web.reactive.function.server.json
+import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * This is the equivalent of our RestTemplate controller
@@ -22,6 +30,46 @@ class GetCustomerPreferencesHandler(private val customerService: CustomerService
 
   companion object {
     private val LOGGER = LoggerFactory.getLogger(GetCustomerPreferencesHandler::class.java)
+    private val STREAMING_MEDIA_TYPES = listOf(APPLICATION_NDJSON, TEXT_EVENT_STREAM)
+
+    /**
+     * The preferences written as the body. The query is only cancelled through the body, so it is cancelled here when
+     * the body ends up not being written, for instance when no writer can encode the negotiated media type.
+     */
+    internal fun bodyCancellingQuery(
+      preferences: Flux<CustomerPreferences>
+    ): BodyInserter<Flux<CustomerPreferences>, ReactiveHttpOutputMessage> {
+      val written = AtomicBoolean()
+      val body = preferences
+        .doOnSubscribe { written.set(true) }
+        .map(CustomerPreferences::toCustomerPreferencesProfileResponse)
+      return BodyInserter { message, context ->
+        BodyInserters.fromPublisher(body, CustomerPreferencesProfileResponse::class.java)
+          .insert(message, context)
+          .doFinally {
+            if (!written.get()) {
+              preferences.take(0).subscribe()
+            }
+          }
+      }
+    }
+
+    /**
+     * The first streaming media type accepted, by order of preference of the client, or else JSON. With a streaming
+     * type, each preference is written and flushed as soon as read from Mongo (a JSON line or a server-sent event),
+     * the next ones being requested as the client reads them. A JSON array is only written once whole.
+     */
+    internal fun responseMediaType(request: ServerRequest): MediaType {
+      val accepted = request.headers().accept().toMutableList()
+      MediaType.sortBySpecificityAndQuality(accepted)
+      for (mediaType in accepted) {
+        STREAMING_MEDIA_TYPES.firstOrNull { it.equalsTypeAndSubtype(mediaType) }?.let { return it }
+        if (APPLICATION_JSON.isCompatibleWith(mediaType)) {
+          return APPLICATION_JSON
+        }
+      }
+      return APPLICATION_JSON
+    }
   }
 
   @CrossOrigin
@@ -29,15 +77,17 @@ class GetCustomerPreferencesHandler(private val customerService: CustomerService
     LOGGER.info("getCustomerPreferences : ${request.uri()}")
     return request.principal()
       .flatMap { principalToken ->
-        val preferences = customerService.getCustomerPreferences(principalToken.name)
-        preferences.hasElements()
-          .flatMap {
-            if (it) ok().json().body(
-              preferences.map(CustomerPreferences::toCustomerPreferencesProfileResponse),
-              CustomerPreferencesProfileResponse::class.java
-            )
-            else Mono.error(NotFoundException(principalToken.name, "customer"))
-          }
+        customerService.getCustomerPreferences(principalToken.name)
+          // a single query: its first preference decides the status, and is replayed at the head of the body,
+          // which keeps reading the preferences once the response is emitted (cancelSourceOnComplete=false)
+          .switchOnFirst<ServerResponse>({ first, preferences ->
+            when {
+              first.hasValue() -> ok().contentType(responseMediaType(request)).body(bodyCancellingQuery(preferences))
+              first.hasError() -> Mono.error<ServerResponse>(first.throwable!!)
+              else -> Mono.error<ServerResponse>(NotFoundException(principalToken.name, "customer"))
+            }
+          }, false)
+          .singleOrEmpty()
       }
 
   }
@@ -0,0 +1,33 @@
+package com.prez.api
+
+import com.prez.api.dto.CustomersBatchRequest
+import com.prez.extension.toCustomersBatchResponse
+import com.prez.service.CustomerService
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.validation.Validator
+import org.springframework.web.reactive.function.server.ServerRequest
+import org.springframework.web.reactive.function.server.ServerResponse
+import org.springframework.web.reactive.function.server.ServerResponse.ok
+import org.springframework.web.reactive.function.server.json
+import reactor.core.publisher.Mono
+import reactor.util.Loggers
+import java.util.logging.Level
+
+/**
+ * Customers asked by id, for the back-office services which need many of them at once
+ */
+@Component
+class GetCustomersBatchHandler(validator: Validator, val customerService: CustomerService) :
+    AbstractValidationHandler<CustomersBatchRequest, Validator>(CustomersBatchRequest::class.java, validator) {
+
+  private val logger = LoggerFactory.getLogger(GetCustomersBatchHandler::class.java)
+
+  override fun processBody(validBody: CustomersBatchRequest, originalRequest: ServerRequest): Mono<ServerResponse> {
+    logger.info("GetCustomersBatch : ${validBody.customerIds.size} customer ids")
+    return customerService.getCustomersInfo(validBody.customerIds)
+        .map { it.toCustomersBatchResponse() }
+        .flatMap(ok().json()::bodyValue)
+        .log(Loggers.getLogger(GetCustomersBatchHandler::class.java), Level.FINE, true)
+  }
+}
@@ -0,0 +1,66 @@
+package com.prez.cache
+
+import com.prez.lib.limit.LatencyBudget
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate
+import org.springframework.stereotype.Component
+import reactor.core.publisher.Mono
+import java.time.Duration
+
+/**
+ * Customers the customer web service did not find, kept customer-not-found seconds in Redis.
+ * Past the Redis latency budget, both Monos emit false. Stats under the "customer.not-found" cache name.
+ */
+@Component
+class CustomerNotFoundCache(
+    @Value("\${spring.redis.time-to-live.customer-not-found:30}") ttlSeconds: Long,
+    private val redisTemplate: ReactiveStringRedisTemplate,
+    redisLatencyBudget: LatencyBudget,
+    meterRegistry: MeterRegistry
+) {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(CustomerNotFoundCache::class.java)
+        internal const val cacheName = "customer.not-found"
+        private const val notFoundKeyspaceName = "CustomerNotFound:"
+    }
+
+    private val timeToLive = Duration.ofSeconds(ttlSeconds)
+    private val gets = redisLatencyBudget.operation("customer.not-found.get")
+    private val writes = redisLatencyBudget.operation("customer.not-found.put")
+    private val hits = Counter.builder("cache.gets").tag("cache", cacheName).tag("result", "hit")
+        .description("Customers known as not found").register(meterRegistry)
+    private val misses = Counter.builder("cache.gets").tag("cache", cacheName).tag("result", "miss")
+        .description("Customers not known as not found").register(meterRegistry)
+    private val puts = Counter.builder("cache.puts").tag("cache", cacheName)
+        .description("Customers the customer web service did not find").register(meterRegistry)
+
+    /**
+     * @return [Mono] emitting true if the customer web service did not find the customer lately
+     */
+    fun isNotFound(id: String): Mono<Boolean> {
+        return gets.read(redisTemplate.hasKey("$notFoundKeyspaceName$id"))
+            .defaultIfEmpty(false)
+            .doOnNext { notFound ->
+                if (notFound) {
+                    logger.debug("Customer $id known as not found")
+                    hits.increment()
+                } else {
+                    misses.increment()
+                }
+            }
+    }
+
+    /**
+     * @return [Mono] emitting true if the customer is now known as not found
+     */
+    fun putNotFound(id: String): Mono<Boolean> {
+        logger.debug("Saving in cache customer $id as not found")
+        return writes.write(redisTemplate.opsForValue().set("$notFoundKeyspaceName$id", "1", timeToLive))
+            .defaultIfEmpty(false)
+            .doOnNext { saved -> if (saved) puts.increment() }
+    }
+}
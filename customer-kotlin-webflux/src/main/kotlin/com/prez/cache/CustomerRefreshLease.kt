@@ -0,0 +1,152 @@
+package com.prez.cache
+
+import com.prez.lib.limit.LatencyBudget
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import org.slf4j.LoggerFactory
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate
+import org.springframework.data.redis.core.script.DefaultRedisScript
+import org.springframework.data.redis.core.script.RedisScript
+import reactor.core.publisher.Mono
+import java.util.UUID
+import java.util.concurrent.TimeUnit.NANOSECONDS
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Lease, in Redis, on the customer web service call for a customer: when several instances miss the same customer at
+ * once, only the one holding the lease calls the customer web service, the others poll Redis for the customer, see
+ * [awaitRefreshed].
+ *
+ * The lease is a "CustomerRefreshLease:<id>" key set with SET NX PX to a token of its owner, and released by a script
+ * deleting it only while it still holds this token. Disabled, or past the Redis latency budget, every lease is
+ * acquired: each instance calls the customer web service as without lease.
+ * Acquisitions are counted in Micrometer under "refresh.lease.acquisitions", the waits are timed under
+ * "refresh.lease.wait".
+ */
+class CustomerRefreshLease(
+    private val properties: CustomerRefreshLeaseProperties,
+    private val redisTemplate: ReactiveStringRedisTemplate,
+    redisLatencyBudget: LatencyBudget,
+    private val meterRegistry: MeterRegistry
+) {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(CustomerRefreshLease::class.java)
+        internal const val leaseKeyspaceName = "CustomerRefreshLease:"
+        private const val name = "customer"
+        private val releaseScript: RedisScript<Long> = DefaultRedisScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long::class.javaObjectType
+        )
+    }
+
+    private val acquires = redisLatencyBudget.operation("customer.lease.acquire")
+    private val releases = redisLatencyBudget.operation("customer.lease.release")
+    private val gets = redisLatencyBudget.operation("customer.lease.get")
+    private val acquired = acquisitions("acquired")
+    private val contended = acquisitions("contended")
+    private val unavailable = acquisitions("unavailable")
+
+    private fun acquisitions(result: String) =
+        Counter.builder("refresh.lease.acquisitions").tag("name", name).tag("result", result)
+            .description("Refresh lease acquisitions: acquired, held by another caller or Redis unavailable")
+            .register(meterRegistry)
+
+    /**
+     * @return [Mono] emitting the lease, not acquired when another caller, on this instance or another one, holds it
+     */
+    fun tryAcquire(customerId: String): Mono<Lease> {
+        if (!properties.enabled) {
+            return Mono.just(Lease.unguarded)
+        }
+        return Mono.defer {
+            val key = "$leaseKeyspaceName$customerId"
+            val token = UUID.randomUUID().toString()
+            // SET NX PX, on the request path as the reads
+            acquires.read(redisTemplate.opsForValue().setIfAbsent(key, token, properties.leaseTime))
+                .map { set ->
+                    if (set) {
+                        acquired.increment()
+                        Lease(true, releases.write(
+                            redisTemplate.execute(releaseScript, listOf(key), listOf(token)).next().map { it > 0 }
+                        ))
+                    } else {
+                        logger.debug("Refresh lease of customer $customerId held by another caller")
+                        contended.increment()
+                        Lease.contended
+                    }
+                }
+                .switchIfEmpty(Mono.fromSupplier {
+                    unavailable.increment()
+                    Lease.unguarded
+                })
+        }
+    }
+
+    /**
+     * Polls Redis, max-wait at most, for the customer the caller holding the lease saves, reading it with the given
+     * read every poll-interval.
+     *
+     * @return [Mono] emitting the customer, empty when the lease is released or expired without the customer being
+     * saved, or when max-wait is over
+     */
+    fun <T> awaitRefreshed(customerId: String, read: Mono<T>): Mono<T> {
+        return Mono.defer {
+            val key = "$leaseKeyspaceName$customerId"
+            val start = System.nanoTime()
+            val result = AtomicReference("timeout")
+            poll(key, read, result)
+                .timeout(properties.maxWait, Mono.fromRunnable<T> {
+                    logger.debug(
+                        "Customer $customerId not refreshed by the holder of its lease within ${properties.maxWait}"
+                    )
+                })
+                .doOnSuccess { recordWait(result.get(), start) }
+                .doOnCancel { recordWait("cancelled", start) }
+        }
+    }
+
+    private fun recordWait(result: String, start: Long) {
+        Timer.builder("refresh.lease.wait").tag("name", name).tag("result", result)
+            .description("Waits for the customer refreshed by the holder of its lease")
+            .register(meterRegistry)
+            .record(System.nanoTime() - start, NANOSECONDS)
+    }
+
+    private fun <T> poll(key: String, read: Mono<T>, result: AtomicReference<String>): Mono<T> {
+        return Mono.delay(properties.pollInterval)
+            .then(read)
+            .doOnNext { result.set("refreshed") }
+            .switchIfEmpty(Mono.defer {
+                isHeld(key).flatMap { held ->
+                    if (held) {
+                        poll(key, read, result)
+                    } else {
+                        result.set("released")
+                        Mono.empty<T>()
+                    }
+                }
+            })
+    }
+
+    private fun isHeld(key: String): Mono<Boolean> = gets.read(redisTemplate.hasKey(key)).defaultIfEmpty(false)
+
+    class Lease internal constructor(
+        // false when another caller holds the lease
+        val acquired: Boolean,
+        private val release: Mono<Boolean>
+    ) {
+
+        companion object {
+            // lease disabled or Redis unavailable: nothing to release
+            internal val unguarded = Lease(true, Mono.just(false))
+            internal val contended = Lease(false, Mono.just(false))
+        }
+
+        /**
+         * Releases the lease before it expires, so that the callers waiting for the customer stop waiting.
+         */
+        fun release(): Mono<Void> = release.then()
+    }
+}
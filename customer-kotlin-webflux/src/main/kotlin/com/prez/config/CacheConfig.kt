@@ -0,0 +1,100 @@
+package com.prez.config
+
+import com.prez.cache.CustomerCache
+import com.prez.cache.CustomerCacheRepository
+import com.prez.cache.CustomerCacheResilienceProperties
+import com.prez.cache.CustomerRefreshLease
+import com.prez.cache.CustomerRefreshLeaseProperties
+import com.prez.cache.ResilientCustomerCache
+import com.prez.lib.limit.LatencyBudget
+import com.prez.lib.writebehind.WriteBehindQueue
+import com.prez.model.Customer
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Primary
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate
+
+/**
+ * The customer cache calls go through a latency budget and a circuit breaker, see ResilientCustomerCache, shared with
+ * CustomerNotFoundCache and CustomerRefreshLease: a slow or down Redis turns into misses instead of failed requests.
+ * The circuit breaker is exported as resilience4j.* metrics, its state transitions are counted too, the calls as
+ * budget.calls metrics.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "customer.cache")
+class CacheConfig {
+
+  private val logger = LoggerFactory.getLogger(CacheConfig::class.java)
+
+  var resilience = CustomerCacheResilienceProperties()
+
+  var refreshLease = CustomerRefreshLeaseProperties()
+
+  @Bean
+  internal fun redisCircuitBreaker(meterRegistry: MeterRegistry): CircuitBreaker {
+    val circuitBreaker = resilience.circuitBreaker
+    val registry = CircuitBreakerRegistry.of(
+      CircuitBreakerConfig.custom()
+        .failureRateThreshold(circuitBreaker.failureRateThreshold)
+        .slidingWindowSize(circuitBreaker.slidingWindowSize)
+        .minimumNumberOfCalls(circuitBreaker.minimumNumberOfCalls)
+        .waitDurationInOpenState(circuitBreaker.waitDurationInOpenState)
+        .permittedNumberOfCallsInHalfOpenState(circuitBreaker.permittedNumberOfCallsInHalfOpenState)
+        .build()
+    )
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry)
+    return registry.circuitBreaker("redis").apply {
+      eventPublisher.onStateTransition { event ->
+        logger.warn("Redis circuit breaker ${event.stateTransition}")
+        Counter.builder("redis.circuitbreaker.transitions")
+          .description("Number of state transitions of the Redis circuit breaker")
+          .tag("from", event.stateTransition.fromState.name)
+          .tag("to", event.stateTransition.toState.name)
+          .register(meterRegistry)
+          .increment()
+      }
+    }
+  }
+
+  @Bean
+  internal fun redisLatencyBudget(
+    @Qualifier("redisCircuitBreaker") redisCircuitBreaker: CircuitBreaker,
+    meterRegistry: MeterRegistry
+  ): LatencyBudget =
+    LatencyBudget("redis", resilience.readBudget, resilience.writeBudget, redisCircuitBreaker, meterRegistry)
+
+  @Bean
+  @Primary
+  internal fun resilientCustomerCache(
+    customerCache: CustomerCache,
+    redisLatencyBudget: LatencyBudget
+  ): CustomerCacheRepository = ResilientCustomerCache(customerCache, redisLatencyBudget)
+
+  @Bean
+  internal fun customerRefreshLease(
+    redisTemplate: ReactiveStringRedisTemplate,
+    redisLatencyBudget: LatencyBudget,
+    meterRegistry: MeterRegistry
+  ): CustomerRefreshLease = CustomerRefreshLease(refreshLease, redisTemplate, redisLatencyBudget, meterRegistry)
+
+  @Bean
+  internal fun customerCacheWriteBehind(
+    customerCache: CustomerCacheRepository,
+    @Value("\${customer.cache.write-behind.capacity:10000}") capacity: Int,
+    @Value("\${customer.cache.write-behind.batch-size:100}") batchSize: Int,
+    meterRegistry: MeterRegistry
+  ): WriteBehindQueue<String, Customer> {
+    return WriteBehindQueue("customer", capacity, batchSize, Customer::customerId, customerCache::saveAll,
+      meterRegistry)
+  }
+}
@@ -0,0 +1,62 @@
+package com.prez.config
+
+import com.nimbusds.jose.proc.BadJOSEException
+import com.nimbusds.jose.proc.SecurityContext
+import com.nimbusds.jwt.JWTClaimsSet
+import com.nimbusds.jwt.proc.DefaultJWTProcessor
+import com.prez.lib.security.CachingReactiveJwtDecoder
+import com.prez.lib.security.RefreshingPublicKeys
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.core.io.Resource
+import org.springframework.security.oauth2.jwt.BadJwtException
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder
+import reactor.core.publisher.Mono
+import java.time.Duration
+
+/**
+ * Replaces the decoder Spring Boot builds from spring.security.oauth2.resourceserver.jwt.public-key-location:
+ * the keys are local and read again in background, the verified tokens are cached until they expire.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "customer.security.jwt")
+class JwtDecoderConfig {
+
+  // PEM files of the RSA public keys, every one of them is tried: list both the old and the new key during a rotation
+  var publicKeyLocations: List<Resource> = emptyList()
+
+  // how often the keys are read again
+  var keysRefreshInterval: Duration = Duration.ofMinutes(5)
+
+  var cache = JwtCacheProperties()
+
+  @Bean(destroyMethod = "close")
+  internal fun jwtPublicKeys(): RefreshingPublicKeys = RefreshingPublicKeys(publicKeyLocations, keysRefreshInterval)
+
+  @Bean
+  internal fun jwtDecoder(jwtPublicKeys: RefreshingPublicKeys, meterRegistry: MeterRegistry): ReactiveJwtDecoder {
+    val jwtProcessor = DefaultJWTProcessor<SecurityContext>().apply {
+      jwsKeySelector = jwtPublicKeys
+      // the claims are validated by NimbusReactiveJwtDecoder ( JwtValidators.createDefault() ), not by Nimbus itself
+      setJWTClaimsSetVerifier { _, _ -> }
+    }
+    // the keys are in memory, verifying a signature does not block
+    val nimbusDecoder = NimbusReactiveJwtDecoder { jwt ->
+      Mono.fromCallable<JWTClaimsSet> { jwtProcessor.process(jwt, null) }
+        // a bad signature must end up in a 401, not a 500
+        .onErrorMap(BadJOSEException::class.java) { BadJwtException(it.message, it) }
+    }
+    return CachingReactiveJwtDecoder(nimbusDecoder, cache.maximumSize, cache.maxTimeToLive, meterRegistry)
+      // a token verified with a key removed since then must be verified again
+      .also { decoder -> jwtPublicKeys.onChange { decoder.invalidateAll() } }
+  }
+}
+
+data class JwtCacheProperties(
+  var maximumSize: Long = 10000,
+  // a token is cached until it expires, but never longer than this
+  var maxTimeToLive: Duration = Duration.ofMinutes(10)
+)
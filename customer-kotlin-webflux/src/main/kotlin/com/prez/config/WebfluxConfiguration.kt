@@ -6,16 +6,20 @@ import com.prez.api.CustomJwtTokenHandler
 import com.prez.api.ElementNotFoundErrorHandler
 import com.prez.api.GetCustomerHandler
 import com.prez.api.GetCustomerPreferencesHandler
+import com.prez.api.GetCustomersBatchHandler
 import com.prez.api.GlobalErrorHandler
 import com.prez.api.ValidationErrorHandler
 import com.prez.api.WebServiceExceptionHandlerFilter
 import com.prez.lib.tracing.SpanCustomizationApiFilter
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.context.annotation.Primary
 import org.springframework.core.Ordered
 import org.springframework.core.annotation.Order
 import org.springframework.http.MediaType.APPLICATION_JSON
+import org.springframework.http.MediaType.APPLICATION_NDJSON
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
 import org.springframework.validation.Validator
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean
 import org.springframework.web.cors.CorsConfiguration
@@ -24,7 +28,12 @@ import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource
 import org.springframework.web.reactive.function.server.router
 
 @Configuration
-class WebfluxConfiguration(val spanCustomizer: SpanCustomizer) {
+class WebfluxConfiguration(
+  val spanCustomizer: SpanCustomizer,
+  @Value("\${customer.audit.sample-ratio:0.01}") auditSampleRatio: Double
+) {
+
+  private val customJwtTokenHandler = CustomJwtTokenHandler(auditSampleRatio)
 
   // This is necessary to allow bean validation
   @Bean
@@ -50,7 +59,7 @@ class WebfluxConfiguration(val spanCustomizer: SpanCustomizer) {
         (GET("/customers") and (accept(APPLICATION_JSON)))
             .invoke(getCustomerHandler::getCustomer)
       }.filter(SpanCustomizationApiFilter(spanCustomizer, "GET /customers"))
-          .filter(CustomJwtTokenHandler())
+          .filter(customJwtTokenHandler)
           .filter(WebServiceExceptionHandlerFilter())
           .filter(ElementNotFoundErrorHandler())
           .filter(GlobalErrorHandler())
@@ -61,7 +70,7 @@ class WebfluxConfiguration(val spanCustomizer: SpanCustomizer) {
         (POST("/customers/preferences") and (accept(APPLICATION_JSON)))
             .invoke(createCustomerPreferencesHandler::handleRequest)
       }.filter(SpanCustomizationApiFilter(spanCustomizer))
-          .filter(CustomJwtTokenHandler())
+          .filter(customJwtTokenHandler)
           .filter(ValidationErrorHandler())
           .filter(WebServiceExceptionHandlerFilter())
           .filter(GlobalErrorHandler())
@@ -69,13 +78,23 @@ class WebfluxConfiguration(val spanCustomizer: SpanCustomizer) {
   @Bean
   internal fun getCustomerPreferences(handler: GetCustomerPreferencesHandler) =
       router {
-        (GET("/customers/preferences") and (accept(APPLICATION_JSON)))
+        (GET("/customers/preferences") and (accept(APPLICATION_JSON, APPLICATION_NDJSON, TEXT_EVENT_STREAM)))
             .invoke(handler::getCustomerPreferences)
       }.filter(SpanCustomizationApiFilter(spanCustomizer, "GET /customers/preferences"))
-          .filter(CustomJwtTokenHandler())
+          .filter(customJwtTokenHandler)
           .filter(WebServiceExceptionHandlerFilter())
           .filter(ElementNotFoundErrorHandler())
           .filter(GlobalErrorHandler())
 
+  @Bean
+  internal fun getCustomersBatch(handler: GetCustomersBatchHandler) =
+      router {
+        (POST("/customers/batch") and (accept(APPLICATION_JSON)))
+            .invoke(handler::handleRequest)
+      }.filter(SpanCustomizationApiFilter(spanCustomizer, "POST /customers/batch"))
+          .filter(customJwtTokenHandler)
+          .filter(ValidationErrorHandler())
+          .filter(WebServiceExceptionHandlerFilter())
+          .filter(GlobalErrorHandler())
 
 }
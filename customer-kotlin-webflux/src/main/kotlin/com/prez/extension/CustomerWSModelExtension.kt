@@ -7,8 +7,12 @@ import com.prez.model.PassType
 import com.prez.model.RailPass
 import com.prez.ws.model.GetCustomerWSResponse
 import com.prez.ws.model.Record
+import java.text.ParsePosition
 import java.time.LocalDate
-import java.time.format.DateTimeParseException
+import java.time.Month
+import java.time.Year
+import java.time.format.DateTimeFormatter.ISO_LOCAL_DATE
+import java.time.temporal.ChronoField
 
 /**
  * Extension functions ( mapper mostly ) for model objects
@@ -33,80 +37,134 @@ private const val PASS_ACTIVE_STATUS_FIELD_NAME = "pass_is_active"
 
 private const val ACTIVE_FIELD_VALUE = "000"
 
-fun GetCustomerWSResponse.toCustomer() =
-  Customer(
+// lookup tables instead of the exceptions of valueOf
+private val LOYALTY_STATUSES = LoyaltyStatus.values().associateBy { it.name }
+private val PASS_TYPES = PassType.values().associateBy { it.name }
+
+fun GetCustomerWSResponse.toCustomer(): Customer {
+  val miscPrograms = toMiscPrograms()
+  return Customer(
       customerId = id,
       email = personalDetails?.email?.address,
       firstName = personalInformation?.firstName,
       lastName = personalInformation?.lastName,
       phoneNumber = personalDetails?.cell?.number,
       birthDate = personalInformation?.birthdate?.let { LocalDate.parse(it) },
-      loyaltyProgram = toLoyaltyProgram(),
-      railPasses = toRailPasses()
+      loyaltyProgram = miscPrograms.loyaltyProgram,
+      railPasses = miscPrograms.railPasses
   )
+}
 
-fun GetCustomerWSResponse.toLoyaltyProgram(): LoyaltyProgram? =
-  misc
-    .filter { LOYALTY_PROGRAM_TYPE == it.type?.value && 0 < it.count } // we filter to retrieve only the loyalty cards sublist that has at least one loyalty card
-    .flatMap {
-      findAndConvertLoyaltyPrograms(it.records)
-    }
-    .firstOrNull()  // and we take the first because why not?
-
-private fun findAndConvertLoyaltyPrograms(allFields: List<Record>): Iterable<LoyaltyProgram> =
-  allFields
-    .filter { LOYALTY_PROGRAM_TYPE == it.type?.value && isActiveAndHasRequiredLoyaltyProgramFields(it.mapAsRealMap) }
-    .map {
-      LoyaltyProgram(
-          number = it.getValue(LOYALTY_NUMBER_FIELD_NAME),
-          status = LoyaltyStatus.valueOf(it.getValue(LOYALTY_STATUS_FIELD_NAME)),
-          statusRefLabel = it.getMaybeValue(LOYALTY_LABEL_FIELD_NAME),
-
-          validityStartDate = parseDateOrNull(it.getMaybeValue(LOYALTY_VALIDITY_START_FIELD_NAME)),
-          validityEndDate = parseDateOrNull(it.getMaybeValue(LOYALTY_VALIDITY_END_FIELD_NAME))
-      )
+fun GetCustomerWSResponse.toLoyaltyProgram(): LoyaltyProgram? = toMiscPrograms().loyaltyProgram
+
+fun GetCustomerWSResponse.toRailPasses(): List<RailPass> = toMiscPrograms().railPasses
+
+private class MiscPrograms(val loyaltyProgram: LoyaltyProgram?, val railPasses: List<RailPass>)
+
+// one pass over the misc, each record is mapped according to the type of its misc
+private fun GetCustomerWSResponse.toMiscPrograms(): MiscPrograms {
+  var loyaltyProgram: LoyaltyProgram? = null
+  val railPasses = ArrayList<RailPass>()
+  for (oneMisc in misc) {
+    when (oneMisc.type?.value) {
+      // we retrieve only the loyalty cards sublist that has at least one loyalty card, and we take the first because why not?
+      LOYALTY_PROGRAM_TYPE -> if (loyaltyProgram == null && 0 < oneMisc.count) {
+        loyaltyProgram = oneMisc.records.firstNotNullOfOrNull { it.toLoyaltyProgramOrNull() }
+      }
+      RAIL_PASS_TYPE -> oneMisc.records.mapNotNullTo(railPasses) { it.toRailPassOrNull() }
     }
+  }
+  return MiscPrograms(loyaltyProgram, railPasses)
+}
 
 // we check that we have at least :
 // the loyalty program number
 // the loyalty program status
 // that the card is REALLY a loyalty program one ( because you never really know...)
 // that the card is active
-private fun isActiveAndHasRequiredLoyaltyProgramFields(allFields: Map<String, String>): Boolean =
-  allFields.contains(LOYALTY_NUMBER_FIELD_NAME) &&
-      ACTIVE_FIELD_VALUE == allFields[LOYALTY_DISABLE_STATUS_FIELD_NAME] &&
-      enumContains<LoyaltyStatus>(allFields[LOYALTY_STATUS_FIELD_NAME])
-
-fun GetCustomerWSResponse.toRailPasses(): List<RailPass> =
-  misc
-    .filter { allMisc -> allMisc.type?.value == RAIL_PASS_TYPE }
-    .flatMap { allMisc ->
-      allMisc.records
-        .filter { it.type?.value == RAIL_PASS_TYPE && isActiveAndHasRequiredRailPassFields(it.mapAsRealMap) }
-        .map {
-          RailPass(
-              number = it.getValue(PASS_NUMBER_FIELD_NAME),
-              type = PassType.valueOf(it.getValue(PASS_PRODUCT_CODE_FIELD_NAME)),
-              typeRefLabel = it.getMaybeValue(PASS_PRODUCT_LABEL_FIELD_NAME),
-              validityStartDate = parseDateOrNull(it.getMaybeValue(PASS_VALIDITY_START_FIELD_NAME)),
-              validityEndDate = parseDateOrNull(it.getMaybeValue(PASS_VALIDITY_END_FIELD_NAME))
-          )
-        }
-    }
+private fun Record.toLoyaltyProgramOrNull(): LoyaltyProgram? {
+  if (LOYALTY_PROGRAM_TYPE != type?.value) {
+    return null
+  }
+  val allFields = mapAsRealMap
+  val number = allFields[LOYALTY_NUMBER_FIELD_NAME]
+  val status = allFields[LOYALTY_STATUS_FIELD_NAME]?.let { LOYALTY_STATUSES[it] }
+  if (number == null || status == null || ACTIVE_FIELD_VALUE != allFields[LOYALTY_DISABLE_STATUS_FIELD_NAME]) {
+    return null
+  }
+  return LoyaltyProgram(
+      number = number,
+      status = status,
+      statusRefLabel = allFields[LOYALTY_LABEL_FIELD_NAME],
+      validityStartDate = parseDateOrNull(allFields[LOYALTY_VALIDITY_START_FIELD_NAME]),
+      validityEndDate = parseDateOrNull(allFields[LOYALTY_VALIDITY_END_FIELD_NAME])
+  )
+}
 
 // we check that we have at least :
 // the rail pass number
 // the rail pass status
 // that the rail pass is REALLY a rail pass ( because you never really know...)
 // that the rail pass is active
-private fun isActiveAndHasRequiredRailPassFields(allFields: Map<String, String>): Boolean =
-  allFields.contains(PASS_NUMBER_FIELD_NAME)
-      && ACTIVE_FIELD_VALUE == allFields[PASS_ACTIVE_STATUS_FIELD_NAME]
-      && enumContains<PassType>(allFields[PASS_PRODUCT_CODE_FIELD_NAME])
-
-private fun parseDateOrNull(maybeDate: String?): LocalDate? =
-  try {
-    maybeDate?.let { LocalDate.parse(it) }
-  } catch (e: DateTimeParseException) {
-    null
-  }
\ No newline at end of file
+private fun Record.toRailPassOrNull(): RailPass? {
+  if (RAIL_PASS_TYPE != type?.value) {
+    return null
+  }
+  val allFields = mapAsRealMap
+  val number = allFields[PASS_NUMBER_FIELD_NAME]
+  val passType = allFields[PASS_PRODUCT_CODE_FIELD_NAME]?.let { PASS_TYPES[it] }
+  if (number == null || passType == null || ACTIVE_FIELD_VALUE != allFields[PASS_ACTIVE_STATUS_FIELD_NAME]) {
+    return null
+  }
+  return RailPass(
+      number = number,
+      type = passType,
+      typeRefLabel = allFields[PASS_PRODUCT_LABEL_FIELD_NAME],
+      validityStartDate = parseDateOrNull(allFields[PASS_VALIDITY_START_FIELD_NAME]),
+      validityEndDate = parseDateOrNull(allFields[PASS_VALIDITY_END_FIELD_NAME])
+  )
+}
+
+/**
+ * LocalDate.parse, without the cost of an exception when it is not a date: the yyyy-MM-dd dates are read directly,
+ * the other forms ISO_LOCAL_DATE accepts (years of more than 4 digits) are left to the formatter.
+ */
+internal fun parseDateOrNull(maybeDate: String?): LocalDate? {
+  if (maybeDate == null) {
+    return null
+  }
+  if (maybeDate.length == 10 && maybeDate[4] == '-' && maybeDate[7] == '-') {
+    val year = digits(maybeDate, 0, 4)
+    val month = digits(maybeDate, 5, 7)
+    val day = digits(maybeDate, 8, 10)
+    return if (year < 0 || month < 0 || day < 0) null else dateOrNull(year, month, day)
+  }
+  val position = ParsePosition(0)
+  val parsed = ISO_LOCAL_DATE.parseUnresolved(maybeDate, position)
+  if (parsed == null || position.errorIndex >= 0 || position.index != maybeDate.length) {
+    return null
+  }
+  val year = parsed.getLong(ChronoField.YEAR)
+  if (!ChronoField.YEAR.range().isValidValue(year)) {
+    return null
+  }
+  return dateOrNull(year.toInt(), parsed.getLong(ChronoField.MONTH_OF_YEAR).toInt(),
+      parsed.getLong(ChronoField.DAY_OF_MONTH).toInt())
+}
+
+// the number written with the ASCII digits between from and to, -1 if there are other characters
+private fun digits(text: String, from: Int, to: Int): Int {
+  var number = 0
+  for (i in from until to) {
+    val digit = text[i]
+    if (digit !in '0'..'9') {
+      return -1
+    }
+    number = number * 10 + (digit - '0')
+  }
+  return number
+}
+
+private fun dateOrNull(year: Int, month: Int, day: Int): LocalDate? =
+  if (month !in 1..12 || day < 1 || day > Month.of(month).length(Year.isLeap(year.toLong()))) null
+  else LocalDate.of(year, month, day)
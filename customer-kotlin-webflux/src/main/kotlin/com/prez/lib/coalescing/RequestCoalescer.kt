@@ -0,0 +1,42 @@
+package com.prez.lib.coalescing
+
+import io.micrometer.core.instrument.Counter
+import org.slf4j.LoggerFactory
+import reactor.core.publisher.Mono
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Deduplicates concurrent calls sharing the same key (aka "single flight"): while a call is in flight for a key,
+ * any other caller for this key subscribes to the very same shared [Mono] instead of triggering a new call.
+ * The key is released as soon as the call terminates, so the next caller triggers a fresh call.
+ * Each caller joining an in-flight call increments the given counter.
+ */
+class RequestCoalescer<T>(private val coalesced: Counter) {
+
+  companion object {
+    private val logger = LoggerFactory.getLogger(RequestCoalescer::class.java)
+  }
+
+  internal val inFlight = ConcurrentHashMap<String, Mono<T>>()
+
+  fun coalesce(key: String, call: () -> Mono<T>): Mono<T> = Mono.defer {
+    val existing = inFlight[key]
+    if (existing != null) {
+      join(key, existing)
+    } else {
+      // share() cancels the call only when every caller has cancelled, and replays the result to late subscribers;
+      // a late subscriber to a call over subscribes to it again: its end must not release a newer call of the key
+      lateinit var created: Mono<T>
+      created = call()
+        .doFinally { inFlight.remove(key, created) }
+        .share()
+      inFlight.putIfAbsent(key, created)?.let { join(key, it) } ?: created
+    }
+  }
+
+  private fun join(key: String, existing: Mono<T>): Mono<T> {
+    logger.debug("Joining in-flight call for key='$key'")
+    coalesced.increment()
+    return existing
+  }
+}
@@ -0,0 +1,85 @@
+package com.prez.lib.security
+
+import com.nimbusds.jose.JWSAlgorithm
+import com.nimbusds.jose.JWSHeader
+import com.nimbusds.jose.proc.JWSKeySelector
+import com.nimbusds.jose.proc.SecurityContext
+import org.slf4j.LoggerFactory
+import org.springframework.core.io.Resource
+import org.springframework.security.converter.RsaKeyConverters
+import java.io.IOException
+import java.security.Key
+import java.security.interfaces.RSAPublicKey
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit.MILLISECONDS
+
+/**
+ * RSA public keys verifying the RS256 token signatures, read from local PEM files ( X.509 "PUBLIC KEY" ) rather than
+ * fetched from the authorization server: no key retrieval on the request path.
+ *
+ * The files are read again in background, so that a rotated key (a new file, or a mounted secret updated in place)
+ * is used without a restart. A token header naming a key id is ignored, every key is tried.
+ * A file which cannot be read keeps the previous keys in use.
+ */
+class RefreshingPublicKeys(locations: List<Resource>, refreshInterval: Duration) :
+  JWSKeySelector<SecurityContext>, AutoCloseable {
+
+  companion object {
+    private val logger = LoggerFactory.getLogger(RefreshingPublicKeys::class.java)
+  }
+
+  private val locations = locations.toList()
+  private val changeListeners = CopyOnWriteArrayList<() -> Unit>()
+
+  /**
+   * Fails when a key cannot be read, the application should not start without its keys.
+   */
+  @Volatile
+  var keys: List<RSAPublicKey> = try {
+    load()
+  } catch (e: IOException) {
+    throw IllegalStateException("Unable to read the public keys from $locations", e)
+  } catch (e: IllegalArgumentException) {
+    throw IllegalStateException("Unable to read the public keys from $locations", e)
+  }
+    private set
+
+  private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor {
+    Thread(it, "jwt-keys-refresh").apply { isDaemon = true }
+  }.apply {
+    scheduleWithFixedDelay(::refresh, refreshInterval.toMillis(), refreshInterval.toMillis(), MILLISECONDS)
+  }
+
+  override fun selectJWSKeys(header: JWSHeader, context: SecurityContext?): List<Key> =
+    if (JWSAlgorithm.RS256 == header.algorithm) keys else emptyList()
+
+  /**
+   * @param listener called after the keys changed, to forget the tokens verified with the previous ones
+   */
+  fun onChange(listener: () -> Unit) {
+    changeListeners.add(listener)
+  }
+
+  internal fun refresh() {
+    try {
+      val loaded = load()
+      if (loaded != keys) {
+        logger.info("Public keys changed in {}, {} key(s) in use", locations, loaded.size)
+        keys = loaded
+        changeListeners.forEach { it() }
+      }
+    } catch (e: Exception) {
+      logger.warn("Unable to read the public keys from {}, keeping the previous ones", locations, e)
+    }
+  }
+
+  private fun load(): List<RSAPublicKey> =
+    locations.map { location -> location.inputStream.use { RsaKeyConverters.x509().convert(it)!! } }
+
+  override fun close() {
+    scheduler.shutdownNow()
+  }
+}
@@ -0,0 +1,11 @@
+package com.prez.model
+
+/**
+ * Outcome of the lookup of a batch of customers: the customers found, in the order of the requested ids, and the ids
+ * of those which do not exist or could not be fetched from the customer web service.
+ */
+data class CustomerBatch(
+    val customers: List<Customer>,
+    val notFound: List<String>,
+    val failed: List<String>
+)
@@ -1,24 +1,35 @@
 package com.prez.service
 
 import com.prez.cache.CustomerCacheRepository
+import com.prez.cache.CustomerLocalCache
+import com.prez.cache.CustomerNotFoundCache
+import com.prez.cache.CustomerRefreshLease
 import com.prez.db.CustomerPreferencesRepository
 import com.prez.exception.NotFoundException
 import com.prez.extension.toCustomer
+import com.prez.lib.coalescing.RequestCoalescer
+import com.prez.lib.writebehind.WriteBehindQueue
 import com.prez.model.Customer
+import com.prez.model.CustomerBatch
 import com.prez.model.CustomerPreferences
 import com.prez.model.SeatPreference
 import com.prez.ws.CustomerClient
 import com.prez.ws.model.CreateCustomerPreferencesWSRequest
+import com.prez.ws.model.GetCustomerWSResponse
 import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Component
 import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
 import java.util.Locale
 import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
 
 interface CustomerService {
   fun getCustomerInfo(customerId: String): Mono<Customer>
 
+  fun getCustomersInfo(customerIds: Collection<String>): Mono<CustomerBatch>
+
   fun createCustomerPreferences(
     customerId: String,
     seatPreference: SeatPreference,
@@ -34,7 +45,14 @@ interface CustomerService {
 class CustomerServiceImpl(
   val customerWebService: CustomerClient,
   val cache: CustomerCacheRepository,
-  val database: CustomerPreferencesRepository
+  val localCache: CustomerLocalCache,
+  val notFoundCache: CustomerNotFoundCache,
+  val database: CustomerPreferencesRepository,
+  val customerRequestCoalescer: RequestCoalescer<Customer>,
+  val cacheWriteBehind: WriteBehindQueue<String, Customer>,
+  val refreshLease: CustomerRefreshLease,
+  // customer web service calls in flight at once for a batch
+  @Value("\${customer.batch.concurrency:8}") val batchConcurrency: Int = 8
 ) : CustomerService {
 
   companion object {
@@ -43,36 +61,152 @@ class CustomerServiceImpl(
 
   override fun getCustomerInfo(customerId: String): Mono<Customer> {
     logger.debug("Getting customer with customerId=$customerId")
-    return cache.findById(customerId)
+    return Mono.justOrEmpty<Customer>(localCache.getIfPresent(customerId))
+      .switchIfEmpty(Mono.defer { findInCache(customerId) })
       .switchIfEmpty(deferCallingCustomerWebService(customerId))
   }
 
+  /**
+   * A stale customer ( past the soft time-to-live ) is served right away and refreshed in background,
+   * so that only a customer past the hard time-to-live has to wait for the customer web service.
+   */
+  private fun findInCache(customerId: String): Mono<Customer> {
+    return cache.findEntryById(customerId)
+      .doOnNext { entry ->
+        localCache.put(entry.customer)
+        if (entry.stale) {
+          refreshInBackground(customerId)
+        }
+      }
+      .map { it.customer }
+  }
+
+  /**
+   * Only the instance holding the refresh lease of the customer refreshes it, the others keep serving the stale entry.
+   */
+  private fun refreshInBackground(customerId: String) {
+    logger.debug("Customer $customerId is stale in cache, refreshing it in background")
+    refreshLease.tryAcquire(customerId)
+      .flatMap { lease ->
+        if (lease.acquired) {
+          customerRequestCoalescer.coalesce(customerId) { callCustomerWebService(customerId, lease) }
+        } else {
+          logger.debug("Customer $customerId already being refreshed by another instance")
+          Mono.empty<Customer>()
+        }
+      }
+      .subscribe(null, { logger.warn("Could not refresh customer $customerId in cache", it) })
+  }
+
   /**
    * Defer the execution of call to getCustomer web service. If you don't defer, the call will be executed in //
    * of the "previous" mono ( aka look in cache ) which is NOT what we want.
    * See https://stackoverflow.com/questions/54373920/mono-switchifempty-is-always-called if you want a more complete explanation
+   * Concurrent misses for the same customer share a single web service call, and so do the instances through the
+   * refresh lease: one not holding it polls Redis for the customer, then calls the web service itself should the
+   * holder not save it in time.
    */
   private fun deferCallingCustomerWebService(customerId: String): Mono<Customer> {
+    return customerRequestCoalescer.coalesce(customerId) {
+      refreshLease.tryAcquire(customerId).flatMap { lease ->
+        if (lease.acquired) callCustomerWebService(customerId, lease)
+        else refreshLease.awaitRefreshed(customerId, cache.findById(customerId))
+          .doOnNext(localCache::put)
+          .switchIfEmpty(Mono.defer { callCustomerWebService(customerId, lease) })
+      }
+    }
+  }
+
+  /**
+   * The customer is saved in cache behind the response, so that a miss costs a single web service call and no Redis
+   * write. The lease is kept until it expires once the customer is fetched, released should the call fail.
+   */
+  private fun callCustomerWebService(customerId: String, lease: CustomerRefreshLease.Lease): Mono<Customer> {
+    return getFromCustomerWebService(customerId)
+      .switchIfEmpty(Mono.error(NotFoundException(customerId, "customer")))
+      .map { wsResponse -> wsResponse!!.toCustomer() }
+      .doOnNext(localCache::put)
+      .doOnNext { cacheWriteBehind.offer(it) }
+      .onErrorResume { e -> lease.release().then(Mono.error<Customer>(e)) }
+  }
+
+  /**
+   * A customer the customer web service did not find lately is not asked for again, one it does not find is
+   * remembered as such.
+   *
+   * @return [Mono] emitting the customer web service response or [Mono.empty] if the customer is not found
+   */
+  private fun getFromCustomerWebService(customerId: String): Mono<GetCustomerWSResponse> {
+    return notFoundCache.isNotFound(customerId)
+      .flatMap { notFound ->
+        if (notFound) Mono.empty<GetCustomerWSResponse>()
+        else customerWebService.getCustomer(customerId)
+          .switchIfEmpty(Mono.defer {
+            notFoundCache.putNotFound(customerId).then(Mono.empty<GetCustomerWSResponse>())
+          })
+      }
+  }
+
+  /**
+   * The customers missing from the local cache are all looked for in Redis at once, then only those missing from Redis
+   * are fetched from the customer web service, at most batchConcurrency at a time, and saved back in Redis behind the
+   * response.
+   * Unlike getCustomerInfo, a stale customer is not refreshed: the whole batch is served from the entries as they are.
+   */
+  override fun getCustomersInfo(customerIds: Collection<String>): Mono<CustomerBatch> {
+    logger.debug("Getting ${customerIds.size} customers")
     return Mono.defer {
-      customerWebService
-        .getCustomer(customerId)
-        .switchIfEmpty(Mono.error(NotFoundException(customerId, "customer")))
-        .map { wsResponse -> wsResponse!!.toCustomer() }
-        .flatMap { customer ->
-          cache.save(customer)
-            .defaultIfEmpty(false)
-            .doOnSuccess { savedInCache ->
-              if (savedInCache)
-                logger.debug("Customer ${customer.customerId} saved in cache")
-              else
-                logger.error("COULD NOT SAVE ${customer.customerId} in cache")
-            }
-            // then we just return the customer
-            .then(Mono.justOrEmpty(customer))
+      val ids = customerIds.toCollection(LinkedHashSet())
+      val found = ids.mapNotNull { id -> localCache.getIfPresent(id)?.let { id to it } }.toMap(HashMap())
+      val notInLocalCache = ids.filterNot(found::containsKey)
+      if (notInLocalCache.isEmpty()) {
+        return@defer Mono.just(toBatch(ids, found, emptySet()))
+      }
+      val failed = ConcurrentHashMap.newKeySet<String>()
+      cache.findAllByIds(notInLocalCache)
+        .flatMap { cached ->
+          cached.values.forEach(localCache::put)
+          found.putAll(cached)
+          callCustomerWebService(notInLocalCache.filterNot(cached::containsKey), failed)
+        }
+        .map { fetched ->
+          fetched.forEach { found[it.customerId] = it }
+          toBatch(ids, found, failed)
         }
     }
   }
 
+  /**
+   * A missing customer is not an error of the batch, neither is a failed call: they are told apart in the batch.
+   */
+  private fun callCustomerWebService(customerIds: List<String>, failed: MutableSet<String>): Mono<List<Customer>> {
+    if (customerIds.isEmpty()) {
+      return Mono.just(emptyList())
+    }
+    return Flux.fromIterable(customerIds)
+      .flatMap({ customerId ->
+        customerRequestCoalescer.coalesce(customerId) {
+          getFromCustomerWebService(customerId)
+            .switchIfEmpty(Mono.error(NotFoundException(customerId, "customer")))
+            .map { wsResponse -> wsResponse!!.toCustomer() }
+            .doOnNext(localCache::put)
+            .doOnNext { cacheWriteBehind.offer(it) }
+        }
+          .onErrorResume(NotFoundException::class.java) { Mono.empty() }
+          .onErrorResume { e ->
+            logger.warn("Could not get customer $customerId from the customer web service", e)
+            failed.add(customerId)
+            Mono.empty()
+          }
+      }, batchConcurrency)
+      .collectList()
+  }
+
+  private fun toBatch(ids: Set<String>, found: Map<String, Customer>, failed: Set<String>): CustomerBatch {
+    val (failedIds, notFound) = ids.filterNot(found::containsKey).partition(failed::contains)
+    return CustomerBatch(ids.mapNotNull(found::get), notFound, failedIds)
+  }
+
   override fun createCustomerPreferences(
     customerId: String, seatPreference: SeatPreference,
     classPreference: Int, profileName: String, language: Locale?
@@ -0,0 +1,31 @@
+package com.prez.ws
+
+import java.time.Duration
+
+/**
+ * Circuit breaker, deadline and hedging of the customer web service calls, see ResilientCustomerClient.
+ */
+data class CustomerWSResilienceProperties(
+  var circuitBreaker: CircuitBreaker = CircuitBreaker(),
+  // the caller gives up past this delay, cancelling the call instead of waiting for the http client timeouts
+  var deadline: Duration = Duration.ofMillis(1500),
+  var hedging: Hedging = Hedging()
+) {
+
+  data class CircuitBreaker(
+    // percentage of failed calls, among the last sliding-window-size ones, opening the circuit
+    var failureRateThreshold: Float = 50f,
+    var slidingWindowSize: Int = 20,
+    var minimumNumberOfCalls: Int = 10,
+    var waitDurationInOpenState: Duration = Duration.ofSeconds(10),
+    var permittedNumberOfCallsInHalfOpenState: Int = 3
+  )
+
+  data class Hedging(
+    var enabled: Boolean = false,
+    // a second call is sent when the first one lasts longer than this percentile of the latencies
+    var percentile: Double = 0.95,
+    // never sooner than this delay
+    var minDelay: Duration = Duration.ofMillis(50)
+  )
+}
@@ -0,0 +1,47 @@
+package com.prez.ws
+
+import com.prez.lib.limit.AdaptiveConcurrencyLimiter
+import com.prez.ws.model.GetCustomerWSResponse
+import org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE
+import reactor.core.publisher.Mono
+
+/**
+ * Calls the customer web service within an adaptive limit of the calls in progress, see AdaptiveConcurrencyLimiter:
+ * the calls over the limit fail right away with a 503 WebServiceException instead of waiting for a connection.
+ * Same failures as ResponseMarkerFilter: 5xx responses and errors, a 4xx response means the web service is up. A call
+ * cancelled past the deadline ResilientCustomerClient puts in the context is a failed one too, any other cancelled
+ * call tells nothing about the web service.
+ */
+class LimitedCustomerClient(
+  private val delegate: CustomerClient,
+  private val limiter: AdaptiveConcurrencyLimiter
+) : CustomerClient {
+
+  override fun getCustomer(customerId: String): Mono<GetCustomerWSResponse> = Mono.deferContextual { context ->
+    if (!limiter.tryAcquire()) {
+      return@deferContextual Mono.error(
+        WebServiceException(
+          LIMIT_REACHED, "CUSTOMER_WS", SERVICE_UNAVAILABLE,
+          "${limiter.limit} calls in progress, customer web service not called for customerId=$customerId"
+        )
+      )
+    }
+    val start = System.nanoTime()
+    delegate.getCustomer(customerId)
+      .doOnSuccess { limiter.onSuccess(start) }
+      .doOnError { if (isFailure(it)) limiter.onDropped(start) else limiter.onSuccess(start) }
+      .doOnCancel {
+        val deadline = context.getOrDefault<Long?>(DEADLINE, null)
+        if (deadline != null && System.nanoTime() - deadline >= 0) limiter.onDropped(start) else limiter.onIgnored()
+      }
+  }
+
+  companion object {
+    const val LIMIT_REACHED = "CUSTOMER_WS_LIMIT_REACHED"
+
+    // System.nanoTime() past which the call is cancelled
+    val DEADLINE = "${LimitedCustomerClient::class.java.name}.deadline"
+
+    fun isFailure(e: Throwable) = e !is WebServiceException || e.httpStatusCode.is5xxServerError
+  }
+}
@@ -5,6 +5,8 @@ import com.prez.model.CustomerPreferences
 import com.prez.model.SeatPreference
 import com.prez.service.CustomerService
 import com.prez.utils.FakeTokenGenerator
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.catchThrowable
 import org.junit.jupiter.api.Test
 import org.mockito.ArgumentMatchers
 import org.mockito.Mockito.`when`
@@ -15,13 +17,25 @@ import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWeb
 import org.springframework.boot.test.context.SpringBootTest
 import org.springframework.boot.test.mock.mockito.MockBean
 import org.springframework.http.MediaType
+import org.springframework.http.codec.HttpMessageWriter
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest
+import org.springframework.mock.web.reactive.function.server.MockServerRequest
+import org.springframework.mock.web.server.MockServerWebExchange
 import org.springframework.test.web.reactive.server.WebTestClient
+import org.springframework.web.reactive.function.UnsupportedMediaTypeException
+import org.springframework.web.reactive.function.server.ServerResponse
+import org.springframework.web.reactive.result.view.ViewResolver
 import reactor.core.publisher.Flux
+import java.security.Principal
+import java.util.concurrent.atomic.AtomicInteger
 
 
 @SpringBootTest
 @AutoConfigureWebTestClient
-internal class GetCustomerPreferencesHandlerTest(@Autowired val webTestClient: WebTestClient) {
+internal class GetCustomerPreferencesHandlerTest(
+  @Autowired val webTestClient: WebTestClient,
+  @Autowired val handler: GetCustomerPreferencesHandler
+) {
 
   @MockBean
   private lateinit var customerService: CustomerService
@@ -118,6 +132,123 @@ internal class GetCustomerPreferencesHandlerTest(@Autowired val webTestClient: W
     verify(customerService).getCustomerPreferences("trotro")
   }
 
+  @Test
+  fun `GET customers preferences should query the preferences once and return them all`() {
+    // Given
+    val accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read")
+    val queries = AtomicInteger()
+    val cancellations = AtomicInteger()
+    `when`(customerService.getCustomerPreferences("trotro"))
+      .thenReturn(
+        Flux.defer {
+          queries.incrementAndGet()
+          Flux.just(
+            CustomerPreferences(
+              customerId = "trotro",
+              profileName = "rigolo",
+              seatPreference = SeatPreference.NO_PREFERENCE,
+              classPreference = 2
+            ),
+            CustomerPreferences(
+              customerId = "trotro",
+              profileName = "serieux",
+              seatPreference = SeatPreference.NEAR_WINDOW,
+              classPreference = 1
+            )
+          )
+        }.doOnCancel { cancellations.incrementAndGet() }
+      )
+
+    // When && Then
+    webTestClient.get().uri("/customers/preferences")
+      .header("Authorization", "Bearer $accessToken")
+      .accept(MediaType.APPLICATION_JSON)
+      .exchange()
+      .expectStatus().isOk
+      .expectBody().json(
+        """
+          [{"profileName":"rigolo"},{"profileName":"serieux"}]
+        """.trimIndent()
+      )
+    assertThat(queries).hasValue(1)
+    assertThat(cancellations).hasValue(0)
+  }
+
+  @Test
+  fun `GET customers preferences should cancel the query when the response body cannot be written`() {
+    // Given
+    val queries = AtomicInteger()
+    val cancellations = AtomicInteger()
+    `when`(customerService.getCustomerPreferences("trotro"))
+      .thenReturn(
+        Flux.defer {
+          queries.incrementAndGet()
+          Flux.just(
+            CustomerPreferences(
+              customerId = "trotro",
+              profileName = "rigolo",
+              seatPreference = SeatPreference.NO_PREFERENCE,
+              classPreference = 2
+            )
+          ).concatWith(Flux.never())
+        }.doOnCancel { cancellations.incrementAndGet() }
+      )
+    val request = MockServerRequest.builder().principal(Principal { "trotro" }).build()
+    val noWriters = object : ServerResponse.Context {
+      override fun messageWriters(): List<HttpMessageWriter<*>> = emptyList()
+      override fun viewResolvers(): List<ViewResolver> = emptyList()
+    }
+
+    // When
+    val response = handler.getCustomerPreferences(request).block()!!
+    val thrown = catchThrowable {
+      response.writeTo(MockServerWebExchange.from(MockServerHttpRequest.get("/customers/preferences")), noWriters)
+        .block()
+    }
+
+    // Then
+    assertThat(thrown).isInstanceOf(UnsupportedMediaTypeException::class.java)
+    assertThat(queries).hasValue(1)
+    assertThat(cancellations).hasValue(1)
+  }
+
+  @Test
+  fun `GET customers preferences should stream the preferences as json lines when ndjson accepted`() {
+    // Given
+    val accessToken = fakeTokenGenerator.generateNotExpiredSignedToken("trotro", 3600, "customer.read")
+    `when`(customerService.getCustomerPreferences("trotro"))
+      .thenReturn(
+        Flux.just(
+          CustomerPreferences(
+            customerId = "trotro",
+            profileName = "rigolo",
+            seatPreference = SeatPreference.NO_PREFERENCE,
+            classPreference = 2
+          ),
+          CustomerPreferences(
+            customerId = "trotro",
+            profileName = "serieux",
+            seatPreference = SeatPreference.NEAR_WINDOW,
+            classPreference = 1
+          )
+        )
+      )
+
+    // When && Then
+    webTestClient.get().uri("/customers/preferences")
+      .header("Authorization", "Bearer $accessToken")
+      .accept(MediaType.APPLICATION_NDJSON)
+      .exchange()
+      .expectStatus().isOk
+      .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+      .expectBody(String::class.java)
+      .value { body ->
+        assertThat(body!!.lines().filter(String::isNotEmpty))
+          .hasSize(2)
+          .allSatisfy { assertThat(it).startsWith("{\"customerId\":\"trotro\"") }
+      }
+  }
+
   @Test
   fun `GET customers preferences should return internal server error when something went wrong`() {
     // When && Then
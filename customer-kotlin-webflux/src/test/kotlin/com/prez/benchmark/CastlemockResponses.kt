@@ -0,0 +1,27 @@
+package com.prez.benchmark
+
+import java.io.File
+import javax.xml.parsers.DocumentBuilderFactory
+
+/**
+ * Reads the customer web service bodies served by castlemock, so that the benchmarks work on realistic payloads.
+ * The directory defaults to the one of this repository and can be overridden with -Dcastlemock.responses=...
+ */
+internal object CastlemockResponses {
+
+  private val directory = File(System.getProperty("castlemock.responses", "../castlemock/rest/response/v2"))
+
+  /**
+   * @param name the name of the mocked response, eg "John"
+   * @return the body of that response
+   */
+  fun body(name: String): String {
+    val files = directory.listFiles { _, fileName -> fileName.endsWith(".rest") }
+      ?: throw IllegalStateException("No castlemock responses in ${directory.absolutePath}")
+    return files
+      .map { DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(it) }
+      .firstOrNull { it.getElementsByTagName("name").item(0).textContent == name }
+      ?.getElementsByTagName("body")?.item(0)?.textContent
+      ?: throw IllegalArgumentException("No castlemock response named $name")
+  }
+}
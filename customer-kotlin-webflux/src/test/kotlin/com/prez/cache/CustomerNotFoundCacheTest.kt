@@ -0,0 +1,101 @@
+package com.prez.cache
+
+import com.prez.lib.limit.LatencyBudget
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.springframework.boot.test.context.runner.ApplicationContextRunner
+import org.springframework.data.redis.RedisConnectionFailureException
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate
+import org.springframework.data.redis.core.ReactiveValueOperations
+import reactor.core.publisher.Mono
+import java.time.Duration
+
+class CustomerNotFoundCacheTest {
+
+  private val redisTemplate = mock(ReactiveStringRedisTemplate::class.java)
+
+  private val meterRegistry = SimpleMeterRegistry()
+
+  private val budget = LatencyBudget(
+    "redis", Duration.ofSeconds(1), Duration.ofSeconds(1), CircuitBreaker.ofDefaults("redis"), meterRegistry
+  )
+
+  private val toTest = CustomerNotFoundCache(30, redisTemplate, budget, meterRegistry)
+
+  @Test
+  fun `isNotFound should tell whether the customer is known as not found and record hits and misses`() {
+    // Given
+    `when`(redisTemplate.hasKey("CustomerNotFound:unknown")).thenReturn(Mono.just(true))
+    `when`(redisTemplate.hasKey("CustomerNotFound:123456789")).thenReturn(Mono.just(false))
+
+    // Test
+    val unknown = toTest.isNotFound("unknown").block()
+    val known = toTest.isNotFound("123456789").block()
+
+    // Assert
+    assertThat(unknown).isTrue
+    assertThat(known).isFalse
+    assertThat(
+      meterRegistry.get("cache.gets").tag("cache", "customer.not-found").tag("result", "hit").counter().count()
+    ).isEqualTo(1.0)
+    assertThat(
+      meterRegistry.get("cache.gets").tag("cache", "customer.not-found").tag("result", "miss").counter().count()
+    ).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `isNotFound should not know the customer as not found when Redis fails`() {
+    // Given
+    `when`(redisTemplate.hasKey("CustomerNotFound:unknown"))
+      .thenReturn(Mono.error(RedisConnectionFailureException("Redis down")))
+
+    // Test
+    val notFound = toTest.isNotFound("unknown").block()
+
+    // Assert
+    assertThat(notFound).isFalse
+  }
+
+  @Test
+  fun `putNotFound should save the customer as not found with its own time-to-live`() {
+    // Given
+    @Suppress("UNCHECKED_CAST")
+    val valueOperations = mock(ReactiveValueOperations::class.java) as ReactiveValueOperations<String, String>
+    `when`(redisTemplate.opsForValue()).thenReturn(valueOperations)
+    `when`(valueOperations.set("CustomerNotFound:unknown", "1", Duration.ofSeconds(30))).thenReturn(Mono.just(true))
+
+    // Test
+    val saved = toTest.putNotFound("unknown").block()
+
+    // Assert
+    assertThat(saved).isTrue
+    assertThat(meterRegistry.get("cache.puts").tag("cache", "customer.not-found").counter().count()).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `putNotFound should keep the customer as not found for spring redis time-to-live customer-not-found`() {
+    ApplicationContextRunner()
+      .withBean(ReactiveStringRedisTemplate::class.java, { redisTemplate })
+      .withBean(LatencyBudget::class.java, { budget })
+      .withBean(SimpleMeterRegistry::class.java)
+      .withUserConfiguration(CustomerNotFoundCache::class.java)
+      .withPropertyValues("spring.redis.time-to-live.customer-not-found=5")
+      .run { context ->
+        // Given
+        @Suppress("UNCHECKED_CAST")
+        val valueOperations = mock(ReactiveValueOperations::class.java) as ReactiveValueOperations<String, String>
+        `when`(redisTemplate.opsForValue()).thenReturn(valueOperations)
+        `when`(valueOperations.set("CustomerNotFound:unknown", "1", Duration.ofSeconds(5))).thenReturn(Mono.just(true))
+
+        // Test
+        val saved = context.getBean(CustomerNotFoundCache::class.java).putNotFound("unknown").block()
+
+        // Assert
+        assertThat(saved).isTrue
+      }
+  }
+}
@@ -0,0 +1,81 @@
+package com.prez.lib.coalescing
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class RequestCoalescerTest {
+
+  private val calls = AtomicInteger()
+  private val coalesced = Counter.builder("coalesced").register(SimpleMeterRegistry())
+  private val toTest = RequestCoalescer<String>(coalesced)
+
+  @Test
+  fun `coalesce should share a single call between concurrent callers with the same key`() {
+    // Test
+    val results = Flux.range(0, 5)
+      .flatMap { toTest.coalesce("key", ::slowCall) }
+      .collectList()
+      .block()
+
+    // Assert
+    assertThat(results).containsExactly("result1", "result1", "result1", "result1", "result1")
+    assertThat(calls).hasValue(1)
+    assertThat(coalesced.count()).isEqualTo(4.0)
+  }
+
+  @Test
+  fun `coalesce should not share calls between different keys`() {
+    // Test
+    Flux.merge(toTest.coalesce("key1", ::slowCall), toTest.coalesce("key2", ::slowCall)).blockLast()
+
+    // Assert
+    assertThat(calls).hasValue(2)
+    assertThat(coalesced.count()).isZero()
+  }
+
+  @Test
+  fun `coalesce should trigger a new call once the previous one is over, even when it failed`() {
+    // Test
+    assertThrows<IllegalStateException> {
+      toTest.coalesce("key") { Mono.error(IllegalStateException("boom")) }.block()
+    }
+    val result = toTest.coalesce("key", ::slowCall).block()
+
+    // Assert
+    assertThat(result).isEqualTo("result1")
+    assertThat(coalesced.count()).isZero()
+  }
+
+  @Test
+  fun `coalesce should keep sharing the call in flight when an older call of the same key ends again`() {
+    // Given a first call over, a second one in flight
+    val first = Sinks.one<String>()
+    toTest.coalesce("key") { first.asMono() }.subscribe()
+    val older = toTest.inFlight.getValue("key")
+    first.tryEmitValue("first")
+    val second = Sinks.one<String>()
+    toTest.coalesce("key") { second.asMono() }.subscribe()
+
+    // Test the first call subscribed to again, by a caller which had joined it, then a new caller
+    older.block()
+    toTest.coalesce("key") {
+      calls.incrementAndGet()
+      Mono.never()
+    }.subscribe()
+
+    // Assert
+    assertThat(calls).hasValue(0)
+    assertThat(coalesced.count()).isEqualTo(1.0)
+  }
+
+  private fun slowCall(): Mono<String> =
+    Mono.delay(Duration.ofMillis(100)).map { "result${calls.incrementAndGet()}" }
+}
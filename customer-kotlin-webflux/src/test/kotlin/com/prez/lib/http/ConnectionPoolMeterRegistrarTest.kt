@@ -0,0 +1,41 @@
+package com.prez.lib.http
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import reactor.netty.resources.ConnectionPoolMetrics
+import java.net.InetSocketAddress
+
+class ConnectionPoolMeterRegistrarTest {
+
+  private val meterRegistry = SimpleMeterRegistry()
+  private val toTest = ConnectionPoolMeterRegistrar(meterRegistry)
+
+  @Test
+  fun `registerMetrics should export the pool state as gauges tagged with the pool and remote address`() {
+    // Given
+    val metrics = mock(ConnectionPoolMetrics::class.java)
+    `when`(metrics.acquiredSize()).thenReturn(3)
+    `when`(metrics.idleSize()).thenReturn(2)
+    `when`(metrics.pendingAcquireSize()).thenReturn(1)
+    `when`(metrics.allocatedSize()).thenReturn(5)
+
+    // Test
+    toTest.registerMetrics("customer-ws", "id", InetSocketAddress.createUnresolved("localhost", 8085), metrics)
+
+    // Assert
+    assertThat(gauge(ConnectionPoolMeterRegistrar.ACTIVE)).isEqualTo(3.0)
+    assertThat(gauge(ConnectionPoolMeterRegistrar.IDLE)).isEqualTo(2.0)
+    assertThat(gauge(ConnectionPoolMeterRegistrar.PENDING)).isEqualTo(1.0)
+    assertThat(gauge(ConnectionPoolMeterRegistrar.ALLOCATED)).isEqualTo(5.0)
+  }
+
+  private fun gauge(name: String): Double =
+    meterRegistry.get(name)
+      .tag("pool", "customer-ws")
+      .tag("remote.address", "localhost:8085")
+      .gauge()
+      .value()
+}
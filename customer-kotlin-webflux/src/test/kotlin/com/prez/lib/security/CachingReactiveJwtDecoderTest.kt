@@ -0,0 +1,115 @@
+package com.prez.lib.security
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.catchThrowable
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.springframework.security.oauth2.jwt.BadJwtException
+import org.springframework.security.oauth2.jwt.Jwt
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.time.Instant
+
+class CachingReactiveJwtDecoderTest {
+
+  private val meterRegistry = SimpleMeterRegistry()
+  private val delegate = mock(ReactiveJwtDecoder::class.java)
+  private val toTest = CachingReactiveJwtDecoder(delegate, 10, Duration.ofMinutes(10), meterRegistry)
+
+  private fun jwt(expiresAt: Instant) = Jwt.withTokenValue("token")
+    .header("alg", "RS256")
+    .subject("trotro")
+    .issuedAt(Instant.now().minusSeconds(10))
+    .expiresAt(expiresAt)
+    .build()
+
+  @Test
+  fun `decode should verify a token only once`() {
+    // Given
+    val expected = jwt(Instant.now().plusSeconds(60))
+    `when`(delegate.decode("token")).thenReturn(Mono.just(expected))
+
+    // Test
+    val first = toTest.decode("token").block()
+    val second = toTest.decode("token").block()
+
+    // Assert
+    assertThat(first).isSameAs(expected)
+    assertThat(second).isSameAs(expected)
+    verify(delegate).decode("token")
+    assertThat(
+      meterRegistry.get("cache.gets").tag("cache", "jwt").tag("result", "hit").functionCounter().count()
+    ).isEqualTo(1.0)
+    assertThat(
+      meterRegistry.get("cache.gets").tag("cache", "jwt").tag("result", "miss").functionCounter().count()
+    ).isEqualTo(1.0)
+    assertThat(meterRegistry.get("jwt.verification").timer().count()).isEqualTo(1)
+  }
+
+  @Test
+  fun `decode should verify again a token past its expiration`() {
+    // Given
+    `when`(delegate.decode("token")).thenReturn(Mono.just(jwt(Instant.now().minusSeconds(1))))
+
+    // Test
+    toTest.decode("token").block()
+    toTest.decode("token").block()
+
+    // Assert
+    verify(delegate, times(2)).decode("token")
+  }
+
+  @Test
+  fun `decode should not cache a token failing the verification`() {
+    // Given
+    `when`(delegate.decode("token")).thenReturn(Mono.error(BadJwtException("bad signature")))
+
+    // Test
+    val first = catchThrowable { toTest.decode("token").block() }
+    val second = catchThrowable { toTest.decode("token").block() }
+
+    // Assert
+    assertThat(first).isInstanceOf(BadJwtException::class.java)
+    assertThat(second).isInstanceOf(BadJwtException::class.java)
+    verify(delegate, times(2)).decode("token")
+  }
+
+  @Test
+  fun `invalidateAll should make the tokens verified again`() {
+    // Given
+    `when`(delegate.decode("token")).thenReturn(Mono.just(jwt(Instant.now().plusSeconds(60))))
+    toTest.decode("token").block()
+
+    // Test
+    toTest.invalidateAll()
+    toTest.decode("token").block()
+
+    // Assert
+    verify(delegate, times(2)).decode("token")
+  }
+
+  @Test
+  fun `decode should not cache a token verified while the keys changed`() {
+    // Given the keys changing while the first token is verified
+    val rotated = jwt(Instant.now().plusSeconds(60))
+    `when`(delegate.decode("token"))
+      .thenReturn(Mono.fromCallable {
+        toTest.invalidateAll()
+        rotated
+      })
+      .thenReturn(Mono.just(rotated))
+
+    // Test
+    val first = toTest.decode("token").block()
+    toTest.decode("token").block()
+
+    // Assert
+    assertThat(first).isSameAs(rotated)
+    verify(delegate, times(2)).decode("token")
+  }
+}
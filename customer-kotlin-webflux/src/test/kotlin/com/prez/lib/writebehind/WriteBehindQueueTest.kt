@@ -0,0 +1,139 @@
+package com.prez.lib.writebehind
+
+import com.prez.cache.CustomerCacheRepository
+import com.prez.config.CacheConfig
+import com.prez.model.Customer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+
+class WriteBehindQueueTest {
+
+  private val meterRegistry = SimpleMeterRegistry()
+  private val batches = mutableListOf<List<String>>()
+  private val writes = mutableListOf<Sinks.One<Boolean>>()
+  private val jack = Customer("123", "Doe", "Jack", null, null, null)
+
+  // values are "key:version", the writer completes only when told to
+  private fun queue(capacity: Int) =
+    WriteBehindQueue<String, String>("test", capacity, 10, { it.substringBefore(":") }, { batch ->
+      batches.add(batch)
+      val write = Sinks.one<Boolean>()
+      writes.add(write)
+      write.asMono()
+    }, meterRegistry)
+
+  private fun count(result: String) =
+    meterRegistry.get("write-behind.offers").tag("name", "test").tag("result", result).counter().count()
+
+  private fun size() = meterRegistry.get("write-behind.size").tag("name", "test").gauge().value()
+
+  @Test
+  fun `offer should write the value right away when no write is in flight`() {
+    // Given
+    val toTest = queue(10)
+
+    // Test
+    val queued = toTest.offer("a:1")
+    writes[0].tryEmitValue(true)
+
+    // Assert
+    assertThat(queued).isTrue
+    assertThat(batches).containsExactly(listOf("a:1"))
+    assertThat(count("queued")).isEqualTo(1.0)
+    assertThat(count("written")).isEqualTo(1.0)
+    assertThat(size()).isZero()
+  }
+
+  @Test
+  fun `offer should only keep the last value of a key while a write is in flight, and write them at once`() {
+    // Given a write in flight
+    val toTest = queue(10)
+    toTest.offer("a:1")
+
+    // Test
+    toTest.offer("a:2")
+    toTest.offer("b:1")
+    toTest.offer("a:3")
+    writes[0].tryEmitValue(true)
+    writes[1].tryEmitValue(true)
+
+    // Assert
+    assertThat(batches).hasSize(2)
+    assertThat(batches[0]).containsExactly("a:1")
+    assertThat(batches[1]).containsExactlyInAnyOrder("a:3", "b:1")
+    assertThat(count("coalesced")).isEqualTo(1.0)
+    assertThat(count("written")).isEqualTo(3.0)
+  }
+
+  @Test
+  fun `offer should drop the value of a new key when the queue is full`() {
+    // Given a write in flight and a full queue
+    val toTest = queue(2)
+    toTest.offer("a:1")
+    toTest.offer("b:1")
+    toTest.offer("c:1")
+
+    // Test
+    val dropped = !toTest.offer("d:1")
+    val coalesced = toTest.offer("c:2")
+
+    // Assert
+    assertThat(dropped).isTrue
+    assertThat(coalesced).isTrue
+    assertThat(count("dropped")).isEqualTo(1.0)
+    assertThat(size()).isEqualTo(2.0)
+  }
+
+  @Test
+  fun `offer should count the failed writes and keep on writing the next values`() {
+    // Given a write in flight
+    val toTest = queue(10)
+    toTest.offer("a:1")
+    toTest.offer("b:1")
+
+    // Test
+    writes[0].tryEmitError(IllegalStateException("Redis down"))
+    writes[1].tryEmitValue(true)
+
+    // Assert
+    assertThat(batches).containsExactly(listOf("a:1"), listOf("b:1"))
+    assertThat(count("failed")).isEqualTo(1.0)
+    assertThat(count("written")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `offer should count as failed a write throwing right away`() {
+    // Given
+    val toTest = WriteBehindQueue<String, String>("test", 10, 10, { it }, {
+      throw IllegalStateException("Redis down")
+    }, meterRegistry)
+
+    // Test
+    toTest.offer("a")
+    toTest.offer("b")
+
+    // Assert
+    assertThat(count("failed")).isEqualTo(2.0)
+  }
+
+  @Test
+  fun `customerCacheWriteBehind should count as failed the customers saveAll did not save`() {
+    // Given saveAll past its latency budget
+    val customerCache = mock(CustomerCacheRepository::class.java)
+    `when`(customerCache.saveAll(listOf(jack))).thenReturn(Mono.just(false))
+    val toTest = CacheConfig().customerCacheWriteBehind(customerCache, 10, 100, meterRegistry)
+
+    // Test
+    toTest.offer(jack)
+
+    // Assert
+    assertThat(
+      meterRegistry.get("write-behind.offers").tag("name", "customer").tag("result", "failed").counter().count()
+    ).isEqualTo(1.0)
+  }
+}
@@ -1,19 +1,32 @@
 package com.prez.service
 
+import com.prez.cache.CustomerCacheEntry
 import com.prez.cache.CustomerCacheRepository
+import com.prez.cache.CustomerLocalCache
+import com.prez.cache.CustomerNotFoundCache
+import com.prez.cache.CustomerRefreshLease
+import com.prez.cache.CustomerRefreshLeaseProperties
 import com.prez.db.CustomerPreferencesRepository
 import com.prez.exception.NotFoundException
 import com.prez.model.Customer
+import com.prez.model.CustomerBatch
 import com.prez.model.CustomerPreferences
 import com.prez.model.LoyaltyProgram
 import com.prez.model.LoyaltyStatus._019875
 import com.prez.model.SeatPreference.NEAR_CORRIDOR
 import com.prez.model.SeatPreference.NEAR_WINDOW
 import com.prez.ws.CustomerWSClient
+import com.prez.ws.WebServiceException
 import com.prez.ws.model.Email
 import com.prez.ws.model.GetCustomerWSResponse
 import com.prez.ws.model.PersonalDetails
 import com.prez.ws.model.PersonalInformation
+import com.prez.lib.coalescing.RequestCoalescer
+import com.prez.lib.limit.LatencyBudget
+import com.prez.lib.writebehind.WriteBehindQueue
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
@@ -22,16 +35,25 @@ import org.junit.jupiter.api.extension.ExtendWith
 import org.mockito.ArgumentCaptor
 import org.mockito.Mockito
 import org.mockito.Mockito.`when`
+import org.mockito.Mockito.anyList
 import org.mockito.Mockito.anyString
+import org.mockito.Mockito.eq
 import org.mockito.Mockito.mock
 import org.mockito.Mockito.never
 import org.mockito.Mockito.reset
+import org.mockito.Mockito.timeout
 import org.mockito.Mockito.verify
 import org.mockito.junit.jupiter.MockitoExtension
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate
+import org.springframework.data.redis.core.ReactiveValueOperations
+import org.springframework.data.redis.core.script.RedisScript
+import org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR
 import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
+import java.time.Duration
 import java.time.LocalDate
 import java.util.Locale.ENGLISH
+import java.util.concurrent.atomic.AtomicInteger
 
 @ExtendWith(MockitoExtension::class)
 class CustomerServiceTest {
@@ -42,19 +64,53 @@ class CustomerServiceTest {
 
   private val customerPreferencesRepository = mock(CustomerPreferencesRepository::class.java)
 
-  private val toTest = CustomerServiceImpl(customerWSClient, customerCacheRepository, customerPreferencesRepository)
+  private val customerLocalCache = CustomerLocalCache(10, 30, 300, SimpleMeterRegistry())
+
+  private val customerNotFoundCache = mock(CustomerNotFoundCache::class.java)
+
+  private val customerRequestCoalescer =
+    RequestCoalescer<Customer>(Counter.builder("customer.webservice.coalesced").register(SimpleMeterRegistry()))
+
+  private val customerCacheWriteBehind = WriteBehindQueue<String, Customer>("customer", 10, 10, Customer::customerId,
+    customerCacheRepository::saveAll, SimpleMeterRegistry())
+
+  private val redisTemplate = mock(ReactiveStringRedisTemplate::class.java)
+
+  @Suppress("UNCHECKED_CAST")
+  private val valueOperations = mock(ReactiveValueOperations::class.java) as ReactiveValueOperations<String, String>
+
+  private fun refreshLease(enabled: Boolean) = CustomerRefreshLease(
+    CustomerRefreshLeaseProperties(enabled = enabled), redisTemplate,
+    LatencyBudget("redis", Duration.ofSeconds(1), Duration.ofSeconds(1), CircuitBreaker.ofDefaults("redis"),
+      SimpleMeterRegistry()),
+    SimpleMeterRegistry()
+  )
+
+  private fun customerService(refreshLease: CustomerRefreshLease) = CustomerServiceImpl(
+    customerWSClient, customerCacheRepository, customerLocalCache, customerNotFoundCache, customerPreferencesRepository,
+    customerRequestCoalescer, customerCacheWriteBehind, refreshLease, 2
+  )
+
+  // disabled: every lease is acquired
+  private val toTest = customerService(refreshLease(false))
 
   @BeforeEach
   fun setup() {
     reset(customerCacheRepository)
     reset(customerPreferencesRepository)
     reset(customerWSClient)
+    reset(customerNotFoundCache)
+    reset(redisTemplate)
+    `when`(redisTemplate.opsForValue()).thenReturn(valueOperations)
+    // by default, no customer is known as not found
+    `when`(customerNotFoundCache.isNotFound(anyString())).thenReturn(Mono.just(false))
+    `when`(customerNotFoundCache.putNotFound(anyString())).thenReturn(Mono.just(true))
   }
 
   @Test
   fun `getCustomerInfo should throw not found exception when customer does not exist`() {
     // Given the customer 123456789 cannot be found
-    `when`(customerCacheRepository.findById("123456789")).thenReturn(Mono.empty())
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
     `when`(customerWSClient.getCustomer("123456789")).thenReturn(Mono.empty())
 
     // When
@@ -67,6 +123,37 @@ class CustomerServiceTest {
     assertThat(thrown.localizedMessage).isEqualTo("No result for the given customer id=123456789")
   }
 
+  @Test
+  fun `getCustomerInfo should remember the customer as not found when the customer web service does not find it`() {
+    // Given the customer 123456789 cannot be found
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(customerWSClient.getCustomer("123456789")).thenReturn(Mono.empty())
+
+    // When
+    assertThrows<NotFoundException> {
+      toTest.getCustomerInfo("123456789").block()
+    }
+
+    // Then
+    verify(customerNotFoundCache).putNotFound("123456789")
+  }
+
+  @Test
+  fun `getCustomerInfo should not call Customer web service when customer known as not found`() {
+    // Given the customer web service did not find the customer 123456789 lately
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(customerNotFoundCache.isNotFound("123456789")).thenReturn(Mono.just(true))
+
+    // When
+    assertThrows<NotFoundException> {
+      toTest.getCustomerInfo("123456789").block()
+    }
+
+    // Then
+    verify(customerWSClient, never()).getCustomer("123456789")
+    verify(customerNotFoundCache, never()).putNotFound("123456789")
+  }
+
   @Test
   fun `getCustomerInfo should not call Customer web service when customer found in cache`() {
     // Given the cache does found the customer 123456789
@@ -85,23 +172,156 @@ class CustomerServiceTest {
             validityEndDate = LocalDate.MAX
         )
     )
-    `when`(customerCacheRepository.findById("123456789")).thenReturn(
-        Mono.just(expected)
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(
+        Mono.just(CustomerCacheEntry(expected, false))
+    )
+
+    // When I get the customer 123456789
+    val customerInfo = toTest.getCustomerInfo("123456789").block()
+
+    // Then
+    assertThat(customerInfo).isEqualTo(expected)
+    verify(customerCacheRepository).findEntryById("123456789")
+    verify(customerWSClient, never()).getCustomer(anyString())
+  }
+
+  @Test
+  fun `getCustomerInfo should return stale customer from cache and refresh it in background`() {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    val stale = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
+    )
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.just(CustomerCacheEntry(stale, true)))
+    // and the WS knows a fresher one
+    `when`(customerWSClient.getCustomer("123456789"))
+      .thenReturn(
+        Mono.just(
+          GetCustomerWSResponse(
+            id = "123456789",
+            personalInformation = PersonalInformation(
+              civility = null,
+              firstName = "Jack",
+              lastName = "Bower",
+              alive = null,
+              birthdate = null
+            ),
+            personalDetails = PersonalDetails(email = Email("jb@boom.com"), cell = null)
+          )
+        )
+      )
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+
+    // When I get the customer 123456789
+    val customerInfo = toTest.getCustomerInfo("123456789").block()
+
+    // Then the stale customer is served and the cache is refreshed
+    assertThat(customerInfo).isEqualTo(stale)
+    verify(customerWSClient, timeout(1000)).getCustomer("123456789")
+    verify(customerCacheRepository, timeout(1000)).saveAll(listOf(stale.copy(lastName = "Bower")))
+    assertThat(customerLocalCache.getIfPresent("123456789")).isEqualTo(stale.copy(lastName = "Bower"))
+  }
+
+  @Test
+  fun `getCustomerInfo should not refresh a stale customer another instance is refreshing`() {
+    // Given the cache does found the customer 123456789, but past its soft time-to-live
+    val stale = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
+    )
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.just(CustomerCacheEntry(stale, true)))
+    // and another instance holds its refresh lease
+    `when`(valueOperations.setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any()))
+      .thenReturn(Mono.just(false))
+
+    // When I get the customer 123456789
+    val customerInfo = customerService(refreshLease(true)).getCustomerInfo("123456789").block()
+
+    // Then the stale customer is served, and not refreshed
+    assertThat(customerInfo).isEqualTo(stale)
+    verify(valueOperations, timeout(1000)).setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any())
+    verify(customerWSClient, never()).getCustomer("123456789")
+  }
+
+  @Test
+  fun `getCustomerInfo should serve the customer saved by the instance holding its refresh lease`() {
+    // Given another instance holds the refresh lease of the customer 123456789, missing from the cache
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(valueOperations.setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any()))
+      .thenReturn(Mono.just(false))
+    // and saves it meanwhile
+    val refreshed = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
+    )
+    `when`(customerCacheRepository.findById("123456789")).thenReturn(Mono.just(refreshed))
+
+    // When I get the customer 123456789
+    val customerInfo = customerService(refreshLease(true)).getCustomerInfo("123456789").block()
+
+    // Then
+    assertThat(customerInfo).isEqualTo(refreshed)
+    verify(customerWSClient, never()).getCustomer("123456789")
+    assertThat(customerLocalCache.getIfPresent("123456789")).isEqualTo(refreshed)
+  }
+
+  @Test
+  fun `getCustomerInfo should release the refresh lease when the customer web service does not find the customer`() {
+    // Given the refresh lease of the customer 123456789, missing from the cache, is acquired
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(valueOperations.setIfAbsent(eq("CustomerRefreshLease:123456789"), anyString(), any()))
+      .thenReturn(Mono.just(true))
+    `when`(redisTemplate.execute(any<RedisScript<Long>>(), anyList<String>(), anyList<Any>()))
+      .thenReturn(Flux.just(1L))
+    // and the customer web service cannot find it
+    `when`(customerWSClient.getCustomer("123456789")).thenReturn(Mono.empty())
+
+    // When
+    assertThrows<NotFoundException> { customerService(refreshLease(true)).getCustomerInfo("123456789").block() }
+
+    // Then the instances waiting for the customer stop waiting
+    verify(redisTemplate)
+      .execute(any<RedisScript<Long>>(), eq(listOf("CustomerRefreshLease:123456789")), anyList<Any>())
+  }
+
+  @Test
+  fun `getCustomerInfo should neither call Redis nor Customer web service when customer found in local cache`() {
+    // Given the local cache does found the customer 123456789
+    val expected = Customer(
+      customerId = "123456789",
+      firstName = "Jack",
+      lastName = "Bauer",
+      phoneNumber = null,
+      email = "jb@boom.com",
+      birthDate = null
     )
+    customerLocalCache.put(expected)
 
     // When I get the customer 123456789
     val customerInfo = toTest.getCustomerInfo("123456789").block()
 
     // Then
     assertThat(customerInfo).isEqualTo(expected)
-    verify(customerCacheRepository).findById("123456789")
+    verify(customerCacheRepository, never()).findEntryById(anyString())
     verify(customerWSClient, never()).getCustomer(anyString())
   }
 
   @Test
   fun `getCustomerInfo should return customer from web service when customer not found in cache`() {
     // Given
-    `when`(customerCacheRepository.findById("123456789")).thenReturn(Mono.empty())
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
     // The WS is called
     `when`(customerWSClient.getCustomer("123456789"))
         .thenReturn(
@@ -119,7 +339,7 @@ class CustomerServiceTest {
                 )
             )
         )
-    `when`(customerCacheRepository.save(any())).thenReturn(Mono.just(true))
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
 
     // When
     val customer = toTest.getCustomerInfo("123456789").block()
@@ -131,9 +351,134 @@ class CustomerServiceTest {
     assertThat(customer?.phoneNumber).isNull()
     assertThat(customer?.email).isEqualTo("jb@boom.com")
 
-    verify(customerCacheRepository).findById("123456789")
+    verify(customerCacheRepository).findEntryById("123456789")
+    verify(customerWSClient).getCustomer("123456789")
+    verify(customerCacheRepository).saveAll(listOf(customer))
+  }
+
+  @Test
+  fun `getCustomerInfo should not wait for the customer to be saved in cache`() {
+    // Given the customer 123456789 is not in cache and Redis never answers the save
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(customerWSClient.getCustomer("123456789"))
+      .thenReturn(Mono.just(GetCustomerWSResponse(id = "123456789", personalInformation = null, personalDetails = null)))
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.never())
+
+    // When
+    val customer = toTest.getCustomerInfo("123456789").block(Duration.ofSeconds(1))
+
+    // Then
+    assertThat(customer?.customerId).isEqualTo("123456789")
+    verify(customerCacheRepository).saveAll(listOf(customer))
+  }
+
+  @Test
+  fun `getCustomerInfo should call Customer web service once when concurrent calls miss the cache`() {
+    // Given the customer 123456789 is not in cache and the web service is slow
+    `when`(customerCacheRepository.findEntryById("123456789")).thenReturn(Mono.empty())
+    `when`(customerWSClient.getCustomer("123456789"))
+      .thenReturn(
+        Mono.just(
+          GetCustomerWSResponse(
+            id = "123456789",
+            personalInformation = PersonalInformation(
+              civility = null,
+              firstName = "Jack",
+              lastName = "Bower",
+              alive = null,
+              birthdate = null
+            ),
+            personalDetails = PersonalDetails(email = Email("jb@boom.com"), cell = null)
+          )
+        ).delayElement(Duration.ofMillis(100))
+      )
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+
+    // When I get the customer 123456789 twice at the same time
+    val customers = Flux.merge(toTest.getCustomerInfo("123456789"), toTest.getCustomerInfo("123456789"))
+      .collectList()
+      .block()
+
+    // Then both get the customer from a single web service call
+    assertThat(customers).hasSize(2).allMatch { it.customerId == "123456789" }
     verify(customerWSClient).getCustomer("123456789")
-    verify(customerCacheRepository).save(customer)
+    verify(customerCacheRepository).saveAll(any())
+  }
+
+  @Test
+  fun `getCustomersInfo should look in Redis at once and only call Customer web service for the misses`() {
+    // Given trotro in the local cache, ane in Redis
+    val trotro = Customer(customerId = "trotro", lastName = "Trotro", firstName = null, birthDate = null,
+      phoneNumber = null, email = null)
+    val ane = Customer(customerId = "ane", lastName = "Ane", firstName = null, birthDate = null, phoneNumber = null,
+      email = null)
+    customerLocalCache.put(trotro)
+    `when`(customerCacheRepository.findAllByIds(listOf("ane", "rigolo", "boum", "crash")))
+      .thenReturn(Mono.just(mapOf("ane" to ane)))
+    // rigolo known by the WS, boum unknown and crash failing
+    `when`(customerWSClient.getCustomer("rigolo"))
+      .thenReturn(Mono.just(GetCustomerWSResponse(id = "rigolo", personalInformation = null, personalDetails = null)))
+    `when`(customerWSClient.getCustomer("boum")).thenReturn(Mono.empty())
+    `when`(customerWSClient.getCustomer("crash"))
+      .thenReturn(Mono.error(WebServiceException(webServiceName = "CustomerWebService",
+        httpStatusCode = INTERNAL_SERVER_ERROR, errorDescription = "crashed")))
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+
+    // When
+    val batch = toTest.getCustomersInfo(listOf("trotro", "ane", "rigolo", "boum", "crash", "ane")).block()
+
+    // Then
+    assertThat(batch?.customers?.map { it.customerId }).containsExactly("trotro", "ane", "rigolo")
+    assertThat(batch?.notFound).containsExactly("boum")
+    assertThat(batch?.failed).containsExactly("crash")
+    verify(customerCacheRepository).findAllByIds(listOf("ane", "rigolo", "boum", "crash"))
+    verify(customerWSClient, never()).getCustomer("trotro")
+    verify(customerWSClient, never()).getCustomer("ane")
+    verify(customerCacheRepository).saveAll(listOf(batch!!.customers[2]))
+    verify(customerCacheRepository, never()).save(any())
+    assertThat(customerLocalCache.getIfPresent("ane")).isEqualTo(ane)
+    assertThat(customerLocalCache.getIfPresent("rigolo")).isEqualTo(batch.customers[2])
+  }
+
+  @Test
+  fun `getCustomersInfo should neither call Redis nor Customer web service when all customers in local cache`() {
+    // Given
+    val trotro = Customer(customerId = "trotro", lastName = "Trotro", firstName = null, birthDate = null,
+      phoneNumber = null, email = null)
+    customerLocalCache.put(trotro)
+
+    // When
+    val batch = toTest.getCustomersInfo(listOf("trotro")).block()
+
+    // Then
+    assertThat(batch).isEqualTo(CustomerBatch(listOf(trotro), emptyList(), emptyList()))
+    verify(customerCacheRepository, never()).findAllByIds(any())
+    verify(customerWSClient, never()).getCustomer(anyString())
+  }
+
+  @Test
+  fun `getCustomersInfo should not have more Customer web service calls in flight than the batch concurrency`() {
+    // Given 6 customers which are nowhere in cache, and a slow WS
+    val customerIds = listOf("c1", "c2", "c3", "c4", "c5", "c6")
+    `when`(customerCacheRepository.findAllByIds(customerIds)).thenReturn(Mono.just(emptyMap()))
+    val inFlight = AtomicInteger()
+    val maxInFlight = AtomicInteger()
+    `when`(customerWSClient.getCustomer(anyString())).thenAnswer { invocation ->
+      Mono.delay(Duration.ofMillis(20))
+        .doOnSubscribe { maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), ::maxOf) }
+        .thenReturn(GetCustomerWSResponse(id = invocation.getArgument(0), personalInformation = null,
+          personalDetails = null))
+        .doOnTerminate { inFlight.decrementAndGet() }
+    }
+    `when`(customerCacheRepository.saveAll(any())).thenReturn(Mono.just(true))
+
+    // When
+    val batch = toTest.getCustomersInfo(customerIds).block()
+
+    // Then
+    assertThat(batch?.customers?.map { it.customerId }).containsExactlyElementsOf(customerIds)
+    assertThat(maxInFlight.get()).isEqualTo(2)
+    verify(customerCacheRepository, timeout(1000).atLeastOnce()).saveAll(any())
   }
 
   @Test
@@ -0,0 +1,91 @@
+package com.prez.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+import lombok.Value;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Sends requests at a fixed arrival rate (open model): a slow server does not slow down the arrivals, and each
+ * latency is measured from the time its request was scheduled, so that queuing in front of the server is not
+ * hidden (coordinated omission).
+ */
+class LoadGenerator {
+
+  private final HttpClient httpClient;
+
+  LoadGenerator(HttpClient httpClient) {
+    this.httpClient = httpClient;
+  }
+
+  /**
+   * @param requests the request to send, by sequence number
+   * @param rate     requests per second
+   * @param duration how long requests are sent, the in-flight ones are then awaited
+   */
+  Measure run(LongFunction<HttpRequest> requests, int rate, Duration duration) {
+    final Recorder latencies = new Recorder(3);
+    final AtomicLong errors = new AtomicLong();
+    final LongAccumulator lastCompletion = new LongAccumulator(Long::max, 0);
+    final List<CompletableFuture<?>> inFlight = new ArrayList<>();
+    final long intervalNanos = Duration.ofSeconds(1).toNanos() / rate;
+    final long start = System.nanoTime();
+    final long end = start + duration.toNanos();
+
+    long sent = 0;
+    for (long scheduled = start; scheduled < end; scheduled = start + sent * intervalNanos) {
+      long now;
+      while ((now = System.nanoTime()) < scheduled) {
+        LockSupport.parkNanos(scheduled - now);
+      }
+      final long scheduledAt = scheduled;
+      inFlight.add(httpClient.sendAsync(requests.apply(sent), BodyHandlers.discarding())
+          .whenComplete((response, error) -> {
+            final long completion = System.nanoTime();
+            latencies.recordValue(completion - scheduledAt);
+            lastCompletion.accumulate(completion);
+            if (error != null || response.statusCode() >= 400) {
+              errors.incrementAndGet();
+            }
+          }));
+      sent++;
+    }
+    CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0]))
+        .exceptionally(error -> null) // already counted
+        .join();
+    return new Measure(sent, errors.get(), lastCompletion.get() - start, latencies.getIntervalHistogram());
+  }
+
+  @Value
+  static class Measure {
+
+    long requests;
+    long errors;
+    long elapsedNanos;
+    /**
+     * Latencies in nanoseconds.
+     */
+    Histogram latencies;
+
+    /**
+     * @return the successful responses per second
+     */
+    double throughput() {
+      return elapsedNanos == 0 ? 0 : (requests - errors) * 1e9 / elapsedNanos;
+    }
+
+    double latencyMillis(double percentile) {
+      return latencies.getValueAtPercentile(percentile) / 1e6;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.prez.loadtest;
+
+import static java.util.stream.Collectors.toList;
+
+import com.prez.loadtest.LoadGenerator.Measure;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * Runs the same scenarios at the same fixed arrival rates against each version of the resource server, with
+ * local stand-ins for its dependencies: a WireMock stub serving the castlemock customers, Redis and Mongo
+ * containers (emptied before each version) and tokens signed with the private key matching public.pem.
+ * <p>
+ * Everything is configured with system properties (see the constants), the resource servers must have been
+ * packaged beforehand. A module followed by "+virtual-threads" is the same resource server with its requests handled
+ * on virtual threads, the virtual threads pinned to their carrier are reported once it is stopped.
+ * The results are printed and written in target/load-test/results.csv, the resource servers logs are next to it.
+ */
+public class LoadTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoadTest.class);
+
+  private static final String VIRTUAL_THREADS = "+virtual-threads";
+  private static final String MODULES = System.getProperty("loadtest.modules",
+      "customer-java-resttemplate,customer-java-webflux,customer-kotlin-webflux,customer-kotlin-coroutines,"
+          + "customer-kotlin-coroutines-controllers");
+  /**
+   * requests per second, each scenario is measured at each rate
+   */
+  private static final List<Integer> RATES = Arrays.stream(System.getProperty("loadtest.rates", "100,200").split(","))
+      .map(rate -> Integer.valueOf(rate.trim()))
+      .collect(toList());
+  /**
+   * seconds, for each scenario
+   */
+  private static final int WARMUP = Integer.getInteger("loadtest.warmup", 20);
+  private static final int DURATION = Integer.getInteger("loadtest.duration", 60);
+  /**
+   * distinct customers (ie tokens) the requests are spread over, round robin
+   */
+  private static final int CUSTOMERS = Integer.getInteger("loadtest.customers", 1000);
+  /**
+   * milliseconds added by the stub to each customer web service response
+   */
+  private static final int UPSTREAM_DELAY = Integer.getInteger("loadtest.upstream-delay", 50);
+  /**
+   * same heap for every version, so that the allocation rates are comparable
+   */
+  private static final String JVM_ARGS = System.getProperty("loadtest.jvm-args", "-Xms512m -Xmx512m");
+  private static final int PORT = Integer.getInteger("loadtest.port", 4600);
+  private static final File MODULES_DIRECTORY = new File(System.getProperty("loadtest.modules-directory", ".."));
+  private static final File CASTLEMOCK_RESPONSES =
+      new File(System.getProperty("loadtest.castlemock", "../castlemock/rest/response/v2"));
+  private static final File OUTPUT_DIRECTORY = new File("target/load-test");
+
+  private static final int MONGODB_PORT = 27017;
+  private static final int REDIS_PORT = 6379;
+
+  public static void main(String[] args) throws Exception {
+    if (!OUTPUT_DIRECTORY.isDirectory() && !OUTPUT_DIRECTORY.mkdirs()) {
+      throw new IllegalStateException("Unable to create " + OUTPUT_DIRECTORY);
+    }
+    final TokenIssuer tokenIssuer = new TokenIssuer();
+    final List<String> tokens = IntStream.range(0, CUSTOMERS)
+        .mapToObj(i -> tokenIssuer.issue(String.format("load-test-%05d", i), Duration.ofDays(1)))
+        .collect(toList());
+    final HttpClient httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+    final LoadGenerator loadGenerator = new LoadGenerator(httpClient);
+
+    final List<ScenarioResult> results = new ArrayList<>();
+    final Map<String, Map<String, Integer>> pinnedThreads = new LinkedHashMap<>();
+    try (UpstreamStub upstream = new UpstreamStub(CASTLEMOCK_RESPONSES, UPSTREAM_DELAY);
+         GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:6.2"))
+             .withExposedPorts(REDIS_PORT);
+         GenericContainer<?> mongodb = new GenericContainer<>(DockerImageName.parse("mongo:4.2"))
+             .withExposedPorts(MONGODB_PORT)) {
+      redis.start();
+      mongodb.start();
+      for (String version : MODULES.split(",")) {
+        final boolean virtualThreads = version.endsWith(VIRTUAL_THREADS);
+        final String module = virtualThreads
+            ? version.substring(0, version.length() - VIRTUAL_THREADS.length())
+            : version;
+        // every version starts with empty stores, they do not all store the customers the same way
+        redis.execInContainer("redis-cli", "FLUSHALL");
+        mongodb.execInContainer("mongo", "CustomerDB", "--quiet", "--eval", "db.dropDatabase()");
+
+        final Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", String.valueOf(PORT));
+        properties.put("customer.ws.base-path", upstream.basePath());
+        properties.put("redis.hostname", redis.getHost());
+        properties.put("redis.port", String.valueOf(redis.getMappedPort(REDIS_PORT)));
+        properties.put("spring.data.mongodb.uri", "mongodb://" + mongodb.getHost() + ":"
+            + mongodb.getMappedPort(MONGODB_PORT)
+            + "/?minPoolSize=3&maxPoolSize=10&waitQueueMultiple=2&waitQueueTimeoutMS=5000");
+        // the tracing and debug logs would be measured more than the versions themselves
+        properties.put("spring.zipkin.enabled", "false");
+        properties.put("spring.sleuth.sampler.probability", "0");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.com.prez", "WARN");
+        properties.put("logging.level.org.springframework.security", "WARN");
+        properties.put("management.endpoints.web.exposure.include", "info,health,metrics");
+        properties.put("management.metrics.enable.jvm", "true");
+        String jvmArgs = JVM_ARGS;
+        if (virtualThreads) {
+          properties.put("customer.virtual-threads.enabled", "true");
+          jvmArgs += " -Djdk.tracePinnedThreads=short";
+        }
+
+        final File log = new File(OUTPUT_DIRECTORY, version + ".log");
+        try (ResourceServer server = ResourceServer.start(new File(MODULES_DIRECTORY, module), jvmArgs, properties,
+            log, httpClient)) {
+          server.awaitUp(Duration.ofMinutes(2));
+          // preferences first, so that the GET ones find some
+          for (Scenario scenario : Scenario.values()) {
+            LOGGER.info("{} {}: warmup {}s at {} req/s", version, scenario, WARMUP, RATES.get(0));
+            loadGenerator.run(i -> scenario.request(server.baseUri(), tokens.get((int) (i % CUSTOMERS))),
+                RATES.get(0), Duration.ofSeconds(WARMUP));
+          }
+          for (int rate : RATES) {
+            for (Scenario scenario : Scenario.values()) {
+              LOGGER.info("{} {}: {}s at {} req/s", version, scenario, DURATION, rate);
+              final long allocatedBefore = server.allocatedBytes(tokens.get(0));
+              final Measure measure = loadGenerator.run(
+                  i -> scenario.request(server.baseUri(), tokens.get((int) (i % CUSTOMERS))), rate,
+                  Duration.ofSeconds(DURATION));
+              final long allocated = server.allocatedBytes(tokens.get(0)) - allocatedBefore;
+              final ScenarioResult result = new ScenarioResult(version, scenario, rate, measure, allocated);
+              LOGGER.info(result.toRow());
+              results.add(result);
+            }
+          }
+        }
+        if (virtualThreads) {
+          pinnedThreads.put(version, PinnedThreads.read(log.toPath()));
+        }
+      }
+    }
+    report(results);
+    reportPinnedThreads(pinnedThreads);
+  }
+
+  private static void reportPinnedThreads(Map<String, Map<String, Integer>> pinnedThreads) throws IOException {
+    if (pinnedThreads.isEmpty()) {
+      return;
+    }
+    final StringBuilder report = new StringBuilder(String.format("%nVirtual threads pinned to their carrier "
+        + "(distinct stacks, by frames holding a monitor)%n"));
+    pinnedThreads.forEach((version, pinnedBy) -> {
+      report.append(version).append(": ").append(pinnedBy.isEmpty() ? "none" : "").append(System.lineSeparator());
+      pinnedBy.forEach((frames, stacks) -> report.append(String.format("%6d  %s%n", stacks, frames)));
+    });
+    System.out.println(report);
+    final Path file = new File(OUTPUT_DIRECTORY, "pinned-threads.txt").toPath();
+    Files.writeString(file, report);
+    LOGGER.info("Pinned virtual threads written in {}", file.toAbsolutePath());
+  }
+
+  private static void report(List<ScenarioResult> results) throws IOException {
+    final StringBuilder table = new StringBuilder(String.format(Locale.ROOT,
+        "%nDuration: %ds, customers: %d, upstream delay: %dms, jvm: %s%n%s%n",
+        DURATION, CUSTOMERS, UPSTREAM_DELAY, JVM_ARGS, ScenarioResult.HEADER));
+    results.forEach(result -> table.append(result.toRow()).append(System.lineSeparator()));
+    System.out.println(table);
+    final File csv = new File(OUTPUT_DIRECTORY, "results.csv");
+    try (PrintWriter writer = new PrintWriter(csv)) {
+      writer.println("module,scenario,rate,requests,errors,throughput,p50_ms,p90_ms,p99_ms,p999_ms,max_ms,"
+          + "allocated_bytes_per_request");
+      results.forEach(result -> writer.println(result.toCsv()));
+    }
+    LOGGER.info("Results written in {}", csv.getAbsolutePath());
+  }
+
+  @Value
+  static class ScenarioResult {
+
+    static final String HEADER = String.format(Locale.ROOT, "%-44s %-20s %6s %9s %9s %9s %9s %9s %9s %8s %10s",
+        "module", "scenario", "rate", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors", "KB/req");
+
+    String module;
+    Scenario scenario;
+    int rate;
+    Measure measure;
+    long allocatedBytes;
+
+    double allocatedBytesPerRequest() {
+      return measure.getRequests() == 0 ? 0 : (double) allocatedBytes / measure.getRequests();
+    }
+
+    String toRow() {
+      return String.format(Locale.ROOT, "%-44s %-20s %6d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %8d %10.1f",
+          module, scenario, rate, measure.throughput(), measure.latencyMillis(50), measure.latencyMillis(90),
+          measure.latencyMillis(99), measure.latencyMillis(99.9), measure.getLatencies().getMaxValue() / 1e6,
+          measure.getErrors(), allocatedBytesPerRequest() / 1024);
+    }
+
+    String toCsv() {
+      return String.join(",", Arrays.asList(module, scenario.name(), String.valueOf(rate),
+          String.valueOf(measure.getRequests()), String.valueOf(measure.getErrors()),
+          String.format(Locale.ROOT, "%.1f", measure.throughput()),
+          String.format(Locale.ROOT, "%.2f", measure.latencyMillis(50)),
+          String.format(Locale.ROOT, "%.2f", measure.latencyMillis(90)),
+          String.format(Locale.ROOT, "%.2f", measure.latencyMillis(99)),
+          String.format(Locale.ROOT, "%.2f", measure.latencyMillis(99.9)),
+          String.format(Locale.ROOT, "%.2f", measure.getLatencies().getMaxValue() / 1e6),
+          String.format(Locale.ROOT, "%.0f", allocatedBytesPerRequest())));
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.prez.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the virtual threads pinned to their carrier from a resource server output, as printed by a Java 21+ JVM
+ * started with -Djdk.tracePinnedThreads=short: a "Thread[#..." line followed by the stack frames, the ones holding
+ * a monitor (ie running synchronized code) ending with "&lt;== monitors:n".
+ * <p>
+ * The JVM prints a given stack only once, so this tells where the pinning happens, not how often.
+ */
+final class PinnedThreads {
+
+  private static final String THREAD_PREFIX = "Thread[#";
+  private static final String MONITORS_MARKER = "<== monitors:";
+
+  private PinnedThreads() {
+  }
+
+  /**
+   * @return the frames holding the monitors of each distinct pinned stack, with the number of such stacks
+   */
+  static Map<String, Integer> read(Path log) throws IOException {
+    final Map<String, Integer> pinnedBy = new LinkedHashMap<>();
+    List<String> frames = null;
+    for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+      if (line.startsWith(THREAD_PREFIX)) {
+        count(frames, pinnedBy);
+        frames = new ArrayList<>();
+      } else if (frames != null && line.startsWith(" ")) {
+        final int marker = line.indexOf(MONITORS_MARKER);
+        if (marker >= 0) {
+          frames.add(line.substring(0, marker).trim());
+        }
+      } else {
+        count(frames, pinnedBy);
+        frames = null;
+      }
+    }
+    count(frames, pinnedBy);
+    return pinnedBy;
+  }
+
+  private static void count(List<String> frames, Map<String, Integer> pinnedBy) {
+    if (frames != null) {
+      // pinned in a native frame or a class initializer when no frame holds a monitor
+      final String key = frames.isEmpty() ? "(no monitor held: native frame or class initializer)"
+          : String.join(" < ", frames);
+      pinnedBy.merge(key, 1, Integer::sum);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.prez.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One of the resource servers, started from its packaged jar in its own JVM so that the versions do not
+ * interfere with each other nor with the load generator.
+ */
+class ResourceServer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResourceServer.class);
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private final String module;
+  private final Process process;
+  private final URI baseUri;
+  private final HttpClient httpClient;
+
+  private ResourceServer(String module, Process process, URI baseUri, HttpClient httpClient) {
+    this.module = module;
+    this.process = process;
+    this.baseUri = baseUri;
+    this.httpClient = httpClient;
+  }
+
+  /**
+   * @param moduleDirectory the directory of the module, where "mvn package" has been run
+   * @param jvmArgs         options of the resource server JVM
+   * @param properties      spring properties overriding the module application.yml
+   * @param log             where the resource server output goes
+   */
+  static ResourceServer start(File moduleDirectory, String jvmArgs, Map<String, String> properties, File log,
+                              HttpClient httpClient) throws IOException {
+    final String module = moduleDirectory.getName();
+    final File[] jars = new File(moduleDirectory, "target")
+        .listFiles((dir, name) -> name.startsWith(module) && name.endsWith(".jar"));
+    if (jars == null || jars.length != 1) {
+      throw new IllegalStateException("Expected one jar in " + moduleDirectory + "/target, run mvn package first");
+    }
+    final List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+    command.add("-jar");
+    command.add(jars[0].getAbsolutePath());
+    properties.forEach((key, value) -> command.add("--" + key + "=" + value));
+    LOGGER.info("Starting {}, output in {}", module, log);
+    final Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(log)
+        .start();
+    return new ResourceServer(module, process,
+        URI.create("http://localhost:" + properties.get("server.port")), httpClient);
+  }
+
+  URI baseUri() {
+    return baseUri;
+  }
+
+  /**
+   * Waits for the health endpoint to answer UP, ie until the server is started and connected to redis and mongo.
+   */
+  void awaitUp(Duration timeout) throws InterruptedException {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException(module + " exited with code " + process.exitValue());
+      }
+      try {
+        if (httpClient.send(HttpRequest.newBuilder(baseUri.resolve("/app.health")).build(),
+            BodyHandlers.discarding()).statusCode() == 200) {
+          LOGGER.info("{} is up", module);
+          return;
+        }
+      } catch (IOException e) {
+        // not listening yet
+      }
+      TimeUnit.SECONDS.sleep(1);
+    }
+    throw new IllegalStateException(module + " not up after " + timeout);
+  }
+
+  /**
+   * The bytes allocated by the resource server JVM since its start, from the Micrometer jvm.gc.memory.allocated
+   * counter. It is updated on each young collection, so a difference of two values is accurate give or take a
+   * young generation size: measure long enough.
+   */
+  long allocatedBytes(String token) throws IOException, InterruptedException {
+    final String metric = httpClient.send(HttpRequest.newBuilder(baseUri.resolve("/metrics/jvm.gc.memory.allocated"))
+        .header("Authorization", "Bearer " + token)
+        .build(), BodyHandlers.ofString()).body();
+    final JsonNode measurements = OBJECT_MAPPER.readTree(metric).path("measurements");
+    if (!measurements.has(0)) {
+      throw new IllegalStateException("Unexpected jvm.gc.memory.allocated metric for " + module + ": " + metric);
+    }
+    return measurements.get(0).path("value").asLong();
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    process.destroy();
+    if (!process.waitFor(30, TimeUnit.SECONDS)) {
+      process.destroyForcibly().waitFor();
+    }
+  }
+}
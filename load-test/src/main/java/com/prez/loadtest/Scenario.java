@@ -0,0 +1,50 @@
+package com.prez.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.time.Duration;
+
+/**
+ * The requests sent to the resource servers, one scenario at a time.
+ */
+enum Scenario {
+
+  CREATE_PREFERENCES {
+    @Override
+    HttpRequest.Builder request(URI baseUri) {
+      return HttpRequest.newBuilder(baseUri.resolve("/customers/preferences"))
+          .header("Content-Type", "application/json")
+          .POST(BodyPublishers.ofString("{"
+              + "\"seatPreference\":\"NEAR_WINDOW\","
+              + "\"classPreference\":1,"
+              + "\"profileName\":\"LoadTest\","
+              + "\"language\":\"fr\""
+              + "}"));
+    }
+  },
+  GET_CUSTOMER {
+    @Override
+    HttpRequest.Builder request(URI baseUri) {
+      return HttpRequest.newBuilder(baseUri.resolve("/customers")).GET();
+    }
+  },
+  GET_PREFERENCES {
+    @Override
+    HttpRequest.Builder request(URI baseUri) {
+      return HttpRequest.newBuilder(baseUri.resolve("/customers/preferences")).GET();
+    }
+  };
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  abstract HttpRequest.Builder request(URI baseUri);
+
+  HttpRequest request(URI baseUri, String token) {
+    return request(baseUri)
+        .header("Authorization", "Bearer " + token)
+        .header("Accept", "application/json")
+        .timeout(TIMEOUT)
+        .build();
+  }
+}
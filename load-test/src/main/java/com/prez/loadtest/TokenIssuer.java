@@ -0,0 +1,49 @@
+package com.prez.loadtest;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Local stand-in of the authorization server: signs tokens with the private key matching the public.pem
+ * the resource servers are configured with.
+ */
+class TokenIssuer {
+
+  static final String ISSUER = "load-test-authorization-server";
+
+  private final Algorithm rsaAlgorithm;
+
+  TokenIssuer() {
+    try (InputStream privateKey = TokenIssuer.class.getResourceAsStream("/private.der")) {
+      final PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(privateKey.readAllBytes());
+      this.rsaAlgorithm = Algorithm.RSA256(null,
+          (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(keySpec));
+    } catch (IOException | GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to read the private key", e);
+    }
+  }
+
+  /**
+   * @return a token for the customer, valid for the given duration, allowed to read and write its data
+   */
+  String issue(String customerId, Duration validity) {
+    return JWT.create()
+        .withSubject(customerId)
+        .withExpiresAt(Date.from(Instant.now().plus(validity)))
+        .withIssuer(ISSUER)
+        .withClaim("name", customerId)
+        .withClaim("azp", "LOAD_TEST_CLIENT_ID")
+        .withClaim("tokenName", "id_token")
+        .withClaim("scope", "customer.read customer.write")
+        .sign(rsaAlgorithm);
+  }
+}
@@ -0,0 +1,125 @@
+package com.prez.loadtest;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.head;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Local stand-in of castlemock: answers GET customers/{customerId} with one of the castlemock customers,
+ * whose id is replaced by the requested one so that every customer of the load test is a distinct one
+ * (and gets cached as such).
+ */
+class UpstreamStub implements AutoCloseable {
+
+  /**
+   * Same path as the castlemock one, appended to customer.ws.base-path by the resource servers.
+   */
+  static final String CUSTOMERS_PATH = "/mock/rest/project/8Nnnqp/application/e8IHUl/customers";
+  private static final String CUSTOMER_ID_PLACEHOLDER = "{{customerId}}";
+
+  private final WireMockServer server;
+
+  /**
+   * @param castlemockResponses directory of the castlemock responses (.rest files)
+   * @param delayMillis         latency added to each response, as a remote web service would
+   */
+  UpstreamStub(File castlemockResponses, int delayMillis) {
+    final CastlemockCustomerTransformer transformer =
+        new CastlemockCustomerTransformer(readCustomerBodies(castlemockResponses));
+    this.server = new WireMockServer(options()
+        .dynamicPort()
+        .containerThreads(200)
+        .asynchronousResponseEnabled(true)
+        .asynchronousResponseThreads(50)
+        .disableRequestJournal()
+        .extensions(transformer));
+    server.start();
+    server.stubFor(get(urlPathMatching(CUSTOMERS_PATH + "/[^/]+"))
+        .willReturn(aResponse()
+            .withStatus(200)
+            .withHeader("Content-Type", "application/json")
+            .withFixedDelay(delayMillis)
+            .withTransformers(transformer.getName())));
+    // health check of the resource servers
+    server.stubFor(head(anyUrl()).willReturn(aResponse().withStatus(200)));
+  }
+
+  /**
+   * @return the value of customer.ws.base-path for the resource servers
+   */
+  String basePath() {
+    return server.baseUrl();
+  }
+
+  @Override
+  public void close() {
+    server.stop();
+  }
+
+  static List<String> readCustomerBodies(File castlemockResponses) {
+    final File[] files = castlemockResponses.listFiles((dir, fileName) -> fileName.endsWith(".rest"));
+    if (files == null || files.length == 0) {
+      throw new IllegalStateException("No castlemock responses in " + castlemockResponses.getAbsolutePath());
+    }
+    final List<String> bodies = new ArrayList<>();
+    try {
+      for (File file : files) {
+        final Document response = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        final String body = response.getElementsByTagName("body").item(0).getTextContent();
+        bodies.add(body.replaceFirst("\"id\"\\s*:\\s*\"[^\"]*\"", "\"id\": \"" + CUSTOMER_ID_PLACEHOLDER + "\""));
+      }
+    } catch (ParserConfigurationException | SAXException | IOException e) {
+      throw new IllegalStateException("Unreadable castlemock response in " + castlemockResponses, e);
+    }
+    return bodies;
+  }
+
+  static class CastlemockCustomerTransformer extends ResponseDefinitionTransformer {
+
+    private final List<String> bodies;
+
+    CastlemockCustomerTransformer(List<String> bodies) {
+      this.bodies = bodies;
+    }
+
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition, FileSource files,
+                                        Parameters parameters) {
+      final String path = request.getUrl().split("\\?")[0];
+      final String customerId = path.substring(path.lastIndexOf('/') + 1);
+      final String body = bodies.get(Math.floorMod(customerId.hashCode(), bodies.size()));
+      return ResponseDefinitionBuilder.like(responseDefinition).but()
+          .withBody(body.replace(CUSTOMER_ID_PLACEHOLDER, customerId))
+          .build();
+    }
+
+    @Override
+    public String getName() {
+      return "castlemock-customer";
+    }
+
+    @Override
+    public boolean applyGlobally() {
+      return false;
+    }
+  }
+}
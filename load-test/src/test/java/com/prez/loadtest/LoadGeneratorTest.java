@@ -0,0 +1,84 @@
+package com.prez.loadtest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.prez.loadtest.LoadGenerator.Measure;
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LoadGeneratorTest {
+
+  private HttpServer server;
+  private URI baseUri;
+
+  @BeforeEach
+  void startServer() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/slow", exchange -> {
+      try {
+        TimeUnit.MILLISECONDS.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    server.createContext("/missing", exchange -> {
+      exchange.sendResponseHeaders(404, -1);
+      exchange.close();
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    baseUri = URI.create("http://localhost:" + server.getAddress().getPort());
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  @DisplayName("should send requests at the fixed rate whatever the server latency, and measure that latency")
+  void run_shouldSendAtFixedRate() {
+    // Given
+    final LoadGenerator toTest = new LoadGenerator(HttpClient.newHttpClient());
+
+    // Test
+    final Measure measure = toTest.run(i -> HttpRequest.newBuilder(baseUri.resolve("/slow")).build(), 50,
+        Duration.ofSeconds(1));
+
+    // Assert
+    assertThat(measure.getRequests()).isEqualTo(50);
+    assertThat(measure.getErrors()).isZero();
+    assertThat(measure.getLatencies().getTotalCount()).isEqualTo(50);
+    assertThat(measure.latencyMillis(50)).isGreaterThanOrEqualTo(200);
+    // the last request is sent after ~1s and answered 200ms later
+    assertThat(measure.getElapsedNanos()).isBetween(Duration.ofMillis(1150).toNanos(), Duration.ofSeconds(3).toNanos());
+    assertThat(measure.throughput()).isBetween(15.0, 45.0);
+  }
+
+  @Test
+  @DisplayName("should count error responses")
+  void run_shouldCountErrors() {
+    // Given
+    final LoadGenerator toTest = new LoadGenerator(HttpClient.newHttpClient());
+
+    // Test
+    final Measure measure = toTest.run(i -> HttpRequest.newBuilder(baseUri.resolve(i % 2 == 0 ? "/slow" : "/missing"))
+        .build(), 20, Duration.ofSeconds(1));
+
+    // Assert
+    assertThat(measure.getRequests()).isEqualTo(20);
+    assertThat(measure.getErrors()).isEqualTo(10);
+  }
+}
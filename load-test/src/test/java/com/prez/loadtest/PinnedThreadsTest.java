@@ -0,0 +1,56 @@
+package com.prez.loadtest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PinnedThreadsTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("should read the frames holding the monitors of each pinned stack")
+  void read() throws Exception {
+    // Given
+    final Path log = directory.resolve("customer-java-resttemplate+virtual-threads.log");
+    Files.writeString(log, String.join("\n",
+        "2026-10-18 12:00:00.000  WARN 1 --- [main] some log",
+        "Thread[#52,ForkJoinPool-1-worker-3,5,CarrierThreads]",
+        "    java.base/java.lang.VirtualThread$VThreadContinuation.onPinned(VirtualThread.java:183)",
+        "    io.lettuce.core.protocol.DefaultEndpoint.write(DefaultEndpoint.java:162) <== monitors:1",
+        "Thread[#60,ForkJoinPool-1-worker-1,5,CarrierThreads]",
+        "    java.base/java.lang.VirtualThread$VThreadContinuation.onPinned(VirtualThread.java:183)",
+        "    sun.net.www.protocol.http.HttpURLConnection.getInputStream(HttpURLConnection.java:1600) <== monitors:1",
+        "    com.prez.ws.CustomerWSClient.getCustomer(CustomerWSClient.java:50) <== monitors:2",
+        "2026-10-18 12:00:01.000  WARN 1 --- [main] another log",
+        "Thread[#61,ForkJoinPool-1-worker-2,5,CarrierThreads]",
+        "    java.base/java.lang.VirtualThread$VThreadContinuation.onPinned(VirtualThread.java:183)",
+        "    io.lettuce.core.protocol.DefaultEndpoint.write(DefaultEndpoint.java:162) <== monitors:1"));
+
+    // Test
+    final Map<String, Integer> pinned = PinnedThreads.read(log);
+
+    // Assert
+    assertThat(pinned).containsExactly(
+        Map.entry("io.lettuce.core.protocol.DefaultEndpoint.write(DefaultEndpoint.java:162)", 2),
+        Map.entry("sun.net.www.protocol.http.HttpURLConnection.getInputStream(HttpURLConnection.java:1600)"
+            + " < com.prez.ws.CustomerWSClient.getCustomer(CustomerWSClient.java:50)", 1));
+  }
+
+  @Test
+  @DisplayName("should read nothing when no thread is pinned")
+  void read_nothingPinned() throws Exception {
+    // Given
+    final Path log = directory.resolve("customer-java-resttemplate.log");
+    Files.writeString(log, "2026-10-18 12:00:00.000  WARN 1 --- [main] some log\n");
+
+    // Test & Assert
+    assertThat(PinnedThreads.read(log)).isEmpty();
+  }
+}
@@ -0,0 +1,45 @@
+package com.prez.loadtest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class UpstreamStubTest {
+
+  private static final File CASTLEMOCK_RESPONSES = new File("../castlemock/rest/response/v2");
+
+  @Test
+  @DisplayName("should read every castlemock customer and replace its id")
+  void readCustomerBodies() {
+    // Test
+    final List<String> bodies = UpstreamStub.readCustomerBodies(CASTLEMOCK_RESPONSES);
+
+    // Assert
+    assertThat(bodies).hasSize(3)
+        .allSatisfy(body -> assertThat(body).contains("\"id\": \"{{customerId}}\"").contains("\"misc\""));
+  }
+
+  @Test
+  @DisplayName("should answer a castlemock customer with the requested id")
+  void getCustomer() throws Exception {
+    try (UpstreamStub stub = new UpstreamStub(CASTLEMOCK_RESPONSES, 0)) {
+      // Test
+      final HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+          URI.create(stub.basePath() + UpstreamStub.CUSTOMERS_PATH + "/load-test-00042")).build(),
+          BodyHandlers.ofString());
+
+      // Assert
+      assertThat(response.statusCode()).isEqualTo(200);
+      assertThat(response.headers().firstValue("Content-Type")).hasValue("application/json");
+      assertThat(response.body()).contains("\"id\": \"load-test-00042\"").contains("\"personalInformation\"");
+    }
+  }
+}